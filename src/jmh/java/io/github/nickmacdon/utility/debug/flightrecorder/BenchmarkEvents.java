@@ -0,0 +1,40 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * The events recorded by the benchmarks.  Just like FlightRecorderTestEvents in the unit tests.
+ */
+enum BenchmarkEvents implements FlightRecorderEventID
+{
+  BENCHMARK_EVENT1(1),
+  BENCHMARK_EVENT2(2),
+  BENCHMARK_EVENT3(3)
+  ;
+
+  private final long eventID;
+  BenchmarkEvents(final long eventID)
+  {
+    this.eventID = eventID;
+  }
+
+  @Override
+  public String getEventName()
+  {
+    return toString();
+  }
+
+  @Override
+  public long getEventID()
+  {
+    return eventID;
+  }
+
+  @Override
+  public FlightRecorderEvent getEvent(final long sequenceNumber)
+  {
+    return new DefaultFlightRecorderEvent(System.currentTimeMillis(), sequenceNumber, this);
+  }
+}
@@ -0,0 +1,119 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * How long does it take to dump a full ring with each of the dumpers?  The time reported is
+ * for a whole dump of numberOfEvents events.  The binary dumper writes to a channel that just
+ * throws the bytes away, so only the encoding is measured and not any particular device, and
+ * the same goes for the text written by the streaming text dumper.
+ */
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DumpBenchmark
+{
+  @Param({"1000", "100000"})
+  public int numberOfEvents;
+
+  private FlightRecorder fr = FlightRecorder.INVALID;
+
+  private static final WritableByteChannel DISCARDING_CHANNEL = new WritableByteChannel()
+  {
+    @Override
+    public int write(final ByteBuffer bytesToWrite)
+    {
+      final int numberOfBytes = bytesToWrite.remaining();
+      bytesToWrite.position(bytesToWrite.limit());
+      return numberOfBytes;
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+      return true;
+    }
+
+    @Override
+    public void close()
+    {
+      // Nothing to close
+    }
+  };
+
+  private static final Writer DISCARDING_WRITER = new Writer()
+  {
+    @Override
+    public void write(final char[] charsToWrite, final int offset, final int length)
+    {
+      // Thrown away
+    }
+
+    @Override
+    public void flush()
+    {
+      // Nothing to flush
+    }
+
+    @Override
+    public void close()
+    {
+      // Nothing to close
+    }
+  };
+
+  @Setup(Level.Trial)
+  public void setUp()
+  {
+    fr = new InMemoryRingBufferFlightRecorder(numberOfEvents).startRecording();
+    for (int i=0; i<numberOfEvents; i++)
+      fr.recordEvent(BenchmarkEvents.values()[i % 3]);
+    fr.stopRecording();
+  }
+
+  @Benchmark
+  public String dumpToString()
+  {
+    final FlightRecorderEventDumper eventDumper = FlightRecorderFactory.getStringDumper("Benchmark");
+    fr.dumpEntriesTo(eventDumper);
+    return eventDumper.toString();
+  }
+
+  @Benchmark
+  public FlightRecorderEventDumper dumpToWriter()
+  {
+    final FlightRecorderEventDumper eventDumper = FlightRecorderFactory.getWriterDumper("Benchmark", DISCARDING_WRITER);
+    fr.dumpEntriesTo(eventDumper);
+    return eventDumper;
+  }
+
+  @Benchmark
+  public FlightRecorderEventDumper dumpToBinaryChannel()
+  {
+    final FlightRecorderEventDumper eventDumper = FlightRecorderFactory.getBinaryDumper("Benchmark", DISCARDING_CHANNEL);
+    fr.dumpEntriesTo(eventDumper);
+    return eventDumper;
+  }
+}
@@ -0,0 +1,168 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * What does a recordEvent() call cost?  This measures it for each kind of FlightRecorder and
+ * a few ring sizes, both while recording and while stopped (which is what an instrumented
+ * program pays when nobody is looking), and for an event that has been disabled.  Run with
+ * "-prof gc" (the default in the benchmarks profile) to see the allocation rate too, which
+ * should be zero for all of them.
+ *
+ * The single threaded recorders are only measured from one thread; the concurrent recorder
+ * is also measured with several producers fighting over the same recorder.
+ */
+import static io.github.nickmacdon.utility.debug.flightrecorder.BenchmarkEvents.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecordEventBenchmark
+{
+  public enum RecorderType
+  {
+    IN_MEMORY,
+    CONCURRENT,
+    MEMORY_MAPPED,
+    COMPRESSED
+  }
+
+  @State(Scope.Benchmark)
+  public static class Recorders
+  {
+    @Param({"IN_MEMORY", "CONCURRENT", "MEMORY_MAPPED", "COMPRESSED"})
+    public RecorderType recorderType;
+
+    @Param({"1000", "1000000"})
+    public int numberOfEvents;
+
+    FlightRecorder recording = FlightRecorder.INVALID;
+    FlightRecorder stopped   = FlightRecorder.INVALID;
+    private Path recordingFile = null;
+    private Path stoppedFile   = null;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+      if (recorderType == RecorderType.MEMORY_MAPPED)
+      {
+        recordingFile = Files.createTempFile("recordEventBenchmark", ".bjfr");
+        stoppedFile   = Files.createTempFile("recordEventBenchmark", ".bjfr");
+      }
+      recording = makeRecorder(recordingFile).disableEvent(BENCHMARK_EVENT3).startRecording();
+      stopped   = makeRecorder(stoppedFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+      if (recordingFile != null)  Files.deleteIfExists(recordingFile);
+      if (stoppedFile != null)    Files.deleteIfExists(stoppedFile);
+    }
+
+    private FlightRecorder makeRecorder(final Path file)
+    {
+      switch (recorderType)
+      {
+        case IN_MEMORY:      return new InMemoryRingBufferFlightRecorder(numberOfEvents);
+        case CONCURRENT:     return new ConcurrentRingBufferFlightRecorder(numberOfEvents);
+        case MEMORY_MAPPED:  return new MemoryMappedRingBufferFlightRecorder(file, numberOfEvents);
+        case COMPRESSED:     return new CompressedRingBufferFlightRecorder(16 * numberOfEvents);  // room for at least as many events
+        default:             throw new IllegalArgumentException(String.valueOf(recorderType));
+      }
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class CoarseClockRecorder
+  {
+    FlightRecorder recording = FlightRecorder.INVALID;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+      recording = new InMemoryRingBufferFlightRecorder(1000, FlightRecorderFactory.getCoarseClock(1, TimeUnit.MILLISECONDS)).startRecording();
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class ConcurrentRecorder
+  {
+    @Param({"1000", "1000000"})
+    public int numberOfEvents;
+
+    FlightRecorder recording = FlightRecorder.INVALID;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+      recording = new ConcurrentRingBufferFlightRecorder(numberOfEvents).startRecording();
+    }
+  }
+
+  @Benchmark
+  public FlightRecorder recordWhileRecording(final Recorders recorders)
+  {
+    return recorders.recording.recordEvent(BENCHMARK_EVENT1);
+  }
+
+  @Benchmark
+  public FlightRecorder recordWithTwoPayloads(final Recorders recorders)
+  {
+    return recorders.recording.recordEvent(BENCHMARK_EVENT2, 12345L, 67890L);
+  }
+
+  @Benchmark
+  public FlightRecorder recordWhileStopped(final Recorders recorders)
+  {
+    return recorders.stopped.recordEvent(BENCHMARK_EVENT1);
+  }
+
+  @Benchmark
+  public FlightRecorder recordDisabledEvent(final Recorders recorders)
+  {
+    return recorders.recording.recordEvent(BENCHMARK_EVENT3);
+  }
+
+  @Benchmark
+  public FlightRecorder recordWithCoarseClock(final CoarseClockRecorder recorder)
+  {
+    return recorder.recording.recordEvent(BENCHMARK_EVENT1);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public FlightRecorder recordContendedByFourThreads(final ConcurrentRecorder recorder)
+  {
+    return recorder.recording.recordEvent(BENCHMARK_EVENT2);
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public FlightRecorder recordContendedByAllCores(final ConcurrentRecorder recorder)
+  {
+    return recorder.recording.recordEvent(BENCHMARK_EVENT3);
+  }
+}
@@ -0,0 +1,71 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * The cost of just putting something into each of the ring buffers, without the rest of
+ * recordEvent() around it.  The generic RingBuffer is given a pre-made event, so the
+ * difference between it and EventRingBuffer is only the storage, not the allocation.
+ */
+import static io.github.nickmacdon.utility.debug.flightrecorder.BenchmarkEvents.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RingBufferBenchmark
+{
+  @Param({"1000", "1000000"})
+  public int numberOfEvents;
+
+  private RingBuffer<FlightRecorderEvent> ringBuffer = new RingBuffer<>(1, FlightRecorderEvent.INVALID, FlightRecorderEvent.class);
+  private EventRingBuffer eventRingBuffer = new EventRingBuffer(1);
+  private ConcurrentEventRingBuffer concurrentEventRingBuffer = new ConcurrentEventRingBuffer(1);
+  private final FlightRecorderEvent event = new DefaultFlightRecorderEvent(0, 0, BENCHMARK_EVENT1);
+  private long sequenceNumber = 0;
+
+  @Setup(Level.Trial)
+  public void setUp()
+  {
+    ringBuffer                = new RingBuffer<>(numberOfEvents, FlightRecorderEvent.INVALID, FlightRecorderEvent.class);
+    eventRingBuffer           = new EventRingBuffer(numberOfEvents);
+    concurrentEventRingBuffer = new ConcurrentEventRingBuffer(numberOfEvents);
+  }
+
+  @Benchmark
+  public void ringBufferPut()
+  {
+    ringBuffer.put(event);
+  }
+
+  @Benchmark
+  public void eventRingBufferPut()
+  {
+    sequenceNumber++;
+    eventRingBuffer.put(BENCHMARK_EVENT1, sequenceNumber, sequenceNumber);
+  }
+
+  @Benchmark
+  public void concurrentEventRingBufferPut()
+  {
+    sequenceNumber++;
+    concurrentEventRingBuffer.put(BENCHMARK_EVENT1, sequenceNumber, sequenceNumber);
+  }
+}
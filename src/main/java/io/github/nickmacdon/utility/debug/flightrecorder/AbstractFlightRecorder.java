@@ -0,0 +1,225 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * What the recorders in this package have in common: the event ID filter, the sampling
+ * policies, the stacks to capture, the per event ID statistics and the clock.  A recorder
+ * gives its sequence numbers with nextSequenceNumber(), and records each event in record(),
+ * which starts with claimSequenceNumber() to find out whether it is to be recorded at all.
+ * The recorders that keep their events extend AbstractStoringFlightRecorder, which does the
+ * rest of the steps in the right order and only asks them where to keep each event; one that
+ * doesn't keep them (like the one that forwards to the JDK's Flight Recorder) does its own.
+ *
+ * Whether it is recording and when it started are volatile, so they are right for the
+ * concurrent recorder; for the others, only used from one thread, that costs next to nothing.
+ */
+abstract class AbstractFlightRecorder implements FlightRecorder
+{
+  static final long NOT_RECORDED = 0;  // Sequence numbers start at 1
+
+  final FlightRecorderClock clock;
+  final EventIDFilter eventFilter = new EventIDFilter();
+  final EventSampler eventSampler = new EventSampler();
+  final EventStackCapture eventStackCapture = new EventStackCapture();
+  final EventStatistics eventStatistics = new EventStatistics();
+  final RecorderStatistics recorderStatistics = new RecorderStatistics();
+  private volatile boolean amRecording = false;
+  private volatile long startTimeStamp = 0;
+
+  AbstractFlightRecorder(final FlightRecorderClock clock)
+  {
+    this.clock = clock;
+  }
+
+  /*
+   * The sequence number of the next event, counting from 1.
+   */
+  abstract long nextSequenceNumber();
+
+  @Override
+  public final FlightRecorder recordEvent(final FlightRecorderEventID eventToRecord)
+  {
+    record(eventToRecord, 0, 0, 0);
+    return this;
+  }
+
+  @Override
+  public final FlightRecorder recordEvent(final FlightRecorderEventID eventToRecord, final long payload0)
+  {
+    record(eventToRecord, 1, payload0, 0);
+    return this;
+  }
+
+  @Override
+  public final FlightRecorder recordEvent(final FlightRecorderEventID eventToRecord, final long payload0, final long payload1)
+  {
+    record(eventToRecord, 2, payload0, payload1);
+    return this;
+  }
+
+  @Override
+  public final long beginSpan(final FlightRecorderEventID spanToBegin)
+  {
+    return record(spanToBegin, EventFlags.SPAN_BEGIN, 0, 0);
+  }
+
+  @Override
+  public final FlightRecorder endSpan(final FlightRecorderEventID spanToEnd, final long spanToken)
+  {
+    if (spanToken != NO_SPAN)  record(spanToEnd, EventFlags.SPAN_END, spanToken, 0);
+    return this;
+  }
+
+  /*
+   * Returns the token for a span that is beginning (see spanTokenFor()), or NO_SPAN if it
+   * wasn't recorded.  For the end of a span, payload0 is the token.
+   */
+  abstract long record(FlightRecorderEventID eventToRecord, int flags, long payload0, long payload1);
+
+  /*
+   * The token for a span that began at the given time, which is the time itself unless that
+   * happens to be NO_SPAN (a test clock, or a coarse one that starts at 0); then it is 1, so
+   * the span still ends, and is only a nanosecond shorter.
+   */
+  static long spanTokenFor(final long timeStamp)
+  {
+    return (timeStamp == NO_SPAN) ? 1 : timeStamp;
+  }
+
+  /*
+   * Checks the filter and the sampling policy, and gives the event its sequence number if it
+   * is to be recorded, or NOT_RECORDED.
+   */
+  final long claimSequenceNumber(final long eventID, final int flags)
+  {
+    if (!eventFilter.isEnabled(eventID))  return NOT_RECORDED;
+    final boolean recording = amRecording;
+    // The end of a span isn't sampled, since its beginning already was
+    if (recording && (flags != EventFlags.SPAN_END) && !eventSampler.shouldRecord(eventID, clock))  return NOT_RECORDED;  // Only counted
+    final long eventSequenceNumber = nextSequenceNumber();  // non recorded events still consume sequence numbers (by design), disabled and suppressed ones don't
+    return recording ? eventSequenceNumber : NOT_RECORDED;
+  }
+
+  @Override
+  public final FlightRecorder enableEvent(final FlightRecorderEventID eventToEnable)
+  {
+    eventFilter.setEnabled(eventToEnable.getEventID(), true);
+    return this;
+  }
+
+  @Override
+  public final FlightRecorder disableEvent(final FlightRecorderEventID eventToDisable)
+  {
+    eventFilter.setEnabled(eventToDisable.getEventID(), false);
+    return this;
+  }
+
+  @Override
+  public final FlightRecorder enableAllEvents()
+  {
+    eventFilter.enableAll();
+    return this;
+  }
+
+  @Override
+  public final FlightRecorder disableAllEvents()
+  {
+    eventFilter.disableAll();
+    return this;
+  }
+
+  @Override
+  public final boolean isEventEnabled(final FlightRecorderEventID eventToCheck)
+  {
+    return eventFilter.isEnabled(eventToCheck.getEventID());
+  }
+
+  @Override
+  public final FlightRecorder setSamplingPolicy(final FlightRecorderEventID eventToSample, final FlightRecorderSamplingPolicy samplingPolicy)
+  {
+    eventSampler.setPolicy(eventToSample, samplingPolicy);
+    return this;
+  }
+
+  @Override
+  public final FlightRecorder setStackDepth(final FlightRecorderEventID eventToCapture, final int maximumNumberOfFrames)
+  {
+    eventStackCapture.setStackDepth(eventToCapture, maximumNumberOfFrames);
+    return this;
+  }
+
+  @Override
+  public FlightRecorder startRecording()
+  {
+    if (startTimeStamp == 0)
+    {
+      startTimeStamp = clock.currentTimeNanos();
+      recorderStatistics.startCounting();
+    }
+    amRecording = true;
+    return this;
+  }
+
+  @Override
+  public FlightRecorder stopRecording()
+  {
+    amRecording = false;
+    return this;
+  }
+
+  final boolean isRecording()
+  {
+    return amRecording;
+  }
+
+  final long getStartTimeStamp()
+  {
+    return startTimeStamp;
+  }
+
+  /*
+   * Forgets the counts kept beside the events, for clearAllRecordedEvents().
+   */
+  final void clearCounts()
+  {
+    eventSampler.clearNumbersSuppressed();
+    eventStatistics.clear();
+    recorderStatistics.startCounting();
+  }
+
+  final FlightRecorderStatistics statisticsOf(
+    final long numberOfEventsRecorded,
+    final long numberOfEventsOverwritten,
+    final int numberOfEntries,
+    final double fractionFull
+  )
+  {
+    return recorderStatistics.getStatistics(
+      amRecording, numberOfEventsRecorded, numberOfEventsOverwritten, eventSampler.getTotalNumberSuppressed(),
+      numberOfEntries, fractionFull
+    );
+  }
+
+  final FlightRecorderSnapshot snapshotOf(final EventRingBuffer events, final long endTimeStamp, final int numberOfEventsLost)
+  {
+    return new FlightRecorderSnapshot(events, startTimeStamp, endTimeStamp, numberOfEventsLost, eventSampler.getSuppressedEventCounts(), eventStatistics.getEventSummaries());
+  }
+
+  /*
+   * Dumps all of the given events, in place, along with the counts kept beside them.
+   */
+  final void dumpAll(final RecordedEvents events, final long endTimeStamp, final FlightRecorderEventDumper eventDumper)
+  {
+    recorderStatistics.timeDump(eventDumper, () -> FlightRecorderSnapshot.dumpEntries(
+      events, startTimeStamp, endTimeStamp, 0, eventSampler.getSuppressedEventCounts(), eventStatistics.getEventSummaries(), eventDumper
+    ));
+  }
+
+  final void dumpMatching(final FlightRecorderQuery query, final RecordedEvents events, final long endTimeStamp, final FlightRecorderEventDumper eventDumper)
+  {
+    recorderStatistics.timeDump(eventDumper, () -> query.dumpMatchingEntries(events, startTimeStamp, endTimeStamp, 0, eventDumper));
+  }
+}
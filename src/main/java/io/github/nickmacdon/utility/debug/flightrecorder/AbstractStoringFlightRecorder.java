@@ -0,0 +1,61 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * What the recorders that keep their own events have in common, so each of them only has to
+ * say where its events are kept: it keeps each event that is to be recorded in store(), and
+ * this does the steps of recording it around that in the right order (capturing the stack,
+ * reading the clock once, adding the thread, working out the duration of a span that is
+ * ending, and counting it in the per event ID statistics).
+ */
+abstract class AbstractStoringFlightRecorder extends AbstractFlightRecorder
+{
+  AbstractStoringFlightRecorder(final FlightRecorderClock clock)
+  {
+    super(clock);
+  }
+
+  /*
+   * Keeps an event that is being recorded, with its flags already including the thread.
+   */
+  abstract void store(
+    FlightRecorderEventID eventToRecord,
+    long sequenceNumber,
+    long timeStamp,
+    int flagsToStore,
+    long payload0,
+    long payload1,
+    int stackID
+  );
+
+  /*
+   * The end of a span is stored with its duration in place of its token.
+   */
+  @Override
+  final long record(final FlightRecorderEventID eventToRecord, final int flags, final long payload0, final long payload1)
+  {
+    final long eventID = eventToRecord.getEventID();
+    final long eventSequenceNumber = claimSequenceNumber(eventID, flags);
+    if (eventSequenceNumber == NOT_RECORDED)  return NO_SPAN;
+
+    // Before the clock is read, so the time it takes isn't counted in a span that is beginning
+    final int stackID = (flags == EventFlags.SPAN_END) ? FlightRecorderEvent.NO_STACK : eventStackCapture.captureStackFor(eventID);
+    final long timeStamp = clock.currentTimeNanos();
+    final int flagsToStore = EventFlags.withThreadIndex(flags, ThreadTable.currentThreadIndex());
+    if (flags == EventFlags.SPAN_END)
+    {
+      final long durationNanos = Math.max(0, timeStamp - payload0);
+      store(eventToRecord, eventSequenceNumber, timeStamp, flagsToStore, durationNanos, 0, FlightRecorderEvent.NO_STACK);
+      eventStatistics.recordSpanEnd(eventToRecord, eventID, durationNanos);
+    }
+    else
+    {
+      store(eventToRecord, eventSequenceNumber, timeStamp, flagsToStore, payload0, payload1, stackID);
+      eventStatistics.recordEvent(eventToRecord, eventID, timeStamp);
+    }
+    return spanTokenFor(timeStamp);
+  }
+}
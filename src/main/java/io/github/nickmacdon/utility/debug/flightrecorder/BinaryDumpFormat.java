@@ -0,0 +1,83 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * The compact binary dump format written by FlightRecorderEventDumperToChannel and read
+ * by FlightRecorderBinaryDumpReader.  It is kept in one place so the two can't disagree.
+ *
+ * A dump starts with a header:
+ *   int magic, int version (both little endian), varlong creation time,
+ *   varint title length, UTF-8 title
+ * and is then a stream of records, each starting with a one byte tag.  They mirror the calls
+ * made on the FlightRecorderEventDumper so a reader can replay them in the same order:
+ *   TIMESTAMPS        varlong start timestamp, varlong end timestamp
+ *   DUMP_BEGINS       (nothing)
+ *   NUMBER_OF_EVENTS  varint number of events
+ *   EVENTS_LOST       varint number of events lost while taking the snapshot
+ *   EVENTS_SUPPRESSED zigzag event ID, varlong number of its events suppressed by sampling
+ *   EVENT_NAME        zigzag event ID, varint name length, UTF-8 name
+ *   RECORDER_NAME     varint recorder index, varint name length, UTF-8 name
+ *   THREAD_NAME       varint thread index, varint name length, UTF-8 name
+ *   LANE_BEGINS       varint thread index (see FlightRecorderFactory.getThreadLaneDumper())
+ *   STACK             varint stack ID, varint number of frames, and for each frame the class,
+ *                     method and file names (each a varint length and UTF-8, the file name
+ *                     empty if unknown) and a zigzag line number
+ *   RECORDER          varint recorder index of the EVENTs that follow (in a merged dump)
+ *   EVENT             zigzag event ID, zigzag sequence number delta, zigzag timestamp delta,
+ *                     unsigned varint flags (see EventFlags, they include the thread index),
+ *                     a zigzag payload for each, and a varint stack ID if the flags have
+ *                     HAS_STACK
+ *   EVENT_SUMMARY     zigzag event ID, varlong number of its events, varint number of histogram
+ *                     buckets, a varlong count for each (see FlightRecorderHistogram)
+ *   SPAN_SUMMARY      zigzag event ID, then the histogram of the span's durations as above
+ *   END               (nothing, the dump is complete)
+ *
+ * An EVENT_NAME record is written the first time each event ID appears, before its EVENT
+ * (or EVENTS_SUPPRESSED or a summary), so each name is only in the dump once.  The deltas in
+ * an EVENT are from the previous EVENT (or from zero and the start timestamp for the first
+ * one), which keeps a typical event down to four or five bytes.  Timestamps are in
+ * nanoseconds since the epoch.  A reader must reject a version it doesn't know.
+ *
+ * One header can be followed by several dumps, each from DUMP_BEGINS to END, one after the
+ * other; StreamingFlightRecorder writes one per batch.  The event names carry over from one
+ * dump to the next, so each is still only written once per file.  So do the stacks: a STACK
+ * record is written before the first EVENT that refers to it, and only once per file.
+ *
+ * A RECORDER record is only written when the recorder of an EVENT differs from the one
+ * before it, so a dump of one recorder has none, and each dump starts from NO_RECORDER.
+ */
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+final class BinaryDumpFormat
+{
+  private BinaryDumpFormat( ) {}  // No instantiation
+
+  static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+  static final Charset CHARSET = StandardCharsets.UTF_8;
+
+  static final int MAGIC   = 0x4446_4A42;  // "BJFD" when read as little endian bytes
+  static final int VERSION = 1;
+
+  static final byte TAG_END              = 0;
+  static final byte TAG_TIMESTAMPS       = 1;
+  static final byte TAG_DUMP_BEGINS      = 2;
+  static final byte TAG_NUMBER_OF_EVENTS = 3;
+  static final byte TAG_EVENT_NAME       = 4;
+  static final byte TAG_EVENT            = 5;
+  static final byte TAG_EVENTS_LOST      = 6;
+  static final byte TAG_EVENTS_SUPPRESSED = 7;
+  static final byte TAG_EVENT_SUMMARY     = 8;
+  static final byte TAG_SPAN_SUMMARY      = 9;
+  static final byte TAG_THREAD_NAME       = 10;
+  static final byte TAG_LANE_BEGINS       = 11;
+  static final byte TAG_STACK             = 12;
+  static final byte TAG_RECORDER_NAME     = 13;
+  static final byte TAG_RECORDER          = 14;
+
+  static final int MAXIMUM_FIXED_RECORD_SIZE = 1 + ((4 + FlightRecorderEvent.MAXIMUM_NUMBER_OF_PAYLOADS) * VariableLengthEncoding.MAXIMUM_BYTES_FOR_A_LONG);
+}
@@ -0,0 +1,57 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * A FlightRecorderClock for very hot events.  Reading it is just a read of a volatile field;
+ * a background (daemon) thread keeps that field up to date from another clock every tick.
+ * The timestamps are only as fine as the tick, so several events will usually share the
+ * same timestamp, but the sequence numbers still keep them in order.
+ *
+ * The ticker only holds a weak reference to the clock, so it goes away once the clock does.
+ */
+import java.lang.ref.WeakReference;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+final class CoarseFlightRecorderClock implements FlightRecorderClock
+{
+  private final FlightRecorderClock underlyingClock;
+  private final long tickNanos;
+  private volatile long currentTimeNanos;
+
+  CoarseFlightRecorderClock(final FlightRecorderClock underlyingClock, final long tick, final TimeUnit tickUnit)
+  {
+    if (tick <= 0)
+    {
+      throw new IllegalArgumentException(String.format("Clock tick must be positive, not %d", tick));
+    }
+    this.underlyingClock = underlyingClock;
+    tickNanos = tickUnit.toNanos(tick);
+    currentTimeNanos = underlyingClock.currentTimeNanos();
+
+    final WeakReference<CoarseFlightRecorderClock> clockToTick = new WeakReference<>(this);
+    final Thread ticker = new Thread(() -> tick(clockToTick, tickNanos), "FlightRecorder coarse clock ticker");
+    ticker.setDaemon(true);
+    ticker.start();
+  }
+
+  @Override
+  public long currentTimeNanos()
+  {
+    return currentTimeNanos;
+  }
+
+  private static void tick(final WeakReference<CoarseFlightRecorderClock> clockToTick, final long tickNanos)
+  {
+    while (true)
+    {
+      LockSupport.parkNanos(tickNanos);
+      final CoarseFlightRecorderClock clock = clockToTick.get();
+      if (clock == null)  return;
+      clock.currentTimeNanos = clock.underlyingClock.currentTimeNanos();
+    }
+  }
+}
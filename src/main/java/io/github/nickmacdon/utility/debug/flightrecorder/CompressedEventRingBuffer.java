@@ -0,0 +1,416 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * A ring of recorded events that holds many more of them than an EventRingBuffer of the same
+ * size, by packing them into bytes.  From one event to the next the sequence number normally
+ * goes up by one and the timestamp by a few microseconds, so instead of eight bytes each they
+ * are kept as varint differences from the previous event (see VariableLengthEncoding), and the
+ * FlightRecorderEventID is kept as its index in the EventIDTable, also a varint.  A typical
+ * event then takes six to ten bytes instead of around fifty.  An event recorded with its stack
+ * has the HAS_STACK flag, and its ID in the StackTable after its payloads; the others don't
+ * spend a byte on it.
+ *
+ * The bytes are split into fixed size blocks, and the first event of each block is a keyframe:
+ * its sequence number and timestamp are absolute rather than differences, so every block can
+ * be read without the ones before it.  When the ring is full the oldest block is dropped as a
+ * whole to make room, so the ring always holds the most recent events that fit, give or take
+ * a block.  (An EventRingBuffer drops one event at a time instead.)
+ *
+ * It can also be given a retention time, to keep the events of the last so many seconds rather
+ * than the last so many bytes' worth.  Then the blocks are only allocated when they are first
+ * needed, and a block is dropped (and its memory let go) as soon as its newest event is older
+ * than the retention time, so the memory used grows and shrinks with the rate of events.  A
+ * block is checked when a new one is started and when the events are read, so expiring costs
+ * nothing per event, and each block dropped is O(1).  The number of bytes is then a ceiling:
+ * if the events come so quickly that the ring fills up within the retention time, the oldest
+ * block is dropped to make room anyway.
+ *
+ * Putting an event never allocates anything, except a block the first time it is used after
+ * being let go.  Reading the events back decodes them: reading them in order is cheap, since the
+ * position of the last one read is remembered, and reading one out of order only has to
+ * decode its own block, which is found by binary search.
+ */
+import static io.github.nickmacdon.utility.debug.flightrecorder.VariableLengthEncoding.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+final class CompressedEventRingBuffer implements RecordedEvents
+{
+  static final int DEFAULT_BLOCK_SIZE = 4096;
+  static final long NO_RETENTION_TIME = Long.MAX_VALUE;
+
+  // Flags, event index, sequence number and timestamp, two payloads and a stack ID
+  private static final int MAXIMUM_RECORD_SIZE = 3 * MAXIMUM_BYTES_FOR_AN_INT + 4 * MAXIMUM_BYTES_FOR_A_LONG;
+
+  private static final ByteBuffer NO_BLOCK = ByteBuffer.allocate(0);
+
+  private final int blockSize;
+  private final long retentionNanos;
+  private final ByteBuffer[] blocks;
+  private final ByteBuffer[] blockReaders;  // the same bytes, with a position of their own
+  private final int[] numbersOfEntriesInBlocks;
+  private final long[] firstEntriesOfBlocks;  // counting every entry ever put, so they never move
+  private final long[] lastTimeStampsOfBlocks;
+
+  private int firstBlock                  = 0;
+  private int numberOfBlocksInUse         = 0;
+  private int numberOfBlocksAllocated     = 0;
+  private int numberOfEntries             = 0;
+  private long numberOfEntriesDropped     = 0;
+  private long numberOfEntriesOverwritten = 0;  // the ones dropped for room, rather than expired
+  private long previousSequenceNumber     = 0;
+  private long previousTimeStamp          = 0;
+
+  // Where the last entry read was, and what it was
+  private int cursorEntry  = -1;
+  private int cursorBlock  = 0;
+  private int cursorOffset = 0;  // of the entry after it
+  private int cursorEventIndex      = EventIDTable.NO_EVENT_INDEX;
+  private long cursorSequenceNumber = 0;
+  private long cursorTimeStamp      = 0;
+  private int cursorFlags           = 0;
+  private long cursorPayload0       = 0;
+  private long cursorPayload1       = 0;
+  private int cursorStackID         = FlightRecorderEvent.NO_STACK;
+
+  public CompressedEventRingBuffer(final int numberOfBytes)
+  {
+    this(numberOfBytes, DEFAULT_BLOCK_SIZE);
+  }
+
+  public CompressedEventRingBuffer(final int numberOfBytes, final int blockSize)
+  {
+    this(numberOfBytes, blockSize, NO_RETENTION_TIME);
+  }
+
+  public CompressedEventRingBuffer(final int numberOfBytes, final int blockSize, final long retentionNanos)
+  {
+    if (blockSize < MAXIMUM_RECORD_SIZE)
+    {
+      throw new IllegalArgumentException(String.format("Block size must be at least %d bytes, not %d", MAXIMUM_RECORD_SIZE, blockSize));
+    }
+    if (numberOfBytes < 2 * blockSize)
+    {
+      throw new IllegalArgumentException(String.format("Compressed ring buffer size must be at least two blocks (%d bytes), not %d", 2 * blockSize, numberOfBytes));
+    }
+    if (retentionNanos <= 0)
+    {
+      throw new IllegalArgumentException(String.format("Retention time must be positive, not %d nanoseconds", retentionNanos));
+    }
+    this.blockSize           = blockSize;
+    this.retentionNanos      = retentionNanos;
+    final int numberOfBlocks = numberOfBytes / blockSize;
+    blocks                   = new ByteBuffer[numberOfBlocks];
+    blockReaders             = new ByteBuffer[numberOfBlocks];
+    numbersOfEntriesInBlocks = new int[numberOfBlocks];
+    firstEntriesOfBlocks     = new long[numberOfBlocks];
+    lastTimeStampsOfBlocks   = new long[numberOfBlocks];
+    Arrays.fill(blocks, NO_BLOCK);
+    Arrays.fill(blockReaders, NO_BLOCK);
+    // Without a retention time every block is going to be needed, so they may as well be allocated now
+    if (retentionNanos == NO_RETENTION_TIME)
+      for (int i=0; i<numberOfBlocks; i++)  allocateBlock(i);
+  }
+
+  public void put(
+    final FlightRecorderEventID eventID,
+    final long sequenceNumber,
+    final long timeStamp,
+    final int flagsToPut,
+    final long payload0,
+    final long payload1
+  )
+  {
+    put(eventID, sequenceNumber, timeStamp, flagsToPut, payload0, payload1, FlightRecorderEvent.NO_STACK);
+  }
+
+  public void put(
+    final FlightRecorderEventID eventID,
+    final long sequenceNumber,
+    final long timeStamp,
+    final int flagsToPut,
+    final long payload0,
+    final long payload1,
+    final int stackID
+  )
+  {
+    if ((numberOfBlocksInUse == 0) || (blocks[lastBlock()].remaining() < MAXIMUM_RECORD_SIZE))  startNewBlock(timeStamp);
+    final int block = lastBlock();
+    final ByteBuffer buffer = blocks[block];
+    putVarInt(buffer, EventFlags.withStack(flagsToPut, stackID));
+    putVarLong(buffer, EventIDTable.indexOf(eventID));
+    putZigZagVarLong(buffer, sequenceNumber - previousSequenceNumber);
+    putZigZagVarLong(buffer, timeStamp - previousTimeStamp);
+    final int numberOfPayloads = EventFlags.numberOfPayloads(flagsToPut);
+    if (numberOfPayloads > 0)  putZigZagVarLong(buffer, payload0);
+    if (numberOfPayloads > 1)  putZigZagVarLong(buffer, payload1);
+    if (stackID != FlightRecorderEvent.NO_STACK)  putVarLong(buffer, stackID);
+    previousSequenceNumber = sequenceNumber;
+    previousTimeStamp      = timeStamp;
+    lastTimeStampsOfBlocks[block] = timeStamp;
+    numbersOfEntriesInBlocks[block]++;
+    numberOfEntries++;
+  }
+
+  private void startNewBlock(final long timeStamp)
+  {
+    expireEntries(timeStamp);
+    // Full, so the oldest block makes room
+    if (numberOfBlocksInUse == blocks.length)
+    {
+      numberOfEntriesOverwritten += numbersOfEntriesInBlocks[firstBlock];
+      dropFirstBlock();
+    }
+    final int block = toBlock(numberOfBlocksInUse);
+    numberOfBlocksInUse++;
+    if (blocks[block] == NO_BLOCK)  allocateBlock(block);
+    blocks[block].clear();
+    numbersOfEntriesInBlocks[block] = 0;
+    firstEntriesOfBlocks[block]     = numberOfEntriesDropped + numberOfEntries;
+    // The first event of a block is a keyframe
+    previousSequenceNumber = 0;
+    previousTimeStamp      = 0;
+  }
+
+  /*
+   * Drops the blocks whose events are all older than the retention time, as of the given time.
+   */
+  public void expireEntries(final long timeStampNow)
+  {
+    if (retentionNanos == NO_RETENTION_TIME)  return;
+    final long oldestTimeStampToKeep = timeStampNow - retentionNanos;
+    while ((numberOfBlocksInUse > 0) && (lastTimeStampsOfBlocks[firstBlock] < oldestTimeStampToKeep))
+    {
+      final int expiredBlock = firstBlock;
+      dropFirstBlock();
+      releaseBlock(expiredBlock);
+    }
+  }
+
+  private void dropFirstBlock()
+  {
+    numberOfEntries        -= numbersOfEntriesInBlocks[firstBlock];
+    numberOfEntriesDropped += numbersOfEntriesInBlocks[firstBlock];
+    firstBlock = nextBlock(firstBlock);
+    numberOfBlocksInUse--;
+    cursorEntry = -1;
+  }
+
+  private void allocateBlock(final int block)
+  {
+    blocks[block]       = ByteBuffer.allocate(blockSize);
+    blockReaders[block] = blocks[block].duplicate();
+    numberOfBlocksAllocated++;
+  }
+
+  private void releaseBlock(final int block)
+  {
+    blocks[block]       = NO_BLOCK;
+    blockReaders[block] = NO_BLOCK;
+    numberOfBlocksAllocated--;
+  }
+
+  /*
+   * How many bytes the blocks hold, all together.
+   */
+  public int getCapacityInBytes()
+  {
+    return blocks.length * blockSize;
+  }
+
+  /*
+   * How many bytes of blocks are allocated just now, which is less than the capacity while
+   * there is a retention time and the events haven't filled the ring.
+   */
+  public int getNumberOfBytesAllocated()
+  {
+    return numberOfBlocksAllocated * blockSize;
+  }
+
+  /*
+   * How many bytes of blocks are holding events, counting the newest block as full.
+   */
+  public int getNumberOfBytesInUse()
+  {
+    return numberOfBlocksInUse * blockSize;
+  }
+
+  @Override
+  public int getNumberOfEntries()
+  {
+    return numberOfEntries;
+  }
+
+  /*
+   * Every entry put since the ring was last cleared, including the ones since dropped.
+   */
+  public long getNumberOfEntriesPut()
+  {
+    return numberOfEntriesDropped + numberOfEntries;
+  }
+
+  /*
+   * The entries dropped to make room for newer ones, not counting the ones that expired.
+   */
+  public long getNumberOfEntriesOverwritten()
+  {
+    return numberOfEntriesOverwritten;
+  }
+
+  @Override
+  public long getEventIDAt(final int entryNumberToPeekAt)
+  {
+    moveCursorTo(entryNumberToPeekAt);
+    return EventIDTable.getEventID(cursorEventIndex);
+  }
+
+  @Override
+  public int getEventIndexAt(final int entryNumberToPeekAt)
+  {
+    moveCursorTo(entryNumberToPeekAt);
+    return cursorEventIndex;
+  }
+
+  @Override
+  public long getTimeStampAt(final int entryNumberToPeekAt)
+  {
+    moveCursorTo(entryNumberToPeekAt);
+    return cursorTimeStamp;
+  }
+
+  @Override
+  public long getSequenceNumberAt(final int entryNumberToPeekAt)
+  {
+    moveCursorTo(entryNumberToPeekAt);
+    return cursorSequenceNumber;
+  }
+
+  @Override
+  public int getFlagsAt(final int entryNumberToPeekAt)
+  {
+    moveCursorTo(entryNumberToPeekAt);
+    return cursorFlags;
+  }
+
+  @Override
+  public int getStackIDAt(final int entryNumberToPeekAt)
+  {
+    moveCursorTo(entryNumberToPeekAt);
+    return cursorStackID;
+  }
+
+  @Override
+  public FlightRecorderEvent getEventAt(final int entryNumberToPeekAt)
+  {
+    moveCursorTo(entryNumberToPeekAt);
+    return DefaultFlightRecorderEvent.withEventIndex(cursorTimeStamp, cursorSequenceNumber, cursorEventIndex, cursorFlags, cursorPayload0, cursorPayload1, cursorStackID, FlightRecorderEvent.NO_RECORDER);
+  }
+
+  /*
+   * Decodes all of the entries into an EventRingBuffer, for a snapshot.
+   */
+  public EventRingBuffer decompress()
+  {
+    final EventRingBuffer ringBuffer = new EventRingBuffer(Math.max(1, numberOfEntries));
+    for (int i=0; i<numberOfEntries; i++)
+    {
+      moveCursorTo(i);
+      ringBuffer.putIndexed(cursorEventIndex, cursorSequenceNumber, cursorTimeStamp, cursorFlags, cursorPayload0, cursorPayload1, cursorStackID);
+    }
+    return ringBuffer;
+  }
+
+  public void clearAllEntries()
+  {
+    firstBlock                 = 0;
+    numberOfBlocksInUse        = 0;
+    numberOfEntries            = 0;
+    numberOfEntriesDropped     = 0;
+    numberOfEntriesOverwritten = 0;
+    cursorEntry                = -1;
+    if (retentionNanos != NO_RETENTION_TIME)
+      for (int i=0; i<blocks.length; i++)  if (blocks[i] != NO_BLOCK)  releaseBlock(i);
+  }
+
+  private void moveCursorTo(final int entryNumberToPeekAt)
+  {
+    if ((entryNumberToPeekAt < 0) || (entryNumberToPeekAt >= numberOfEntries))
+    {
+      throw new IllegalArgumentException(String.format("Attempt to peek at item number %d when there are %d items", entryNumberToPeekAt, numberOfEntries));
+    }
+    if (entryNumberToPeekAt == cursorEntry)  return;
+    final long entryToFind = numberOfEntriesDropped + entryNumberToPeekAt;
+    final int blockOfEntry = findBlockOf(entryToFind);
+    long entry;
+    if ((cursorEntry >= 0) && (cursorEntry < entryNumberToPeekAt) && (cursorBlock == blockOfEntry))
+    {
+      entry = numberOfEntriesDropped + cursorEntry + 1;
+    }
+    else
+    {
+      // Start over from the keyframe at the beginning of the block
+      cursorBlock          = blockOfEntry;
+      cursorOffset         = 0;
+      cursorSequenceNumber = 0;
+      cursorTimeStamp      = 0;
+      entry = firstEntriesOfBlocks[blockOfEntry];
+    }
+    final ByteBuffer reader = blockReaders[blockOfEntry];
+    reader.position(cursorOffset);
+    for (; entry <= entryToFind; entry++)  decodeNext(reader);
+    cursorOffset = reader.position();
+    cursorEntry = entryNumberToPeekAt;
+  }
+
+  private void decodeNext(final ByteBuffer reader)
+  {
+    final int flagsRead   = getVarInt(reader);
+    cursorFlags           = flagsRead & ~EventFlags.HAS_STACK;
+    cursorEventIndex      = (int)getVarLong(reader);
+    cursorSequenceNumber += getZigZagVarLong(reader);
+    cursorTimeStamp      += getZigZagVarLong(reader);
+    final int numberOfPayloads = EventFlags.numberOfPayloads(cursorFlags);
+    cursorPayload0 = (numberOfPayloads > 0) ? getZigZagVarLong(reader) : 0;
+    cursorPayload1 = (numberOfPayloads > 1) ? getZigZagVarLong(reader) : 0;
+    cursorStackID  = EventFlags.hasStack(flagsRead) ? (int)getVarLong(reader) : FlightRecorderEvent.NO_STACK;
+  }
+
+  /*
+   * Binary search for the block holding the given entry (counting every entry ever put).
+   */
+  private int findBlockOf(final long entry)
+  {
+    int low  = 0;
+    int high = numberOfBlocksInUse - 1;
+    while (low < high)
+    {
+      final int middle = (low + high + 1) >>> 1;
+      if (firstEntriesOfBlocks[toBlock(middle)] <= entry)
+        low = middle;
+      else
+        high = middle - 1;
+    }
+    return toBlock(low);
+  }
+
+  private int lastBlock()
+  {
+    return toBlock(numberOfBlocksInUse - 1);
+  }
+
+  private int nextBlock(final int block)
+  {
+    return (block + 1 == blocks.length) ? 0 : block + 1;
+  }
+
+  private int toBlock(final int blockNumber)
+  {
+    int block = firstBlock + blockNumber;
+    if (block >= blocks.length)  block -= blocks.length;
+    return block;
+  }
+}
@@ -0,0 +1,114 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * This FlightRecorder is InMemoryRingBufferFlightRecorder with its events packed into a
+ * CompressedEventRingBuffer instead of an EventRingBuffer, so the same memory holds five to ten
+ * times as much history.  It is sized in bytes rather than events, since how many events fit
+ * depends on how far apart they are and how many payloads they have.  Recording an event costs
+ * a little more (its parts are encoded as varints), and when the ring is full a whole block of
+ * the oldest events is dropped at once.
+ *
+ * Given a retention time instead (see FlightRecorderFactory.getTimeWindowedFlightRecorder()) it
+ * keeps every event newer than that, within its number of bytes, and lets go of the memory of
+ * the blocks that expire, so a quiet program holds little and a busy one up to the ceiling.
+ * The expired blocks are dropped as new ones are started, and before every dump or snapshot.
+ *
+ * Dumping decodes the events as it goes, still one FlightRecorderEvent at a time, so any
+ * FlightRecorderEventDumper can be used.  takeSnapshot() decodes the whole ring into an
+ * ordinary EventRingBuffer, so a snapshot takes the usual room per event.
+ *
+ * Like InMemoryRingBufferFlightRecorder, it is only to be used from one thread at a time.
+ */
+final class CompressedRingBufferFlightRecorder extends AbstractStoringFlightRecorder
+{
+  private final CompressedEventRingBuffer ringBuffer;
+  private long sequenceNumber = 0;
+  private long endTimeStamp   = 0;
+
+  public CompressedRingBufferFlightRecorder(final int numberOfBytesInRingBuffer)
+  {
+    this(numberOfBytesInRingBuffer, FlightRecorderFactory.getMonotonicClock());
+  }
+
+  public CompressedRingBufferFlightRecorder(final int numberOfBytesInRingBuffer, final FlightRecorderClock clock)
+  {
+    this(new CompressedEventRingBuffer(numberOfBytesInRingBuffer), clock);
+  }
+
+  CompressedRingBufferFlightRecorder(final CompressedEventRingBuffer ringBuffer, final FlightRecorderClock clock)
+  {
+    super(clock);
+    this.ringBuffer = ringBuffer;
+  }
+
+  @Override
+  long nextSequenceNumber()
+  {
+    return ++sequenceNumber;
+  }
+
+  @Override
+  void store(
+    final FlightRecorderEventID eventToRecord,
+    final long eventSequenceNumber,
+    final long timeStamp,
+    final int flagsToStore,
+    final long payload0,
+    final long payload1,
+    final int stackID
+  )
+  {
+    endTimeStamp = timeStamp;
+    ringBuffer.put(eventToRecord, eventSequenceNumber, timeStamp, flagsToStore, payload0, payload1, stackID);
+  }
+
+  @Override
+  public FlightRecorder clearAllRecordedEvents()
+  {
+    ringBuffer.clearAllEntries();
+    clearCounts();
+    return this;
+  }
+
+  @Override
+  public int getNumberOfEntriesRecorded()
+  {
+    return ringBuffer.getNumberOfEntries();
+  }
+
+  @Override
+  public FlightRecorderStatistics getStatistics()
+  {
+    return statisticsOf(
+      ringBuffer.getNumberOfEntriesPut(), ringBuffer.getNumberOfEntriesOverwritten(),
+      ringBuffer.getNumberOfEntries(), (double)ringBuffer.getNumberOfBytesInUse() / ringBuffer.getCapacityInBytes()
+    );
+  }
+
+  @Override
+  public FlightRecorderSnapshot takeSnapshot()
+  {
+    ringBuffer.expireEntries(clock.currentTimeNanos());
+    return snapshotOf(ringBuffer.decompress(), endTimeStamp, 0);
+  }
+
+  @Override
+  public FlightRecorder dumpMatchingEntriesTo(final FlightRecorderQuery query, final FlightRecorderEventDumper eventDumper)
+  {
+    ringBuffer.expireEntries(clock.currentTimeNanos());
+    dumpMatching(query, ringBuffer, endTimeStamp, eventDumper);
+    return this;
+  }
+
+  @Override
+  public FlightRecorder dumpEntriesTo(final FlightRecorderEventDumper eventDumper)
+  {
+    ringBuffer.expireEntries(clock.currentTimeNanos());
+    dumpAll(ringBuffer, endTimeStamp, eventDumper);
+    return this;
+  }
+}
@@ -0,0 +1,211 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * This is the multi-producer version of EventRingBuffer.  There are no locks: each put()
+ * claims the next position in the ring with a single atomic increment, so any number of
+ * threads can be putting at once and they only ever touch their own slot.
+ *
+ * Each slot has a "publishedPosition" that is the key to reading it safely while others are
+ * writing.  A producer first marks the slot as busy, then writes the columns, then publishes
+ * the (position + 1) it claimed.  A reader knows which position it expects to find in a slot,
+ * and only trusts what it read if that position was published both before and after it read
+ * the columns.  Otherwise the slot was still being written or has already been overwritten,
+ * and it is skipped.  (The only case this can't catch is a producer that stalls for a whole
+ * lap of the ring while in the middle of writing its slot.)
+ *
+ * Because the positions are claimed separately from the sequence numbers, events in the ring
+ * can be very slightly out of sequence order; copyTo() puts them back in order.
+ */
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+final class ConcurrentEventRingBuffer
+{
+  private static final long SLOT_BEING_WRITTEN = -1;
+
+  private final int maxNumberOfEntries;
+  private final AtomicIntegerArray eventIndexes;  // in the EventIDTable
+  private final AtomicLongArray timeStamps;
+  private final AtomicLongArray sequenceNumbers;
+  private final AtomicIntegerArray flags;
+  private final AtomicLongArray payloads0;
+  private final AtomicLongArray payloads1;
+  private final AtomicIntegerArray stackIDs;  // in the StackTable
+  private final AtomicLongArray publishedPositions;
+  private final AtomicLong nextPosition = new AtomicLong();
+
+  private volatile long firstPositionSinceClear = 0;
+
+  public ConcurrentEventRingBuffer(final int maxNumberOfEntriesInRingBuffer)
+  {
+    if (maxNumberOfEntriesInRingBuffer <= 0)
+    {
+      throw new IllegalArgumentException(String.format("Ring buffer size must be positive, not %d", maxNumberOfEntriesInRingBuffer));
+    }
+    maxNumberOfEntries = maxNumberOfEntriesInRingBuffer;
+    eventIndexes       = new AtomicIntegerArray(maxNumberOfEntriesInRingBuffer);
+    timeStamps         = new AtomicLongArray(maxNumberOfEntriesInRingBuffer);
+    sequenceNumbers    = new AtomicLongArray(maxNumberOfEntriesInRingBuffer);
+    flags              = new AtomicIntegerArray(maxNumberOfEntriesInRingBuffer);
+    payloads0          = new AtomicLongArray(maxNumberOfEntriesInRingBuffer);
+    payloads1          = new AtomicLongArray(maxNumberOfEntriesInRingBuffer);
+    stackIDs           = new AtomicIntegerArray(maxNumberOfEntriesInRingBuffer);
+    publishedPositions = new AtomicLongArray(maxNumberOfEntriesInRingBuffer);
+  }
+
+  public void put(final FlightRecorderEventID eventID, final long sequenceNumber, final long timeStamp)
+  {
+    put(eventID, sequenceNumber, timeStamp, 0, 0, 0);
+  }
+
+  public void put(
+    final FlightRecorderEventID eventID,
+    final long sequenceNumber,
+    final long timeStamp,
+    final int flagsToPut,
+    final long payload0,
+    final long payload1
+  )
+  {
+    put(eventID, sequenceNumber, timeStamp, flagsToPut, payload0, payload1, FlightRecorderEvent.NO_STACK);
+  }
+
+  public void put(
+    final FlightRecorderEventID eventID,
+    final long sequenceNumber,
+    final long timeStamp,
+    final int flagsToPut,
+    final long payload0,
+    final long payload1,
+    final int stackID
+  )
+  {
+    final int eventIndex = EventIDTable.indexOf(eventID);
+    final long position = nextPosition.getAndIncrement();
+    final int arrayIndex = (int)(position % maxNumberOfEntries);
+
+    // A full volatile write so that none of the column writes can be seen before it
+    publishedPositions.set(arrayIndex, SLOT_BEING_WRITTEN);
+    eventIndexes.lazySet(arrayIndex, eventIndex);
+    timeStamps.lazySet(arrayIndex, timeStamp);
+    sequenceNumbers.lazySet(arrayIndex, sequenceNumber);
+    flags.lazySet(arrayIndex, flagsToPut);
+    payloads0.lazySet(arrayIndex, payload0);
+    payloads1.lazySet(arrayIndex, payload1);
+    stackIDs.lazySet(arrayIndex, stackID);
+    publishedPositions.lazySet(arrayIndex, position + 1);
+  }
+
+  public int getMaxNumberOfEntries()
+  {
+    return maxNumberOfEntries;
+  }
+
+  public int getNumberOfEntries()
+  {
+    return (int)Math.min(getNumberOfEntriesPut(), maxNumberOfEntries);
+  }
+
+  public long getNumberOfLostEntries()
+  {
+    return Math.max(0, getNumberOfEntriesPut() - maxNumberOfEntries);
+  }
+
+  /*
+   * Every entry put since the ring was last cleared, including the ones since overwritten.
+   */
+  public long getNumberOfEntriesPut()
+  {
+    // The clear position first: it only ever moves up to a position that nextPosition has
+    // already reached, so read in this order a clear in between can't make it the larger one
+    final long firstPosition = firstPositionSinceClear;
+    return nextPosition.get() - firstPosition;
+  }
+
+  public long getFirstPositionSinceClear()
+  {
+    return firstPositionSinceClear;
+  }
+
+  public void clearAllEntries()
+  {
+    // Producers may be putting right now, so rather than wiping the slots we just
+    // forget about everything that was claimed before this point.
+    firstPositionSinceClear = nextPosition.get();
+  }
+
+  /*
+   * Copies the entries that can be read consistently into the given (single threaded)
+   * ring, oldest first and in sequence number order.  Returns the number of entries that
+   * couldn't be copied because they were overwritten or not yet finished being written.
+   */
+  public int copyTo(final EventRingBuffer destination)
+  {
+    final long firstPosition = firstPositionSinceClear;  // Before nextPosition, see getNumberOfEntriesPut()
+    final long endPosition   = nextPosition.get();
+    final long startPosition = Math.max(firstPosition, endPosition - maxNumberOfEntries);
+    final int numberToCopy   = (int)(endPosition - startPosition);
+
+    int numberCopied = 0;
+    for (long position=startPosition; position<endPosition; position++)
+    {
+      final int arrayIndex = (int)(position % maxNumberOfEntries);
+      if (publishedPositions.get(arrayIndex) != position + 1)  continue;
+      final int eventIndex      = eventIndexes.get(arrayIndex);
+      final long timeStamp      = timeStamps.get(arrayIndex);
+      final long sequenceNumber = sequenceNumbers.get(arrayIndex);
+      final int flagsInSlot     = flags.get(arrayIndex);
+      final long payload0 = payloads0.get(arrayIndex);
+      final long payload1 = payloads1.get(arrayIndex);
+      final int stackID   = stackIDs.get(arrayIndex);
+      if (publishedPositions.get(arrayIndex) != position + 1)  continue;
+
+      destination.putIndexed(eventIndex, sequenceNumber, timeStamp, flagsInSlot, payload0, payload1, stackID);
+      numberCopied++;
+    }
+    destination.sortBySequenceNumber();
+    return numberToCopy - numberCopied;
+  }
+
+  /*
+   * For draining the ring while it is being filled (see StreamingFlightRecorder).  Copies the
+   * entries from fromPosition on into the destination, oldest first, until the destination is
+   * full or it comes to one that is still being written, and returns the position to carry on
+   * from next time.  Entries that were overwritten before they could be copied are skipped,
+   * so the caller can tell how many were lost from how far it got and how many it was given.
+   */
+  public long drainTo(final long fromPosition, final EventRingBuffer destination)
+  {
+    long position = Math.max(fromPosition, nextPosition.get() - maxNumberOfEntries);
+    while (destination.getNumberOfEntries() < destination.getMaxNumberOfEntries())
+    {
+      final int arrayIndex = (int)(position % maxNumberOfEntries);
+      if (publishedPositions.get(arrayIndex) != position + 1)
+      {
+        // Either it hasn't been written yet (so come back for it next time) or a later lap
+        // of the ring has already overwritten it (so it is lost)
+        if (position >= nextPosition.get() - maxNumberOfEntries)  break;
+        position++;
+        continue;
+      }
+      final int eventIndex      = eventIndexes.get(arrayIndex);
+      final long timeStamp      = timeStamps.get(arrayIndex);
+      final long sequenceNumber = sequenceNumbers.get(arrayIndex);
+      final int flagsInSlot     = flags.get(arrayIndex);
+      final long payload0 = payloads0.get(arrayIndex);
+      final long payload1 = payloads1.get(arrayIndex);
+      final int stackID   = stackIDs.get(arrayIndex);
+      if (publishedPositions.get(arrayIndex) == position + 1)
+      {
+        destination.putIndexed(eventIndex, sequenceNumber, timeStamp, flagsInSlot, payload0, payload1, stackID);
+      }
+      position++;
+    }
+    return position;
+  }
+}
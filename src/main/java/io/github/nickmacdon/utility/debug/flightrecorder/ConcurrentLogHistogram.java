@@ -0,0 +1,29 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * The lock free histogram that a FlightRecorder adds to while recording.  Adding a value is one
+ * atomic increment of its power of two bucket (see FlightRecorderHistogram), and nothing is ever
+ * allocated.  toHistogram() makes the unchanging copy that is given to the dumpers.
+ */
+import java.util.concurrent.atomic.AtomicLongArray;
+
+final class ConcurrentLogHistogram
+{
+  private final AtomicLongArray bucketCounts = new AtomicLongArray(FlightRecorderHistogram.NUMBER_OF_BUCKETS);
+
+  void record(final long value)
+  {
+    bucketCounts.incrementAndGet(FlightRecorderHistogram.bucketFor(value));
+  }
+
+  FlightRecorderHistogram toHistogram()
+  {
+    final long[] counts = new long[bucketCounts.length()];
+    for (int bucket=0; bucket<counts.length; bucket++)  counts[bucket] = bucketCounts.get(bucket);
+    return new FlightRecorderHistogram(counts);
+  }
+}
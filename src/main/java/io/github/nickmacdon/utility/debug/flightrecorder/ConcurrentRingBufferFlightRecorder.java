@@ -0,0 +1,116 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * This FlightRecorder is the thread safe version of InMemoryRingBufferFlightRecorder.  Use it
+ * when events are recorded from more than one thread at a time.  It doesn't use any locks;
+ * each recordEvent() claims its sequence number with an atomic increment and then writes to a
+ * ConcurrentEventRingBuffer, which claims its own slot the same way, so producers on different
+ * cores don't wait on each other.
+ *
+ * When dumping, a snapshot of the ring is taken first (skipping any slot that is mid-write or
+ * gets overwritten while copying) and put back into global sequence number order, and then
+ * the snapshot is dumped, so a dump never sees a torn event and recording carries on while the
+ * dump is being formatted.  Each event's sequence number is taken before the clock is read, and
+ * the two can't be done as one without a lock, so in sequence number order the timestamps of
+ * events from different threads may be out of order; FlightRecorderQuery allows for that.
+ *
+ * The per event ID counts and histograms (EventStatistics) are lock free too, and cost each
+ * recorded event two more atomic updates.  Deciding whether an event is recorded at all (the
+ * filter and the sampling) is shared with the other recorders in AbstractFlightRecorder.
+ */
+import java.util.concurrent.atomic.AtomicLong;
+
+final class ConcurrentRingBufferFlightRecorder extends AbstractStoringFlightRecorder
+{
+  private final ConcurrentEventRingBuffer ringBuffer;
+  private final AtomicLong sequenceNumber = new AtomicLong();
+
+  public ConcurrentRingBufferFlightRecorder(final int numberOfEventsInRingBuffer)
+  {
+    this(numberOfEventsInRingBuffer, FlightRecorderFactory.getMonotonicClock());
+  }
+
+  public ConcurrentRingBufferFlightRecorder(final int numberOfEventsInRingBuffer, final FlightRecorderClock clock)
+  {
+    super(clock);
+    ringBuffer = new ConcurrentEventRingBuffer(numberOfEventsInRingBuffer);
+  }
+
+  @Override
+  long nextSequenceNumber()
+  {
+    return sequenceNumber.incrementAndGet();
+  }
+
+  @Override
+  void store(
+    final FlightRecorderEventID eventToRecord,
+    final long eventSequenceNumber,
+    final long timeStamp,
+    final int flagsToStore,
+    final long payload0,
+    final long payload1,
+    final int stackID
+  )
+  {
+    ringBuffer.put(eventToRecord, eventSequenceNumber, timeStamp, flagsToStore, payload0, payload1, stackID);
+  }
+
+  @Override
+  public FlightRecorder clearAllRecordedEvents()
+  {
+    ringBuffer.clearAllEntries();
+    clearCounts();
+    return this;
+  }
+
+  @Override
+  public int getNumberOfEntriesRecorded()
+  {
+    return ringBuffer.getNumberOfEntries();
+  }
+
+  @Override
+  public FlightRecorderStatistics getStatistics()
+  {
+    final long numberOfEventsRecorded = ringBuffer.getNumberOfEntriesPut();
+    final int numberOfEntries         = (int)Math.min(numberOfEventsRecorded, ringBuffer.getMaxNumberOfEntries());
+    return statisticsOf(numberOfEventsRecorded, numberOfEventsRecorded - numberOfEntries, numberOfEntries, (double)numberOfEntries / ringBuffer.getMaxNumberOfEntries());
+  }
+
+  ConcurrentEventRingBuffer getRingBuffer()
+  {
+    return ringBuffer;
+  }
+
+  @Override
+  public FlightRecorderSnapshot takeSnapshot()
+  {
+    final EventRingBuffer copyOfRing = new EventRingBuffer(ringBuffer.getMaxNumberOfEntries());
+    final int numberOfEventsLost = ringBuffer.copyTo(copyOfRing);
+    final int numberOfEntries = copyOfRing.getNumberOfEntries();
+
+    // Nobody shares a last event timestamp while recording (it would be a hot spot between
+    // the cores) so the end of the dump is just the timestamp of the newest event in it.
+    final long endTimeStamp = (numberOfEntries > 0) ? copyOfRing.getTimeStampAt(numberOfEntries-1) : 0;
+    return snapshotOf(copyOfRing, endTimeStamp, numberOfEventsLost);
+  }
+
+  @Override
+  public FlightRecorder dumpMatchingEntriesTo(final FlightRecorderQuery query, final FlightRecorderEventDumper eventDumper)
+  {
+    recorderStatistics.timeDump(eventDumper, () -> takeSnapshot().dumpMatchingEntriesTo(query, eventDumper));
+    return this;
+  }
+
+  @Override
+  public FlightRecorder dumpEntriesTo(final FlightRecorderEventDumper eventDumper)
+  {
+    recorderStatistics.timeDump(eventDumper, () -> takeSnapshot().dumpEntriesTo(eventDumper));
+    return this;
+  }
+}
@@ -9,13 +9,31 @@ package io.github.nickmacdon.utility.debug.flightrecorder;
  * FlightRecorderTestEvents in the unit tests.
  * Use this class in your Enum to return a FlightRecorderEvent from the getEvent()
  * method in the interface.
+ *
+ * The timestamp is kept in nanoseconds since the epoch.  The public constructor takes
+ * milliseconds, like System.currentTimeMillis() gives you; use withNanosecondTimestamp()
+ * when you have the full resolution, such as from a FlightRecorderClock.  It can also be given
+ * the payloads that were recorded with the event, and for the beginning and end of a span,
+ * its FlightRecorderEventKind.  The recorders make theirs from the flags they keep with each
+ * event (see EventFlags), which also say which thread recorded it, and from the event's index
+ * in the EventIDTable, which already knows its name, and give it the ID of the stack it was
+ * recorded from, if that was captured.  A merged dump also gives each event the index of the
+ * recorder it came from.
  */
 
 public final class DefaultFlightRecorderEvent implements FlightRecorderEvent
 {
-  private final long timeStamp;
+  private final long timeStampNanos;
   private final long sequenceNumber;
   private final FlightRecorderEventID eventID;
+  private final String eventName;
+  private final FlightRecorderEventKind eventKind;
+  private final int threadIndex;
+  private final int numberOfPayloads;
+  private final long payload0;
+  private final long payload1;
+  private final int stackID;
+  private final int recorderIndex;
   
   public DefaultFlightRecorderEvent(
     final long timeStamp,
@@ -23,15 +41,136 @@ public final class DefaultFlightRecorderEvent implements FlightRecorderEvent
     final FlightRecorderEventID eventID
   )
   {
-    this.timeStamp      = timeStamp;
-    this.sequenceNumber = sequenceNumber;
-    this.eventID        = eventID;
+    this(eventID, eventID.getEventName(), sequenceNumber, timeStamp * 1_000_000L, FlightRecorderEventKind.POINT, NO_THREAD, 0, 0, 0, NO_STACK, NO_RECORDER);
+  }
+
+  private DefaultFlightRecorderEvent(
+    final FlightRecorderEventID eventID,
+    final String eventName,
+    final long sequenceNumber,
+    final long timeStampNanos,
+    final FlightRecorderEventKind eventKind,
+    final int threadIndex,
+    final int numberOfPayloads,
+    final long payload0,
+    final long payload1,
+    final int stackID,
+    final int recorderIndex
+  )
+  {
+    if ((numberOfPayloads < 0) || (numberOfPayloads > MAXIMUM_NUMBER_OF_PAYLOADS))
+    {
+      throw new IllegalArgumentException(String.format("An event can't have %d payloads", numberOfPayloads));
+    }
+    this.timeStampNanos   = timeStampNanos;
+    this.sequenceNumber   = sequenceNumber;
+    this.eventID          = eventID;
+    this.eventName        = eventName;
+    this.eventKind        = eventKind;
+    this.threadIndex      = threadIndex;
+    this.numberOfPayloads = numberOfPayloads;
+    this.payload0         = payload0;
+    this.payload1         = payload1;
+    this.stackID          = stackID;
+    this.recorderIndex    = recorderIndex;
+  }
+
+  public static DefaultFlightRecorderEvent withNanosecondTimestamp(
+    final long timeStampNanos,
+    final long sequenceNumber,
+    final FlightRecorderEventID eventID
+  )
+  {
+    return new DefaultFlightRecorderEvent(eventID, eventID.getEventName(), sequenceNumber, timeStampNanos, FlightRecorderEventKind.POINT, NO_THREAD, 0, 0, 0, NO_STACK, NO_RECORDER);
+  }
+
+  public static DefaultFlightRecorderEvent withNanosecondTimestamp(
+    final long timeStampNanos,
+    final long sequenceNumber,
+    final FlightRecorderEventID eventID,
+    final int numberOfPayloads,
+    final long payload0,
+    final long payload1
+  )
+  {
+    return new DefaultFlightRecorderEvent(eventID, eventID.getEventName(), sequenceNumber, timeStampNanos, FlightRecorderEventKind.POINT, NO_THREAD, numberOfPayloads, payload0, payload1, NO_STACK, NO_RECORDER);
+  }
+
+  public static DefaultFlightRecorderEvent withNanosecondTimestamp(
+    final long timeStampNanos,
+    final long sequenceNumber,
+    final FlightRecorderEventID eventID,
+    final FlightRecorderEventKind eventKind,
+    final int numberOfPayloads,
+    final long payload0,
+    final long payload1
+  )
+  {
+    return new DefaultFlightRecorderEvent(eventID, eventID.getEventName(), sequenceNumber, timeStampNanos, eventKind, NO_THREAD, numberOfPayloads, payload0, payload1, NO_STACK, NO_RECORDER);
+  }
+
+  /*
+   * For the recorders, from the EventFlags they keep with each event.
+   */
+  static DefaultFlightRecorderEvent withFlags(
+    final long timeStampNanos,
+    final long sequenceNumber,
+    final FlightRecorderEventID eventID,
+    final int flags,
+    final long payload0,
+    final long payload1,
+    final int stackID,
+    final int recorderIndex
+  )
+  {
+    return new DefaultFlightRecorderEvent(
+      eventID,
+      eventID.getEventName(),
+      sequenceNumber,
+      timeStampNanos,
+      EventFlags.kind(flags),
+      EventFlags.threadIndex(flags),
+      EventFlags.numberOfPayloads(flags),
+      payload0,
+      payload1,
+      stackID,
+      recorderIndex
+    );
+  }
+
+  /*
+   * For the rings, which keep the event's index in the EventIDTable rather than its ID.
+   */
+  static DefaultFlightRecorderEvent withEventIndex(
+    final long timeStampNanos,
+    final long sequenceNumber,
+    final int eventIndex,
+    final int flags,
+    final long payload0,
+    final long payload1,
+    final int stackID,
+    final int recorderIndex
+  )
+  {
+    return new DefaultFlightRecorderEvent(
+      EventIDTable.getEventIDObject(eventIndex),
+      EventIDTable.getEventName(eventIndex),
+      sequenceNumber,
+      timeStampNanos,
+      EventFlags.kind(flags),
+      EventFlags.threadIndex(flags),
+      EventFlags.numberOfPayloads(flags),
+      payload0,
+      payload1,
+      stackID,
+      recorderIndex
+    );
   }
 
   @Override
   public String getEventName()
   {
-    return eventID.getEventName();
+    return eventName;
   }
 
   @Override
@@ -43,7 +182,13 @@ public final class DefaultFlightRecorderEvent implements FlightRecorderEvent
   @Override
   public long getEventTimestamp()
   {
-    return timeStamp;
+    return timeStampNanos / 1_000_000L;
+  }
+
+  @Override
+  public long getEventTimestampNanos()
+  {
+    return timeStampNanos;
   }
 
   @Override
@@ -52,9 +197,49 @@ public final class DefaultFlightRecorderEvent implements FlightRecorderEvent
     return sequenceNumber;
   }
 
+  @Override
+  public FlightRecorderEventKind getEventKind()
+  {
+    return eventKind;
+  }
+
+  @Override
+  public int getThreadIndex()
+  {
+    return threadIndex;
+  }
+
+  @Override
+  public int getStackID()
+  {
+    return stackID;
+  }
+
+  @Override
+  public int getRecorderIndex()
+  {
+    return recorderIndex;
+  }
+
+  @Override
+  public int getNumberOfPayloads()
+  {
+    return numberOfPayloads;
+  }
+
+  @Override
+  public long getPayload(final int payloadNumber)
+  {
+    if ((payloadNumber < 0) || (payloadNumber >= numberOfPayloads))
+    {
+      throw new IndexOutOfBoundsException(String.format("Attempt to get payload number %d when there are %d payloads", payloadNumber, numberOfPayloads));
+    }
+    return (payloadNumber == 0) ? payload0 : payload1;
+  }
+
   @Override
   public FlightRecorderEvent getEvent(final long sequenceNumber)
   {
-    return new DefaultFlightRecorderEvent(System.currentTimeMillis(), sequenceNumber, eventID);
+    return withNanosecondTimestamp(FlightRecorderFactory.getMonotonicClock().currentTimeNanos(), sequenceNumber, eventID);
   }
 }
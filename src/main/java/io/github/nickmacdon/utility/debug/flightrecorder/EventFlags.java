@@ -0,0 +1,78 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * The flags kept with each recorded event in the rings, the memory mapped file and the binary
+ * dumps: the low four bits are the number of payloads, and the FlightRecorderEventKind is in the
+ * four bits above them.  A point event's flags are just its number of payloads, so recordings
+ * made before there were spans read the same.  The bits above those hold the index of the
+ * thread that recorded the event in the ThreadTable, so it doesn't need a column of its own.
+ *
+ * The top bit of the kind, HAS_STACK, is only used where the events are packed into bytes (the
+ * CompressedEventRingBuffer and the binary dumps), to say that a stack ID follows; the rings
+ * with columns keep the stack ID in a column of its own instead.
+ */
+final class EventFlags
+{
+  private EventFlags( ) {}  // No instantiation
+
+  private static final int NUMBER_OF_PAYLOADS_MASK = 0x0F;
+  private static final int KIND_SHIFT = 4;
+  private static final int KIND_MASK = 0x70;
+  static final int HAS_STACK = 0x80;
+  private static final int KIND_AND_PAYLOADS_MASK = 0xFF;
+  private static final int THREAD_INDEX_SHIFT = 8;
+  static final int MAXIMUM_THREAD_INDEX = -1 >>> THREAD_INDEX_SHIFT;
+  private static final FlightRecorderEventKind[] KINDS = FlightRecorderEventKind.values();
+
+  static final int SPAN_BEGIN = of(FlightRecorderEventKind.SPAN_BEGIN, 0);
+  static final int SPAN_END   = of(FlightRecorderEventKind.SPAN_END, 1);
+
+  static int of(final FlightRecorderEventKind kind, final int numberOfPayloads)
+  {
+    return (kind.ordinal() << KIND_SHIFT) | numberOfPayloads;
+  }
+
+  static int of(final FlightRecorderEvent event)
+  {
+    return withThreadIndex(of(event.getEventKind(), event.getNumberOfPayloads()), event.getThreadIndex());
+  }
+
+  static int withThreadIndex(final int flags, final int threadIndex)
+  {
+    return (flags & KIND_AND_PAYLOADS_MASK) | (threadIndex << THREAD_INDEX_SHIFT);
+  }
+
+  static int withStack(final int flags, final int stackID)
+  {
+    return (stackID == FlightRecorderEvent.NO_STACK) ? flags : (flags | HAS_STACK);
+  }
+
+  static boolean hasStack(final int flags)
+  {
+    return (flags & HAS_STACK) != 0;
+  }
+
+  static int threadIndex(final int flags)
+  {
+    return flags >>> THREAD_INDEX_SHIFT;
+  }
+
+  static int numberOfPayloads(final int flags)
+  {
+    return flags & NUMBER_OF_PAYLOADS_MASK;
+  }
+
+  static FlightRecorderEventKind kind(final int flags)
+  {
+    final int kind = (flags & KIND_MASK) >>> KIND_SHIFT;
+    if (kind >= KINDS.length)
+    {
+      throw new IllegalStateException(String.format("Unknown event flags 0x%x", flags));
+    }
+    return KINDS[kind];
+  }
+}
@@ -0,0 +1,97 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * Which event IDs a FlightRecorder should record, so that call sites can be left in place
+ * everywhere and only the events of interest are actually recorded.  Asking is cheap enough
+ * to do first thing in recordEvent(), before the sequence number, the clock or the ring: for
+ * event IDs from 0 up to NUMBER_OF_DENSE_EVENT_IDS (which is what an Enum's ordinals give you)
+ * it is one bit in a bitset.  Any other event IDs are enabled or not along with "all the rest"
+ * unless they have been set on their own, in which case they are found in a small sorted array.
+ *
+ * It is thread safe and lock free to ask, so it can be changed from a management thread while
+ * events are being recorded; a change is seen by the recording threads straight away.  Changes
+ * to the event IDs outside the bitset take a lock and copy the array, but those are rare.
+ */
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+final class EventIDFilter
+{
+  static final int NUMBER_OF_DENSE_EVENT_IDS = 4096;
+  private static final int BITS_PER_WORD = 64;
+
+  private final AtomicLongArray denseEventIDsEnabled = new AtomicLongArray(NUMBER_OF_DENSE_EVENT_IDS / BITS_PER_WORD);
+  private volatile boolean otherEventIDsEnabled = true;
+  private volatile long[] otherEventIDsSetTheOtherWay = new long[0];  // sorted
+
+  EventIDFilter()
+  {
+    enableAll();
+  }
+
+  boolean isEnabled(final long eventID)
+  {
+    if ((eventID >= 0) && (eventID < NUMBER_OF_DENSE_EVENT_IDS))
+    {
+      return (denseEventIDsEnabled.get((int)eventID / BITS_PER_WORD) & (1L << eventID)) != 0;
+    }
+    return otherEventIDsEnabled != (Arrays.binarySearch(otherEventIDsSetTheOtherWay, eventID) >= 0);
+  }
+
+  void setEnabled(final long eventID, final boolean enabled)
+  {
+    if ((eventID >= 0) && (eventID < NUMBER_OF_DENSE_EVENT_IDS))
+    {
+      final long bit = 1L << eventID;
+      if (enabled)
+        denseEventIDsEnabled.accumulateAndGet((int)eventID / BITS_PER_WORD, bit, (word, bitToSet) -> word | bitToSet);
+      else
+        denseEventIDsEnabled.accumulateAndGet((int)eventID / BITS_PER_WORD, bit, (word, bitToClear) -> word & ~bitToClear);
+      return;
+    }
+    synchronized (this)
+    {
+      final long[] eventIDs = otherEventIDsSetTheOtherWay;
+      final int index = Arrays.binarySearch(eventIDs, eventID);
+      final boolean setTheOtherWay = (index >= 0);
+      if (setTheOtherWay == (enabled != otherEventIDsEnabled))  return;  // Already that way
+      if (setTheOtherWay)
+      {
+        final long[] fewerEventIDs = new long[eventIDs.length - 1];
+        System.arraycopy(eventIDs, 0, fewerEventIDs, 0, index);
+        System.arraycopy(eventIDs, index + 1, fewerEventIDs, index, eventIDs.length - index - 1);
+        otherEventIDsSetTheOtherWay = fewerEventIDs;
+      }
+      else
+      {
+        final int insertionPoint = -(index + 1);
+        final long[] moreEventIDs = new long[eventIDs.length + 1];
+        System.arraycopy(eventIDs, 0, moreEventIDs, 0, insertionPoint);
+        moreEventIDs[insertionPoint] = eventID;
+        System.arraycopy(eventIDs, insertionPoint, moreEventIDs, insertionPoint + 1, eventIDs.length - insertionPoint);
+        otherEventIDsSetTheOtherWay = moreEventIDs;
+      }
+    }
+  }
+
+  void enableAll()
+  {
+    setAll(true);
+  }
+
+  void disableAll()
+  {
+    setAll(false);
+  }
+
+  private synchronized void setAll(final boolean enabled)
+  {
+    for (int i=0; i<denseEventIDsEnabled.length(); i++)  denseEventIDsEnabled.set(i, enabled ? -1L : 0L);
+    otherEventIDsSetTheOtherWay = new long[0];
+    otherEventIDsEnabled = enabled;
+  }
+}
@@ -0,0 +1,247 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * Gives each FlightRecorderEventID a small dense index, so the rings can keep an int for each
+ * event instead of a reference to its FlightRecorderEventID and its long event ID.  The ID and
+ * the name of each one are asked for once, when it is registered, and kept here, so nothing
+ * has to call into your Enum again to dump it; the dumps give the names to the dumper once,
+ * up front (see FlightRecorderEventDumper.setEventName()).
+ *
+ * An Enum is registered all at once, the first time any of its constants is recorded (or
+ * before that, with FlightRecorderFactory.registerEventIDs()), and the index of each constant
+ * is then found by its ordinal in an array kept for the Enum's class, which is quicker than
+ * any map.  Registering an Enum checks that none of its event IDs is already used by another
+ * constant, of it or of any other registered Enum, since two events with the same ID can't
+ * be told apart once they are in a dump.  Recording must never throw, so an Enum that fails
+ * the check is still registered, each constant by its event ID and name like an event ID that
+ * isn't an Enum, and the clash is only reported (with an IllegalStateException) by
+ * registerEnum().  Event IDs that aren't Enums are registered one at
+ * a time, and aren't checked.  Recording one looks it up by which object it is, in a map that
+ * is copied when it changes, so finding it allocates nothing and doesn't call its
+ * getEventName(); the first time an object is seen it is given the index of its event ID and
+ * name (see indexOfNamed()), so two objects for the same event share one.  So that recording
+ * a new object for every event can't fill the heap, only the first MAX_RECORDED_OBJECTS are
+ * remembered, and the rest are looked up by event ID and name each time.
+ *
+ * Events that are being replayed (a dump reader's, or a recorder's being dumped into a new
+ * snapshot) are looked up by their event ID and name with indexOfNamed(), once per event ID,
+ * by whatever is replaying them, and put with their index; replaying the same events over
+ * and over finds the indexes they already have instead of adding more.
+ *
+ * There is one table for the whole JVM, like ThreadTable, so an event has the same index in
+ * every recorder.  Index 0 is never given out.
+ */
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+final class EventIDTable
+{
+  private EventIDTable( ) {}  // No instantiation
+
+  static final int NO_EVENT_INDEX = 0;
+
+  private static final ClassValue<int[]> ENUM_INDEXES = new ClassValue<int[]>()
+  {
+    @Override
+    protected int[] computeValue(final Class<?> enumClass)
+    {
+      return registerConstantsOf(enumClass);
+    }
+  };
+  private static final Map<NamedEventID, Integer> OTHER_INDEXES = new ConcurrentHashMap<>();
+  static final int MAX_RECORDED_OBJECTS = 1024;
+  private static volatile Map<FlightRecorderEventID, Integer> recordedObjectIndexes = new IdentityHashMap<>();  // Never changed once published
+  private static final Map<Long, FlightRecorderEventID> ENUM_CONSTANTS_BY_EVENT_ID = new HashMap<>();
+  private static final Map<Class<?>, int[]> REGISTERED_ENUMS = new HashMap<>();  // ClassValue may ask twice
+  private static final Map<Class<?>, String> CLASHING_ENUMS = new ConcurrentHashMap<>();
+
+  private static volatile FlightRecorderEventID[] eventIDObjects = { FlightRecorderEventID.INVALID };
+  private static volatile long[] eventIDs = { 0 };
+  private static volatile String[] eventNames = { "INVALID" };
+
+  static int indexOf(final FlightRecorderEventID eventID)
+  {
+    if (eventID instanceof Enum)
+    {
+      final Enum<?> enumConstant = (Enum<?>)eventID;
+      return ENUM_INDEXES.get(enumConstant.getDeclaringClass())[enumConstant.ordinal()];
+    }
+    final Integer eventIndex = recordedObjectIndexes.get(eventID);
+    return (eventIndex != null) ? eventIndex : registerRecordedObject(eventID);
+  }
+
+  /*
+   * The index of an event ID that isn't an Enum, found by its event ID and name, for the events
+   * of a dump that is being replayed.
+   */
+  static int indexOfNamed(final long eventID, final String eventName)
+  {
+    final NamedEventID namedEventID = new NamedEventID(eventID, eventName);
+    final Integer eventIndex = OTHER_INDEXES.get(namedEventID);
+    return (eventIndex != null) ? eventIndex : OTHER_INDEXES.computeIfAbsent(namedEventID, EventIDTable::register);
+  }
+
+  private static synchronized int registerRecordedObject(final FlightRecorderEventID eventID)
+  {
+    final Integer alreadyRegistered = recordedObjectIndexes.get(eventID);
+    if (alreadyRegistered != null)  return alreadyRegistered;
+    final int eventIndex = indexOfNamed(eventID.getEventID(), eventID.getEventName());
+    if (recordedObjectIndexes.size() < MAX_RECORDED_OBJECTS)
+    {
+      final Map<FlightRecorderEventID, Integer> newRecordedObjectIndexes = new IdentityHashMap<>(recordedObjectIndexes);
+      newRecordedObjectIndexes.put(eventID, eventIndex);
+      recordedObjectIndexes = newRecordedObjectIndexes;
+    }
+    return eventIndex;
+  }
+
+  /*
+   * Registers all of the constants of an Enum of FlightRecorderEventIDs now, rather than when
+   * the first of them is recorded, so that any event ID it shares with another is found now.
+   */
+  static void registerEnum(final Class<? extends FlightRecorderEventID> enumClass)
+  {
+    if (!enumClass.isEnum())
+    {
+      throw new IllegalArgumentException(String.format("%s isn't an Enum", enumClass.getName()));
+    }
+    ENUM_INDEXES.get(enumClass);
+    final String clash = CLASHING_ENUMS.get(enumClass);
+    if (clash != null)  throw new IllegalStateException(clash);
+  }
+
+  private static synchronized int[] registerConstantsOf(final Class<?> enumClass)
+  {
+    final int[] alreadyRegistered = REGISTERED_ENUMS.get(enumClass);
+    if (alreadyRegistered != null)  return alreadyRegistered;
+    final Object[] enumConstants = enumClass.getEnumConstants();
+    final FlightRecorderEventID[] constants = Arrays.copyOf(enumConstants, enumConstants.length, FlightRecorderEventID[].class);
+    // Check all of them before registering any, so a failed Enum doesn't claim any of its event IDs
+    final Map<Long, FlightRecorderEventID> newEventIDs = new HashMap<>();
+    String clash = null;
+    for (final FlightRecorderEventID constant : constants)
+    {
+      final long eventID = constant.getEventID();
+      FlightRecorderEventID alreadyUsedBy = ENUM_CONSTANTS_BY_EVENT_ID.get(eventID);
+      if (alreadyUsedBy == null)  alreadyUsedBy = newEventIDs.put(eventID, constant);
+      if ((alreadyUsedBy != null) && (clash == null))
+        clash = String.format("Event ID %d is used by both %s and %s", eventID, describe(alreadyUsedBy), describe(constant));
+    }
+    final int[] indexes = new int[constants.length];
+    if (clash == null)
+    {
+      ENUM_CONSTANTS_BY_EVENT_ID.putAll(newEventIDs);
+      for (int i=0; i<constants.length; i++)  indexes[i] = register(constants[i]);
+    }
+    else
+    {
+      CLASHING_ENUMS.put(enumClass, clash);
+      for (int i=0; i<constants.length; i++)  indexes[i] = indexOfNamed(constants[i].getEventID(), constants[i].getEventName());
+    }
+    REGISTERED_ENUMS.put(enumClass, indexes);
+    return indexes;
+  }
+
+  private static synchronized int register(final FlightRecorderEventID eventID)
+  {
+    final int newIndex = eventIDObjects.length;
+    final FlightRecorderEventID[] newEventIDObjects = Arrays.copyOf(eventIDObjects, newIndex + 1);
+    final long[] newEventIDs = Arrays.copyOf(eventIDs, newIndex + 1);
+    final String[] newEventNames = Arrays.copyOf(eventNames, newIndex + 1);
+    newEventIDObjects[newIndex] = eventID;
+    newEventIDs[newIndex]       = eventID.getEventID();
+    newEventNames[newIndex]     = eventID.getEventName();
+    eventNames     = newEventNames;
+    eventIDs       = newEventIDs;
+    eventIDObjects = newEventIDObjects;
+    return newIndex;
+  }
+
+  /*
+   * An event ID that isn't an Enum is kept as a RecordedFlightRecorderEventID with the same ID
+   * and name, so the table doesn't hold on to whatever object happened to be recorded first
+   * (which may be a whole event).
+   */
+  private static int register(final NamedEventID namedEventID)
+  {
+    return register(new RecordedFlightRecorderEventID(namedEventID.eventID, namedEventID.eventName));
+  }
+
+  private static String describe(final FlightRecorderEventID eventID)
+  {
+    return ((Enum<?>)eventID).getDeclaringClass().getName() + "." + ((Enum<?>)eventID).name();
+  }
+
+  static int getNumberOfEventIDs()
+  {
+    return eventIDs.length - 1;
+  }
+
+  static FlightRecorderEventID getEventIDObject(final int eventIndex)
+  {
+    return eventIDObjects[eventIndex];
+  }
+
+  static long getEventID(final int eventIndex)
+  {
+    return eventIDs[eventIndex];
+  }
+
+  static String getEventName(final int eventIndex)
+  {
+    return eventNames[eventIndex];
+  }
+
+  /*
+   * Notes the events of the given entries, for reportEventNames().
+   */
+  static void addEventsOf(final RecordedEvents events, final int firstEntry, final int endEntry, final BitSet eventIndexes)
+  {
+    for (int i=firstEntry; i<endEntry; i++)  eventIndexes.set(events.getEventIndexAt(i));
+  }
+
+  static void reportEventNames(final BitSet eventIndexes, final FlightRecorderEventDumper eventDumper)
+  {
+    for (int i=eventIndexes.nextSetBit(0); i>=0; i=eventIndexes.nextSetBit(i+1))
+      if (i != NO_EVENT_INDEX)  eventDumper.setEventName(getEventID(i), getEventName(i));
+  }
+
+  static void reportEventNames(final RecordedEvents events, final int firstEntry, final int endEntry, final FlightRecorderEventDumper eventDumper)
+  {
+    final BitSet eventIndexes = new BitSet();
+    addEventsOf(events, firstEntry, endEntry, eventIndexes);
+    reportEventNames(eventIndexes, eventDumper);
+  }
+
+  private static final class NamedEventID
+  {
+    final long eventID;
+    final String eventName;
+
+    NamedEventID(final long eventID, final String eventName)
+    {
+      this.eventID   = eventID;
+      this.eventName = eventName;
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return Long.hashCode(eventID) * 31 + eventName.hashCode();
+    }
+
+    @Override
+    public boolean equals(final Object other)
+    {
+      return (other instanceof NamedEventID) && (((NamedEventID)other).eventID == eventID) && ((NamedEventID)other).eventName.equals(eventName);
+    }
+  }
+}
@@ -0,0 +1,335 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * This is a specialized version of RingBuffer just for recorded events.  Instead of keeping
+ * an array of FlightRecorderEvent objects it keeps the parts of each event in parallel
+ * columns (a "struct of arrays") so that putting an event in the ring never allocates
+ * anything.  There are no reference columns at all: the FlightRecorderEventID that was
+ * recorded is kept as its small index in the EventIDTable, which also has its ID and name.
+ * FlightRecorderEvent objects are only made when somebody asks for one with getEventAt(),
+ * which normally only happens when the recording is being dumped.
+ *
+ * The timestamps are nanoseconds since the epoch, as given by a FlightRecorderClock.  The
+ * payloads recorded with an event get columns of their own too, and the number of them is
+ * kept in its flags (see EventFlags) along with what kind of event it is and which thread
+ * recorded it.  The stack it was recorded from, if that was asked for, is kept as its ID in
+ * the StackTable.
+ *
+ * The entries are normally put in timestamp order too, but not always: the concurrent recorder
+ * takes each event's sequence number before reading the clock, so a thread that is descheduled
+ * in between can put a timestamp that is any amount later than those of the events after it.
+ * So the ring keeps track of the most any timestamp is behind an earlier one, for
+ * FlightRecorderQuery to widen its search by.
+ */
+final class EventRingBuffer implements RecordedEvents
+{
+  private final int maxNumberOfEntries;
+  private final int[] eventIndexes;
+  private final long[] timeStamps;
+  private final long[] sequenceNumbers;
+  private final int[] flags;
+  private final long[] payloads0;
+  private final long[] payloads1;
+  private final int[] stackIDs;
+
+  private int numberOfEntries     = 0;
+  private int startOfRing         = 0;
+  private long numberOfLostEntries = 0;
+  private long latestTimeStamp     = Long.MIN_VALUE;
+  private long timeStampDisorder   = 0;
+
+  public EventRingBuffer(final int maxNumberOfEntriesInRingBuffer)
+  {
+    if (maxNumberOfEntriesInRingBuffer <= 0)
+    {
+      throw new IllegalArgumentException(String.format("Ring buffer size must be positive, not %d", maxNumberOfEntriesInRingBuffer));
+    }
+    maxNumberOfEntries = maxNumberOfEntriesInRingBuffer;
+    eventIndexes       = new int[maxNumberOfEntriesInRingBuffer];
+    timeStamps         = new long[maxNumberOfEntriesInRingBuffer];
+    sequenceNumbers    = new long[maxNumberOfEntriesInRingBuffer];
+    flags              = new int[maxNumberOfEntriesInRingBuffer];
+    payloads0          = new long[maxNumberOfEntriesInRingBuffer];
+    payloads1          = new long[maxNumberOfEntriesInRingBuffer];
+    stackIDs           = new int[maxNumberOfEntriesInRingBuffer];
+    clearAllEntries();
+  }
+
+  /*
+   * Makes a copy of another ring.  This is just a bulk copy of each column, so it is quick.
+   */
+  public EventRingBuffer(final EventRingBuffer ringToCopy)
+  {
+    maxNumberOfEntries  = ringToCopy.maxNumberOfEntries;
+    eventIndexes        = ringToCopy.eventIndexes.clone();
+    timeStamps          = ringToCopy.timeStamps.clone();
+    sequenceNumbers     = ringToCopy.sequenceNumbers.clone();
+    flags               = ringToCopy.flags.clone();
+    payloads0           = ringToCopy.payloads0.clone();
+    payloads1           = ringToCopy.payloads1.clone();
+    stackIDs            = ringToCopy.stackIDs.clone();
+    numberOfEntries     = ringToCopy.numberOfEntries;
+    startOfRing         = ringToCopy.startOfRing;
+    numberOfLostEntries = ringToCopy.numberOfLostEntries;
+    latestTimeStamp     = ringToCopy.latestTimeStamp;
+    timeStampDisorder   = ringToCopy.timeStampDisorder;
+  }
+
+  public void put(final FlightRecorderEventID eventID, final long sequenceNumber, final long timeStamp)
+  {
+    put(eventID, sequenceNumber, timeStamp, 0, 0, 0);
+  }
+
+  public void put(
+    final FlightRecorderEventID eventID,
+    final long sequenceNumber,
+    final long timeStamp,
+    final int flagsToPut,
+    final long payload0,
+    final long payload1
+  )
+  {
+    put(eventID, sequenceNumber, timeStamp, flagsToPut, payload0, payload1, FlightRecorderEvent.NO_STACK);
+  }
+
+  public void put(
+    final FlightRecorderEventID eventID,
+    final long sequenceNumber,
+    final long timeStamp,
+    final int flagsToPut,
+    final long payload0,
+    final long payload1,
+    final int stackID
+  )
+  {
+    putIndexed(EventIDTable.indexOf(eventID), sequenceNumber, timeStamp, flagsToPut, payload0, payload1, stackID);
+  }
+
+  /*
+   * Puts an event whose index in the EventIDTable is already known.
+   */
+  public void putIndexed(
+    final int eventIndex,
+    final long sequenceNumber,
+    final long timeStamp,
+    final int flagsToPut,
+    final long payload0,
+    final long payload1,
+    final int stackID
+  )
+  {
+    final int arrayIndex;
+    if (numberOfEntries == maxNumberOfEntries)
+    {
+      // Full, so the new entry takes the place of the oldest one
+      arrayIndex = startOfRing;
+      startOfRing++;
+      if (startOfRing >= maxNumberOfEntries)  startOfRing = 0;
+      numberOfLostEntries++;
+    }
+    else
+    {
+      arrayIndex = toArrayIndex(numberOfEntries);
+      numberOfEntries++;
+    }
+
+    eventIndexes[arrayIndex]    = eventIndex;
+    timeStamps[arrayIndex]      = timeStamp;
+    sequenceNumbers[arrayIndex] = sequenceNumber;
+    flags[arrayIndex]           = flagsToPut;
+    payloads0[arrayIndex]       = payload0;
+    payloads1[arrayIndex]       = payload1;
+    stackIDs[arrayIndex]        = stackID;
+    if (timeStamp < latestTimeStamp)
+      timeStampDisorder = Math.max(timeStampDisorder, latestTimeStamp - timeStamp);
+    else
+      latestTimeStamp = timeStamp;
+  }
+
+  /*
+   * Puts a copy of one of the entries of another ring, columns and all.
+   */
+  public void putEntryFrom(final EventRingBuffer source, final int entryNumberToCopy)
+  {
+    final int sourceArrayIndex = source.checkedArrayIndex(entryNumberToCopy);
+    putIndexed(
+      source.eventIndexes[sourceArrayIndex],
+      source.sequenceNumbers[sourceArrayIndex],
+      source.timeStamps[sourceArrayIndex],
+      source.flags[sourceArrayIndex],
+      source.payloads0[sourceArrayIndex],
+      source.payloads1[sourceArrayIndex],
+      source.stackIDs[sourceArrayIndex]
+    );
+  }
+
+  public int getMaxNumberOfEntries()
+  {
+    return maxNumberOfEntries;
+  }
+
+  @Override
+  public int getNumberOfEntries()
+  {
+    return numberOfEntries;
+  }
+
+  /*
+   * Since the ring was last cleared or sorted, so it may count entries since overwritten,
+   * which only ever makes it too big.
+   */
+  @Override
+  public long getTimeStampDisorder()
+  {
+    return timeStampDisorder;
+  }
+
+  public long getNumberOfLostEntries()
+  {
+    return numberOfLostEntries;
+  }
+
+  public void clearNumberOfLostEntries()
+  {
+    numberOfLostEntries = 0;
+  }
+
+  @Override
+  public long getEventIDAt(final int entryNumberToPeekAt)
+  {
+    return EventIDTable.getEventID(eventIndexes[checkedArrayIndex(entryNumberToPeekAt)]);
+  }
+
+  @Override
+  public int getEventIndexAt(final int entryNumberToPeekAt)
+  {
+    return eventIndexes[checkedArrayIndex(entryNumberToPeekAt)];
+  }
+
+  @Override
+  public long getTimeStampAt(final int entryNumberToPeekAt)
+  {
+    return timeStamps[checkedArrayIndex(entryNumberToPeekAt)];
+  }
+
+  @Override
+  public long getSequenceNumberAt(final int entryNumberToPeekAt)
+  {
+    return sequenceNumbers[checkedArrayIndex(entryNumberToPeekAt)];
+  }
+
+  @Override
+  public int getFlagsAt(final int entryNumberToPeekAt)
+  {
+    return flags[checkedArrayIndex(entryNumberToPeekAt)];
+  }
+
+  @Override
+  public int getStackIDAt(final int entryNumberToPeekAt)
+  {
+    return stackIDs[checkedArrayIndex(entryNumberToPeekAt)];
+  }
+
+  @Override
+  public FlightRecorderEvent getEventAt(final int entryNumberToPeekAt)
+  {
+    return getEventAt(entryNumberToPeekAt, FlightRecorderEvent.NO_RECORDER);
+  }
+
+  /*
+   * For a merged dump, which says which recorder each event came from.
+   */
+  FlightRecorderEvent getEventAt(final int entryNumberToPeekAt, final int recorderIndex)
+  {
+    final int arrayIndex = checkedArrayIndex(entryNumberToPeekAt);
+    return DefaultFlightRecorderEvent.withEventIndex(
+      timeStamps[arrayIndex],
+      sequenceNumbers[arrayIndex],
+      eventIndexes[arrayIndex],
+      flags[arrayIndex],
+      payloads0[arrayIndex],
+      payloads1[arrayIndex],
+      stackIDs[arrayIndex],
+      recorderIndex
+    );
+  }
+
+  /*
+   * Puts the entries back in sequence number order, for when they were put in slightly out
+   * of order (see ConcurrentEventRingBuffer).  It's an insertion sort, which is very quick
+   * when the entries are already nearly in order.  Their timestamps may then be less in order
+   * than they were, so the disorder is measured again.
+   */
+  public void sortBySequenceNumber()
+  {
+    for (int i=1; i<numberOfEntries; i++)
+    {
+      for (int j=i; (j > 0) && (sequenceNumbers[toArrayIndex(j-1)] > sequenceNumbers[toArrayIndex(j)]); j--)
+        swapEntries(toArrayIndex(j-1), toArrayIndex(j));
+    }
+    latestTimeStamp   = Long.MIN_VALUE;
+    timeStampDisorder = 0;
+    for (int i=0; i<numberOfEntries; i++)
+    {
+      final long timeStamp = timeStamps[toArrayIndex(i)];
+      if (timeStamp < latestTimeStamp)
+        timeStampDisorder = Math.max(timeStampDisorder, latestTimeStamp - timeStamp);
+      else
+        latestTimeStamp = timeStamp;
+    }
+  }
+
+  public void clearAllEntries()
+  {
+    numberOfEntries     = 0;
+    startOfRing         = 0;
+    numberOfLostEntries = 0;
+    latestTimeStamp     = Long.MIN_VALUE;
+    timeStampDisorder   = 0;
+  }
+
+  private void swapEntries(final int arrayIndex1, final int arrayIndex2)
+  {
+    swap(eventIndexes, arrayIndex1, arrayIndex2);
+    swap(timeStamps, arrayIndex1, arrayIndex2);
+    swap(sequenceNumbers, arrayIndex1, arrayIndex2);
+    swap(flags, arrayIndex1, arrayIndex2);
+    swap(payloads0, arrayIndex1, arrayIndex2);
+    swap(payloads1, arrayIndex1, arrayIndex2);
+    swap(stackIDs, arrayIndex1, arrayIndex2);
+  }
+
+  private static void swap(final long[] column, final int arrayIndex1, final int arrayIndex2)
+  {
+    final long value = column[arrayIndex1];
+    column[arrayIndex1] = column[arrayIndex2];
+    column[arrayIndex2] = value;
+  }
+
+  private static void swap(final int[] column, final int arrayIndex1, final int arrayIndex2)
+  {
+    final int value = column[arrayIndex1];
+    column[arrayIndex1] = column[arrayIndex2];
+    column[arrayIndex2] = value;
+  }
+
+  private int checkedArrayIndex(final int entryNumberToPeekAt)
+  {
+    if ((entryNumberToPeekAt < 0) || (entryNumberToPeekAt >= numberOfEntries))
+    {
+      throw new IllegalArgumentException(String.format("Attempt to peek at item number %d when there are %d items", entryNumberToPeekAt, numberOfEntries));
+    }
+    return toArrayIndex(entryNumberToPeekAt);
+  }
+
+  private int toArrayIndex(final int entryNumber)
+  {
+    int arrayIndex = startOfRing + entryNumber;
+    if (arrayIndex >= maxNumberOfEntries) arrayIndex -= maxNumberOfEntries;
+    return arrayIndex;
+  }
+}
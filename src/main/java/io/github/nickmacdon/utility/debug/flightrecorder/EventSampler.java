@@ -0,0 +1,108 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * The FlightRecorderSamplingPolicy of each event ID that has one, and how many events each has
+ * suppressed.  The policies are kept in an immutable table, sorted by event ID, that is replaced
+ * (under a lock) whenever one is set, so asking is lock free: with no policies at all it is one
+ * volatile read, and otherwise a binary search of the handful of event IDs that have them.
+ * The suppressed counts are AtomicLongs carried over from one table to the next so none are
+ * lost while a policy is being changed.
+ */
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+final class EventSampler
+{
+  private volatile SamplingTable table = new SamplingTable(new long[0], new FlightRecorderEventID[0], new FlightRecorderSamplingPolicy[0], new AtomicLong[0]);
+
+  boolean shouldRecord(final long eventID, final FlightRecorderClock clock)
+  {
+    final SamplingTable currentTable = table;
+    if (currentTable.eventIDs.length == 0)  return true;
+    final int index = Arrays.binarySearch(currentTable.eventIDs, eventID);
+    if (index < 0)  return true;
+    final FlightRecorderSamplingPolicy policy = currentTable.policies[index];
+    if ((policy == FlightRecorderSamplingPolicy.RECORD_EVERY_EVENT) || policy.shouldRecord(clock))  return true;
+    currentTable.numbersSuppressed[index].incrementAndGet();
+    return false;
+  }
+
+  synchronized void setPolicy(final FlightRecorderEventID eventIDToSample, final FlightRecorderSamplingPolicy policy)
+  {
+    final SamplingTable oldTable = table;
+    final int index = Arrays.binarySearch(oldTable.eventIDs, eventIDToSample.getEventID());
+    if (index >= 0)
+    {
+      final FlightRecorderSamplingPolicy[] policies = oldTable.policies.clone();
+      policies[index] = policy;
+      table = new SamplingTable(oldTable.eventIDs, oldTable.eventIDObjects, policies, oldTable.numbersSuppressed);
+      return;
+    }
+
+    final int insertionPoint = -(index + 1);
+    final int newLength = oldTable.eventIDs.length + 1;
+    final long[] eventIDs = new long[newLength];
+    final FlightRecorderEventID[] eventIDObjects = new FlightRecorderEventID[newLength];
+    final FlightRecorderSamplingPolicy[] policies = new FlightRecorderSamplingPolicy[newLength];
+    final AtomicLong[] numbersSuppressed = new AtomicLong[newLength];
+    for (int i=0, j=0; i<newLength; i++)
+    {
+      if (i == insertionPoint)
+      {
+        eventIDs[i]          = eventIDToSample.getEventID();
+        eventIDObjects[i]    = eventIDToSample;
+        policies[i]          = policy;
+        numbersSuppressed[i] = new AtomicLong();
+      }
+      else
+      {
+        eventIDs[i]          = oldTable.eventIDs[j];
+        eventIDObjects[i]    = oldTable.eventIDObjects[j];
+        policies[i]          = oldTable.policies[j];
+        numbersSuppressed[i] = oldTable.numbersSuppressed[j];
+        j++;
+      }
+    }
+    table = new SamplingTable(eventIDs, eventIDObjects, policies, numbersSuppressed);
+  }
+
+  void clearNumbersSuppressed()
+  {
+    for (final AtomicLong numberSuppressed : table.numbersSuppressed)  numberSuppressed.set(0);
+  }
+
+  long getTotalNumberSuppressed()
+  {
+    long totalNumberSuppressed = 0;
+    for (final AtomicLong numberSuppressed : table.numbersSuppressed)  totalNumberSuppressed += numberSuppressed.get();
+    return totalNumberSuppressed;
+  }
+
+  SuppressedEventCounts getSuppressedEventCounts()
+  {
+    final SamplingTable currentTable = table;
+    final long[] numbersSuppressed = new long[currentTable.numbersSuppressed.length];
+    for (int i=0; i<numbersSuppressed.length; i++)  numbersSuppressed[i] = currentTable.numbersSuppressed[i].get();
+    return new SuppressedEventCounts(currentTable.eventIDObjects, numbersSuppressed);
+  }
+
+  private static final class SamplingTable
+  {
+    final long[] eventIDs;
+    final FlightRecorderEventID[] eventIDObjects;
+    final FlightRecorderSamplingPolicy[] policies;
+    final AtomicLong[] numbersSuppressed;
+
+    SamplingTable(final long[] eventIDs, final FlightRecorderEventID[] eventIDObjects, final FlightRecorderSamplingPolicy[] policies, final AtomicLong[] numbersSuppressed)
+    {
+      this.eventIDs          = eventIDs;
+      this.eventIDObjects    = eventIDObjects;
+      this.policies          = policies;
+      this.numbersSuppressed = numbersSuppressed;
+    }
+  }
+}
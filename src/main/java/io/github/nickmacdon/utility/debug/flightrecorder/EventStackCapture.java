@@ -0,0 +1,119 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * Which event IDs have their stacks captured when they are recorded, and how many frames of
+ * each (see FlightRecorder.setStackDepth()).  Capturing a stack costs microseconds rather than
+ * nanoseconds, so it is only done for the event IDs that ask for it.  Like EventSampler, they
+ * are kept in an immutable table sorted by event ID that is replaced (under a lock) whenever
+ * one is set, so with no stacks asked for at all, asking is one volatile read, and otherwise a
+ * binary search of the handful of event IDs that capture them.
+ *
+ * The stack is captured by StackWalking and kept in the StackTable, which gives back the ID
+ * that the recorder keeps with the event.
+ */
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+final class EventStackCapture
+{
+  static final int MAXIMUM_STACK_DEPTH = 1024;
+
+  // Left off the top of each stack, so the first frame is the code that recorded the event
+  private static final Set<String> RECORDER_CLASS_NAMES = new HashSet<>(Arrays.asList(
+    FlightRecorder.class.getName(),
+    AbstractFlightRecorder.class.getName(),
+    AbstractStoringFlightRecorder.class.getName(),
+    InMemoryRingBufferFlightRecorder.class.getName(),
+    ConcurrentRingBufferFlightRecorder.class.getName(),
+    CompressedRingBufferFlightRecorder.class.getName(),
+    MemoryMappedRingBufferFlightRecorder.class.getName(),
+    StreamingFlightRecorder.class.getName(),
+    TriggeredFlightRecorder.class.getName(),
+    RecordingExecutor.class.getName(),
+    RecordingExecutor.RecordedTask.class.getName(),
+    RecordingExecutorService.class.getName(),
+    EventStackCapture.class.getName(),
+    StackWalking.class.getName()
+  ));
+
+  private volatile CaptureTable table = new CaptureTable(new long[0], new int[0]);
+
+  /*
+   * Returns the ID of the current stack in the StackTable, or NO_STACK if the event ID doesn't
+   * capture its stack.
+   */
+  int captureStackFor(final long eventID)
+  {
+    final CaptureTable currentTable = table;
+    if (currentTable.eventIDs.length == 0)  return FlightRecorderEvent.NO_STACK;
+    final int index = Arrays.binarySearch(currentTable.eventIDs, eventID);
+    if (index < 0)  return FlightRecorderEvent.NO_STACK;
+    return StackTable.idOf(StackWalking.currentStack(currentTable.maximumNumbersOfFrames[index]));
+  }
+
+  /*
+   * Zero frames stops capturing the event ID's stacks.
+   */
+  synchronized void setStackDepth(final FlightRecorderEventID eventIDToCapture, final int maximumNumberOfFrames)
+  {
+    if ((maximumNumberOfFrames < 0) || (maximumNumberOfFrames > MAXIMUM_STACK_DEPTH))
+    {
+      throw new IllegalArgumentException(String.format("Stack depth must be from 0 to %d frames, not %d", MAXIMUM_STACK_DEPTH, maximumNumberOfFrames));
+    }
+    final CaptureTable oldTable = table;
+    final int index = Arrays.binarySearch(oldTable.eventIDs, eventIDToCapture.getEventID());
+    if ((index >= 0) && (maximumNumberOfFrames > 0))
+    {
+      final int[] maximumNumbersOfFrames = oldTable.maximumNumbersOfFrames.clone();
+      maximumNumbersOfFrames[index] = maximumNumberOfFrames;
+      table = new CaptureTable(oldTable.eventIDs, maximumNumbersOfFrames);
+    }
+    else if (index >= 0)
+    {
+      final int newLength = oldTable.eventIDs.length - 1;
+      final long[] eventIDs = new long[newLength];
+      final int[] maximumNumbersOfFrames = new int[newLength];
+      System.arraycopy(oldTable.eventIDs, 0, eventIDs, 0, index);
+      System.arraycopy(oldTable.eventIDs, index + 1, eventIDs, index, newLength - index);
+      System.arraycopy(oldTable.maximumNumbersOfFrames, 0, maximumNumbersOfFrames, 0, index);
+      System.arraycopy(oldTable.maximumNumbersOfFrames, index + 1, maximumNumbersOfFrames, index, newLength - index);
+      table = new CaptureTable(eventIDs, maximumNumbersOfFrames);
+    }
+    else if (maximumNumberOfFrames > 0)
+    {
+      final int insertionPoint = -(index + 1);
+      final int newLength = oldTable.eventIDs.length + 1;
+      final long[] eventIDs = new long[newLength];
+      final int[] maximumNumbersOfFrames = new int[newLength];
+      System.arraycopy(oldTable.eventIDs, 0, eventIDs, 0, insertionPoint);
+      System.arraycopy(oldTable.eventIDs, insertionPoint, eventIDs, insertionPoint + 1, newLength - insertionPoint - 1);
+      System.arraycopy(oldTable.maximumNumbersOfFrames, 0, maximumNumbersOfFrames, 0, insertionPoint);
+      System.arraycopy(oldTable.maximumNumbersOfFrames, insertionPoint, maximumNumbersOfFrames, insertionPoint + 1, newLength - insertionPoint - 1);
+      eventIDs[insertionPoint]               = eventIDToCapture.getEventID();
+      maximumNumbersOfFrames[insertionPoint] = maximumNumberOfFrames;
+      table = new CaptureTable(eventIDs, maximumNumbersOfFrames);
+    }
+  }
+
+  static boolean isRecorderFrame(final String className)
+  {
+    return RECORDER_CLASS_NAMES.contains(className);
+  }
+
+  private static final class CaptureTable
+  {
+    final long[] eventIDs;
+    final int[] maximumNumbersOfFrames;
+
+    CaptureTable(final long[] eventIDs, final int[] maximumNumbersOfFrames)
+    {
+      this.eventIDs               = eventIDs;
+      this.maximumNumbersOfFrames = maximumNumbersOfFrames;
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * Running totals of everything a FlightRecorder has recorded, kept beside the ring so that they
+ * survive it wrapping around: for each event ID, how many events were recorded and a histogram
+ * (see ConcurrentLogHistogram) of the time between one of them and the next, and for spans a
+ * histogram of their durations too.  (The beginning of a span counts as its event.)  Adding an
+ * event is lock free and doesn't allocate, apart from the first time an event ID is seen.  Each
+ * event ID takes the same fixed amount of memory however many of its events are recorded.
+ *
+ * Event IDs from 0 up to EventIDFilter.NUMBER_OF_DENSE_EVENT_IDS are found straight from an
+ * array.  Any other event IDs are found in a small sorted array which is copied (under a lock)
+ * when one is added, just like EventIDFilter does.
+ */
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+final class EventStatistics
+{
+  private static final EventIDStatistics NOT_SEEN_YET = new EventIDStatistics(FlightRecorderEventID.INVALID);
+
+  private final AtomicReferenceArray<EventIDStatistics> denseEventIDStatistics = new AtomicReferenceArray<>(EventIDFilter.NUMBER_OF_DENSE_EVENT_IDS);
+  private volatile long[] otherEventIDs = new long[0];  // sorted
+  private volatile EventIDStatistics[] otherEventIDStatistics = new EventIDStatistics[0];  // in the same order
+
+  EventStatistics()
+  {
+    clear();
+  }
+
+  void recordEvent(final FlightRecorderEventID eventToRecord, final long eventID, final long timeStamp)
+  {
+    statisticsFor(eventToRecord, eventID).record(timeStamp);
+  }
+
+  void recordSpanEnd(final FlightRecorderEventID spanToEnd, final long eventID, final long durationNanos)
+  {
+    statisticsFor(spanToEnd, eventID).spanDurations.record(durationNanos);
+  }
+
+  private EventIDStatistics statisticsFor(final FlightRecorderEventID eventToRecord, final long eventID)
+  {
+    if ((eventID >= 0) && (eventID < EventIDFilter.NUMBER_OF_DENSE_EVENT_IDS))
+    {
+      final EventIDStatistics statistics = denseEventIDStatistics.get((int)eventID);
+      if (statistics != NOT_SEEN_YET)  return statistics;
+      final EventIDStatistics newStatistics = new EventIDStatistics(eventToRecord);
+      if (denseEventIDStatistics.compareAndSet((int)eventID, NOT_SEEN_YET, newStatistics))  return newStatistics;
+      return denseEventIDStatistics.get((int)eventID);  // Another thread got there first
+    }
+
+    final EventIDStatistics[] statistics = otherEventIDStatistics;
+    final int index = Arrays.binarySearch(otherEventIDs, eventID);
+    // The two arrays are replaced one after the other, so check they still agree
+    if ((index >= 0) && (index < statistics.length) && (statistics[index].eventID.getEventID() == eventID))  return statistics[index];
+    return addOtherEventID(eventToRecord, eventID);
+  }
+
+  private synchronized EventIDStatistics addOtherEventID(final FlightRecorderEventID eventToRecord, final long eventID)
+  {
+    final long[] eventIDs = otherEventIDs;
+    final int index = Arrays.binarySearch(eventIDs, eventID);
+    if (index >= 0)  return otherEventIDStatistics[index];
+
+    final int insertionPoint = -(index + 1);
+    final long[] moreEventIDs = new long[eventIDs.length + 1];
+    final EventIDStatistics[] moreStatistics = new EventIDStatistics[eventIDs.length + 1];
+    System.arraycopy(eventIDs, 0, moreEventIDs, 0, insertionPoint);
+    System.arraycopy(otherEventIDStatistics, 0, moreStatistics, 0, insertionPoint);
+    moreEventIDs[insertionPoint]   = eventID;
+    moreStatistics[insertionPoint] = new EventIDStatistics(eventToRecord);
+    System.arraycopy(eventIDs, insertionPoint, moreEventIDs, insertionPoint + 1, eventIDs.length - insertionPoint);
+    System.arraycopy(otherEventIDStatistics, insertionPoint, moreStatistics, insertionPoint + 1, eventIDs.length - insertionPoint);
+    otherEventIDStatistics = moreStatistics;
+    otherEventIDs          = moreEventIDs;
+    return moreStatistics[insertionPoint];
+  }
+
+  synchronized void clear()
+  {
+    for (int i=0; i<denseEventIDStatistics.length(); i++)  denseEventIDStatistics.set(i, NOT_SEEN_YET);
+    otherEventIDs          = new long[0];
+    otherEventIDStatistics = new EventIDStatistics[0];
+  }
+
+  EventSummaries getEventSummaries()
+  {
+    final List<EventIDStatistics> seen = new ArrayList<>();
+    for (int i=0; i<denseEventIDStatistics.length(); i++)
+    {
+      final EventIDStatistics statistics = denseEventIDStatistics.get(i);
+      if (statistics != NOT_SEEN_YET)  seen.add(statistics);
+    }
+    seen.addAll(Arrays.asList(otherEventIDStatistics));
+
+    final FlightRecorderEventID[] eventIDs = new FlightRecorderEventID[seen.size()];
+    final long[] numbersOfEvents = new long[seen.size()];
+    final FlightRecorderHistogram[] timesBetweenEvents = new FlightRecorderHistogram[seen.size()];
+    final FlightRecorderHistogram[] spanDurations = new FlightRecorderHistogram[seen.size()];
+    for (int i=0; i<eventIDs.length; i++)
+    {
+      final EventIDStatistics statistics = seen.get(i);
+      eventIDs[i]           = statistics.eventID;
+      timesBetweenEvents[i] = statistics.timesBetweenEvents.toHistogram();
+      // Every event but the first adds a time between events
+      numbersOfEvents[i]    = statistics.hasBeenRecorded() ? timesBetweenEvents[i].getNumberOfValues() + 1 : 0;
+      spanDurations[i]      = statistics.spanDurations.toHistogram();
+    }
+    return new EventSummaries(eventIDs, numbersOfEvents, timesBetweenEvents, spanDurations);
+  }
+
+  private static final class EventIDStatistics
+  {
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    final FlightRecorderEventID eventID;
+    private final AtomicLong lastTimeStamp = new AtomicLong(NO_TIMESTAMP);
+    final ConcurrentLogHistogram timesBetweenEvents = new ConcurrentLogHistogram();
+    final ConcurrentLogHistogram spanDurations = new ConcurrentLogHistogram();
+
+    EventIDStatistics(final FlightRecorderEventID eventID)
+    {
+      this.eventID = eventID;
+    }
+
+    void record(final long timeStamp)
+    {
+      final long previousTimeStamp = lastTimeStamp.getAndSet(timeStamp);
+      // Two threads can swap in their timestamps in the other order, so a gap can come out
+      // slightly negative; that is as good as no gap at all.
+      if (previousTimeStamp != NO_TIMESTAMP)  timesBetweenEvents.record(Math.max(0, timeStamp - previousTimeStamp));
+    }
+
+    boolean hasBeenRecorded()
+    {
+      return lastTimeStamp.get() != NO_TIMESTAMP;
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * The totals from EventStatistics as of one moment, ready to be given to a dumper: for each
+ * event ID that has been recorded, how many times, the histogram of the times between them,
+ * and for spans the histogram of their durations.
+ */
+import java.util.Arrays;
+
+final class EventSummaries
+{
+  static final EventSummaries NONE = new EventSummaries(new FlightRecorderEventID[0], new long[0], new FlightRecorderHistogram[0], new FlightRecorderHistogram[0]);
+
+  private final FlightRecorderEventID[] eventIDs;
+  private final long[] numbersOfEvents;
+  private final FlightRecorderHistogram[] timesBetweenEvents;
+  private final FlightRecorderHistogram[] spanDurations;
+
+  EventSummaries(final FlightRecorderEventID[] eventIDs, final long[] numbersOfEvents, final FlightRecorderHistogram[] timesBetweenEvents, final FlightRecorderHistogram[] spanDurations)
+  {
+    this.eventIDs           = eventIDs;
+    this.numbersOfEvents    = numbersOfEvents;
+    this.timesBetweenEvents = timesBetweenEvents;
+    this.spanDurations      = spanDurations;
+  }
+
+  /*
+   * Adds another event ID's summary, or its span durations, for when the summaries are being
+   * collected from a dump.  An event ID already summarized gets the new values.
+   */
+  EventSummaries with(final FlightRecorderEventID eventID, final long numberOfEvents, final FlightRecorderHistogram timesBetweenThem)
+  {
+    final EventSummaries summaries = copyIncluding(eventID);
+    final int index = summaries.indexOf(eventID);
+    summaries.numbersOfEvents[index]    = numberOfEvents;
+    summaries.timesBetweenEvents[index] = timesBetweenThem;
+    return summaries;
+  }
+
+  EventSummaries withSpans(final FlightRecorderEventID spanID, final FlightRecorderHistogram durations)
+  {
+    final EventSummaries summaries = copyIncluding(spanID);
+    summaries.spanDurations[summaries.indexOf(spanID)] = durations;
+    return summaries;
+  }
+
+  /*
+   * The summaries of both, with an event ID that is in both summarized once: its counts are
+   * added together, and so are its histograms.  (For a merged dump of several recorders the
+   * times between events are then those within each recorder, not across them.)
+   */
+  EventSummaries plus(final EventSummaries other)
+  {
+    EventSummaries summaries = this;
+    for (int i=0; i<other.eventIDs.length; i++)
+    {
+      summaries = summaries.copyIncluding(other.eventIDs[i]);
+      final int index = summaries.indexOf(other.eventIDs[i]);
+      summaries.numbersOfEvents[index]   += other.numbersOfEvents[i];
+      summaries.timesBetweenEvents[index] = summaries.timesBetweenEvents[index].plus(other.timesBetweenEvents[i]);
+      summaries.spanDurations[index]      = summaries.spanDurations[index].plus(other.spanDurations[i]);
+    }
+    return summaries;
+  }
+
+  private int indexOf(final FlightRecorderEventID eventID)
+  {
+    for (int i=0; i<eventIDs.length; i++)
+      if (eventIDs[i].getEventID() == eventID.getEventID())  return i;
+    return -1;
+  }
+
+  private EventSummaries copyIncluding(final FlightRecorderEventID eventID)
+  {
+    final int newLength = (indexOf(eventID) >= 0) ? eventIDs.length : eventIDs.length + 1;
+    final FlightRecorderEventID[] copyOfEventIDs = Arrays.copyOf(eventIDs, newLength);
+    final long[] copyOfNumbersOfEvents = Arrays.copyOf(numbersOfEvents, newLength);
+    final FlightRecorderHistogram[] copyOfTimesBetweenEvents = Arrays.copyOf(timesBetweenEvents, newLength);
+    final FlightRecorderHistogram[] copyOfSpanDurations = Arrays.copyOf(spanDurations, newLength);
+    if (newLength > eventIDs.length)
+    {
+      copyOfEventIDs[eventIDs.length]           = eventID;
+      copyOfTimesBetweenEvents[eventIDs.length] = FlightRecorderHistogram.EMPTY;
+      copyOfSpanDurations[eventIDs.length]      = FlightRecorderHistogram.EMPTY;
+    }
+    return new EventSummaries(copyOfEventIDs, copyOfNumbersOfEvents, copyOfTimesBetweenEvents, copyOfSpanDurations);
+  }
+
+  void reportTo(final FlightRecorderEventDumper eventDumper)
+  {
+    for (int i=0; i<eventIDs.length; i++)
+      if (numbersOfEvents[i] > 0)  eventDumper.dumpEventSummary(eventIDs[i], numbersOfEvents[i], timesBetweenEvents[i]);
+    for (int i=0; i<eventIDs.length; i++)
+      if (spanDurations[i].getNumberOfValues() > 0)  eventDumper.dumpSpanSummary(eventIDs[i], spanDurations[i]);
+  }
+}
@@ -0,0 +1,67 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * Records the first N events in each window of time (each second, say) and none of the rest.
+ * The number of the current window and the count in it are packed into one AtomicLong (the
+ * window number in the high 32 bits, the count in the low 32) so that moving on to a new
+ * window and counting in it can't get mixed up between threads.  Window numbers wrap around
+ * after 2^32 windows, which only matters for comparing them, and that is done wrap safely.
+ * The first window starts the first time the policy is asked.
+ */
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+final class FirstNPerWindowSamplingPolicy implements FlightRecorderSamplingPolicy
+{
+  private static final long COUNT_MASK = 0xFFFF_FFFFL;
+  private static final long NOT_STARTED = Long.MIN_VALUE;
+
+  private final long n;
+  private final long windowNanos;
+  private final AtomicLong startNanos = new AtomicLong(NOT_STARTED);
+  private final AtomicLong windowAndCount = new AtomicLong();
+
+  FirstNPerWindowSamplingPolicy(final long n, final long window, final TimeUnit windowUnit)
+  {
+    if ((n <= 0) || (n > Integer.MAX_VALUE) || (window <= 0))
+    {
+      throw new IllegalArgumentException(String.format("Can't record the first %d events of each window of %d %s", n, window, windowUnit));
+    }
+    this.n      = n;
+    windowNanos = windowUnit.toNanos(window);
+  }
+
+  @Override
+  public boolean shouldRecord(final FlightRecorderClock clock)
+  {
+    final long now = clock.currentTimeNanos();
+    long start = startNanos.get();
+    if (start == NOT_STARTED)
+    {
+      startNanos.compareAndSet(NOT_STARTED, now);
+      start = startNanos.get();
+    }
+    // Another thread may have started it just after this one read the clock
+    final int currentWindow = (int)(Math.max(0, now - start) / windowNanos);
+    while (true)
+    {
+      final long state = windowAndCount.get();
+      final int stateWindow = (int)(state >>> 32);
+      final long count = state & COUNT_MASK;
+      if (currentWindow - stateWindow > 0)
+      {
+        // First event of a new window
+        if (windowAndCount.compareAndSet(state, ((long)currentWindow << 32) | 1))  return true;
+      }
+      else
+      {
+        if (count >= n)  return false;
+        if (windowAndCount.compareAndSet(state, state + 1))  return true;
+      }
+    }
+  }
+}
@@ -14,18 +14,135 @@ package io.github.nickmacdon.utility.debug.flightrecorder;
  * 
  * final FlightRecorder fr = FlightRecorderFactory.getFlightRecorder().startRecording();
  * 
+ * recordEvent() can also be given one or two longs to keep with the event (a request ID, a
+ * queue depth, a byte count...).  They are stored as primitives, so nothing is boxed or
+ * allocated, and are available from FlightRecorderEvent.getPayload() when dumped.  A recorder
+ * that can't store them (by default) just records the event without them.
+ * 
+ * Events can be disabled (and enabled again) by their event ID at any time, even from another
+ * thread while events are being recorded.  A disabled event costs next to nothing to record,
+ * since it is thrown away before anything else is done, and it doesn't use a sequence number.
+ * A recorder that can't filter (by default) ignores being asked to disable an event, keeps
+ * recording it, and says so with isEventEnabled().
+ * 
+ * A very chatty event can be given a FlightRecorderSamplingPolicy so that only some of its
+ * events are recorded; the dumps say how many of them were suppressed.  A recorder that can't
+ * sample (by default) ignores the policy and records all of them.
+ * 
+ * setStackDepth() has the events of an event ID recorded along with (up to the given number of
+ * frames of) the stack they were recorded from, for when you need to know how the code got
+ * there and not just that it did.  Capturing a stack costs a few microseconds, so it is off
+ * unless asked for.  Each different stack is only kept once (see FlightRecorderEvent.getStackID()),
+ * so an event with its stack takes no more room in the ring than one without.  Stacks are
+ * only ever a help, so a recorder that can't capture them (by default) ignores setStackDepth()
+ * and records its events without them.
+ * 
+ * beginSpan() and endSpan() measure how long something takes.  beginSpan() records the start
+ * of the span and returns a token (a plain long, so nothing is allocated) to give to endSpan(),
+ * which records the end with the span's duration in nanoseconds.  The dumps show the duration
+ * and how the spans nest, and a histogram of each span's durations is kept alongside the
+ * per event ID counts.  If the beginning wasn't recorded (not recording, disabled or sampled
+ * out) the token is NO_SPAN and the end isn't recorded either; a span that was recorded never
+ * gets NO_SPAN, even from a clock that reads 0.  A recorder that can't record spans (by
+ * default) records the beginning as a plain event and returns NO_SPAN, so there is no end.
+ * 
+ * trigger() starts a triggered dump, for a FlightRecorder from
+ * FlightRecorderFactory.getTriggeredFlightRecorder(); for any other it does nothing.
+ * triggerNow() dumps what has been recorded up to now straight away instead of waiting for the
+ * events after the trigger, for when no more are coming (such as a thread dying of an uncaught
+ * exception).
+ * 
+ * dumpMatchingEntriesTo() dumps only the events matching a FlightRecorderQuery: a range of
+ * sequence numbers or timestamps, and maybe only some event IDs.
+ * 
+ * takeSnapshot() quickly copies what has been recorded so it can be dumped later, or from
+ * another thread, without holding up recording while the dump is formatted.
+ *
+ * getStatistics() says how many events have been recorded, lost and suppressed, how full the
+ * ring is and how the last dump went, so the recorder's overhead can be watched while it runs.
+ * FlightRecorderFactory.registerMXBean() (done for you for the named recorders) makes the same
+ * numbers available through JMX, along with starting, stopping and dumping the recorder.
+ * 
  * Please use FlightRecorder.INVALID in place of using null to initialize any variable... or
  * as a return type when you might have been considering returning null instead.
  */
 
 public interface FlightRecorder
 {
+  public static final long NO_SPAN = 0;
+
   FlightRecorder recordEvent(FlightRecorderEventID eventToRecord);
+  default FlightRecorder recordEvent(final FlightRecorderEventID eventToRecord, final long payload0)
+  {
+    return recordEvent(eventToRecord);
+  }
+  default FlightRecorder recordEvent(final FlightRecorderEventID eventToRecord, final long payload0, final long payload1)
+  {
+    return recordEvent(eventToRecord);
+  }
+  default FlightRecorder enableEvent(final FlightRecorderEventID eventToEnable)
+  {
+    return this;  // Everything is always enabled unless the recorder can filter
+  }
+  default FlightRecorder disableEvent(final FlightRecorderEventID eventToDisable)
+  {
+    return this;  // Still enabled, as isEventEnabled() says
+  }
+  default FlightRecorder enableAllEvents()
+  {
+    return this;
+  }
+  default FlightRecorder disableAllEvents()
+  {
+    return this;
+  }
+  default boolean isEventEnabled(final FlightRecorderEventID eventToCheck)
+  {
+    return true;
+  }
+  default FlightRecorder setSamplingPolicy(final FlightRecorderEventID eventToSample, final FlightRecorderSamplingPolicy samplingPolicy)
+  {
+    return this;  // Every event is recorded unless the recorder can sample
+  }
+  default FlightRecorder setStackDepth(final FlightRecorderEventID eventToCapture, final int maximumNumberOfFrames)
+  {
+    return this;  // No stacks unless the recorder can capture them
+  }
+  default long beginSpan(final FlightRecorderEventID spanToBegin)
+  {
+    recordEvent(spanToBegin);
+    return NO_SPAN;
+  }
+  default FlightRecorder endSpan(final FlightRecorderEventID spanToEnd, final long spanToken)
+  {
+    return this;  // Only NO_SPAN ever comes from the default beginSpan()
+  }
   FlightRecorder startRecording();
   FlightRecorder stopRecording();
   FlightRecorder clearAllRecordedEvents();
   int getNumberOfEntriesRecorded();
   FlightRecorder dumpEntriesTo(FlightRecorderEventDumper eventDumper);
+  default FlightRecorder dumpMatchingEntriesTo(final FlightRecorderQuery query, final FlightRecorderEventDumper eventDumper)
+  {
+    takeSnapshot().dumpMatchingEntriesTo(query, eventDumper);
+    return this;
+  }
+  default FlightRecorderSnapshot takeSnapshot()
+  {
+    return FlightRecorderSnapshot.byDumping(this);
+  }
+  default FlightRecorder trigger()
+  {
+    return this;  // Only recorders made with FlightRecorderFactory.getTriggeredFlightRecorder() do anything
+  }
+  default FlightRecorder triggerNow()
+  {
+    return trigger();
+  }
+  default FlightRecorderStatistics getStatistics()
+  {
+    return FlightRecorderStatistics.ofEntries(getNumberOfEntriesRecorded());
+  }
 
   public static final FlightRecorder INVALID = new FlightRecorder()
   {
@@ -35,6 +152,72 @@ public interface FlightRecorder
       throw makeException(String.format("recordEvent(%s)", eventToRecord.getEventName()));
     }
     
+    @Override
+    public FlightRecorder recordEvent(final FlightRecorderEventID eventToRecord, final long payload0)
+    {
+      throw makeException(String.format("recordEvent(%s, %d)", eventToRecord.getEventName(), payload0));
+    }
+    
+    @Override
+    public FlightRecorder recordEvent(final FlightRecorderEventID eventToRecord, final long payload0, final long payload1)
+    {
+      throw makeException(String.format("recordEvent(%s, %d, %d)", eventToRecord.getEventName(), payload0, payload1));
+    }
+    
+    @Override
+    public FlightRecorder enableEvent(final FlightRecorderEventID eventToEnable)
+    {
+      throw makeException(String.format("enableEvent(%s)", eventToEnable.getEventName()));
+    }
+    
+    @Override
+    public FlightRecorder disableEvent(final FlightRecorderEventID eventToDisable)
+    {
+      throw makeException(String.format("disableEvent(%s)", eventToDisable.getEventName()));
+    }
+    
+    @Override
+    public FlightRecorder enableAllEvents()
+    {
+      throw makeException("enableAllEvents()");
+    }
+    
+    @Override
+    public FlightRecorder disableAllEvents()
+    {
+      throw makeException("disableAllEvents()");
+    }
+    
+    @Override
+    public boolean isEventEnabled(final FlightRecorderEventID eventToCheck)
+    {
+      throw makeException(String.format("isEventEnabled(%s)", eventToCheck.getEventName()));
+    }
+    
+    @Override
+    public FlightRecorder setSamplingPolicy(final FlightRecorderEventID eventToSample, final FlightRecorderSamplingPolicy samplingPolicy)
+    {
+      throw makeException(String.format("setSamplingPolicy(%s, %s)", eventToSample.getEventName(), samplingPolicy));
+    }
+    
+    @Override
+    public FlightRecorder setStackDepth(final FlightRecorderEventID eventToCapture, final int maximumNumberOfFrames)
+    {
+      throw makeException(String.format("setStackDepth(%s, %d)", eventToCapture.getEventName(), maximumNumberOfFrames));
+    }
+    
+    @Override
+    public long beginSpan(final FlightRecorderEventID spanToBegin)
+    {
+      throw makeException(String.format("beginSpan(%s)", spanToBegin.getEventName()));
+    }
+    
+    @Override
+    public FlightRecorder endSpan(final FlightRecorderEventID spanToEnd, final long spanToken)
+    {
+      throw makeException(String.format("endSpan(%s, %d)", spanToEnd.getEventName(), spanToken));
+    }
+    
     @Override
     public FlightRecorder startRecording()
     {
@@ -59,6 +242,36 @@ public interface FlightRecorder
       throw makeException(String.format("dumpEntriesTo(%s)", eventDumper));
     }
     
+    @Override
+    public FlightRecorder dumpMatchingEntriesTo(final FlightRecorderQuery query, final FlightRecorderEventDumper eventDumper)
+    {
+      throw makeException(String.format("dumpMatchingEntriesTo(%s, %s)", query, eventDumper));
+    }
+    
+    @Override
+    public FlightRecorderSnapshot takeSnapshot()
+    {
+      throw makeException("takeSnapshot()");
+    }
+    
+    @Override
+    public FlightRecorder trigger()
+    {
+      throw makeException("trigger()");
+    }
+    
+    @Override
+    public FlightRecorder triggerNow()
+    {
+      throw makeException("triggerNow()");
+    }
+    
+    @Override
+    public FlightRecorderStatistics getStatistics()
+    {
+      throw makeException("getStatistics()");
+    }
+    
     @Override
     public FlightRecorder clearAllRecordedEvents()
     {
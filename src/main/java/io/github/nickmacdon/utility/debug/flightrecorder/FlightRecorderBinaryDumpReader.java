@@ -0,0 +1,319 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * This reads a dump written by the binary dumper (see FlightRecorderFactory.getBinaryDumper())
+ * and replays it through any FlightRecorderEventDumper, for example the string dumper to turn
+ * it into the usual text.  The names of the events are in the dump, so your Enum isn't needed.
+ * Like the dumper, it streams through one reusable buffer rather than reading the whole dump in.
+ *
+ * It can also be run from the command line to print a binary dump as text:
+ *   java -cp flight-recorder-utility.jar io.github.nickmacdon.utility.debug.flightrecorder.FlightRecorderBinaryDumpReader file
+ */
+import static io.github.nickmacdon.utility.debug.flightrecorder.BinaryDumpFormat.*;
+import static io.github.nickmacdon.utility.debug.flightrecorder.VariableLengthEncoding.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+public final class FlightRecorderBinaryDumpReader
+{
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final ReadableByteChannel channel;
+  private final Map<Long, FlightRecorderEventID> namedEventIDs = new HashMap<>();
+  private final String dumpTitle;
+  private final long dumpCreationTime;
+  private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(BYTE_ORDER);
+  private boolean endOfChannel = false;
+
+  public FlightRecorderBinaryDumpReader(final ReadableByteChannel channel)
+  {
+    this.channel = channel;
+    buffer.flip();  // Starts out empty
+    try
+    {
+      fill(8);
+      final int magic = buffer.getInt();
+      if (magic != MAGIC)
+      {
+        throw new IllegalStateException(String.format("Not a flight recorder binary dump, magic number is 0x%08x", magic));
+      }
+      final int version = buffer.getInt();
+      if (version != VERSION)
+      {
+        throw new IllegalStateException(String.format("Unsupported flight recorder binary dump version %d", version));
+      }
+      fill(MAXIMUM_FIXED_RECORD_SIZE);
+      dumpCreationTime = getVarLong(buffer);
+      dumpTitle = getString();
+    }
+    catch (final BufferUnderflowException e)
+    {
+      throw new IllegalStateException("Flight recorder binary dump is truncated", e);
+    }
+  }
+
+  public String getDumpTitle()
+  {
+    return dumpTitle;
+  }
+
+  public long getDumpCreationTime()
+  {
+    return dumpCreationTime;
+  }
+
+  /*
+   * Whether there is another dump to read, for when several were written one after another.
+   */
+  public boolean hasMoreDumps()
+  {
+    fill(1);
+    return buffer.hasRemaining();
+  }
+
+  /*
+   * Replays the rest of the dump through the given dumper, up to and including dumpComplete().
+   */
+  public void dumpEntriesTo(final FlightRecorderEventDumper eventDumper)
+  {
+    long startTimeStamp         = 0;
+    long previousSequenceNumber = 0;
+    long previousTimeStamp      = 0;
+    int recorderIndex           = FlightRecorderEvent.NO_RECORDER;
+    try
+    {
+      while (true)
+      {
+        fill(MAXIMUM_FIXED_RECORD_SIZE);
+        final byte tag = buffer.get();
+        switch (tag)
+        {
+          case TAG_TIMESTAMPS:
+            startTimeStamp = getVarLong(buffer);
+            eventDumper.setDumpTimestampsNanos(startTimeStamp, getVarLong(buffer));
+            break;
+
+          case TAG_DUMP_BEGINS:
+            previousSequenceNumber = 0;
+            previousTimeStamp      = startTimeStamp;
+            recorderIndex          = FlightRecorderEvent.NO_RECORDER;
+            eventDumper.dumpBegins();
+            break;
+
+          case TAG_NUMBER_OF_EVENTS:
+            eventDumper.setNumberOfEventsToBeDumped((int)getVarLong(buffer));
+            break;
+
+          case TAG_EVENTS_LOST:
+            eventDumper.setNumberOfEventsLostDuringSnapshot((int)getVarLong(buffer));
+            break;
+
+          case TAG_EVENTS_SUPPRESSED:
+            final FlightRecorderEventID suppressedEventID = lookUpEventID(getZigZagVarLong(buffer));
+            eventDumper.setNumberOfEventsSuppressed(suppressedEventID, getVarLong(buffer));
+            break;
+
+          case TAG_EVENT_SUMMARY:
+            final FlightRecorderEventID summarizedEventID = lookUpEventID(getZigZagVarLong(buffer));
+            final long numberOfEvents = getVarLong(buffer);
+            eventDumper.dumpEventSummary(summarizedEventID, numberOfEvents, getHistogram());
+            break;
+
+          case TAG_SPAN_SUMMARY:
+            final FlightRecorderEventID summarizedSpanID = lookUpEventID(getZigZagVarLong(buffer));
+            eventDumper.dumpSpanSummary(summarizedSpanID, getHistogram());
+            break;
+
+          case TAG_EVENT_NAME:
+            final long namedEventID = getZigZagVarLong(buffer);
+            final String eventName  = getString();
+            namedEventIDs.put(namedEventID, new RecordedFlightRecorderEventID(namedEventID, eventName));
+            eventDumper.setEventName(namedEventID, eventName);
+            break;
+
+          case TAG_THREAD_NAME:
+            final int threadIndex = (int)getVarLong(buffer);
+            eventDumper.setThreadName(threadIndex, getString());
+            break;
+
+          case TAG_RECORDER_NAME:
+            final int namedRecorderIndex = (int)getVarLong(buffer);
+            eventDumper.setRecorderName(namedRecorderIndex, getString());
+            break;
+
+          case TAG_RECORDER:
+            recorderIndex = (int)getVarLong(buffer);
+            break;
+
+          case TAG_STACK:
+            final int stackID = (int)getVarLong(buffer);
+            eventDumper.setStack(stackID, getFrames());
+            break;
+
+          case TAG_LANE_BEGINS:
+            eventDumper.dumpLaneBegins((int)getVarLong(buffer));
+            break;
+
+          case TAG_EVENT:
+            final FlightRecorderEventID eventID = lookUpEventID(getZigZagVarLong(buffer));
+            previousSequenceNumber += getZigZagVarLong(buffer);
+            previousTimeStamp      += getZigZagVarLong(buffer);
+            final int flags = getVarInt(buffer);
+            final int numberOfPayloads = EventFlags.numberOfPayloads(flags);
+            if (numberOfPayloads > FlightRecorderEvent.MAXIMUM_NUMBER_OF_PAYLOADS)
+            {
+              throw new IllegalStateException(String.format("Event with %d payloads in flight recorder binary dump", numberOfPayloads));
+            }
+            final long payload0 = (numberOfPayloads > 0) ? getZigZagVarLong(buffer) : 0;
+            final long payload1 = (numberOfPayloads > 1) ? getZigZagVarLong(buffer) : 0;
+            int eventStackID = FlightRecorderEvent.NO_STACK;
+            if (EventFlags.hasStack(flags))
+            {
+              fill(MAXIMUM_BYTES_FOR_A_LONG);
+              eventStackID = (int)getVarLong(buffer);
+            }
+            eventDumper.dumpEvent(DefaultFlightRecorderEvent.withFlags(previousTimeStamp, previousSequenceNumber, eventID, flags, payload0, payload1, eventStackID, recorderIndex));
+            break;
+
+          case TAG_END:
+            eventDumper.dumpComplete();
+            return;
+
+          default:
+            throw new IllegalStateException(String.format("Unknown record tag %d in flight recorder binary dump", tag));
+        }
+      }
+    }
+    catch (final BufferUnderflowException e)
+    {
+      throw new IllegalStateException("Flight recorder binary dump is truncated", e);
+    }
+  }
+
+  private FlightRecorderEventID lookUpEventID(final long eventID)
+  {
+    final FlightRecorderEventID namedEventID = namedEventIDs.get(eventID);
+    if (namedEventID != null)  return namedEventID;
+    final FlightRecorderEventID unnamedEventID = new RecordedFlightRecorderEventID(eventID);
+    namedEventIDs.put(eventID, unnamedEventID);
+    return unnamedEventID;
+  }
+
+  private FlightRecorderHistogram getHistogram()
+  {
+    final int numberOfBuckets = (int)getVarLong(buffer);
+    if ((numberOfBuckets < 0) || (numberOfBuckets > FlightRecorderHistogram.NUMBER_OF_BUCKETS))
+    {
+      throw new IllegalStateException(String.format("Histogram with %d buckets in flight recorder binary dump", numberOfBuckets));
+    }
+    final long[] bucketCounts = new long[numberOfBuckets];
+    for (int i=0; i<numberOfBuckets; i++)
+    {
+      fill(MAXIMUM_BYTES_FOR_A_LONG);
+      bucketCounts[i] = getVarLong(buffer);
+    }
+    return new FlightRecorderHistogram(bucketCounts);
+  }
+
+  private StackTraceElement[] getFrames()
+  {
+    final int numberOfFrames = (int)getVarLong(buffer);
+    if ((numberOfFrames < 0) || (numberOfFrames > EventStackCapture.MAXIMUM_STACK_DEPTH))
+    {
+      throw new IllegalStateException(String.format("Stack with %d frames in flight recorder binary dump", numberOfFrames));
+    }
+    final StackTraceElement[] frames = new StackTraceElement[numberOfFrames];
+    for (int i=0; i<numberOfFrames; i++)
+    {
+      fill(MAXIMUM_BYTES_FOR_A_LONG);
+      final String className = getString();
+      fill(MAXIMUM_BYTES_FOR_A_LONG);
+      final String methodName = getString();
+      fill(MAXIMUM_BYTES_FOR_A_LONG);
+      final String fileName = getString();
+      fill(MAXIMUM_BYTES_FOR_A_LONG);
+      frames[i] = new StackTraceElement(className, methodName, fileName.isEmpty() ? null : fileName, (int)getZigZagVarLong(buffer));
+    }
+    return frames;
+  }
+
+  /*
+   * A corrupt length is caught before anything is allocated for it, and one that runs past the
+   * end of the dump once the bytes that are there have been read.
+   */
+  private String getString()
+  {
+    final long claimedLength = getVarLong(buffer);
+    if ((claimedLength < 0) || (claimedLength > Integer.MAX_VALUE - 8))  throw corruptStringOf(claimedLength);
+    final int length = (int)claimedLength;
+    if (length > buffer.capacity())
+    {
+      final ByteBuffer biggerBuffer = ByteBuffer.allocate(length).order(BYTE_ORDER);
+      biggerBuffer.put(buffer);
+      biggerBuffer.flip();
+      buffer = biggerBuffer;
+    }
+    fill(length);
+    if (buffer.remaining() < length)  throw corruptStringOf(length);
+    final byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, CHARSET);
+  }
+
+  private IllegalStateException corruptStringOf(final long claimedLength)
+  {
+    return new IllegalStateException(String.format(
+      "Flight recorder binary dump is truncated or corrupt, it claims a string of %d bytes with %d left", claimedLength, buffer.remaining()
+    ));
+  }
+
+  /*
+   * Tries to make sure there are at least the given number of bytes in the buffer.  Near the
+   * end of the dump there may legitimately be fewer; reading past them underflows.
+   */
+  private void fill(final int numberOfBytes)
+  {
+    if ((buffer.remaining() >= numberOfBytes) || endOfChannel)  return;
+    buffer.compact();
+    try
+    {
+      while ((buffer.position() < numberOfBytes) && !endOfChannel)
+        if (channel.read(buffer) < 0)  endOfChannel = true;
+    }
+    catch (final IOException e)
+    {
+      throw new UncheckedIOException("Unable to read flight recorder binary dump", e);
+    }
+    finally
+    {
+      buffer.flip();
+    }
+  }
+
+  public static void main(final String[] args) throws IOException
+  {
+    if (args.length != 1)
+    {
+      System.err.println("Usage: FlightRecorderBinaryDumpReader binaryDumpFile");
+      System.exit(1);
+    }
+    try (final FileChannel channel = FileChannel.open(Paths.get(args[0]), StandardOpenOption.READ))
+    {
+      final FlightRecorderBinaryDumpReader reader = new FlightRecorderBinaryDumpReader(channel);
+      final FlightRecorderEventDumper eventDumper = FlightRecorderFactory.getWriterDumper(reader.getDumpTitle(), System.out);
+      while (reader.hasMoreDumps())  reader.dumpEntriesTo(eventDumper);
+    }
+  }
+}
@@ -0,0 +1,39 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * Where a FlightRecorder gets the timestamps for its events.  A clock returns nanoseconds since
+ * the epoch (1970-01-01T00:00:00Z), so a timestamp can be shown as a wall clock time, but the
+ * clocks from the FlightRecorderFactory only look at the wall clock once and then count
+ * with System.nanoTime(), so timestamps never go backwards and events microseconds apart can
+ * be told apart.  A recorder reads its clock once per recorded event, and once more for an
+ * event with a time based sampling policy (see FlightRecorderSamplingPolicy).
+ *
+ * FlightRecorderFactory.getMonotonicClock() is the default.  For very hot events where even
+ * System.nanoTime() is too expensive, FlightRecorderFactory.getCoarseClock() is just a read
+ * of a field that a background thread keeps up to date, at the cost of resolution.
+ *
+ * Please use FlightRecorderClock.INVALID in place of using null to initialize any variable... or
+ * as a return type when you might have been considering returning null instead.
+ */
+public interface FlightRecorderClock
+{
+  long currentTimeNanos();
+
+  public static final FlightRecorderClock INVALID = new FlightRecorderClock()
+  {
+    @Override
+    public long currentTimeNanos()
+    {
+      throw makeException("currentTimeNanos()");
+    }
+
+    private RuntimeException makeException(final String caller)
+    {
+      return new IllegalStateException("Use of FlightRecorderClock.INVALID: " + caller);
+    }
+  };
+}
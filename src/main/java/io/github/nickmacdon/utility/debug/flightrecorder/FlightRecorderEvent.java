@@ -9,6 +9,31 @@ package io.github.nickmacdon.utility.debug.flightrecorder;
  * won't need to implement one of these yourself, you can just use the default
  * implementation in DefaultFlightRecorderEvent
  * 
+ * getEventTimestamp() is in milliseconds since the epoch, like System.currentTimeMillis().  The
+ * FlightRecorders record in nanoseconds though (see FlightRecorderClock), and the full resolution
+ * is available from getEventTimestampNanos().  If you do implement your own event, the default
+ * version of it just converts getEventTimestamp().
+ *
+ * An event may carry up to MAXIMUM_NUMBER_OF_PAYLOADS longs given to recordEvent() along with
+ * it, such as a request ID or a queue depth.  Events without any just report zero of them.
+ *
+ * getEventKind() tells a single moment from the beginning or end of a span (see
+ * FlightRecorder.beginSpan()); the end of a span has its duration in nanoseconds as payload 0.
+ *
+ * getThreadIndex() is a small number for the thread that recorded the event (the same number
+ * for the same thread in every recorder), or NO_THREAD when that isn't known.  The name of each
+ * thread is given to the dumper once per dump with FlightRecorderEventDumper.setThreadName().
+ *
+ * getStackID() says where in the code the event was recorded from, for the event IDs that were
+ * asked to capture their stacks (see FlightRecorder.setStackDepth()), or is NO_STACK.  Each
+ * different stack is given to the dumper once per dump with FlightRecorderEventDumper.setStack(),
+ * and the events that were recorded from it just refer to it by its ID.
+ *
+ * getRecorderIndex() says which recorder the event came from when the dumps of several are
+ * merged into one (see FlightRecorderFactory.dumpMergedEntriesTo()), or is NO_RECORDER in the
+ * dump of just one.  The name of each recorder is given to the dumper once per merged dump
+ * with FlightRecorderEventDumper.setRecorderName().
+ * 
  * Please use FlightRecorderEvent.INVALID in place of using null to initialize any variable... or
  * as a return type when you might have been considering returning null instead.
  */
@@ -16,6 +41,48 @@ public interface FlightRecorderEvent extends FlightRecorderEventID
 {
   long getEventTimestamp();
   long getSequenceNumber();
+
+  default long getEventTimestampNanos()
+  {
+    return getEventTimestamp() * 1_000_000L;
+  }
+
+  default FlightRecorderEventKind getEventKind()
+  {
+    return FlightRecorderEventKind.POINT;
+  }
+
+  public static final int MAXIMUM_NUMBER_OF_PAYLOADS = 2;
+  public static final int NO_THREAD = 0;
+
+  default int getThreadIndex()
+  {
+    return NO_THREAD;
+  }
+
+  public static final int NO_STACK = 0;
+
+  default int getStackID()
+  {
+    return NO_STACK;
+  }
+
+  public static final int NO_RECORDER = 0;
+
+  default int getRecorderIndex()
+  {
+    return NO_RECORDER;
+  }
+
+  default int getNumberOfPayloads()
+  {
+    return 0;
+  }
+
+  default long getPayload(final int payloadNumber)
+  {
+    throw new IndexOutOfBoundsException(String.format("Attempt to get payload number %d when there are %d payloads", payloadNumber, getNumberOfPayloads()));
+  }
   
   public static final FlightRecorderEvent INVALID = new FlightRecorderEvent()
   {
@@ -43,6 +110,48 @@ public interface FlightRecorderEvent extends FlightRecorderEventID
       throw makeException("getEventTimestamp()");
     }
 
+    @Override
+    public long getEventTimestampNanos()
+    {
+      throw makeException("getEventTimestampNanos()");
+    }
+
+    @Override
+    public FlightRecorderEventKind getEventKind()
+    {
+      throw makeException("getEventKind()");
+    }
+
+    @Override
+    public int getThreadIndex()
+    {
+      throw makeException("getThreadIndex()");
+    }
+
+    @Override
+    public int getStackID()
+    {
+      throw makeException("getStackID()");
+    }
+
+    @Override
+    public int getRecorderIndex()
+    {
+      throw makeException("getRecorderIndex()");
+    }
+
+    @Override
+    public int getNumberOfPayloads()
+    {
+      throw makeException("getNumberOfPayloads()");
+    }
+
+    @Override
+    public long getPayload(final int payloadNumber)
+    {
+      throw makeException(String.format("getPayload(%d)", payloadNumber));
+    }
+
     @Override
     public FlightRecorderEvent getEvent(final long sequenceNumber)
     {
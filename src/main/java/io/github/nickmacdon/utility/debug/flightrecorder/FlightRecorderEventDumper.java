@@ -9,16 +9,102 @@ package io.github.nickmacdon.utility.debug.flightrecorder;
  * Perhaps, for example, you want one that composes an email for the user to send.
  * Probably use FlightRecorderEventDumperToString as a prototype.
  * 
+ * The FlightRecorders give the dump timestamps with setDumpTimestampsNanos(), which by default
+ * passes them on to setDumpTimestamps() in milliseconds.  Override it if you want the full
+ * resolution.
+ *
+ * setNumberOfEventsLostDuringSnapshot() tells the dumper how many of the oldest events were
+ * overwritten while the recording was being copied for the dump (see FlightRecorderSnapshot), or
+ * before a StreamingFlightRecorder could drain them.  setNumberOfEventsSuppressed() tells it, for
+ * each event ID with a FlightRecorderSamplingPolicy, how many of its events weren't recorded.
+ * They are called after setNumberOfEventsToBeDumped(), and by default ignored.
+ *
+ * dumpEventSummary() is called after the last dumpEvent(), once for each event ID that has been
+ * recorded since the recording was last cleared (not just the ones still in the ring), with how
+ * many times and a histogram of the nanoseconds between one of them and the next.  Then
+ * dumpSpanSummary() is called for each span (see FlightRecorder.beginSpan()) that has ended,
+ * with a histogram of the spans' durations in nanoseconds.  They are also ignored by default.
+ * The beginning and end of a span are dumped as events of their own; see getEventKind().
+ *
+ * setThreadName() is called before the events, once for each thread that recorded any of them,
+ * so the dumper can turn each event's FlightRecorderEvent.getThreadIndex() into a name without
+ * the name being kept with every event.  A dumper from FlightRecorderFactory.getThreadLaneDumper()
+ * puts the events in lanes, one per thread, and calls dumpLaneBegins() before each lane.  Both
+ * are ignored by default.
+ *
+ * setRecorderName() is only called for a merged dump of several recorders (see
+ * FlightRecorderFactory.dumpMergedEntriesTo()), before the thread names, once for each of the
+ * recorders, so each event's FlightRecorderEvent.getRecorderIndex() can be turned into a name.
+ * Ignored by default.
+ *
+ * In the same way setEventName() is called before the events, once for each event ID in them,
+ * so a dumper that keeps the names apart from the events (like the binary dumper) has them up
+ * front.  The names come from the EventIDTable, so this doesn't call into your Enum either.
+ * Ignored by default; FlightRecorderEvent.getEventName() still works.
+ *
+ * setStack() is called after them, once for each stack that any of the events were recorded
+ * from (see FlightRecorder.setStackDepth()), with its frames, innermost first.  The events
+ * only carry the stack's ID (FlightRecorderEvent.getStackID()), so a dumper that wants to show
+ * the stacks has to keep them; by default they are ignored.
+ *
+ * getNumberOfBytesDumped() is how much the dumper has written so far (characters, for the text
+ * dumpers), which the FlightRecorders note for their FlightRecorderStatistics.  It is 0 for a
+ * dumper that doesn't know.
+ * 
  * Please use FlightRecorderEventDumper.INVALID in place of using null to initialize any variable... or
  * as a return type when you might have been considering returning null instead.
  */
 public interface FlightRecorderEventDumper
 {
   void setDumpTimestamps(long startTimeStamp, long endTimeStamp);
+  default void setDumpTimestampsNanos(final long startTimeStampNanos, final long endTimeStampNanos)
+  {
+    setDumpTimestamps(startTimeStampNanos / 1_000_000L, endTimeStampNanos / 1_000_000L);
+  }
   void setNumberOfEventsToBeDumped(int numberOfEvents);
+  default void setNumberOfEventsLostDuringSnapshot(final int numberOfEventsLost)
+  {
+    // By default the dumper doesn't care
+  }
+  default void setNumberOfEventsSuppressed(final FlightRecorderEventID suppressedEventID, final long numberOfEventsSuppressed)
+  {
+    // By default the dumper doesn't care
+  }
+  default void setRecorderName(final int recorderIndex, final String recorderName)
+  {
+    // By default the dumper doesn't care
+  }
+  default void setThreadName(final int threadIndex, final String threadName)
+  {
+    // By default the dumper doesn't care
+  }
+  default void setEventName(final long eventID, final String eventName)
+  {
+    // By default the dumper doesn't care
+  }
   void dumpBegins();
+  default void setStack(final int stackID, final StackTraceElement[] frames)
+  {
+    // By default the dumper doesn't care
+  }
+  default void dumpLaneBegins(final int threadIndex)
+  {
+    // By default the dumper doesn't care
+  }
   void dumpEvent(FlightRecorderEvent eventToDump);
+  default void dumpEventSummary(final FlightRecorderEventID summarizedEventID, final long numberOfEvents, final FlightRecorderHistogram nanosBetweenEvents)
+  {
+    // By default the dumper doesn't care
+  }
+  default void dumpSpanSummary(final FlightRecorderEventID summarizedSpanID, final FlightRecorderHistogram spanDurationNanos)
+  {
+    // By default the dumper doesn't care
+  }
   void dumpComplete();
+  default long getNumberOfBytesDumped()
+  {
+    return 0;  // By default the dumper doesn't know
+  }
   
   public static final FlightRecorderEventDumper INVALID = new FlightRecorderEventDumper()
   {
@@ -28,18 +114,78 @@ public interface FlightRecorderEventDumper
       throw makeException(String.format("setNumberOfEventsToBeDumped(%d)", numberOfEvents));
     }
     
+    @Override
+    public void setNumberOfEventsLostDuringSnapshot(final int numberOfEventsLost)
+    {
+      throw makeException(String.format("setNumberOfEventsLostDuringSnapshot(%d)", numberOfEventsLost));
+    }
+    
+    @Override
+    public void setNumberOfEventsSuppressed(final FlightRecorderEventID suppressedEventID, final long numberOfEventsSuppressed)
+    {
+      throw makeException(String.format("setNumberOfEventsSuppressed(%s, %d)", suppressedEventID.getEventName(), numberOfEventsSuppressed));
+    }
+    
     @Override
     public void setDumpTimestamps(final long startTimeStamp, final long endTimeStamp)
     {
       throw makeException(String.format("setDumpTimestamps(%d, %d)", startTimeStamp, endTimeStamp));
     }
     
+    @Override
+    public void setDumpTimestampsNanos(final long startTimeStampNanos, final long endTimeStampNanos)
+    {
+      throw makeException(String.format("setDumpTimestampsNanos(%d, %d)", startTimeStampNanos, endTimeStampNanos));
+    }
+    
+    @Override
+    public void setRecorderName(final int recorderIndex, final String recorderName)
+    {
+      throw makeException(String.format("setRecorderName(%d, %s)", recorderIndex, recorderName));
+    }
+    
+    @Override
+    public void setThreadName(final int threadIndex, final String threadName)
+    {
+      throw makeException(String.format("setThreadName(%d, %s)", threadIndex, threadName));
+    }
+    
+    @Override
+    public void setEventName(final long eventID, final String eventName)
+    {
+      throw makeException(String.format("setEventName(%d, %s)", eventID, eventName));
+    }
+    
+    @Override
+    public void setStack(final int stackID, final StackTraceElement[] frames)
+    {
+      throw makeException(String.format("setStack(%d, %d frames)", stackID, frames.length));
+    }
+    
+    @Override
+    public void dumpLaneBegins(final int threadIndex)
+    {
+      throw makeException(String.format("dumpLaneBegins(%d)", threadIndex));
+    }
+    
     @Override
     public void dumpEvent(FlightRecorderEvent eventToDump)
     {
       throw makeException("dumpComplete()");
     }
     
+    @Override
+    public void dumpEventSummary(final FlightRecorderEventID summarizedEventID, final long numberOfEvents, final FlightRecorderHistogram nanosBetweenEvents)
+    {
+      throw makeException(String.format("dumpEventSummary(%s, %d)", summarizedEventID.getEventName(), numberOfEvents));
+    }
+    
+    @Override
+    public void dumpSpanSummary(final FlightRecorderEventID summarizedSpanID, final FlightRecorderHistogram spanDurationNanos)
+    {
+      throw makeException(String.format("dumpSpanSummary(%s)", summarizedSpanID.getEventName()));
+    }
+    
     @Override
     public void dumpComplete()
     {
@@ -52,6 +198,12 @@ public interface FlightRecorderEventDumper
       throw makeException("dumpBegins()");
     }
     
+    @Override
+    public long getNumberOfBytesDumped()
+    {
+      throw makeException("getNumberOfBytesDumped()");
+    }
+    
     private RuntimeException makeException(final String caller)
     {
       return new IllegalStateException("Use of FlightRecorderEventDumper.INVALID: " + caller);
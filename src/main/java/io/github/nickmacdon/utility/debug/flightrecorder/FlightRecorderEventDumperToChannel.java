@@ -0,0 +1,297 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * This dumper writes the compact binary format described in BinaryDumpFormat to any
+ * WritableByteChannel (a FileChannel, a socket, Channels.newChannel(outputStream), ...).
+ * Nothing is accumulated: the events are encoded into one reusable direct ByteBuffer that is
+ * written out to the channel whenever it fills up, so the memory used doesn't depend on the
+ * size of the recording.  A typical event takes about five bytes instead of the fifty or
+ * so it takes as text.  Use FlightRecorderBinaryDumpReader to turn it back into events (or
+ * into text) later, on another machine if need be.  The stacks the events were recorded from,
+ * if any, are written once each, so they can be read on a machine without the code.
+ *
+ * The channel is flushed, but not closed, by dumpComplete(); it belongs to the caller.
+ */
+import static io.github.nickmacdon.utility.debug.flightrecorder.BinaryDumpFormat.*;
+import static io.github.nickmacdon.utility.debug.flightrecorder.VariableLengthEncoding.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.HashSet;
+import java.util.Set;
+
+final class FlightRecorderEventDumperToChannel implements FlightRecorderEventDumper
+{
+  static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+  private final WritableByteChannel channel;
+  private final ByteBuffer buffer;
+  private final Set<Long> eventIDsAlreadyNamed = new HashSet<>();
+  private final Set<Integer> stacksAlreadyWritten = new HashSet<>();
+
+  private long startTimeStamp         = 0;
+  private long previousSequenceNumber = 0;
+  private long previousTimeStamp      = 0;
+  private int previousRecorderIndex   = FlightRecorderEvent.NO_RECORDER;
+  private long numberOfBytesDumped    = 0;
+
+  FlightRecorderEventDumperToChannel(final String dumpTitle, final WritableByteChannel channel)
+  {
+    this(dumpTitle, channel, DEFAULT_BUFFER_SIZE);
+  }
+
+  FlightRecorderEventDumperToChannel(final String dumpTitle, final WritableByteChannel channel, final int bufferSize)
+  {
+    if (bufferSize < MAXIMUM_FIXED_RECORD_SIZE)
+    {
+      throw new IllegalArgumentException(String.format("Buffer size of %d is too small", bufferSize));
+    }
+    this.channel = channel;
+    buffer = ByteBuffer.allocateDirect(bufferSize).order(BYTE_ORDER);
+    buffer.putInt(MAGIC);
+    buffer.putInt(VERSION);
+    putVarLong(buffer, System.currentTimeMillis());
+    putString(dumpTitle);
+  }
+
+  @Override
+  public void setDumpTimestamps(final long startTimeStamp, final long endTimeStamp)
+  {
+    setDumpTimestampsNanos(startTimeStamp * 1_000_000L, endTimeStamp * 1_000_000L);
+  }
+
+  @Override
+  public void setDumpTimestampsNanos(final long startTimeStamp, final long endTimeStamp)
+  {
+    this.startTimeStamp = startTimeStamp;
+    ensureRoomFor(MAXIMUM_FIXED_RECORD_SIZE);
+    buffer.put(TAG_TIMESTAMPS);
+    putVarLong(buffer, startTimeStamp);
+    putVarLong(buffer, endTimeStamp);
+  }
+
+  @Override
+  public void setNumberOfEventsToBeDumped(final int numberOfEvents)
+  {
+    ensureRoomFor(MAXIMUM_FIXED_RECORD_SIZE);
+    buffer.put(TAG_NUMBER_OF_EVENTS);
+    putVarLong(buffer, numberOfEvents);
+  }
+
+  @Override
+  public void setNumberOfEventsLostDuringSnapshot(final int numberOfEventsLost)
+  {
+    if (numberOfEventsLost == 0)  return;
+    ensureRoomFor(MAXIMUM_FIXED_RECORD_SIZE);
+    buffer.put(TAG_EVENTS_LOST);
+    putVarLong(buffer, numberOfEventsLost);
+  }
+
+  @Override
+  public void setNumberOfEventsSuppressed(final FlightRecorderEventID suppressedEventID, final long numberOfEventsSuppressed)
+  {
+    nameIfNotAlreadyNamed(suppressedEventID.getEventID(), suppressedEventID.getEventName());
+    ensureRoomFor(MAXIMUM_FIXED_RECORD_SIZE);
+    buffer.put(TAG_EVENTS_SUPPRESSED);
+    putZigZagVarLong(buffer, suppressedEventID.getEventID());
+    putVarLong(buffer, numberOfEventsSuppressed);
+  }
+
+  @Override
+  public void setRecorderName(final int recorderIndex, final String recorderName)
+  {
+    ensureRoomFor(MAXIMUM_FIXED_RECORD_SIZE);
+    buffer.put(TAG_RECORDER_NAME);
+    putVarLong(buffer, recorderIndex);
+    putString(recorderName);
+  }
+
+  @Override
+  public void setThreadName(final int threadIndex, final String threadName)
+  {
+    ensureRoomFor(MAXIMUM_FIXED_RECORD_SIZE);
+    buffer.put(TAG_THREAD_NAME);
+    putVarLong(buffer, threadIndex);
+    putString(threadName);
+  }
+
+  @Override
+  public void setEventName(final long eventID, final String eventName)
+  {
+    nameIfNotAlreadyNamed(eventID, eventName);
+  }
+
+  @Override
+  public void setStack(final int stackID, final StackTraceElement[] frames)
+  {
+    if (!stacksAlreadyWritten.add(stackID))  return;
+    ensureRoomFor(MAXIMUM_FIXED_RECORD_SIZE);
+    buffer.put(TAG_STACK);
+    putVarLong(buffer, stackID);
+    putVarLong(buffer, frames.length);
+    for (final StackTraceElement frame : frames)
+    {
+      putString(frame.getClassName());
+      putString(frame.getMethodName());
+      putString((frame.getFileName() == null) ? "" : frame.getFileName());
+      ensureRoomFor(MAXIMUM_BYTES_FOR_A_LONG);
+      putZigZagVarLong(buffer, frame.getLineNumber());
+    }
+  }
+
+  @Override
+  public void dumpBegins()
+  {
+    previousSequenceNumber = 0;
+    previousTimeStamp      = startTimeStamp;
+    previousRecorderIndex  = FlightRecorderEvent.NO_RECORDER;
+    ensureRoomFor(1);
+    buffer.put(TAG_DUMP_BEGINS);
+  }
+
+  @Override
+  public void dumpLaneBegins(final int threadIndex)
+  {
+    ensureRoomFor(MAXIMUM_FIXED_RECORD_SIZE);
+    buffer.put(TAG_LANE_BEGINS);
+    putVarLong(buffer, threadIndex);
+  }
+
+  @Override
+  public void dumpEvent(final FlightRecorderEvent eventToDump)
+  {
+    final long eventID = eventToDump.getEventID();
+    if (!eventIDsAlreadyNamed.contains(eventID))  nameIfNotAlreadyNamed(eventID, eventToDump.getEventName());
+
+    final int recorderIndex = eventToDump.getRecorderIndex();
+    if (recorderIndex != previousRecorderIndex)
+    {
+      ensureRoomFor(MAXIMUM_FIXED_RECORD_SIZE);
+      buffer.put(TAG_RECORDER);
+      putVarLong(buffer, recorderIndex);
+      previousRecorderIndex = recorderIndex;
+    }
+
+    final long sequenceNumber = eventToDump.getSequenceNumber();
+    final long timeStamp      = eventToDump.getEventTimestampNanos();
+    ensureRoomFor(MAXIMUM_FIXED_RECORD_SIZE);
+    buffer.put(TAG_EVENT);
+    putZigZagVarLong(buffer, eventID);
+    putZigZagVarLong(buffer, sequenceNumber - previousSequenceNumber);
+    putZigZagVarLong(buffer, timeStamp - previousTimeStamp);
+    final int numberOfPayloads = eventToDump.getNumberOfPayloads();
+    final int stackID          = eventToDump.getStackID();
+    putVarInt(buffer, EventFlags.withStack(EventFlags.of(eventToDump), stackID));
+    for (int i=0; i<numberOfPayloads; i++)  putZigZagVarLong(buffer, eventToDump.getPayload(i));
+    if (stackID != FlightRecorderEvent.NO_STACK)
+    {
+      ensureRoomFor(MAXIMUM_BYTES_FOR_A_LONG);
+      putVarLong(buffer, stackID);
+    }
+    previousSequenceNumber = sequenceNumber;
+    previousTimeStamp      = timeStamp;
+  }
+
+  @Override
+  public void dumpEventSummary(final FlightRecorderEventID summarizedEventID, final long numberOfEvents, final FlightRecorderHistogram nanosBetweenEvents)
+  {
+    nameIfNotAlreadyNamed(summarizedEventID.getEventID(), summarizedEventID.getEventName());
+    ensureRoomFor(MAXIMUM_FIXED_RECORD_SIZE);
+    buffer.put(TAG_EVENT_SUMMARY);
+    putZigZagVarLong(buffer, summarizedEventID.getEventID());
+    putVarLong(buffer, numberOfEvents);
+    putHistogram(nanosBetweenEvents);
+  }
+
+  @Override
+  public void dumpSpanSummary(final FlightRecorderEventID summarizedSpanID, final FlightRecorderHistogram spanDurationNanos)
+  {
+    nameIfNotAlreadyNamed(summarizedSpanID.getEventID(), summarizedSpanID.getEventName());
+    ensureRoomFor(MAXIMUM_FIXED_RECORD_SIZE);
+    buffer.put(TAG_SPAN_SUMMARY);
+    putZigZagVarLong(buffer, summarizedSpanID.getEventID());
+    putHistogram(spanDurationNanos);
+  }
+
+  private void putHistogram(final FlightRecorderHistogram histogram)
+  {
+    final long[] bucketCounts = histogram.getBucketCounts();
+    putVarLong(buffer, bucketCounts.length);
+    for (final long bucketCount : bucketCounts)
+    {
+      ensureRoomFor(MAXIMUM_BYTES_FOR_A_LONG);
+      putVarLong(buffer, bucketCount);
+    }
+  }
+
+  @Override
+  public void dumpComplete()
+  {
+    ensureRoomFor(1);
+    buffer.put(TAG_END);
+    flush();
+  }
+
+  @Override
+  public long getNumberOfBytesDumped()
+  {
+    return numberOfBytesDumped;  // Not counting what is still in the buffer
+  }
+
+  private void nameIfNotAlreadyNamed(final long eventID, final String eventName)
+  {
+    if (eventIDsAlreadyNamed.add(eventID))
+    {
+      ensureRoomFor(MAXIMUM_FIXED_RECORD_SIZE);
+      buffer.put(TAG_EVENT_NAME);
+      putZigZagVarLong(buffer, eventID);
+      putString(eventName);
+    }
+  }
+
+  private void putString(final String string)
+  {
+    final byte[] bytes = string.getBytes(CHARSET);
+    ensureRoomFor(VariableLengthEncoding.MAXIMUM_BYTES_FOR_A_LONG);
+    putVarLong(buffer, bytes.length);
+    if (bytes.length <= buffer.capacity())
+    {
+      ensureRoomFor(bytes.length);
+      buffer.put(bytes);
+    }
+    else
+    {
+      flush();
+      write(ByteBuffer.wrap(bytes));
+    }
+  }
+
+  private void ensureRoomFor(final int numberOfBytes)
+  {
+    if (buffer.remaining() < numberOfBytes)  flush();
+  }
+
+  private void flush()
+  {
+    buffer.flip();
+    write(buffer);
+    buffer.clear();
+  }
+
+  private void write(final ByteBuffer bytesToWrite)
+  {
+    try
+    {
+      while (bytesToWrite.hasRemaining())  numberOfBytesDumped += channel.write(bytesToWrite);
+    }
+    catch (final IOException e)
+    {
+      throw new UncheckedIOException("Unable to write flight recorder dump", e);
+    }
+  }
+}
@@ -7,61 +7,126 @@ package io.github.nickmacdon.utility.debug.flightrecorder;
  *
  * This is a simple little dumper that outputs to a Java String.  You use toString()
  * on it to get the final result.  See an example usage in FlightRecorderFactoryTest.
+ * Any payloads recorded with an event are shown after it in square brackets.  The beginning
+ * and end of a span are marked, the end with how long the span took, and the events within a
+ * span are indented beneath it.  The events are followed by a summary of every event ID
+ * recorded: how many times, and roughly how many seconds went by between them (the median, the
+ * 99th percentile and the longest), and then the same for the durations of each span.  The
+ * threads that recorded the events are listed before them.
+ *
+ * The text is written by FlightRecorderEventDumperToWriter into a StringBuilder; use that one
+ * (from FlightRecorderFactory.getWriterDumper()) to stream a big dump instead.
  */
-
-import java.util.Date;
-
 final class FlightRecorderEventDumperToString implements FlightRecorderEventDumper
 {
   private final StringBuilder sb = new StringBuilder();
-
-  private long startTimeStamp = 0;
-  private int eventNumber     = 0;
+  private final FlightRecorderEventDumperToWriter writer;
 
   FlightRecorderEventDumperToString(final String dumpTitle)
   {
-    sb.append("Flight Recorder Dump: ");
-    sb.append(dumpTitle);
-    sb.append("\n");
-    sb.append("Dump created: ");
-    sb.append(new Date());
-    sb.append("\n");
+    writer = new FlightRecorderEventDumperToWriter(dumpTitle, sb);
   }
 
   @Override
   public void setDumpTimestamps(final long startTimeStamp, final long endTimeStamp)
   {
-    this.startTimeStamp = startTimeStamp;
-    sb.append(String.format("Initial dump timestamp=%d, final dump timestamp=%d%n", startTimeStamp, endTimeStamp));
+    writer.setDumpTimestamps(startTimeStamp, endTimeStamp);
+  }
+
+  @Override
+  public void setDumpTimestampsNanos(final long startTimeStampNanos, final long endTimeStampNanos)
+  {
+    writer.setDumpTimestampsNanos(startTimeStampNanos, endTimeStampNanos);
   }
 
   @Override
   public void setNumberOfEventsToBeDumped(int numberOfEvents)
   {
-    sb.append(String.format("number of events: %d%n", numberOfEvents));
+    writer.setNumberOfEventsToBeDumped(numberOfEvents);
+  }
+
+  @Override
+  public void setNumberOfEventsLostDuringSnapshot(final int numberOfEventsLost)
+  {
+    writer.setNumberOfEventsLostDuringSnapshot(numberOfEventsLost);
+  }
+
+  @Override
+  public void setNumberOfEventsSuppressed(final FlightRecorderEventID suppressedEventID, final long numberOfEventsSuppressed)
+  {
+    writer.setNumberOfEventsSuppressed(suppressedEventID, numberOfEventsSuppressed);
+  }
+
+  @Override
+  public void setRecorderName(final int recorderIndex, final String recorderName)
+  {
+    writer.setRecorderName(recorderIndex, recorderName);
+  }
+
+  @Override
+  public void setThreadName(final int threadIndex, final String threadName)
+  {
+    writer.setThreadName(threadIndex, threadName);
+  }
+
+  @Override
+  public void setEventName(final long eventID, final String eventName)
+  {
+    writer.setEventName(eventID, eventName);
+  }
+
+  @Override
+  public void setStack(final int stackID, final StackTraceElement[] frames)
+  {
+    writer.setStack(stackID, frames);
   }
 
   @Override
   public void dumpBegins()
   {
-    eventNumber = 0;
+    writer.dumpBegins();
+  }
+
+  @Override
+  public void dumpLaneBegins(final int threadIndex)
+  {
+    writer.dumpLaneBegins(threadIndex);
   }
 
   @Override
   public void dumpEvent(final FlightRecorderEvent eventToDump)
   {
-    sb.append(String.format("%4d: %4d%-40s %4d +%.3f%n", ++eventNumber, eventToDump.getEventID(), "("+eventToDump.getEventName()+")", eventToDump.getSequenceNumber(), (eventToDump.getEventTimestamp()-startTimeStamp)/1000.0));
+    writer.dumpEvent(eventToDump);
+  }
+
+  @Override
+  public void dumpEventSummary(final FlightRecorderEventID summarizedEventID, final long numberOfEvents, final FlightRecorderHistogram nanosBetweenEvents)
+  {
+    writer.dumpEventSummary(summarizedEventID, numberOfEvents, nanosBetweenEvents);
+  }
+
+  @Override
+  public void dumpSpanSummary(final FlightRecorderEventID summarizedSpanID, final FlightRecorderHistogram spanDurationNanos)
+  {
+    writer.dumpSpanSummary(summarizedSpanID, spanDurationNanos);
   }
 
   @Override
   public void dumpComplete()
   {
-    // Nothing to do, but a file based one would close the file at this point, for example
+    writer.dumpComplete();
+  }
+
+  @Override
+  public long getNumberOfBytesDumped()
+  {
+    return writer.getNumberOfBytesDumped();
   }
 
   @Override
   public String toString()
   {
+    writer.flush();
     return sb.toString();
   }
 }
@@ -0,0 +1,397 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * Writes the same text as FlightRecorderEventDumperToString (which is built on this) but
+ * streams it to any Writer or other Appendable as it goes, so a big dump is never all in
+ * memory at once.  The numbers and the padding are formatted by hand into a char buffer that
+ * is reused for the whole dump and handed over whenever it fills up, instead of going through
+ * String.format() (and boxing every argument) for each line.  dumpComplete() hands over
+ * whatever is left and flushes the output if it is Flushable.
+ *
+ * The names of the threads that recorded the events are listed before the events.  With the
+ * events in lanes (see FlightRecorderFactory.getThreadLaneDumper()) each lane starts with a
+ * line naming its thread.  Either way the spans of each thread nest separately, however they
+ * are interleaved with other threads' (the depth is kept per thread index).  So are the stacks
+ * the events were recorded from, if any were captured, each one once with its frames; an event
+ * with a stack ends with "stack" and its ID.  In a merged dump of several recorders the
+ * recorders are listed first, and each event ends with "recorder" and the index of the one
+ * it came from.
+ *
+ * Errors writing to the output are thrown as UncheckedIOExceptions.
+ */
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+final class FlightRecorderEventDumperToWriter implements FlightRecorderEventDumper
+{
+  static final int DEFAULT_BUFFER_SIZE = 8192;
+  private static final int NAME_WIDTH = 40;
+  private static final String LINE_SEPARATOR = System.lineSeparator();
+
+  private final Appendable output;
+  private final char[] buffer;
+  private int bufferPosition = 0;
+  private long numberOfCharsDumped = 0;
+  private final Map<Integer, String> threadNames = new HashMap<>();
+
+  private long startTimeStampNanos = 0;
+  private int eventNumber          = 0;
+  private int[] spanDepths         = new int[16];  // By thread index
+  private boolean summaryHasBegun  = false;
+
+  FlightRecorderEventDumperToWriter(final String dumpTitle, final Appendable output)
+  {
+    this(dumpTitle, output, DEFAULT_BUFFER_SIZE);
+  }
+
+  FlightRecorderEventDumperToWriter(final String dumpTitle, final Appendable output, final int bufferSize)
+  {
+    // Big enough for any number, so a number never has to be split between two chunks
+    if (bufferSize < 32)
+    {
+      throw new IllegalArgumentException(String.format("Buffer must be at least 32 chars, not %d", bufferSize));
+    }
+    this.output = output;
+    buffer      = new char[bufferSize];
+    append("Flight Recorder Dump: ");
+    append(dumpTitle);
+    append('\n');
+    append("Dump created: ");
+    append(new Date().toString());
+    append('\n');
+  }
+
+  @Override
+  public void setDumpTimestamps(final long startTimeStamp, final long endTimeStamp)
+  {
+    setDumpTimestampsNanos(startTimeStamp * 1_000_000L, endTimeStamp * 1_000_000L);
+  }
+
+  @Override
+  public void setDumpTimestampsNanos(final long startTimeStampNanos, final long endTimeStampNanos)
+  {
+    this.startTimeStampNanos = startTimeStampNanos;
+    append("Initial dump timestamp=");
+    append(startTimeStampNanos / 1_000_000L, 0);
+    append(", final dump timestamp=");
+    append(endTimeStampNanos / 1_000_000L, 0);
+    append(LINE_SEPARATOR);
+  }
+
+  @Override
+  public void setNumberOfEventsToBeDumped(final int numberOfEvents)
+  {
+    append("number of events: ");
+    append(numberOfEvents, 0);
+    append(LINE_SEPARATOR);
+  }
+
+  @Override
+  public void setNumberOfEventsLostDuringSnapshot(final int numberOfEventsLost)
+  {
+    if (numberOfEventsLost <= 0)  return;
+    append("events overwritten before they could be dumped: ");
+    append(numberOfEventsLost, 0);
+    append(LINE_SEPARATOR);
+  }
+
+  @Override
+  public void setNumberOfEventsSuppressed(final FlightRecorderEventID suppressedEventID, final long numberOfEventsSuppressed)
+  {
+    append("events suppressed by sampling: ");
+    append(suppressedEventID.getEventID(), 4);
+    appendName(0, suppressedEventID.getEventName());
+    append(' ');
+    append(numberOfEventsSuppressed, 0);
+    append(LINE_SEPARATOR);
+  }
+
+  @Override
+  public void setRecorderName(final int recorderIndex, final String recorderName)
+  {
+    append("merged from recorder ");
+    append(recorderIndex, 4);
+    append(": ");
+    append(recorderName);
+    append(LINE_SEPARATOR);
+  }
+
+  @Override
+  public void setThreadName(final int threadIndex, final String threadName)
+  {
+    threadNames.put(threadIndex, threadName);
+    append("recorded by thread ");
+    append(threadIndex, 4);
+    append(": ");
+    append(threadName);
+    append(LINE_SEPARATOR);
+  }
+
+  @Override
+  public void setStack(final int stackID, final StackTraceElement[] frames)
+  {
+    append("stack ");
+    append(stackID, 0);
+    append(':');
+    append(LINE_SEPARATOR);
+    for (final StackTraceElement frame : frames)
+    {
+      append("    at ");
+      append(frame.toString());
+      append(LINE_SEPARATOR);
+    }
+  }
+
+  @Override
+  public void dumpBegins()
+  {
+    eventNumber     = 0;
+    Arrays.fill(spanDepths, 0);
+    summaryHasBegun = false;
+    threadNames.clear();
+  }
+
+  @Override
+  public void dumpLaneBegins(final int threadIndex)
+  {
+    Arrays.fill(spanDepths, 0);
+    append("lane of thread ");
+    append(threadIndex, 0);
+    append(" (");
+    append(threadNames.getOrDefault(threadIndex, ThreadTable.getThreadName(FlightRecorderEvent.NO_THREAD)));
+    append("):");
+    append(LINE_SEPARATOR);
+  }
+
+  @Override
+  public void dumpEvent(final FlightRecorderEvent eventToDump)
+  {
+    final FlightRecorderEventKind eventKind = eventToDump.getEventKind();
+    final int threadIndex = eventToDump.getThreadIndex();
+    if (threadIndex >= spanDepths.length)  spanDepths = Arrays.copyOf(spanDepths, Math.max(threadIndex + 1, 2 * spanDepths.length));
+    // The start of a span may have been overwritten, so never go below the outermost level
+    if ((eventKind == FlightRecorderEventKind.SPAN_END) && (spanDepths[threadIndex] > 0))  spanDepths[threadIndex]--;
+    append(++eventNumber, 4);
+    append(": ");
+    append(eventToDump.getEventID(), 4);
+    appendName(2 * spanDepths[threadIndex], eventToDump.getEventName());
+    append(' ');
+    append(eventToDump.getSequenceNumber(), 4);
+    append(" +");
+    appendSeconds(eventToDump.getEventTimestampNanos() - startTimeStampNanos, 3);
+    if (eventKind == FlightRecorderEventKind.SPAN_BEGIN)
+    {
+      append(" begins");
+      spanDepths[threadIndex]++;
+    }
+    else if (eventKind == FlightRecorderEventKind.SPAN_END)
+    {
+      append(" ends, took ");
+      appendSeconds(eventToDump.getPayload(0), 6);
+    }
+    final int numberOfPayloads = (eventKind == FlightRecorderEventKind.SPAN_END) ? 0 : eventToDump.getNumberOfPayloads();
+    if (numberOfPayloads > 0)
+    {
+      append(" [");
+      for (int i=0; i<numberOfPayloads; i++)
+      {
+        if (i > 0)  append(", ");
+        append(eventToDump.getPayload(i), 0);
+      }
+      append(']');
+    }
+    final int stackID = eventToDump.getStackID();
+    if (stackID != FlightRecorderEvent.NO_STACK)
+    {
+      append(" stack ");
+      append(stackID, 0);
+    }
+    final int recorderIndex = eventToDump.getRecorderIndex();
+    if (recorderIndex != FlightRecorderEvent.NO_RECORDER)
+    {
+      append(" recorder ");
+      append(recorderIndex, 0);
+    }
+    append(LINE_SEPARATOR);
+  }
+
+  @Override
+  public void dumpEventSummary(final FlightRecorderEventID summarizedEventID, final long numberOfEvents, final FlightRecorderHistogram nanosBetweenEvents)
+  {
+    appendSummary(summarizedEventID, numberOfEvents, " events, apart p50 ", nanosBetweenEvents);
+  }
+
+  @Override
+  public void dumpSpanSummary(final FlightRecorderEventID summarizedSpanID, final FlightRecorderHistogram spanDurationNanos)
+  {
+    appendSummary(summarizedSpanID, spanDurationNanos.getNumberOfValues(), " spans, took p50 ", spanDurationNanos);
+  }
+
+  private void appendSummary(final FlightRecorderEventID summarizedEventID, final long number, final String whatTheyAre, final FlightRecorderHistogram nanos)
+  {
+    if (!summaryHasBegun)
+    {
+      append("summary of all events recorded:");
+      append(LINE_SEPARATOR);
+      summaryHasBegun = true;
+    }
+    append("      ");
+    append(summarizedEventID.getEventID(), 4);
+    appendName(0, summarizedEventID.getEventName());
+    append(' ');
+    append(number, 8);
+    append(whatTheyAre);
+    appendSeconds(nanos.getPercentile(50), 6);
+    append(" p99 ");
+    appendSeconds(nanos.getPercentile(99), 6);
+    append(" max ");
+    appendSeconds(nanos.getMaximum(), 6);
+    append(LINE_SEPARATOR);
+  }
+
+  @Override
+  public void dumpComplete()
+  {
+    flush();
+    if (output instanceof Flushable)
+    {
+      try
+      {
+        ((Flushable)output).flush();
+      }
+      catch (final IOException e)
+      {
+        throw new UncheckedIOException("Unable to flush flight recorder dump", e);
+      }
+    }
+  }
+
+  /*
+   * Hands over whatever is in the buffer.  Also used by FlightRecorderEventDumperToString to
+   * make sure its StringBuilder has everything before it is read.
+   */
+  void flush()
+  {
+    if (bufferPosition == 0)  return;
+    try
+    {
+      if (output instanceof Writer)
+        ((Writer)output).write(buffer, 0, bufferPosition);
+      else
+        output.append(CharBuffer.wrap(buffer, 0, bufferPosition));
+    }
+    catch (final IOException e)
+    {
+      throw new UncheckedIOException("Unable to write flight recorder dump", e);
+    }
+    numberOfCharsDumped += bufferPosition;
+    bufferPosition = 0;
+  }
+
+  /*
+   * Only what has been handed over to the output; the rest is counted when it is flushed.
+   */
+  @Override
+  public long getNumberOfBytesDumped()
+  {
+    return numberOfCharsDumped;
+  }
+
+  private void ensureRoomFor(final int numberOfChars)
+  {
+    if (bufferPosition + numberOfChars > buffer.length)  flush();
+  }
+
+  private void append(final char c)
+  {
+    ensureRoomFor(1);
+    buffer[bufferPosition++] = c;
+  }
+
+  private void append(final String string)
+  {
+    int copied = 0;
+    while (copied < string.length())
+    {
+      ensureRoomFor(1);
+      final int numberToCopy = Math.min(string.length() - copied, buffer.length - bufferPosition);
+      string.getChars(copied, copied + numberToCopy, buffer, bufferPosition);
+      bufferPosition += numberToCopy;
+      copied         += numberToCopy;
+    }
+  }
+
+  private void appendSpaces(final int numberOfSpaces)
+  {
+    for (int i=0; i<numberOfSpaces; i++)  append(' ');
+  }
+
+  /*
+   * Like %-40s of "(name)", indented by the given number of spaces inside the padding.
+   */
+  private void appendName(final int indent, final String eventName)
+  {
+    appendSpaces(indent);
+    append('(');
+    append(eventName);
+    append(')');
+    appendSpaces(NAME_WIDTH - indent - eventName.length() - 2);
+  }
+
+  /*
+   * Like %<width>d (or %d for a width of 0): right aligned, and never cut short.
+   */
+  private void append(final long value, final int width)
+  {
+    if (value == Long.MIN_VALUE)
+    {
+      final String digits = Long.toString(value);
+      appendSpaces(width - digits.length());
+      append(digits);
+      return;
+    }
+    final long magnitude = Math.abs(value);
+    int numberOfDigits = 1;
+    for (long rest=magnitude/10; rest>0; rest/=10)  numberOfDigits++;
+    final int length = (value < 0) ? numberOfDigits + 1 : numberOfDigits;
+    appendSpaces(width - length);
+
+    ensureRoomFor(length);
+    if (value < 0)  buffer[bufferPosition] = '-';
+    long rest = magnitude;
+    for (int i=bufferPosition+length-1; i>=bufferPosition+length-numberOfDigits; i--)
+    {
+      buffer[i] = (char)('0' + (rest % 10));
+      rest /= 10;
+    }
+    bufferPosition += length;
+  }
+
+  /*
+   * Like %.<decimals>f of the nanoseconds in seconds, rounded half up to the last decimal.
+   */
+  private void appendSeconds(final long nanos, final int decimals)
+  {
+    long unitNanos = 1;
+    for (int i=decimals; i<9; i++)  unitNanos *= 10;
+    // Rounded on the magnitude, and like String.format() a tiny negative is still "-0.000"
+    final long units = Math.abs(nanos / unitNanos) + ((Math.abs(nanos % unitNanos) * 2 >= unitNanos) ? 1 : 0);
+    final long unitsPerSecond = 1_000_000_000 / unitNanos;
+    if (nanos < 0)  append('-');
+    append(units / unitsPerSecond, 0);
+    append('.');
+    final long fraction = units % unitsPerSecond;
+    for (long digit=unitsPerSecond/10; digit>0; digit/=10)  append((char)('0' + ((fraction / digit) % 10)));
+  }
+}
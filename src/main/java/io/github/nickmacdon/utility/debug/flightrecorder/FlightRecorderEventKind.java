@@ -0,0 +1,17 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * What a recorded FlightRecorderEvent marks: a single moment (recordEvent()), or the beginning
+ * or end of a span of time (FlightRecorder.beginSpan() and endSpan()).  The end of a span
+ * carries the span's duration in nanoseconds as its only payload.
+ */
+public enum FlightRecorderEventKind
+{
+  POINT,
+  SPAN_BEGIN,
+  SPAN_END
+}
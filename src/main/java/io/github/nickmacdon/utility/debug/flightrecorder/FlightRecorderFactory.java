@@ -8,15 +8,42 @@ package io.github.nickmacdon.utility.debug.flightrecorder;
  * Use the FlightRecorderFactory to make your life easier.  Note you can avoid
  * making a global object or passing the FlightRecorder instance around by using
  * the getFlightRecorderAgain() method.
+ *
+ * When each part of an application should have a ring of its own, give them names instead:
+ * getNamedFlightRecorder() makes a recorder the first time a name is asked for and returns the
+ * same one every time after that, from any thread.  dumpMergedEntriesTo() dumps several
+ * recorders together as one dump, in timestamp order.  Each named recorder is also registered
+ * as a FlightRecorderMXBean under its name, so it can be watched, started, stopped and dumped
+ * through JMX; registerMXBean() does the same for a recorder without a name.
  */
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
 public final class FlightRecorderFactory
 {
   // private FlightRecorderFactory INSTANCE = new FlightRecorderFactory();
   private FlightRecorderFactory( ) {}  // No instantiation / Singleton
   
-  private static FlightRecorder lastGivenFlightRecorder = FlightRecorder.INVALID;
+  private static volatile FlightRecorder lastGivenFlightRecorder = FlightRecorder.INVALID;
+  private static final ConcurrentMap<String, FlightRecorder> namedFlightRecorders = new ConcurrentHashMap<>();
 
   public static final int DEFAULT_NUMBER_OF_EVENTS = 1_000;
+  public static final int DEFAULT_NUMBER_OF_COMPRESSED_BYTES = 64 * 1024;
+  public static final int DEFAULT_MAXIMUM_BYTES_FOR_TIME_WINDOW = 16 * 1024 * 1024;
+  public static final int DEFAULT_NUMBER_OF_STREAMED_EVENTS = 64 * 1024;
+  public static final long DEFAULT_MAXIMUM_BYTES_PER_STREAMED_FILE = 16L * 1024 * 1024;
+  public static final long DEFAULT_MAXIMUM_MINUTES_PER_STREAMED_FILE = 10;
+  public static final int DEFAULT_MAXIMUM_NUMBER_OF_STREAMED_FILES = 10;
+
+  private static final FlightRecorderClock MONOTONIC_CLOCK = new MonotonicFlightRecorderClock();
 
   public static FlightRecorder getFlightRecorder()
   {
@@ -29,12 +56,431 @@ public final class FlightRecorderFactory
     lastGivenFlightRecorder = new InMemoryRingBufferFlightRecorder(numberOfEvents);
     return lastGivenFlightRecorder;
   }
+
+  public static FlightRecorder getFlightRecorder(final int numberOfEvents, final FlightRecorderClock clock)
+  {
+    lastGivenFlightRecorder = new InMemoryRingBufferFlightRecorder(numberOfEvents, clock);
+    return lastGivenFlightRecorder;
+  }
   
+  /*
+   * Use one of these instead when events will be recorded from more than one thread.
+   */
+  public static FlightRecorder getConcurrentFlightRecorder()
+  {
+    lastGivenFlightRecorder = new ConcurrentRingBufferFlightRecorder(DEFAULT_NUMBER_OF_EVENTS);
+    return lastGivenFlightRecorder;
+  }
+
+  public static FlightRecorder getConcurrentFlightRecorder(final int numberOfEvents)
+  {
+    lastGivenFlightRecorder = new ConcurrentRingBufferFlightRecorder(numberOfEvents);
+    return lastGivenFlightRecorder;
+  }
+
+  public static FlightRecorder getConcurrentFlightRecorder(final int numberOfEvents, final FlightRecorderClock clock)
+  {
+    lastGivenFlightRecorder = new ConcurrentRingBufferFlightRecorder(numberOfEvents, clock);
+    return lastGivenFlightRecorder;
+  }
+
+  /*
+   * Use one of these to keep five to ten times as many events in the same memory, by packing
+   * them into a ring of the given number of bytes (see CompressedRingBufferFlightRecorder).
+   * Like getFlightRecorder(), only for one thread at a time.
+   */
+  public static FlightRecorder getCompressedFlightRecorder()
+  {
+    lastGivenFlightRecorder = new CompressedRingBufferFlightRecorder(DEFAULT_NUMBER_OF_COMPRESSED_BYTES);
+    return lastGivenFlightRecorder;
+  }
+
+  public static FlightRecorder getCompressedFlightRecorder(final int numberOfBytes)
+  {
+    lastGivenFlightRecorder = new CompressedRingBufferFlightRecorder(numberOfBytes);
+    return lastGivenFlightRecorder;
+  }
+
+  public static FlightRecorder getCompressedFlightRecorder(final int numberOfBytes, final FlightRecorderClock clock)
+  {
+    lastGivenFlightRecorder = new CompressedRingBufferFlightRecorder(numberOfBytes, clock);
+    return lastGivenFlightRecorder;
+  }
+
+  /*
+   * Use one of these to keep the events of the last so long, however many that is, rather
+   * than the last so many events.  The memory used grows and shrinks with the rate of events,
+   * up to the given number of bytes; if the events come so quickly that the time window
+   * doesn't fit in that, the oldest are dropped anyway.  Like getFlightRecorder(), only for
+   * one thread at a time.
+   */
+  public static FlightRecorder getTimeWindowedFlightRecorder(final long retentionTime, final TimeUnit retentionUnit)
+  {
+    return getTimeWindowedFlightRecorder(retentionTime, retentionUnit, DEFAULT_MAXIMUM_BYTES_FOR_TIME_WINDOW, MONOTONIC_CLOCK);
+  }
+
+  public static FlightRecorder getTimeWindowedFlightRecorder(final long retentionTime, final TimeUnit retentionUnit, final int maximumNumberOfBytes)
+  {
+    return getTimeWindowedFlightRecorder(retentionTime, retentionUnit, maximumNumberOfBytes, MONOTONIC_CLOCK);
+  }
+
+  public static FlightRecorder getTimeWindowedFlightRecorder(
+    final long retentionTime,
+    final TimeUnit retentionUnit,
+    final int maximumNumberOfBytes,
+    final FlightRecorderClock clock
+  )
+  {
+    final CompressedEventRingBuffer ringBuffer = new CompressedEventRingBuffer(maximumNumberOfBytes, CompressedEventRingBuffer.DEFAULT_BLOCK_SIZE, retentionUnit.toNanos(retentionTime));
+    lastGivenFlightRecorder = new CompressedRingBufferFlightRecorder(ringBuffer, clock);
+    return lastGivenFlightRecorder;
+  }
+
+  /*
+   * Use one of these when you need the recording to survive the process dying.  Read the
+   * file back afterwards with MemoryMappedFlightRecorderReader.  A recording already in the
+   * file is moved aside to the same name with ".previous" on the end, rather than lost.
+   */
+  public static FlightRecorder getMemoryMappedFlightRecorder(final Path ringBufferFile)
+  {
+    lastGivenFlightRecorder = new MemoryMappedRingBufferFlightRecorder(ringBufferFile, DEFAULT_NUMBER_OF_EVENTS);
+    return lastGivenFlightRecorder;
+  }
+
+  public static FlightRecorder getMemoryMappedFlightRecorder(final Path ringBufferFile, final int numberOfEvents)
+  {
+    lastGivenFlightRecorder = new MemoryMappedRingBufferFlightRecorder(ringBufferFile, numberOfEvents);
+    return lastGivenFlightRecorder;
+  }
+
+  public static FlightRecorder getMemoryMappedFlightRecorder(final Path ringBufferFile, final int numberOfEvents, final FlightRecorderClock clock)
+  {
+    lastGivenFlightRecorder = new MemoryMappedRingBufferFlightRecorder(ringBufferFile, numberOfEvents, clock);
+    return lastGivenFlightRecorder;
+  }
+
+  /*
+   * On Java 17 or later, a thread safe FlightRecorder that forwards each event to the JDK's own
+   * Flight Recorder, so they end up in JFR recordings (see JfrForwardingFlightRecorder).  On
+   * Java 8 there is no JFR to forward to, so it is the usual in-memory ring of numberOfEvents.
+   */
+  public static FlightRecorder getJdkFlightRecorderBridge()
+  {
+    return getJdkFlightRecorderBridge(DEFAULT_NUMBER_OF_EVENTS);
+  }
+
+  public static FlightRecorder getJdkFlightRecorderBridge(final int numberOfEvents)
+  {
+    lastGivenFlightRecorder = JdkFlightRecorderBridge.makeFlightRecorder(numberOfEvents, MONOTONIC_CLOCK);
+    return lastGivenFlightRecorder;
+  }
+
+  /*
+   * A thread safe FlightRecorder that keeps everything it records, not just the last N
+   * events, by having a background thread drain it into rolling binary dump files in the given
+   * directory.  Read the files back with FlightRecorderBinaryDumpReader.
+   */
+  public static FlightRecorder getStreamingFlightRecorder(final Path directory)
+  {
+    return getStreamingFlightRecorder(
+      directory,
+      DEFAULT_NUMBER_OF_STREAMED_EVENTS,
+      DEFAULT_MAXIMUM_BYTES_PER_STREAMED_FILE,
+      DEFAULT_MAXIMUM_MINUTES_PER_STREAMED_FILE,
+      TimeUnit.MINUTES,
+      DEFAULT_MAXIMUM_NUMBER_OF_STREAMED_FILES
+    );
+  }
+
+  /*
+   * As above, starting a new file whenever the current one reaches either limit, and only
+   * keeping the newest maximumNumberOfFiles of them.
+   */
+  public static FlightRecorder getStreamingFlightRecorder(
+    final Path directory,
+    final int numberOfEvents,
+    final long maximumBytesPerFile,
+    final long maximumTimePerFile,
+    final TimeUnit timeUnit,
+    final int maximumNumberOfFiles
+  )
+  {
+    final RollingBinaryDumpFiles files = new RollingBinaryDumpFiles(directory, "flightrecording", maximumBytesPerFile, timeUnit.toNanos(maximumTimePerFile), maximumNumberOfFiles);
+    lastGivenFlightRecorder = new StreamingFlightRecorder(numberOfEvents, files);
+    return lastGivenFlightRecorder;
+  }
+
+  /*
+   * Wraps the given recorder so that recording the trigger event (or calling trigger()) dumps
+   * the events leading up to it and the given number after it to the dumper, from a thread of
+   * its own.  See TriggeredFlightRecorder.
+   */
+  public static FlightRecorder getTriggeredFlightRecorder(
+    final FlightRecorder recorder,
+    final FlightRecorderEventID triggerEventID,
+    final int numberOfEventsAfterTrigger,
+    final FlightRecorderEventDumper eventDumper
+  )
+  {
+    lastGivenFlightRecorder = new TriggeredFlightRecorder(recorder, triggerEventID, numberOfEventsAfterTrigger, eventDumper);
+    return lastGivenFlightRecorder;
+  }
+
+  /*
+   * Wraps the given executor so that each task records a submitted event (payloads: correlation
+   * ID, task ID), a started event (task ID, nanoseconds spent queued) and a completed event
+   * (task ID, nanoseconds spent running) into the recorder.  Tasks are run from the executor's
+   * threads, so the recorder needs to be a thread safe one.  See RecordingExecutor.
+   */
+  public static Executor getRecordingExecutor(
+    final Executor executor,
+    final FlightRecorder recorder,
+    final FlightRecorderEventID taskSubmittedEventID,
+    final FlightRecorderEventID taskStartedEventID,
+    final FlightRecorderEventID taskCompletedEventID
+  )
+  {
+    return new RecordingExecutor(executor, recorder, taskSubmittedEventID, taskStartedEventID, taskCompletedEventID);
+  }
+
+  /*
+   * As above, for an ExecutorService (such as a virtual thread per task executor).
+   */
+  public static ExecutorService getRecordingExecutorService(
+    final ExecutorService executorService,
+    final FlightRecorder recorder,
+    final FlightRecorderEventID taskSubmittedEventID,
+    final FlightRecorderEventID taskStartedEventID,
+    final FlightRecorderEventID taskCompletedEventID
+  )
+  {
+    return new RecordingExecutorService(executorService, recorder, taskSubmittedEventID, taskStartedEventID, taskCompletedEventID);
+  }
+
+  /*
+   * Makes any uncaught exception, in any thread, call triggerNow() on the given recorder before
+   * going on to whatever default uncaught exception handler was there before.  The dump doesn't
+   * wait for the events after the trigger, as the thread that is dying won't record them.
+   */
+  public static void triggerOnUncaughtExceptions(final FlightRecorder recorder)
+  {
+    final Thread.UncaughtExceptionHandler previousHandler = Thread.getDefaultUncaughtExceptionHandler();
+    Thread.setDefaultUncaughtExceptionHandler((thread, exception) -> {
+      recorder.triggerNow();
+      if (previousHandler != null)
+      {
+        previousHandler.uncaughtException(thread, exception);
+      }
+      else
+      {
+        // What the JVM would have done without a handler (asking the ThreadGroup would just come back here)
+        System.err.print("Exception in thread \"" + thread.getName() + "\" ");
+        exception.printStackTrace(System.err);
+      }
+    });
+  }
+
+  /*
+   * Registers your Enum of events now, instead of when the first of them is recorded, so that
+   * an event ID it shares with another registered Enum is reported straight away, with an
+   * IllegalStateException.  (The recorders keep each event as its index in a table of all of
+   * the registered events; see EventIDTable.)
+   */
+  public static <E extends Enum<E> & FlightRecorderEventID> void registerEventIDs(final Class<E> eventIDs)
+  {
+    EventIDTable.registerEnum(eventIDs);
+  }
+
+  /*
+   * The default clock for the FlightRecorders: nanosecond resolution, anchored to the wall
+   * clock once.  There's only one of these, so all recorders using it agree on the time.
+   */
+  public static FlightRecorderClock getMonotonicClock()
+  {
+    return MONOTONIC_CLOCK;
+  }
+
+  /*
+   * A cheaper but coarser clock for very hot events, only updated once per tick by a
+   * background thread.  Each call starts a new ticker thread, so share the clock you get.
+   */
+  public static FlightRecorderClock getCoarseClock(final long tick, final TimeUnit tickUnit)
+  {
+    return new CoarseFlightRecorderClock(MONOTONIC_CLOCK, tick, tickUnit);
+  }
+
+  /*
+   * Sampling policies for FlightRecorder.setSamplingPolicy().  Each call makes a new policy with
+   * its own count or bucket, so get one for each event ID you want to sample separately.
+   */
+  public static FlightRecorderSamplingPolicy getOneInNSampling(final long n)
+  {
+    return new OneInNSamplingPolicy(n);
+  }
+
+  public static FlightRecorderSamplingPolicy getEventsPerSecondSampling(final long eventsPerSecond)
+  {
+    return new TokenBucketSamplingPolicy(eventsPerSecond);
+  }
+
+  public static FlightRecorderSamplingPolicy getFirstNPerWindowSampling(final long n, final long window, final TimeUnit windowUnit)
+  {
+    return new FirstNPerWindowSamplingPolicy(n, window, windowUnit);
+  }
+
   public static FlightRecorderEventDumper getStringDumper(final String dumpTitle)
   {
     return new FlightRecorderEventDumperToString(dumpTitle); 
   }
+
+  /*
+   * Writes the same text as the string dumper, but streams it to the given Writer (or any
+   * other Appendable, such as System.out) as it goes instead of keeping it all in memory.
+   */
+  public static FlightRecorderEventDumper getWriterDumper(final String dumpTitle, final Appendable output)
+  {
+    return new FlightRecorderEventDumperToWriter(dumpTitle, output);
+  }
+
+  /*
+   * Wraps any dumper so the events are given to it in lanes, one thread's events after
+   * another's, instead of all interleaved.  See ThreadLaneDumper.
+   */
+  public static FlightRecorderEventDumper getThreadLaneDumper(final FlightRecorderEventDumper eventDumper)
+  {
+    return new ThreadLaneDumper(eventDumper);
+  }
+
+  /*
+   * A much more compact dumper than the string one, that streams as it goes instead of
+   * building up the whole dump in memory.  Read it back with FlightRecorderBinaryDumpReader.
+   */
+  public static FlightRecorderEventDumper getBinaryDumper(final String dumpTitle, final WritableByteChannel channel)
+  {
+    return new FlightRecorderEventDumperToChannel(dumpTitle, channel);
+  }
  
+  /*
+   * The recorder with the given name, which is made (thread safe, with room for the given
+   * number of events) the first time the name is asked for.  After that the same recorder is
+   * returned, whatever number of events is asked for.
+   */
+  public static FlightRecorder getNamedFlightRecorder(final String name, final int numberOfEvents)
+  {
+    return namedFlightRecorders.computeIfAbsent(name, nameToRegister -> registerMXBean(nameToRegister, new ConcurrentRingBufferFlightRecorder(numberOfEvents)));
+  }
+
+  /*
+   * Gives a name to a recorder made some other way (memory mapped, streaming...) so that it
+   * can be found with getNamedFlightRecorder(name) like the others.
+   */
+  public static FlightRecorder registerNamedFlightRecorder(final String name, final FlightRecorder recorder)
+  {
+    final FlightRecorder alreadyRegistered = namedFlightRecorders.putIfAbsent(name, recorder);
+    if ((alreadyRegistered != null) && (alreadyRegistered != recorder))
+    {
+      throw new IllegalStateException(String.format("There is already a FlightRecorder named %s", name));
+    }
+    if (alreadyRegistered == null)
+    {
+      try
+      {
+        registerMXBean(name, recorder);
+      }
+      catch (final RuntimeException e)
+      {
+        namedFlightRecorders.remove(name, recorder);
+        throw e;
+      }
+    }
+    return recorder;
+  }
+
+  public static FlightRecorder getNamedFlightRecorder(final String name)
+  {
+    final FlightRecorder recorder = namedFlightRecorders.get(name);
+    if (recorder != null)
+      return recorder;
+    throw new IllegalStateException(String.format("No FlightRecorder named %s", name));
+  }
+
+  /*
+   * All of the named recorders as of now, sorted by name.
+   */
+  public static Map<String, FlightRecorder> getNamedFlightRecorders()
+  {
+    return Collections.unmodifiableMap(new TreeMap<>(namedFlightRecorders));
+  }
+
+  public static FlightRecorder removeNamedFlightRecorder(final String name)
+  {
+    final FlightRecorder recorder = namedFlightRecorders.remove(name);
+    if (recorder == null)
+      return FlightRecorder.INVALID;
+    unregisterMXBean(name);
+    return recorder;
+  }
+
+  /*
+   * Registers a FlightRecorderMXBean for the recorder with the platform MBeanServer, under the
+   * given name (see FlightRecorderMXBean for the ObjectName).  The named recorders are
+   * registered already.
+   */
+  public static FlightRecorder registerMXBean(final String name, final FlightRecorder recorder)
+  {
+    FlightRecorderManagement.register(name, recorder);
+    return recorder;
+  }
+
+  /*
+   * The directory that FlightRecorderMXBean.dumpToFile() writes its dumps into.  Until this is
+   * called, dumpToFile() refuses to write anything, since anybody with JMX access can call it.
+   */
+  public static void setMXBeanDumpDirectory(final Path directory)
+  {
+    FlightRecorderManagement.setDumpDirectory(directory);
+  }
+
+  /*
+   * Returns false if there was no FlightRecorderMXBean with that name.
+   */
+  public static boolean unregisterMXBean(final String name)
+  {
+    return FlightRecorderManagement.unregister(name);
+  }
+
+  /*
+   * Dumps the events of all of the given recorders to the dumper as one dump, merged in
+   * timestamp order.  Each recorder's events keep their own sequence numbers, and say which
+   * recorder they came from with FlightRecorderEvent.getRecorderIndex(), from 1 in the order
+   * the recorders were given.  The dumper is told each recorder's name: its name if it was
+   * made by getNamedFlightRecorder(), or "recorder" and its index if not.  A snapshot is
+   * taken of each recorder first, and then they are merged as they are dumped, so they are
+   * never all put together and sorted.  The recorders should share a clock (the default one
+   * is shared) or their timestamps won't mean the same thing.
+   */
+  public static void dumpMergedEntriesTo(final FlightRecorderEventDumper eventDumper, final FlightRecorder... recorders)
+  {
+    final FlightRecorderSnapshot[] snapshots = new FlightRecorderSnapshot[recorders.length];
+    final String[] recorderNames = new String[recorders.length];
+    for (int i=0; i<recorders.length; i++)
+    {
+      snapshots[i]     = recorders[i].takeSnapshot();
+      recorderNames[i] = "recorder " + (i + 1);
+      for (final Map.Entry<String, FlightRecorder> namedRecorder : namedFlightRecorders.entrySet())
+        if (namedRecorder.getValue() == recorders[i])  recorderNames[i] = namedRecorder.getKey();
+    }
+    FlightRecorderSnapshot.dumpMergedEntriesTo(eventDumper, recorderNames, snapshots);
+  }
+
+  /*
+   * As above, for all of the named recorders.
+   */
+  public static void dumpMergedEntriesTo(final FlightRecorderEventDumper eventDumper)
+  {
+    dumpMergedEntriesTo(eventDumper, getNamedFlightRecorders().values().toArray(new FlightRecorder[0]));
+  }
+
   public static FlightRecorder getFlightRecorderAgain()
   {
     if (lastGivenFlightRecorder != FlightRecorder.INVALID)
@@ -0,0 +1,106 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * A histogram of nanosecond times (such as the time between one event and the next) as given
+ * to a FlightRecorderEventDumper.  It always takes the same small amount of memory, however
+ * many values went into it, because the buckets are powers of two: bucket 0 holds the zeros,
+ * and bucket b holds the values from 2^(b-1) up to 2^b - 1.  That makes the percentiles
+ * approximate; they are given as the top of the bucket they fall in, so never too low.
+ */
+import java.util.Arrays;
+
+public final class FlightRecorderHistogram
+{
+  public static final int NUMBER_OF_BUCKETS = 64;
+
+  static final FlightRecorderHistogram EMPTY = new FlightRecorderHistogram(new long[NUMBER_OF_BUCKETS]);
+
+  private final long[] bucketCounts;
+  private final long numberOfValues;
+
+  FlightRecorderHistogram(final long[] bucketCounts)
+  {
+    if (bucketCounts.length > NUMBER_OF_BUCKETS)
+    {
+      throw new IllegalArgumentException(String.format("A histogram has at most %d buckets, not %d", NUMBER_OF_BUCKETS, bucketCounts.length));
+    }
+    this.bucketCounts = Arrays.copyOf(bucketCounts, NUMBER_OF_BUCKETS);
+    long total = 0;
+    for (final long bucketCount : bucketCounts)  total += bucketCount;
+    numberOfValues = total;
+  }
+
+  public static int bucketFor(final long value)
+  {
+    return (value <= 0) ? 0 : (Long.SIZE - Long.numberOfLeadingZeros(value));
+  }
+
+  public static long getBucketLowerBound(final int bucket)
+  {
+    return (bucket == 0) ? 0 : (1L << (bucket - 1));
+  }
+
+  public static long getBucketUpperBound(final int bucket)
+  {
+    return (bucket == 0) ? 0 : ((1L << (bucket - 1)) - 1) + (1L << (bucket - 1));
+  }
+
+  public long getNumberOfValues()
+  {
+    return numberOfValues;
+  }
+
+  public long getBucketCount(final int bucket)
+  {
+    return bucketCounts[bucket];
+  }
+
+  /*
+   * A histogram of the values in both, for combining the summaries of several recorders.
+   */
+  FlightRecorderHistogram plus(final FlightRecorderHistogram other)
+  {
+    final long[] bothBucketCounts = new long[NUMBER_OF_BUCKETS];
+    for (int i=0; i<NUMBER_OF_BUCKETS; i++)  bothBucketCounts[i] = bucketCounts[i] + other.bucketCounts[i];
+    return new FlightRecorderHistogram(bothBucketCounts);
+  }
+
+  /*
+   * The bucket counts, without the empty buckets at the end.
+   */
+  long[] getBucketCounts()
+  {
+    int numberOfBuckets = NUMBER_OF_BUCKETS;
+    while ((numberOfBuckets > 0) && (bucketCounts[numberOfBuckets-1] == 0))  numberOfBuckets--;
+    return Arrays.copyOf(bucketCounts, numberOfBuckets);
+  }
+
+  /*
+   * The value that the given percentage (0 to 100) of the values are at or below, give or take
+   * the width of its bucket.  0 if there are no values.
+   */
+  public long getPercentile(final double percentile)
+  {
+    if ((percentile < 0) || (percentile > 100))
+    {
+      throw new IllegalArgumentException(String.format("Percentile must be from 0 to 100, not %f", percentile));
+    }
+    final long rank = (long)Math.ceil(numberOfValues * percentile / 100.0);
+    long numberSoFar = 0;
+    for (int bucket=0; bucket<NUMBER_OF_BUCKETS; bucket++)
+    {
+      numberSoFar += bucketCounts[bucket];
+      if ((numberSoFar >= rank) && (numberSoFar > 0))  return getBucketUpperBound(bucket);
+    }
+    return 0;
+  }
+
+  public long getMaximum()
+  {
+    return getPercentile(100);
+  }
+}
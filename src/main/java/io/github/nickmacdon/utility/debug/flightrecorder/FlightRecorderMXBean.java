@@ -0,0 +1,43 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * What JMX (JConsole, VisualVM, a monitoring agent...) sees of a FlightRecorder registered with
+ * FlightRecorderFactory.registerMXBean(), under the ObjectName
+ *
+ *   io.github.nickmacdon.utility.debug.flightrecorder:type=FlightRecorder,name="<its name>"
+ *
+ * The attributes are those of its FlightRecorderStatistics, read afresh each time.  The
+ * operations start, stop and clear the recorder, and dump it: dump() gives the text dump, and
+ * dumpToFile() writes a binary dump (see FlightRecorderBinaryDumpReader) to a new file on the
+ * recorder's machine and gives the number of bytes written.  The file is given by name only,
+ * and goes in the directory set with FlightRecorderFactory.setMXBeanDumpDirectory(); until that
+ * is set, or if the file is already there, it fails rather than writing anything.
+ *
+ * They are called on a JMX thread, so they are best used with thread safe recorders (the named
+ * ones are, unless you registered another kind).  For any other the numbers are only
+ * approximate while it is recording, and it should be stopped before it is dumped.
+ */
+public interface FlightRecorderMXBean
+{
+  String getName();
+  boolean isRecording();
+  long getNumberOfEventsRecorded();
+  long getNumberOfEventsLost();
+  long getNumberOfEventsSuppressed();
+  double getEventsPerSecond();
+  int getNumberOfEntries();
+  double getOccupancy();
+  long getLastDumpTimeMillis();
+  long getLastDumpDurationNanos();
+  long getLastDumpBytes();
+
+  void startRecording();
+  void stopRecording();
+  void clearAllRecordedEvents();
+  String dump();
+  long dumpToFile(String fileName);
+}
@@ -0,0 +1,225 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * The FlightRecorderMXBean of one FlightRecorder, and the registering of them with the
+ * platform MBeanServer.  Each attribute takes its own FlightRecorderStatistics, which is cheap,
+ * so nothing here is cached or goes stale.
+ *
+ * Anybody who can reach the MBeanServer can call dumpToFile(), so it can't be allowed to write
+ * wherever it is told.  It only writes into the directory given to
+ * FlightRecorderFactory.setMXBeanDumpDirectory() (and not at all until one is), takes a plain
+ * file name rather than a path, and never replaces a file that is already there.
+ */
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+final class FlightRecorderManagement implements FlightRecorderMXBean
+{
+  static final String OBJECT_NAME_DOMAIN = "io.github.nickmacdon.utility.debug.flightrecorder";
+
+  private static volatile Path dumpDirectory = null;  // No dumpToFile() until one is set
+
+  private final String name;
+  private final FlightRecorder recorder;
+
+  private FlightRecorderManagement(final String name, final FlightRecorder recorder)
+  {
+    this.name     = name;
+    this.recorder = recorder;
+  }
+
+  static void register(final String name, final FlightRecorder recorder)
+  {
+    try
+    {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(new FlightRecorderManagement(name, recorder), objectNameFor(name));
+    }
+    catch (final InstanceAlreadyExistsException e)
+    {
+      throw new IllegalStateException(String.format("There is already a FlightRecorder MXBean named %s", name), e);
+    }
+    catch (final JMException e)
+    {
+      throw new IllegalStateException(String.format("Unable to register the FlightRecorder MXBean named %s", name), e);
+    }
+  }
+
+  /*
+   * Returns false if there wasn't one with that name.
+   */
+  static boolean unregister(final String name)
+  {
+    try
+    {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectNameFor(name));
+      return true;
+    }
+    catch (final InstanceNotFoundException e)
+    {
+      return false;
+    }
+    catch (final JMException e)
+    {
+      throw new IllegalStateException(String.format("Unable to unregister the FlightRecorder MXBean named %s", name), e);
+    }
+  }
+
+  static void setDumpDirectory(final Path directory)
+  {
+    dumpDirectory = directory.toAbsolutePath().normalize();
+  }
+
+  static ObjectName objectNameFor(final String name)
+  {
+    try
+    {
+      return new ObjectName(OBJECT_NAME_DOMAIN + ":type=FlightRecorder,name=" + ObjectName.quote(name));
+    }
+    catch (final MalformedObjectNameException e)
+    {
+      throw new IllegalArgumentException(String.format("%s can't be used in the name of an MXBean", name), e);
+    }
+  }
+
+  @Override
+  public String getName()
+  {
+    return name;
+  }
+
+  @Override
+  public boolean isRecording()
+  {
+    return recorder.getStatistics().isRecording();
+  }
+
+  @Override
+  public long getNumberOfEventsRecorded()
+  {
+    return recorder.getStatistics().getNumberOfEventsRecorded();
+  }
+
+  @Override
+  public long getNumberOfEventsLost()
+  {
+    return recorder.getStatistics().getNumberOfEventsLost();
+  }
+
+  @Override
+  public long getNumberOfEventsSuppressed()
+  {
+    return recorder.getStatistics().getNumberOfEventsSuppressed();
+  }
+
+  @Override
+  public double getEventsPerSecond()
+  {
+    return recorder.getStatistics().getEventsPerSecond();
+  }
+
+  @Override
+  public int getNumberOfEntries()
+  {
+    return recorder.getStatistics().getNumberOfEntries();
+  }
+
+  @Override
+  public double getOccupancy()
+  {
+    return recorder.getStatistics().getOccupancy();
+  }
+
+  @Override
+  public long getLastDumpTimeMillis()
+  {
+    return recorder.getStatistics().getLastDumpTimeMillis();
+  }
+
+  @Override
+  public long getLastDumpDurationNanos()
+  {
+    return recorder.getStatistics().getLastDumpDurationNanos();
+  }
+
+  @Override
+  public long getLastDumpBytes()
+  {
+    return recorder.getStatistics().getLastDumpBytes();
+  }
+
+  @Override
+  public void startRecording()
+  {
+    recorder.startRecording();
+  }
+
+  @Override
+  public void stopRecording()
+  {
+    recorder.stopRecording();
+  }
+
+  @Override
+  public void clearAllRecordedEvents()
+  {
+    recorder.clearAllRecordedEvents();
+  }
+
+  @Override
+  public String dump()
+  {
+    final FlightRecorderEventDumper eventDumper = FlightRecorderFactory.getStringDumper(name);
+    recorder.dumpEntriesTo(eventDumper);
+    return eventDumper.toString();
+  }
+
+  @Override
+  public long dumpToFile(final String fileName)
+  {
+    final Path file = fileInDumpDirectory(fileName);
+    try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE))
+    {
+      final FlightRecorderEventDumper eventDumper = FlightRecorderFactory.getBinaryDumper(name, channel);
+      recorder.dumpEntriesTo(eventDumper);
+      return eventDumper.getNumberOfBytesDumped();
+    }
+    catch (final IOException e)
+    {
+      throw new UncheckedIOException("Unable to write flight recorder dump to " + file, e);
+    }
+  }
+
+  private static Path fileInDumpDirectory(final String fileName)
+  {
+    final Path directory = dumpDirectory;
+    if (directory == null)
+    {
+      throw new IllegalStateException("No directory to dump to has been set with FlightRecorderFactory.setMXBeanDumpDirectory()");
+    }
+    final Path relativeFile = Paths.get(fileName);
+    if (relativeFile.isAbsolute() || (relativeFile.getNameCount() != 1) || fileName.equals(".") || fileName.equals(".."))
+    {
+      throw new IllegalArgumentException(String.format("The dump must be given a file name, not the path %s", fileName));
+    }
+    final Path file = directory.resolve(relativeFile).normalize();
+    if (!directory.equals(file.getParent()))
+    {
+      throw new IllegalArgumentException(String.format("The dump must be given a file name, not the path %s", fileName));
+    }
+    return file;
+  }
+}
@@ -0,0 +1,194 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * Which of the recorded events to dump, for FlightRecorder.dumpMatchingEntriesTo().  Start with
+ * ALL and narrow it down; each with...() gives a new query, since a query never changes:
+ *
+ * fr.dumpMatchingEntriesTo(FlightRecorderQuery.ALL.withSequenceNumbers(990, 1010), eventDumper);
+ *
+ * The sequence numbers and timestamps only go up from one event to the next in the ring, so
+ * the range of entries to dump is found with a binary search on each rather than by looking
+ * at every entry, and then only the entries in the range are made into FlightRecorderEvents
+ * and dumped.  An event ID filter is checked on each entry in the range, on its raw event ID.
+ *
+ * With the concurrent recorder the timestamps aren't always in order: an event's sequence
+ * number is taken before the clock is read, and a thread can be descheduled for any length of
+ * time in between.  So the search for a time range is widened by the most any timestamp is
+ * behind an earlier one (RecordedEvents.getTimeStampDisorder()), which is still safe to search
+ * by, and the timestamp of each entry in the widened range is checked too.  When the
+ * timestamps are in order the widening is 0 and the check never fails.
+ *
+ * The dump of a query only has the matching events; the per event ID summaries and the
+ * suppressed counts are about all of the events, so they are left out.
+ */
+import java.util.Arrays;
+import java.util.BitSet;
+
+public final class FlightRecorderQuery
+{
+  private static final long[] ANY_EVENT_ID = new long[0];
+
+  public static final FlightRecorderQuery ALL = new FlightRecorderQuery(Long.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE, ANY_EVENT_ID);
+
+  private final long firstSequenceNumber;
+  private final long lastSequenceNumber;
+  private final long firstTimeStampNanos;
+  private final long lastTimeStampNanos;
+  private final long[] eventIDs;  // sorted, or ANY_EVENT_ID
+
+  private FlightRecorderQuery(
+    final long firstSequenceNumber,
+    final long lastSequenceNumber,
+    final long firstTimeStampNanos,
+    final long lastTimeStampNanos,
+    final long[] eventIDs
+  )
+  {
+    this.firstSequenceNumber = firstSequenceNumber;
+    this.lastSequenceNumber  = lastSequenceNumber;
+    this.firstTimeStampNanos = firstTimeStampNanos;
+    this.lastTimeStampNanos  = lastTimeStampNanos;
+    this.eventIDs            = eventIDs;
+  }
+
+  /*
+   * Only the events with sequence numbers from first to last, including both.
+   */
+  public FlightRecorderQuery withSequenceNumbers(final long first, final long last)
+  {
+    checkRange("sequence numbers", first, last);
+    return new FlightRecorderQuery(first, last, firstTimeStampNanos, lastTimeStampNanos, eventIDs);
+  }
+
+  /*
+   * Only the events recorded from first to last, including both, in the nanoseconds since the
+   * epoch of the recorder's FlightRecorderClock.
+   */
+  public FlightRecorderQuery withTimestampsNanos(final long first, final long last)
+  {
+    checkRange("timestamps", first, last);
+    return new FlightRecorderQuery(firstSequenceNumber, lastSequenceNumber, first, last, eventIDs);
+  }
+
+  /*
+   * Only the events with one of these event IDs.
+   */
+  public FlightRecorderQuery withEventIDs(final FlightRecorderEventID... eventIDsToMatch)
+  {
+    final long[] sortedEventIDs = new long[eventIDsToMatch.length];
+    for (int i=0; i<eventIDsToMatch.length; i++)  sortedEventIDs[i] = eventIDsToMatch[i].getEventID();
+    Arrays.sort(sortedEventIDs);
+    return new FlightRecorderQuery(firstSequenceNumber, lastSequenceNumber, firstTimeStampNanos, lastTimeStampNanos, sortedEventIDs);
+  }
+
+  private static void checkRange(final String whatOf, final long first, final long last)
+  {
+    if (first > last)
+    {
+      throw new IllegalArgumentException(String.format("Range of %s starts at %d after it ends at %d", whatOf, first, last));
+    }
+  }
+
+  boolean matchesEventID(final long eventID)
+  {
+    return (eventIDs == ANY_EVENT_ID) || (Arrays.binarySearch(eventIDs, eventID) >= 0);
+  }
+
+  /*
+   * Dumps the matching entries of the given events, the way the recorders dump all of them.
+   */
+  void dumpMatchingEntries(
+    final RecordedEvents events,
+    final long startTimeStampNanos,
+    final long endTimeStampNanos,
+    final int numberOfEventsLost,
+    final FlightRecorderEventDumper eventDumper
+  )
+  {
+    final long timeStampDisorder = events.getTimeStampDisorder();
+    final int firstEntry = Math.max(
+      firstEntryAfter(events, true, firstSequenceNumber, false),
+      firstEntryAfter(events, false, saturatedAdd(firstTimeStampNanos, -timeStampDisorder), false)
+    );
+    final int endEntry = Math.min(
+      firstEntryAfter(events, true, lastSequenceNumber, true),
+      firstEntryAfter(events, false, saturatedAdd(lastTimeStampNanos, timeStampDisorder), true)
+    );
+    int numberOfMatches = 0;
+    final BitSet threadIndexes = new BitSet();
+    final BitSet eventIndexes  = new BitSet();
+    final BitSet stackIDs      = new BitSet();
+    for (int i=firstEntry; i<endEntry; i++)
+    {
+      if (matches(events, i))
+      {
+        numberOfMatches++;
+        threadIndexes.set(EventFlags.threadIndex(events.getFlagsAt(i)));
+        eventIndexes.set(events.getEventIndexAt(i));
+        stackIDs.set(events.getStackIDAt(i));
+      }
+    }
+
+    eventDumper.setDumpTimestampsNanos(startTimeStampNanos, endTimeStampNanos);
+    eventDumper.dumpBegins();
+    eventDumper.setNumberOfEventsToBeDumped(numberOfMatches);
+    eventDumper.setNumberOfEventsLostDuringSnapshot(numberOfEventsLost);
+    ThreadTable.reportThreadNames(threadIndexes, eventDumper);
+    EventIDTable.reportEventNames(eventIndexes, eventDumper);
+    StackTable.reportStacks(stackIDs, eventDumper);
+    for (int i=firstEntry; i<endEntry; i++)
+      if (matches(events, i))  eventDumper.dumpEvent(events.getEventAt(i));
+    eventDumper.dumpComplete();
+  }
+
+  private boolean matches(final RecordedEvents events, final int entryNumber)
+  {
+    final long timeStamp = events.getTimeStampAt(entryNumber);
+    return (timeStamp >= firstTimeStampNanos) && (timeStamp <= lastTimeStampNanos) && matchesEventID(events.getEventIDAt(entryNumber));
+  }
+
+  private static long saturatedAdd(final long value, final long amount)
+  {
+    final long sum = value + amount;
+    // Only overflows when both have the same sign and the sum doesn't
+    if (((value ^ amount) >= 0) && ((value ^ sum) < 0))  return (value < 0) ? Long.MIN_VALUE : Long.MAX_VALUE;
+    return sum;
+  }
+
+  /*
+   * The number of the first entry whose sequence number (or timestamp) is at least the given
+   * value, or more than it if orEqual is set, found by binary search.  With timestamps that
+   * are out of order by up to d, searching for a value widened by d is still safe: an entry
+   * below (first - d) means none before it are at or above first, and an entry above
+   * (last + d) means none after it are at or below last.
+   */
+  private static int firstEntryAfter(final RecordedEvents events, final boolean bySequenceNumber, final long value, final boolean orEqual)
+  {
+    int low  = 0;
+    int high = events.getNumberOfEntries();
+    while (low < high)
+    {
+      final int middle = (low + high) >>> 1;
+      final long entryValue = bySequenceNumber ? events.getSequenceNumberAt(middle) : events.getTimeStampAt(middle);
+      if ((entryValue < value) || (orEqual && (entryValue == value)))
+        low = middle + 1;
+      else
+        high = middle;
+    }
+    return low;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "FlightRecorderQuery(sequence numbers %d to %d, timestamps %d to %d, event IDs %s)",
+      firstSequenceNumber, lastSequenceNumber, firstTimeStampNanos, lastTimeStampNanos,
+      (eventIDs == ANY_EVENT_ID) ? "any" : Arrays.toString(eventIDs)
+    );
+  }
+}
@@ -0,0 +1,45 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * Decides which events of a very chatty event ID are actually recorded, so that it can't fill
+ * the whole ring and push out the rare events you care about.  Give one to a FlightRecorder with
+ * setSamplingPolicy().  The FlightRecorderFactory makes three kinds: one in every N events, a
+ * maximum number of events per second (a token bucket), and the first N in every window of
+ * time.  They are all lock free and don't allocate, and the recorder counts the events each
+ * one suppresses so the dumps can say how many there really were.
+ *
+ * A policy keeps its own state (a counter or a bucket), so give each event ID its own one,
+ * unless you want several event IDs to share the same limit.  RECORD_EVERY_EVENT is the same
+ * as having no policy.
+ *
+ * The recorder passes its own FlightRecorderClock to shouldRecord(), so the time based
+ * policies go by the same time as the events: a coarse clock makes them cheaper too, and a
+ * test can step them through their windows with a clock of its own.
+ *
+ * Please use FlightRecorderSamplingPolicy.INVALID in place of using null to initialize any variable... or
+ * as a return type when you might have been considering returning null instead.
+ */
+public interface FlightRecorderSamplingPolicy
+{
+  boolean shouldRecord(FlightRecorderClock clock);
+
+  public static final FlightRecorderSamplingPolicy RECORD_EVERY_EVENT = clock -> true;
+
+  public static final FlightRecorderSamplingPolicy INVALID = new FlightRecorderSamplingPolicy()
+  {
+    @Override
+    public boolean shouldRecord(final FlightRecorderClock clock)
+    {
+      throw makeException("shouldRecord()");
+    }
+
+    private RuntimeException makeException(final String caller)
+    {
+      return new IllegalStateException("Use of FlightRecorderSamplingPolicy.INVALID: " + caller);
+    }
+  };
+}
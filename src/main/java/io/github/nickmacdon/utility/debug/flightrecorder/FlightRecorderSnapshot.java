@@ -0,0 +1,369 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * A copy of what a FlightRecorder had recorded at one moment, from FlightRecorder.takeSnapshot().
+ * Taking the copy is quick (it is a bulk copy of the recorder's columns, not a dump) so the
+ * recorder can carry on recording straight away, and the slow part, dumping, is done from the
+ * snapshot afterwards, on whatever thread you like.  The snapshot never changes once taken.
+ *
+ * When events are recorded from other threads while the snapshot is being taken (with the
+ * concurrent recorder) a few of the oldest events may be overwritten before they could be
+ * copied.  They are left out rather than copied half written, and the number of them is given
+ * to the dumper with setNumberOfEventsLostDuringSnapshot().
+ *
+ * Snapshots of several recorders can be dumped as one with dumpMergedEntriesTo(), which
+ * merges their events by timestamp as it goes, and tags each one with the recorder it came
+ * from (each recorder has its own sequence numbers, so they alone can't tell them apart).
+ * A snapshot of the concurrent recorder is in sequence number order, which may not quite be
+ * timestamp order, so its events are put in timestamp order for the merge.
+ */
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+public final class FlightRecorderSnapshot
+{
+  static final FlightRecorderSnapshot EMPTY = new FlightRecorderSnapshot(new EventRingBuffer(1), 0, 0, 0, SuppressedEventCounts.NONE, EventSummaries.NONE);
+
+  private final EventRingBuffer events;
+  private final long startTimeStampNanos;
+  private final long endTimeStampNanos;
+  private final int numberOfEventsLost;
+  private final SuppressedEventCounts suppressedEventCounts;
+  private final EventSummaries eventSummaries;
+
+  FlightRecorderSnapshot(
+    final EventRingBuffer events,
+    final long startTimeStampNanos,
+    final long endTimeStampNanos,
+    final int numberOfEventsLost,
+    final SuppressedEventCounts suppressedEventCounts,
+    final EventSummaries eventSummaries
+  )
+  {
+    this.events                = events;
+    this.startTimeStampNanos   = startTimeStampNanos;
+    this.endTimeStampNanos     = endTimeStampNanos;
+    this.numberOfEventsLost    = numberOfEventsLost;
+    this.suppressedEventCounts = suppressedEventCounts;
+    this.eventSummaries        = eventSummaries;
+  }
+
+  public int getNumberOfEntries()
+  {
+    return events.getNumberOfEntries();
+  }
+
+  public int getNumberOfEventsLost()
+  {
+    return numberOfEventsLost;
+  }
+
+  public FlightRecorderSnapshot dumpEntriesTo(final FlightRecorderEventDumper eventDumper)
+  {
+    dumpEntries(events, startTimeStampNanos, endTimeStampNanos, numberOfEventsLost, suppressedEventCounts, eventSummaries, eventDumper);
+    return this;
+  }
+
+  /*
+   * Dumps all of the given events, for a snapshot or for a recorder dumping its ring in place.
+   */
+  static void dumpEntries(
+    final RecordedEvents events,
+    final long startTimeStampNanos,
+    final long endTimeStampNanos,
+    final int numberOfEventsLost,
+    final SuppressedEventCounts suppressedEventCounts,
+    final EventSummaries eventSummaries,
+    final FlightRecorderEventDumper eventDumper
+  )
+  {
+    eventDumper.setDumpTimestampsNanos(startTimeStampNanos, endTimeStampNanos);
+    eventDumper.dumpBegins();
+    final int numberOfEntries = events.getNumberOfEntries();
+    eventDumper.setNumberOfEventsToBeDumped(numberOfEntries);
+    eventDumper.setNumberOfEventsLostDuringSnapshot(numberOfEventsLost);
+    suppressedEventCounts.reportTo(eventDumper);
+    ThreadTable.reportThreadNames(events, 0, numberOfEntries, eventDumper);
+    EventIDTable.reportEventNames(events, 0, numberOfEntries, eventDumper);
+    StackTable.reportStacks(events, 0, numberOfEntries, eventDumper);
+    for (int i=0; i<numberOfEntries; i++)
+      eventDumper.dumpEvent(events.getEventAt(i));
+    eventSummaries.reportTo(eventDumper);
+    eventDumper.dumpComplete();
+  }
+
+  public FlightRecorderSnapshot dumpMatchingEntriesTo(final FlightRecorderQuery query, final FlightRecorderEventDumper eventDumper)
+  {
+    query.dumpMatchingEntries(events, startTimeStampNanos, endTimeStampNanos, numberOfEventsLost, eventDumper);
+    return this;
+  }
+
+  /*
+   * Dumps the events of all of the snapshots as one dump, in timestamp order.  Each snapshot is
+   * already in order, so this is a k-way merge: a small heap holds the next event of each
+   * snapshot, and the earliest of them is dumped and replaced by the one after it.  (Events
+   * with the same timestamp come in the order the snapshots were given.)  Each event gets the
+   * index of its snapshot's recorder, from 1 in the order they were given, and the recorders'
+   * names go to the dumper before the threads'.  The suppressed counts and the summaries of
+   * an event ID recorded by more than one of them are added together, so each is given once.
+   */
+  static void dumpMergedEntriesTo(final FlightRecorderEventDumper eventDumper, final String[] recorderNames, final FlightRecorderSnapshot... snapshots)
+  {
+    if (recorderNames.length != snapshots.length)
+    {
+      throw new IllegalArgumentException(String.format("There are %d recorder names for %d snapshots", recorderNames.length, snapshots.length));
+    }
+    SuppressedEventCounts suppressedEventCounts = SuppressedEventCounts.NONE;
+    EventSummaries eventSummaries = EventSummaries.NONE;
+    long startTimeStampNanos = Long.MAX_VALUE;
+    long endTimeStampNanos   = Long.MIN_VALUE;
+    int numberOfEntries      = 0;
+    int numberOfEventsLost   = 0;
+    for (final FlightRecorderSnapshot snapshot : snapshots)
+    {
+      startTimeStampNanos = Math.min(startTimeStampNanos, snapshot.startTimeStampNanos);
+      endTimeStampNanos   = Math.max(endTimeStampNanos, snapshot.endTimeStampNanos);
+      numberOfEntries    += snapshot.events.getNumberOfEntries();
+      numberOfEventsLost += snapshot.numberOfEventsLost;
+      suppressedEventCounts = suppressedEventCounts.plus(snapshot.suppressedEventCounts);
+      eventSummaries        = eventSummaries.plus(snapshot.eventSummaries);
+    }
+    if (snapshots.length == 0)
+    {
+      startTimeStampNanos = 0;
+      endTimeStampNanos   = 0;
+    }
+
+    eventDumper.setDumpTimestampsNanos(startTimeStampNanos, endTimeStampNanos);
+    eventDumper.dumpBegins();
+    eventDumper.setNumberOfEventsToBeDumped(numberOfEntries);
+    eventDumper.setNumberOfEventsLostDuringSnapshot(numberOfEventsLost);
+    suppressedEventCounts.reportTo(eventDumper);
+    for (int i=0; i<snapshots.length; i++)  eventDumper.setRecorderName(recorderIndexOf(i), recorderNames[i]);
+    final BitSet threadIndexes = new BitSet();
+    final BitSet eventIndexes  = new BitSet();
+    final BitSet stackIDs      = new BitSet();
+    for (final FlightRecorderSnapshot snapshot : snapshots)
+    {
+      ThreadTable.addThreadsOf(snapshot.events, 0, snapshot.events.getNumberOfEntries(), threadIndexes);
+      EventIDTable.addEventsOf(snapshot.events, 0, snapshot.events.getNumberOfEntries(), eventIndexes);
+      StackTable.addStacksOf(snapshot.events, 0, snapshot.events.getNumberOfEntries(), stackIDs);
+    }
+    ThreadTable.reportThreadNames(threadIndexes, eventDumper);
+    EventIDTable.reportEventNames(eventIndexes, eventDumper);
+    StackTable.reportStacks(stackIDs, eventDumper);
+
+    final PriorityQueue<MergeCursor> nextEvents = new PriorityQueue<>(Math.max(1, snapshots.length));
+    for (int i=0; i<snapshots.length; i++)
+      if (snapshots[i].events.getNumberOfEntries() > 0)  nextEvents.add(new MergeCursor(snapshots[i].events, i));
+    while (!nextEvents.isEmpty())
+    {
+      final MergeCursor earliest = nextEvents.poll();
+      eventDumper.dumpEvent(earliest.events.getEventAt(earliest.entryNumberNow(), recorderIndexOf(earliest.snapshotNumber)));
+      if (earliest.advance())  nextEvents.add(earliest);
+    }
+
+    eventSummaries.reportTo(eventDumper);
+    eventDumper.dumpComplete();
+  }
+
+  private static int recorderIndexOf(final int snapshotNumber)
+  {
+    return snapshotNumber + 1;  // So none of them is NO_RECORDER
+  }
+
+  /*
+   * Where the merge is up to in one snapshot.  The cursor is put back in the heap after it
+   * moves on, so merging doesn't make anything per event beyond the events being dumped.
+   * When the snapshot's timestamps aren't in order it goes through its entries in the order
+   * of timeStampOrder instead, so the merge never goes back in time.
+   */
+  private static final class MergeCursor implements Comparable<MergeCursor>
+  {
+    private final EventRingBuffer events;
+    private final int snapshotNumber;
+    private final int[] timeStampOrder;  // null when the entries are already in timestamp order
+    private int position = 0;
+    private long timeStamp;
+
+    MergeCursor(final EventRingBuffer events, final int snapshotNumber)
+    {
+      this.events         = events;
+      this.snapshotNumber = snapshotNumber;
+      timeStampOrder      = (events.getTimeStampDisorder() > 0) ? timeStampOrderOf(events) : null;
+      timeStamp           = events.getTimeStampAt(entryNumberNow());
+    }
+
+    int entryNumberNow()
+    {
+      return (timeStampOrder == null) ? position : timeStampOrder[position];
+    }
+
+    boolean advance()
+    {
+      position++;
+      if (position >= events.getNumberOfEntries())  return false;
+      timeStamp = events.getTimeStampAt(entryNumberNow());
+      return true;
+    }
+
+    /*
+     * The entry numbers in timestamp order, and in sequence number order for the same
+     * timestamp.  It's an insertion sort, like EventRingBuffer.sortBySequenceNumber(), since
+     * only a few entries are ever out of place.
+     */
+    private static int[] timeStampOrderOf(final EventRingBuffer events)
+    {
+      final int numberOfEntries = events.getNumberOfEntries();
+      final int[] order = new int[numberOfEntries];
+      for (int i=0; i<numberOfEntries; i++)
+      {
+        final long timeStamp = events.getTimeStampAt(i);
+        int j = i;
+        for (; (j > 0) && (events.getTimeStampAt(order[j-1]) > timeStamp); j--)  order[j] = order[j-1];
+        order[j] = i;
+      }
+      return order;
+    }
+
+    @Override
+    public int compareTo(final MergeCursor other)
+    {
+      final int byTimeStamp = Long.compare(timeStamp, other.timeStamp);
+      return (byTimeStamp != 0) ? byTimeStamp : Integer.compare(snapshotNumber, other.snapshotNumber);
+    }
+  }
+
+  /*
+   * Joins this snapshot with one taken later: everything in this one, followed by whatever
+   * the later one has that was recorded after the last event in this one.
+   */
+  FlightRecorderSnapshot followedBy(final FlightRecorderSnapshot laterSnapshot)
+  {
+    final int numberOfEntries = events.getNumberOfEntries();
+    final long lastSequenceNumber = (numberOfEntries > 0) ? events.getSequenceNumberAt(numberOfEntries-1) : Long.MIN_VALUE;
+    final int numberOfLaterEntries = laterSnapshot.events.getNumberOfEntries();
+    int firstLaterEntry = 0;
+    while ((firstLaterEntry < numberOfLaterEntries) && (laterSnapshot.events.getSequenceNumberAt(firstLaterEntry) <= lastSequenceNumber))  firstLaterEntry++;
+
+    final EventRingBuffer joinedEvents = new EventRingBuffer(Math.max(1, numberOfEntries + numberOfLaterEntries - firstLaterEntry));
+    for (int i=0; i<numberOfEntries; i++)  joinedEvents.putEntryFrom(events, i);
+    for (int i=firstLaterEntry; i<numberOfLaterEntries; i++)  joinedEvents.putEntryFrom(laterSnapshot.events, i);
+    // The suppressed counts and summaries only ever go up, so the later ones already include the earlier ones
+    return new FlightRecorderSnapshot(joinedEvents, startTimeStampNanos, laterSnapshot.endTimeStampNanos, numberOfEventsLost + laterSnapshot.numberOfEventsLost, laterSnapshot.suppressedEventCounts, laterSnapshot.eventSummaries);
+  }
+
+  /*
+   * Makes a snapshot of any FlightRecorder by dumping it into a new ring.  The recorders in
+   * this package take their snapshots more directly; this is for the ones that don't.
+   */
+  static FlightRecorderSnapshot byDumping(final FlightRecorder recorder)
+  {
+    final SnapshotDumper snapshotDumper = new SnapshotDumper();
+    recorder.dumpEntriesTo(snapshotDumper);
+    return new FlightRecorderSnapshot(snapshotDumper.events, snapshotDumper.startTimeStampNanos, snapshotDumper.endTimeStampNanos, snapshotDumper.numberOfEventsLost, snapshotDumper.suppressedEventCounts, snapshotDumper.eventSummaries);
+  }
+
+  private static final class SnapshotDumper implements FlightRecorderEventDumper
+  {
+    private EventRingBuffer events = new EventRingBuffer(1);
+    private long startTimeStampNanos = 0;
+    private long endTimeStampNanos   = 0;
+    private int numberOfEventsLost   = 0;
+    private SuppressedEventCounts suppressedEventCounts = SuppressedEventCounts.NONE;
+    private EventSummaries eventSummaries = EventSummaries.NONE;
+    // The recorder's stack IDs may not be ours (it could be replaying a dump), so each one is looked up again here
+    private final Map<Integer, Integer> stackIDs = new HashMap<>();
+    // Likewise each event ID and name, once, rather than for every event
+    private final Map<Long, Integer> eventIndexes = new HashMap<>();
+
+    @Override
+    public void setDumpTimestamps(final long startTimeStamp, final long endTimeStamp)
+    {
+      setDumpTimestampsNanos(startTimeStamp * 1_000_000L, endTimeStamp * 1_000_000L);
+    }
+
+    @Override
+    public void setDumpTimestampsNanos(final long startTimeStampNanos, final long endTimeStampNanos)
+    {
+      this.startTimeStampNanos = startTimeStampNanos;
+      this.endTimeStampNanos   = endTimeStampNanos;
+    }
+
+    @Override
+    public void setNumberOfEventsToBeDumped(final int numberOfEvents)
+    {
+      events = new EventRingBuffer(Math.max(1, numberOfEvents));
+    }
+
+    @Override
+    public void setNumberOfEventsLostDuringSnapshot(final int numberOfEventsLost)
+    {
+      this.numberOfEventsLost = numberOfEventsLost;
+    }
+
+    @Override
+    public void setNumberOfEventsSuppressed(final FlightRecorderEventID suppressedEventID, final long numberOfEventsSuppressed)
+    {
+      suppressedEventCounts = suppressedEventCounts.with(suppressedEventID, numberOfEventsSuppressed);
+    }
+
+    @Override
+    public void setEventName(final long eventID, final String eventName)
+    {
+      eventIndexes.put(eventID, EventIDTable.indexOfNamed(eventID, eventName));
+    }
+
+    @Override
+    public void setStack(final int stackID, final StackTraceElement[] frames)
+    {
+      stackIDs.put(stackID, StackTable.idOf(frames));
+    }
+
+    @Override
+    public void dumpBegins()
+    {
+      // Nothing to do until we know how many events are coming
+    }
+
+    @Override
+    public void dumpEvent(final FlightRecorderEvent eventToDump)
+    {
+      // A dumper that didn't give the names up front still gets each event ID looked up only once
+      final Integer eventIndex = eventIndexes.computeIfAbsent(eventToDump.getEventID(), eventID -> EventIDTable.indexOfNamed(eventID, eventToDump.getEventName()));
+      events.putIndexed(
+        eventIndex,
+        eventToDump.getSequenceNumber(),
+        eventToDump.getEventTimestampNanos(),
+        EventFlags.of(eventToDump),
+        (eventToDump.getNumberOfPayloads() > 0) ? eventToDump.getPayload(0) : 0,
+        (eventToDump.getNumberOfPayloads() > 1) ? eventToDump.getPayload(1) : 0,
+        stackIDs.getOrDefault(eventToDump.getStackID(), FlightRecorderEvent.NO_STACK)
+      );
+    }
+
+    @Override
+    public void dumpEventSummary(final FlightRecorderEventID summarizedEventID, final long numberOfEvents, final FlightRecorderHistogram nanosBetweenEvents)
+    {
+      eventSummaries = eventSummaries.with(summarizedEventID, numberOfEvents, nanosBetweenEvents);
+    }
+
+    @Override
+    public void dumpSpanSummary(final FlightRecorderEventID summarizedSpanID, final FlightRecorderHistogram spanDurationNanos)
+    {
+      eventSummaries = eventSummaries.withSpans(summarizedSpanID, spanDurationNanos);
+    }
+
+    @Override
+    public void dumpComplete()
+    {
+      // Nothing to do
+    }
+  }
+}
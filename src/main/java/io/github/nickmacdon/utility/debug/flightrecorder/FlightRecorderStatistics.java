@@ -0,0 +1,146 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * How a FlightRecorder is doing, from FlightRecorder.getStatistics(), so you can check that
+ * recording costs what you think it does without dumping anything.  Like a snapshot, it never
+ * changes once taken; ask again for newer numbers.
+ *
+ * The counts are since the recording was started, or last cleared:
+ *
+ *   recorded    - every event that went into the ring, whether or not it is still there
+ *   lost        - the ones that were overwritten to make room for newer ones (or, for a
+ *                 StreamingFlightRecorder, that were overwritten before they could be drained)
+ *   suppressed  - the ones a FlightRecorderSamplingPolicy left out
+ *
+ * Disabled events, and events while not recording, aren't counted at all.  getEventsPerSecond()
+ * is the number recorded divided by the (real) time since counting began, so it is an average
+ * that includes any time the recorder was stopped.  getOccupancy() is how full the ring is, from
+ * 0 to 1; once the ring is full it stays full, and each event recorded loses the oldest.
+ *
+ * The last dump is the last call of dumpEntriesTo() or dumpMatchingEntriesTo() on the recorder
+ * itself (not on a snapshot of it): when it ended, in milliseconds since the epoch (or
+ * NO_DUMP_YET), how long it took in nanoseconds, and how many bytes the dumper says it wrote.
+ */
+import java.util.concurrent.TimeUnit;
+
+public final class FlightRecorderStatistics
+{
+  public static final long NO_DUMP_YET = 0;
+
+  private final boolean recording;
+  private final long numberOfEventsRecorded;
+  private final long numberOfEventsLost;
+  private final long numberOfEventsSuppressed;
+  private final int numberOfEntries;
+  private final double occupancy;
+  private final long nanosCounted;
+  private final long lastDumpTimeMillis;
+  private final long lastDumpDurationNanos;
+  private final long lastDumpBytes;
+
+  FlightRecorderStatistics(
+    final boolean recording,
+    final long numberOfEventsRecorded,
+    final long numberOfEventsLost,
+    final long numberOfEventsSuppressed,
+    final int numberOfEntries,
+    final double occupancy,
+    final long nanosCounted,
+    final long lastDumpTimeMillis,
+    final long lastDumpDurationNanos,
+    final long lastDumpBytes
+  )
+  {
+    this.recording                = recording;
+    this.numberOfEventsRecorded   = numberOfEventsRecorded;
+    this.numberOfEventsLost       = numberOfEventsLost;
+    this.numberOfEventsSuppressed = numberOfEventsSuppressed;
+    this.numberOfEntries          = numberOfEntries;
+    this.occupancy                = occupancy;
+    this.nanosCounted             = nanosCounted;
+    this.lastDumpTimeMillis       = lastDumpTimeMillis;
+    this.lastDumpDurationNanos    = lastDumpDurationNanos;
+    this.lastDumpBytes            = lastDumpBytes;
+  }
+
+  /*
+   * All that can be said of a FlightRecorder that doesn't keep statistics.
+   */
+  static FlightRecorderStatistics ofEntries(final int numberOfEntries)
+  {
+    return new FlightRecorderStatistics(false, numberOfEntries, 0, 0, numberOfEntries, 0, 0, NO_DUMP_YET, 0, 0);
+  }
+
+  FlightRecorderStatistics withNumberOfEventsLost(final long numberOfEventsLost)
+  {
+    return new FlightRecorderStatistics(
+      recording, numberOfEventsRecorded, numberOfEventsLost, numberOfEventsSuppressed, numberOfEntries, occupancy,
+      nanosCounted, lastDumpTimeMillis, lastDumpDurationNanos, lastDumpBytes
+    );
+  }
+
+  public boolean isRecording()
+  {
+    return recording;
+  }
+
+  public long getNumberOfEventsRecorded()
+  {
+    return numberOfEventsRecorded;
+  }
+
+  public long getNumberOfEventsLost()
+  {
+    return numberOfEventsLost;
+  }
+
+  public long getNumberOfEventsSuppressed()
+  {
+    return numberOfEventsSuppressed;
+  }
+
+  public int getNumberOfEntries()
+  {
+    return numberOfEntries;
+  }
+
+  public double getOccupancy()
+  {
+    return occupancy;
+  }
+
+  public double getEventsPerSecond()
+  {
+    if (nanosCounted <= 0)  return 0;
+    return numberOfEventsRecorded * (double)TimeUnit.SECONDS.toNanos(1) / nanosCounted;
+  }
+
+  public long getLastDumpTimeMillis()
+  {
+    return lastDumpTimeMillis;
+  }
+
+  public long getLastDumpDurationNanos()
+  {
+    return lastDumpDurationNanos;
+  }
+
+  public long getLastDumpBytes()
+  {
+    return lastDumpBytes;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "%s, %d events recorded (%.1f per second), %d lost, %d suppressed, %d in the ring (%.0f%% full)",
+      recording ? "Recording" : "Not recording", numberOfEventsRecorded, getEventsPerSecond(),
+      numberOfEventsLost, numberOfEventsSuppressed, numberOfEntries, 100 * occupancy
+    );
+  }
+}
@@ -9,55 +9,78 @@ package io.github.nickmacdon.utility.debug.flightrecorder;
  * a largish array in memory.)  This means the oldest events will get overwritten when the ring
  * buffer gets full.  This allows you to leave the flight recorder in record mode as long as
  * you want while you wait to catch a record of the problem when it eventually occurs.
+ *
+ * The events are kept in an EventRingBuffer, which stores the pieces of each event in primitive
+ * columns, so recording an event doesn't allocate anything.  (This means the getEvent() method
+ * of your FlightRecorderEventID isn't called when recording; the FlightRecorderEvent objects are
+ * only created when the recording is dumped.)
+ *
+ * The timestamps come from a FlightRecorderClock, read once per recorded event.  Beside the
+ * ring, EventStatistics keeps a count and a histogram of the time between events for each event
+ * ID, which are given at the end of the dump and aren't lost when the ring wraps around.
+ *
+ * Since it is only used from one thread, takeSnapshot() is always consistent: it is just a
+ * bulk copy of the ring's columns that can then be dumped from another thread at leisure.
+ * The filtering and sampling are in AbstractFlightRecorder, and the rest of recording an
+ * event in AbstractStoringFlightRecorder.
  */
-final class InMemoryRingBufferFlightRecorder implements FlightRecorder
+final class InMemoryRingBufferFlightRecorder extends AbstractStoringFlightRecorder
 {
-  private final RingBuffer<FlightRecorderEvent> ringBuffer;
-  private boolean amRecording = false;
+  private final EventRingBuffer ringBuffer;
   private long sequenceNumber = 0;
-  private long startTimeStamp = 0;
   private long endTimeStamp   = 0;
   
   public InMemoryRingBufferFlightRecorder(final int numberOfEventsInRingBuffer)
   {
-    ringBuffer = new RingBuffer<>(numberOfEventsInRingBuffer, FlightRecorderEvent.INVALID, FlightRecorderEvent.class);
+    this(numberOfEventsInRingBuffer, FlightRecorderFactory.getMonotonicClock());
+  }
+
+  public InMemoryRingBufferFlightRecorder(final int numberOfEventsInRingBuffer, final FlightRecorderClock clock)
+  {
+    super(clock);
+    ringBuffer = new EventRingBuffer(numberOfEventsInRingBuffer);
   }
 
   @Override
-  public FlightRecorder recordEvent(final FlightRecorderEventID eventToRecord)
+  long nextSequenceNumber()
   {
-    sequenceNumber++;  // non recorded events still consume sequence numbers (by design)
-    if (amRecording)
-    {
-      endTimeStamp = System.currentTimeMillis();
+    return ++sequenceNumber;
+  }
 
-      final FlightRecorderEvent eventToStore = eventToRecord.getEvent(sequenceNumber);
-      ringBuffer.put(eventToStore);
-    }
-    return this;
+  @Override
+  void store(
+    final FlightRecorderEventID eventToRecord,
+    final long eventSequenceNumber,
+    final long timeStamp,
+    final int flagsToStore,
+    final long payload0,
+    final long payload1,
+    final int stackID
+  )
+  {
+    endTimeStamp = timeStamp;
+    ringBuffer.put(eventToRecord, eventSequenceNumber, timeStamp, flagsToStore, payload0, payload1, stackID);
   }
 
   @Override
   public FlightRecorder startRecording()
   {
-    if (startTimeStamp == 0) startTimeStamp = System.currentTimeMillis();
     //TODO ringBuffer.put(SPECIAL_EVENTS_STARTED_RECORDING);
-    amRecording = true;
-    return this;
+    return super.startRecording();
   }
 
   @Override
   public FlightRecorder stopRecording()
   {
-    amRecording = false;
     //TODO ringBuffer.put(SPECIAL_EVENTS_STOPPED_RECORDING);
-    return this;
+    return super.stopRecording();
   }
 
   @Override
   public FlightRecorder clearAllRecordedEvents()
   {
     ringBuffer.clearAllEntries();
+    clearCounts();
     return this;
   }
 
@@ -67,19 +90,31 @@ final class InMemoryRingBufferFlightRecorder implements FlightRecorder
     return ringBuffer.getNumberOfEntries();
   }
 
+  @Override
+  public FlightRecorderStatistics getStatistics()
+  {
+    final int numberOfEntries     = ringBuffer.getNumberOfEntries();
+    final long numberOfEventsLost = ringBuffer.getNumberOfLostEntries();
+    return statisticsOf(numberOfEntries + numberOfEventsLost, numberOfEventsLost, numberOfEntries, (double)numberOfEntries / ringBuffer.getMaxNumberOfEntries());
+  }
+
+  @Override
+  public FlightRecorderSnapshot takeSnapshot()
+  {
+    return snapshotOf(new EventRingBuffer(ringBuffer), endTimeStamp, 0);
+  }
+
+  @Override
+  public FlightRecorder dumpMatchingEntriesTo(final FlightRecorderQuery query, final FlightRecorderEventDumper eventDumper)
+  {
+    dumpMatching(query, ringBuffer, endTimeStamp, eventDumper);
+    return this;
+  }
+
   @Override
   public FlightRecorder dumpEntriesTo(final FlightRecorderEventDumper eventDumper)
   {
-    eventDumper.setDumpTimestamps(startTimeStamp, endTimeStamp);
-    eventDumper.dumpBegins();
-    final int numberOfEntries = ringBuffer.getNumberOfEntries();
-    eventDumper.setNumberOfEventsToBeDumped(numberOfEntries);
-    if (numberOfEntries > 0)
-    {
-      for (int i=0; i<numberOfEntries; i++)
-        eventDumper.dumpEvent(ringBuffer.peekAtEntry(i));
-    }
-    eventDumper.dumpComplete();
+    dumpAll(ringBuffer, endTimeStamp, eventDumper);
     return this;
   }
 }
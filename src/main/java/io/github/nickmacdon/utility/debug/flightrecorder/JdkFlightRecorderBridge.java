@@ -0,0 +1,22 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * Makes the FlightRecorder for FlightRecorderFactory.getJdkFlightRecorderBridge().  The jar is a
+ * multi-release jar: on Java 17 and later the version of this class in META-INF/versions/17
+ * (from src/main/java17) is used instead, which forwards the events to the JDK's own Flight
+ * Recorder (jdk.jfr).  There is no jdk.jfr to forward to on Java 8, so this version just gives
+ * the usual in-memory ring.
+ */
+final class JdkFlightRecorderBridge
+{
+  private JdkFlightRecorderBridge() {}  // No instantiation
+
+  static FlightRecorder makeFlightRecorder(final int numberOfEvents, final FlightRecorderClock clock)
+  {
+    return new InMemoryRingBufferFlightRecorder(numberOfEvents, clock);
+  }
+}
@@ -0,0 +1,120 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * This reads back the file left behind by a memory mapped FlightRecorder (see
+ * FlightRecorderFactory.getMemoryMappedFlightRecorder()), typically after the process that
+ * was recording has died.  It replays the recording through any FlightRecorderEventDumper,
+ * just like FlightRecorder.dumpEntriesTo() would have.
+ *
+ * The file only holds event IDs, so pass in your Enum's values() to get the event names back.
+ * Events with IDs it doesn't know about are given a name made from the ID.  The names of the
+ * threads are in the file, so they come back without any help.  A record that was in the middle
+ * of being written when the process died is left out.
+ *
+ * It can also be run from the command line to print a dump:
+ *   java -cp flight-recorder-utility.jar io.github.nickmacdon.utility.debug.flightrecorder.MemoryMappedFlightRecorderReader file
+ */
+import static io.github.nickmacdon.utility.debug.flightrecorder.MemoryMappedRingBufferLayout.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+public final class MemoryMappedFlightRecorderReader
+{
+  private final ByteBuffer buffer;
+  private final int numberOfRecords;
+  private final Map<Long, FlightRecorderEventID> knownEventIDs = new HashMap<>();
+
+  public MemoryMappedFlightRecorderReader(final Path ringBufferFile, final FlightRecorderEventID... knownEventIDs)
+  {
+    try (final FileChannel channel = FileChannel.open(ringBufferFile, StandardOpenOption.READ))
+    {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    catch (final IOException e)
+    {
+      throw new UncheckedIOException("Unable to read flight recorder file " + ringBufferFile, e);
+    }
+    buffer.order(BYTE_ORDER);
+    numberOfRecords = checkHeader(buffer);
+    for (final FlightRecorderEventID eventID : knownEventIDs)  this.knownEventIDs.put(eventID.getEventID(), eventID);
+  }
+
+  public int getNumberOfEntriesRecorded()
+  {
+    final long nextPosition = findNextPosition(buffer, numberOfRecords);
+    final long firstPosition = Math.max(buffer.getLong(HEADER_FIRST_POSITION_OFFSET), nextPosition - numberOfRecords);
+    int numberOfEntries = 0;
+    for (long position=firstPosition; position<nextPosition; position++)
+      if (isCommitted(buffer, position, numberOfRecords))  numberOfEntries++;
+    return numberOfEntries;
+  }
+
+  public void dumpEntriesTo(final FlightRecorderEventDumper eventDumper)
+  {
+    final long nextPosition = findNextPosition(buffer, numberOfRecords);
+    final long firstPosition = Math.max(buffer.getLong(HEADER_FIRST_POSITION_OFFSET), nextPosition - numberOfRecords);
+    final long endTimeStamp = (nextPosition > firstPosition) && isCommitted(buffer, nextPosition-1, numberOfRecords)
+      ? buffer.getLong(recordOffset(nextPosition-1, numberOfRecords) + RECORD_TIMESTAMP_OFFSET)
+      : 0;
+
+    eventDumper.setDumpTimestampsNanos(buffer.getLong(HEADER_START_TIMESTAMP_OFFSET), endTimeStamp);
+    eventDumper.dumpBegins();
+    eventDumper.setNumberOfEventsToBeDumped(getNumberOfEntriesRecorded());
+    reportThreadNames(firstPosition, nextPosition, eventDumper);
+    for (long position=firstPosition; position<nextPosition; position++)
+    {
+      if (!isCommitted(buffer, position, numberOfRecords))  continue;
+      final int offset = recordOffset(position, numberOfRecords);
+      eventDumper.dumpEvent(readRecord(buffer, offset, lookUpEventID(buffer.getLong(offset + RECORD_EVENT_ID_OFFSET))));
+    }
+    eventDumper.dumpComplete();
+  }
+
+  private void reportThreadNames(final long firstPosition, final long nextPosition, final FlightRecorderEventDumper eventDumper)
+  {
+    final BitSet threadIndexes = new BitSet();
+    for (long position=firstPosition; position<nextPosition; position++)
+    {
+      if (!isCommitted(buffer, position, numberOfRecords))  continue;
+      threadIndexes.set(EventFlags.threadIndex((int)buffer.getLong(recordOffset(position, numberOfRecords) + RECORD_FLAGS_OFFSET)));
+    }
+    final Map<Integer, String> threadNames = readThreadNames(buffer, numberOfRecords);
+    for (int i=threadIndexes.nextSetBit(0); i>=0; i=threadIndexes.nextSetBit(i+1))
+    {
+      final String threadName = threadNames.get(i);
+      if (threadName != null)  eventDumper.setThreadName(i, threadName);
+    }
+  }
+
+  private FlightRecorderEventID lookUpEventID(final long eventID)
+  {
+    final FlightRecorderEventID knownEventID = knownEventIDs.get(eventID);
+    if (knownEventID != null)  return knownEventID;
+    final FlightRecorderEventID unknownEventID = new RecordedFlightRecorderEventID(eventID);
+    knownEventIDs.put(eventID, unknownEventID);
+    return unknownEventID;
+  }
+
+  public static void main(final String[] args)
+  {
+    if (args.length != 1)
+    {
+      System.err.println("Usage: MemoryMappedFlightRecorderReader flightRecorderFile");
+      System.exit(1);
+    }
+    final FlightRecorderEventDumper eventDumper = FlightRecorderFactory.getWriterDumper(args[0], System.out);
+    new MemoryMappedFlightRecorderReader(Paths.get(args[0])).dumpEntriesTo(eventDumper);
+  }
+}
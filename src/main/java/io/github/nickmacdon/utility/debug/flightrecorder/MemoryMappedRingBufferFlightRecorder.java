@@ -0,0 +1,281 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * This FlightRecorder keeps its ring buffer in a memory mapped file instead of on the heap.
+ * Recording an event is just a few stores into the mapped memory (no write() call per event)
+ * and the operating system's page cache takes care of getting it into the file.  The point is
+ * that the recording survives the process dying, even from an OutOfMemoryError or a kill -9,
+ * and it can be read afterwards with MemoryMappedFlightRecorderReader.  (It won't survive the
+ * whole machine going down unless the pages were flushed; stopRecording() forces them out.)
+ *
+ * See MemoryMappedRingBufferLayout for the format of the file.  Starting a recorder on a file
+ * starts a fresh recording in it, but if the file already has a recording in it (most likely
+ * from before a crash, when the process is restarted the same way) that is first moved aside
+ * to the same name with ".previous" on the end, replacing any older one there.  So the
+ * recording of the last run can always still be read, but not that of the run before it.
+ *
+ * Like InMemoryRingBufferFlightRecorder this is meant to be used from a single thread.  The
+ * per event ID summaries at the end of its dumps are only kept in memory, not in the file.  The
+ * name of each thread is written into the file the first time it records an event, so the
+ * reader can name the threads too (up to the space set aside for them).  The stacks of the events
+ * that capture them (see setStackDepth()) aren't in the file at all, since their IDs mean nothing
+ * outside of this process; they are kept in memory with the event indexes, and only dumps made
+ * by the recorder itself have them.  Only writing the records is done here; the rest of recording
+ * an event is in AbstractStoringFlightRecorder.
+ */
+import static io.github.nickmacdon.utility.debug.flightrecorder.MemoryMappedRingBufferLayout.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+final class MemoryMappedRingBufferFlightRecorder extends AbstractStoringFlightRecorder
+{
+  private final int maxNumberOfEntries;
+  private final MappedByteBuffer buffer;
+  // The file only has the IDs, so the ID objects are kept here too for naming the events in a dump
+  private final int[] eventIndexes;  // in the EventIDTable, since the file only has the event IDs
+  private final int[] stackIDs;      // in the StackTable
+  private final BitSet threadsNamed = new BitSet();  // in the file, or that there was no room for
+  private long sequenceNumber = 0;
+  private long endTimeStamp   = 0;
+  private long firstPosition  = 0;
+  private long nextPosition   = 0;
+
+  public MemoryMappedRingBufferFlightRecorder(final Path ringBufferFile, final int numberOfEventsInRingBuffer)
+  {
+    this(ringBufferFile, numberOfEventsInRingBuffer, FlightRecorderFactory.getMonotonicClock());
+  }
+
+  public MemoryMappedRingBufferFlightRecorder(final Path ringBufferFile, final int numberOfEventsInRingBuffer, final FlightRecorderClock clock)
+  {
+    super(clock);
+    if (numberOfEventsInRingBuffer <= 0)
+    {
+      throw new IllegalArgumentException(String.format("Ring buffer size must be positive, not %d", numberOfEventsInRingBuffer));
+    }
+    if (fileSizeFor(numberOfEventsInRingBuffer) > Integer.MAX_VALUE)
+    {
+      throw new IllegalArgumentException(String.format("Ring buffer of %d events is too big to map", numberOfEventsInRingBuffer));
+    }
+    maxNumberOfEntries = numberOfEventsInRingBuffer;
+    eventIndexes       = new int[numberOfEventsInRingBuffer];
+    stackIDs           = new int[numberOfEventsInRingBuffer];
+
+    keepPreviousRecording(ringBufferFile);
+    try (final FileChannel channel = FileChannel.open(ringBufferFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE))
+    {
+      channel.truncate(0);  // Start fresh, so no stale records from a previous recording survive
+      buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSizeFor(numberOfEventsInRingBuffer));
+    }
+    catch (final IOException e)
+    {
+      throw new UncheckedIOException("Unable to map flight recorder file " + ringBufferFile, e);
+    }
+    buffer.order(BYTE_ORDER);
+    buffer.putInt(HEADER_MAGIC_OFFSET, MAGIC);
+    buffer.putInt(HEADER_VERSION_OFFSET, VERSION);
+    buffer.putInt(HEADER_RECORD_SIZE_OFFSET, RECORD_SIZE);
+    buffer.putInt(HEADER_NUMBER_OF_RECORDS_OFFSET, numberOfEventsInRingBuffer);
+    buffer.putInt(HEADER_THREAD_NAMES_END_OFFSET, 0);
+    threadsNamed.set(FlightRecorderEvent.NO_THREAD);
+    clearAllRecordedEvents();
+  }
+
+  static Path previousRecordingFileFor(final Path ringBufferFile)
+  {
+    return ringBufferFile.resolveSibling(ringBufferFile.getFileName() + ".previous");
+  }
+
+  /*
+   * Moves a recording that is already in the file aside (see previousRecordingFileFor()).  A
+   * file that doesn't start with the magic number isn't a recording, and is just overwritten.
+   */
+  private static void keepPreviousRecording(final Path ringBufferFile)
+  {
+    if (!Files.isRegularFile(ringBufferFile))  return;
+    try
+    {
+      try (final FileChannel channel = FileChannel.open(ringBufferFile, StandardOpenOption.READ))
+      {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(BYTE_ORDER);
+        while (header.hasRemaining())
+          if (channel.read(header) < 0)  return;  // Too short to be a recording
+        if (header.getInt(HEADER_MAGIC_OFFSET) != MAGIC)  return;
+      }
+      Files.move(ringBufferFile, previousRecordingFileFor(ringBufferFile), StandardCopyOption.REPLACE_EXISTING);
+    }
+    catch (final IOException e)
+    {
+      throw new UncheckedIOException("Unable to keep the previous recording in flight recorder file " + ringBufferFile, e);
+    }
+  }
+
+  @Override
+  long nextSequenceNumber()
+  {
+    return ++sequenceNumber;
+  }
+
+  @Override
+  void store(
+    final FlightRecorderEventID eventToRecord,
+    final long eventSequenceNumber,
+    final long timeStamp,
+    final int flagsToStore,
+    final long payload0,
+    final long payload1,
+    final int stackID
+  )
+  {
+    endTimeStamp = timeStamp;
+    final int threadIndex = EventFlags.threadIndex(flagsToStore);
+    if (!threadsNamed.get(threadIndex))
+    {
+      writeThreadName(buffer, maxNumberOfEntries, threadIndex, ThreadTable.getThreadName(threadIndex));
+      threadsNamed.set(threadIndex);  // Even if there was no room, so it isn't tried again
+    }
+    final int slot   = (int)(nextPosition % maxNumberOfEntries);
+    final int offset = recordOffset(nextPosition, maxNumberOfEntries);
+    buffer.putLong(offset + RECORD_COMMITTED_OFFSET, 0);
+    buffer.putLong(offset + RECORD_SEQUENCE_NUMBER_OFFSET, eventSequenceNumber);
+    buffer.putLong(offset + RECORD_EVENT_ID_OFFSET, eventToRecord.getEventID());
+    buffer.putLong(offset + RECORD_TIMESTAMP_OFFSET, timeStamp);
+    buffer.putLong(offset + RECORD_FLAGS_OFFSET, flagsToStore);
+    buffer.putLong(offset + RECORD_PAYLOAD0_OFFSET, payload0);
+    buffer.putLong(offset + RECORD_PAYLOAD1_OFFSET, payload1);
+    buffer.putLong(offset + RECORD_COMMITTED_OFFSET, nextPosition + 1);
+    eventIndexes[slot] = EventIDTable.indexOf(eventToRecord);
+    stackIDs[slot]     = stackID;
+    nextPosition++;
+    buffer.putLong(HEADER_NEXT_POSITION_OFFSET, nextPosition);
+  }
+
+  @Override
+  public FlightRecorder startRecording()
+  {
+    final boolean starting = (getStartTimeStamp() == 0);
+    super.startRecording();
+    if (starting)  buffer.putLong(HEADER_START_TIMESTAMP_OFFSET, getStartTimeStamp());
+    return this;
+  }
+
+  @Override
+  public FlightRecorder stopRecording()
+  {
+    super.stopRecording();
+    buffer.force();
+    return this;
+  }
+
+  @Override
+  public FlightRecorder clearAllRecordedEvents()
+  {
+    firstPosition = nextPosition;
+    clearCounts();
+    buffer.putLong(HEADER_FIRST_POSITION_OFFSET, firstPosition);
+    buffer.putLong(HEADER_NEXT_POSITION_OFFSET, nextPosition);
+    return this;
+  }
+
+  @Override
+  public int getNumberOfEntriesRecorded()
+  {
+    return (int)Math.min(nextPosition - firstPosition, maxNumberOfEntries);
+  }
+
+  @Override
+  public FlightRecorderStatistics getStatistics()
+  {
+    final long numberOfEventsRecorded = nextPosition - firstPosition;
+    final int numberOfEntries         = getNumberOfEntriesRecorded();
+    return statisticsOf(numberOfEventsRecorded, numberOfEventsRecorded - numberOfEntries, numberOfEntries, (double)numberOfEntries / maxNumberOfEntries);
+  }
+
+  @Override
+  public FlightRecorder dumpEntriesTo(final FlightRecorderEventDumper eventDumper)
+  {
+    dumpAll(new MappedEvents(), endTimeStamp, eventDumper);
+    return this;
+  }
+
+  @Override
+  public FlightRecorder dumpMatchingEntriesTo(final FlightRecorderQuery query, final FlightRecorderEventDumper eventDumper)
+  {
+    dumpMatching(query, new MappedEvents(), endTimeStamp, eventDumper);
+    return this;
+  }
+
+  /*
+   * The records in the file, read in place, so a query doesn't have to copy the ring first.
+   */
+  private final class MappedEvents implements RecordedEvents
+  {
+    private final int numberOfEntries = getNumberOfEntriesRecorded();
+    private final long firstPosition  = nextPosition - numberOfEntries;
+
+    @Override
+    public int getNumberOfEntries()
+    {
+      return numberOfEntries;
+    }
+
+    @Override
+    public long getSequenceNumberAt(final int entryNumberToPeekAt)
+    {
+      return buffer.getLong(offsetOf(entryNumberToPeekAt) + RECORD_SEQUENCE_NUMBER_OFFSET);
+    }
+
+    @Override
+    public long getTimeStampAt(final int entryNumberToPeekAt)
+    {
+      return buffer.getLong(offsetOf(entryNumberToPeekAt) + RECORD_TIMESTAMP_OFFSET);
+    }
+
+    @Override
+    public long getEventIDAt(final int entryNumberToPeekAt)
+    {
+      return buffer.getLong(offsetOf(entryNumberToPeekAt) + RECORD_EVENT_ID_OFFSET);
+    }
+
+    @Override
+    public int getEventIndexAt(final int entryNumberToPeekAt)
+    {
+      return eventIndexes[(int)((firstPosition + entryNumberToPeekAt) % maxNumberOfEntries)];
+    }
+
+    @Override
+    public int getFlagsAt(final int entryNumberToPeekAt)
+    {
+      return (int)buffer.getLong(offsetOf(entryNumberToPeekAt) + RECORD_FLAGS_OFFSET);
+    }
+
+    @Override
+    public int getStackIDAt(final int entryNumberToPeekAt)
+    {
+      return stackIDs[(int)((firstPosition + entryNumberToPeekAt) % maxNumberOfEntries)];
+    }
+
+    @Override
+    public FlightRecorderEvent getEventAt(final int entryNumberToPeekAt)
+    {
+      final int slot = (int)((firstPosition + entryNumberToPeekAt) % maxNumberOfEntries);
+      return readRecord(buffer, offsetOf(entryNumberToPeekAt), eventIndexes[slot], stackIDs[slot]);
+    }
+
+    private int offsetOf(final int entryNumber)
+    {
+      return recordOffset(firstPosition + entryNumber, maxNumberOfEntries);
+    }
+  }
+}
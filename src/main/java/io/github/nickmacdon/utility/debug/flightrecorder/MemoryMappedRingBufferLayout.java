@@ -0,0 +1,193 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * The layout of the ring buffer file used by MemoryMappedRingBufferFlightRecorder and read back
+ * by MemoryMappedFlightRecorderReader.  It is kept in one place so the two can't disagree.
+ *
+ * The file is a fixed size header followed by a fixed number of fixed size records and then
+ * a fixed size area for the names of the threads, all little endian:
+ *
+ *   header:  int magic, int version, int record size, int number of records,
+ *            long start timestamp, long first position (tail), long next position (head),
+ *            int end of the thread names (from the start of their area)
+ *   record:  long committed position + 1, long sequence number, long event ID, long timestamp,
+ *            long flags (see EventFlags), long payload 0, long payload 1
+ *   thread:  int thread index, int length, that many bytes of the name in UTF-8
+ *
+ * The name of a thread is added the first time one of its events is written, and the end in
+ * the header is moved past it afterwards, so a reader never sees half a name.  Once the area
+ * is full no more names are added, and the reader names those threads by their index.
+ *
+ * Positions count every record ever written, so the record for a position lives in slot
+ * (position % number of records).  Timestamps are in nanoseconds since the epoch.  The
+ * committed position is written last, which lets the reader tell a complete record from one
+ * that was being written when the process died.
+ */
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+final class MemoryMappedRingBufferLayout
+{
+  private MemoryMappedRingBufferLayout( ) {}  // No instantiation
+
+  static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+  static final int MAGIC   = 0x5246_4A42;  // "BJFR" when read as little endian bytes
+  static final int VERSION = 1;
+
+  static final int HEADER_MAGIC_OFFSET              = 0;
+  static final int HEADER_VERSION_OFFSET            = 4;
+  static final int HEADER_RECORD_SIZE_OFFSET        = 8;
+  static final int HEADER_NUMBER_OF_RECORDS_OFFSET  = 12;
+  static final int HEADER_START_TIMESTAMP_OFFSET    = 16;
+  static final int HEADER_FIRST_POSITION_OFFSET     = 24;
+  static final int HEADER_NEXT_POSITION_OFFSET      = 32;
+  static final int HEADER_THREAD_NAMES_END_OFFSET   = 40;
+  static final int HEADER_SIZE                      = 64;
+
+  static final int RECORD_COMMITTED_OFFSET          = 0;
+  static final int RECORD_SEQUENCE_NUMBER_OFFSET    = 8;
+  static final int RECORD_EVENT_ID_OFFSET           = 16;
+  static final int RECORD_TIMESTAMP_OFFSET          = 24;
+  static final int RECORD_FLAGS_OFFSET              = 32;
+  static final int RECORD_PAYLOAD0_OFFSET           = 40;
+  static final int RECORD_PAYLOAD1_OFFSET           = 48;
+  static final int RECORD_SIZE                      = 56;
+
+  static final int THREAD_NAMES_SIZE                = 64 * 1024;
+
+  static long fileSizeFor(final int numberOfRecords)
+  {
+    return threadNamesOffset(numberOfRecords) + THREAD_NAMES_SIZE;
+  }
+
+  static long threadNamesOffset(final int numberOfRecords)
+  {
+    return HEADER_SIZE + ((long)numberOfRecords * RECORD_SIZE);
+  }
+
+  static int recordOffset(final long position, final int numberOfRecords)
+  {
+    return HEADER_SIZE + ((int)(position % numberOfRecords) * RECORD_SIZE);
+  }
+
+  /*
+   * Checks the header is one we understand, and returns the number of records in the file.
+   */
+  static int checkHeader(final ByteBuffer buffer)
+  {
+    if (buffer.capacity() < HEADER_SIZE)
+    {
+      throw new IllegalStateException(String.format("Not a flight recorder file, only %d bytes long", buffer.capacity()));
+    }
+    if (buffer.getInt(HEADER_MAGIC_OFFSET) != MAGIC)
+    {
+      throw new IllegalStateException(String.format("Not a flight recorder file, magic number is 0x%08x", buffer.getInt(HEADER_MAGIC_OFFSET)));
+    }
+    if (buffer.getInt(HEADER_VERSION_OFFSET) != VERSION)
+    {
+      throw new IllegalStateException(String.format("Unsupported flight recorder file version %d", buffer.getInt(HEADER_VERSION_OFFSET)));
+    }
+    if (buffer.getInt(HEADER_RECORD_SIZE_OFFSET) != RECORD_SIZE)
+    {
+      throw new IllegalStateException(String.format("Unexpected flight recorder record size %d", buffer.getInt(HEADER_RECORD_SIZE_OFFSET)));
+    }
+    final int numberOfRecords = buffer.getInt(HEADER_NUMBER_OF_RECORDS_OFFSET);
+    if ((numberOfRecords <= 0) || (fileSizeFor(numberOfRecords) > buffer.capacity()))
+    {
+      throw new IllegalStateException(String.format("Flight recorder file is truncated or corrupt, it claims %d records", numberOfRecords));
+    }
+    return numberOfRecords;
+  }
+
+  /*
+   * The head position in the header is written after each record is committed, so if the
+   * process died in between the two the record after the head may be complete too.
+   */
+  static long findNextPosition(final ByteBuffer buffer, final int numberOfRecords)
+  {
+    long nextPosition = buffer.getLong(HEADER_NEXT_POSITION_OFFSET);
+    while (buffer.getLong(recordOffset(nextPosition, numberOfRecords) + RECORD_COMMITTED_OFFSET) == nextPosition + 1)
+      nextPosition++;
+    return nextPosition;
+  }
+
+  static FlightRecorderEvent readRecord(final ByteBuffer buffer, final int offset, final FlightRecorderEventID eventID)
+  {
+    return DefaultFlightRecorderEvent.withFlags(
+      buffer.getLong(offset + RECORD_TIMESTAMP_OFFSET),
+      buffer.getLong(offset + RECORD_SEQUENCE_NUMBER_OFFSET),
+      eventID,
+      (int)buffer.getLong(offset + RECORD_FLAGS_OFFSET),
+      buffer.getLong(offset + RECORD_PAYLOAD0_OFFSET),
+      buffer.getLong(offset + RECORD_PAYLOAD1_OFFSET),
+      FlightRecorderEvent.NO_STACK,
+      FlightRecorderEvent.NO_RECORDER
+    );
+  }
+
+  /*
+   * For the recorder writing the file, which knows each record's index in the EventIDTable, and
+   * the ID of the stack it was recorded from.
+   */
+  static FlightRecorderEvent readRecord(final ByteBuffer buffer, final int offset, final int eventIndex, final int stackID)
+  {
+    return DefaultFlightRecorderEvent.withEventIndex(
+      buffer.getLong(offset + RECORD_TIMESTAMP_OFFSET),
+      buffer.getLong(offset + RECORD_SEQUENCE_NUMBER_OFFSET),
+      eventIndex,
+      (int)buffer.getLong(offset + RECORD_FLAGS_OFFSET),
+      buffer.getLong(offset + RECORD_PAYLOAD0_OFFSET),
+      buffer.getLong(offset + RECORD_PAYLOAD1_OFFSET),
+      stackID,
+      FlightRecorderEvent.NO_RECORDER
+    );
+  }
+
+  /*
+   * Adds a thread's name to the end of the thread names, unless there isn't room; returns
+   * whether it was added.
+   */
+  static boolean writeThreadName(final ByteBuffer buffer, final int numberOfRecords, final int threadIndex, final String threadName)
+  {
+    final byte[] name = threadName.getBytes(StandardCharsets.UTF_8);
+    final int end = buffer.getInt(HEADER_THREAD_NAMES_END_OFFSET);
+    if (end + (2 * Integer.BYTES) + name.length > THREAD_NAMES_SIZE)  return false;
+    final int offset = (int)threadNamesOffset(numberOfRecords) + end;
+    buffer.putInt(offset, threadIndex);
+    buffer.putInt(offset + Integer.BYTES, name.length);
+    for (int i=0; i<name.length; i++)  buffer.put(offset + (2 * Integer.BYTES) + i, name[i]);
+    buffer.putInt(HEADER_THREAD_NAMES_END_OFFSET, end + (2 * Integer.BYTES) + name.length);
+    return true;
+  }
+
+  static Map<Integer, String> readThreadNames(final ByteBuffer buffer, final int numberOfRecords)
+  {
+    final Map<Integer, String> threadNames = new HashMap<>();
+    final int start = (int)threadNamesOffset(numberOfRecords);
+    final int end   = start + Math.min(Math.max(buffer.getInt(HEADER_THREAD_NAMES_END_OFFSET), 0), THREAD_NAMES_SIZE);
+    for (int offset=start; offset + (2 * Integer.BYTES) <= end; )
+    {
+      final int threadIndex = buffer.getInt(offset);
+      final int length      = buffer.getInt(offset + Integer.BYTES);
+      if ((length < 0) || (offset + (2 * Integer.BYTES) + length > end))  break;  // Corrupt, keep what was read
+      final byte[] name = new byte[length];
+      for (int i=0; i<length; i++)  name[i] = buffer.get(offset + (2 * Integer.BYTES) + i);
+      threadNames.put(threadIndex, new String(name, StandardCharsets.UTF_8));
+      offset += (2 * Integer.BYTES) + length;
+    }
+    return threadNames;
+  }
+
+  static boolean isCommitted(final ByteBuffer buffer, final long position, final int numberOfRecords)
+  {
+    return buffer.getLong(recordOffset(position, numberOfRecords) + RECORD_COMMITTED_OFFSET) == position + 1;
+  }
+}
@@ -0,0 +1,29 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * The default FlightRecorderClock.  The wall clock is read once, when the clock is made, and
+ * from then on the time is worked out from System.nanoTime(), which has (typically) nanosecond
+ * resolution and doesn't jump when somebody changes the system time.  The price is that the
+ * timestamps slowly drift from the wall clock if it is adjusted while the program runs.
+ */
+final class MonotonicFlightRecorderClock implements FlightRecorderClock
+{
+  private final long anchorEpochNanos;
+  private final long anchorNanoTime;
+
+  MonotonicFlightRecorderClock()
+  {
+    anchorEpochNanos = System.currentTimeMillis() * 1_000_000L;
+    anchorNanoTime   = System.nanoTime();
+  }
+
+  @Override
+  public long currentTimeNanos()
+  {
+    return anchorEpochNanos + (System.nanoTime() - anchorNanoTime);
+  }
+}
@@ -0,0 +1,31 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * Records the first event and then one in every N after it.
+ */
+import java.util.concurrent.atomic.AtomicLong;
+
+final class OneInNSamplingPolicy implements FlightRecorderSamplingPolicy
+{
+  private final long n;
+  private final AtomicLong numberOfEventsSeen = new AtomicLong();
+
+  OneInNSamplingPolicy(final long n)
+  {
+    if (n <= 0)
+    {
+      throw new IllegalArgumentException(String.format("Can't record one in every %d events", n));
+    }
+    this.n = n;
+  }
+
+  @Override
+  public boolean shouldRecord(final FlightRecorderClock clock)
+  {
+    return (numberOfEventsSeen.getAndIncrement() % n) == 0;
+  }
+}
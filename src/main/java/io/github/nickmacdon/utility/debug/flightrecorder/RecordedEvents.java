@@ -0,0 +1,33 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * The recorded events as FlightRecorderQuery sees them: numbered from the oldest, in sequence
+ * number order, with the columns it searches on readable without making a FlightRecorderEvent
+ * for every entry it passes over (and ThreadTable and EventIDTable, to find which threads and
+ * which events to give the names of).  EventRingBuffer and CompressedEventRingBuffer are
+ * ones; the memory mapped recorder reads its file as one.
+ *
+ * getTimeStampDisorder() is how far, at most, a timestamp is behind one that comes before it.
+ * It is 0 when the timestamps only go up, as they do for a recorder that one thread writes to
+ * with one of the clocks from the FlightRecorderFactory.
+ */
+interface RecordedEvents
+{
+  int getNumberOfEntries();
+  long getSequenceNumberAt(int entryNumberToPeekAt);
+  long getTimeStampAt(int entryNumberToPeekAt);
+  long getEventIDAt(int entryNumberToPeekAt);
+  int getEventIndexAt(int entryNumberToPeekAt);
+  int getFlagsAt(int entryNumberToPeekAt);
+  int getStackIDAt(int entryNumberToPeekAt);
+  FlightRecorderEvent getEventAt(int entryNumberToPeekAt);
+
+  default long getTimeStampDisorder()
+  {
+    return 0;
+  }
+}
@@ -0,0 +1,46 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * When a recording is read back from a file, possibly on another machine, your Enum may not
+ * be available to give the events their names.  This stands in for it, using the name that
+ * was saved with the recording, or naming the event after its ID when there wasn't one, so
+ * the dump is still readable.
+ */
+final class RecordedFlightRecorderEventID implements FlightRecorderEventID
+{
+  private final long eventID;
+  private final String eventName;
+
+  RecordedFlightRecorderEventID(final long eventID)
+  {
+    this(eventID, "EVENT_" + eventID);
+  }
+
+  RecordedFlightRecorderEventID(final long eventID, final String eventName)
+  {
+    this.eventID   = eventID;
+    this.eventName = eventName;
+  }
+
+  @Override
+  public String getEventName()
+  {
+    return eventName;
+  }
+
+  @Override
+  public long getEventID()
+  {
+    return eventID;
+  }
+
+  @Override
+  public FlightRecorderEvent getEvent(final long sequenceNumber)
+  {
+    return DefaultFlightRecorderEvent.withNanosecondTimestamp(FlightRecorderFactory.getMonotonicClock().currentTimeNanos(), sequenceNumber, this);
+  }
+}
@@ -0,0 +1,62 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * The part of a FlightRecorder's FlightRecorderStatistics that the ring can't say: since when
+ * the events have been counted, and how the last dump went.  The counts themselves come from
+ * the ring and the EventSampler, which keep them anyway, so recording an event doesn't cost
+ * anything more.
+ *
+ * The times are real ones (System.nanoTime() and System.currentTimeMillis()), not from the
+ * recorder's FlightRecorderClock, since they are about the recorder rather than the events, and
+ * a coarse clock would make every dump look instant.
+ */
+final class RecorderStatistics
+{
+  private volatile long countingSinceNanos = System.nanoTime();
+  private long lastDumpTimeMillis    = FlightRecorderStatistics.NO_DUMP_YET;
+  private long lastDumpDurationNanos = 0;
+  private long lastDumpBytes         = 0;
+
+  /*
+   * When the recording is first started, and when it is cleared.
+   */
+  void startCounting()
+  {
+    countingSinceNanos = System.nanoTime();
+  }
+
+  void timeDump(final FlightRecorderEventDumper eventDumper, final Runnable dump)
+  {
+    final long bytesBefore = eventDumper.getNumberOfBytesDumped();
+    final long beganNanos  = System.nanoTime();
+    dump.run();
+    final long durationNanos = System.nanoTime() - beganNanos;
+    noteDump(System.currentTimeMillis(), durationNanos, eventDumper.getNumberOfBytesDumped() - bytesBefore);
+  }
+
+  private synchronized void noteDump(final long timeMillis, final long durationNanos, final long bytes)
+  {
+    lastDumpTimeMillis    = timeMillis;
+    lastDumpDurationNanos = durationNanos;
+    lastDumpBytes         = bytes;
+  }
+
+  synchronized FlightRecorderStatistics getStatistics(
+    final boolean recording,
+    final long numberOfEventsRecorded,
+    final long numberOfEventsLost,
+    final long numberOfEventsSuppressed,
+    final int numberOfEntries,
+    final double occupancy
+  )
+  {
+    return new FlightRecorderStatistics(
+      recording, numberOfEventsRecorded, numberOfEventsLost, numberOfEventsSuppressed, numberOfEntries, occupancy,
+      System.nanoTime() - countingSinceNanos, lastDumpTimeMillis, lastDumpDurationNanos, lastDumpBytes
+    );
+  }
+}
@@ -0,0 +1,200 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * An Executor that hands each task to another Executor, and records into a FlightRecorder
+ * when it was submitted, when it started and when it completed:
+ *
+ *   submitted  payloads: correlation ID, task ID
+ *   started    payloads: task ID, nanoseconds it waited in the queue
+ *   completed  payloads: task ID, nanoseconds it ran for (even if it threw), or NEVER_RAN
+ *
+ * Each task gets a task ID of its own, from a counter shared by every RecordingExecutor, so
+ * its three events can be matched up however they are interleaved with other tasks', and the
+ * correlation IDs that start from task IDs are never the same for two unrelated tasks.  The correlation ID is carried from task to task: a task
+ * submitted while another recorded task is running on the same thread (from any
+ * RecordingExecutor) gets the correlation ID of that task, and a task submitted from anywhere
+ * else starts a new one, its own task ID.  So all of the work that fans out from one task can
+ * be picked out of a dump by the correlation ID of its submitted events.
+ *
+ * The submitted event is recorded before the task is handed over, so that it comes before the
+ * started event even when the executor runs the task at once.  If the executor rejects the task
+ * instead, its completed event is recorded straight away with NEVER_RAN as its duration (and
+ * the RejectedExecutionException is thrown as usual), so no submitted event is left without an
+ * end.  A task that is handed over but then cancelled before it starts only has its submitted
+ * event.
+ *
+ * On an executor that reuses its threads, the only thing allocated per task is the
+ * RecordedTask that wraps it (48 bytes on a 64 bit JVM), which also keeps the task's IDs and
+ * when it was submitted; the durations are System.nanoTime() differences, and the events just
+ * take primitives.  The correlation ID of the running task is kept in a ThreadLocal array that
+ * each thread allocates once, and which is changed in place after that.  On an executor that
+ * starts a thread for each task (like the virtual thread per task one on Java 21 and later)
+ * every task is the first one on its thread, so it also pays for that array and for the
+ * ThreadLocal entries of it and of the thread's index in ThreadTable: about 240 bytes per task
+ * instead of 48, measured with a new unnamed thread per task on Java 17 (a named one also
+ * registers its name; see ThreadTable).
+ */
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+final class RecordingExecutor implements Executor
+{
+  static final long NO_CORRELATION_ID = 0;
+  static final long NEVER_RAN = -1;  // The duration of a rejected task
+
+  private static final ThreadLocal<long[]> RUNNING_CORRELATION_ID = ThreadLocal.withInitial(() -> new long[] { NO_CORRELATION_ID });
+  private static final Runnable NO_RUNNABLE = () -> {};
+  private static final Callable<?> NO_CALLABLE = () -> null;
+  private static final AtomicLong LAST_TASK_ID = new AtomicLong();
+
+  private final Executor executor;
+  private final FlightRecorder recorder;
+  private final FlightRecorderEventID submittedEventID;
+  private final FlightRecorderEventID startedEventID;
+  private final FlightRecorderEventID completedEventID;
+
+  RecordingExecutor(
+    final Executor executor,
+    final FlightRecorder recorder,
+    final FlightRecorderEventID submittedEventID,
+    final FlightRecorderEventID startedEventID,
+    final FlightRecorderEventID completedEventID
+  )
+  {
+    this.executor         = executor;
+    this.recorder         = recorder;
+    this.submittedEventID = submittedEventID;
+    this.startedEventID   = startedEventID;
+    this.completedEventID = completedEventID;
+  }
+
+  @Override
+  public void execute(final Runnable task)
+  {
+    final RecordedTask<Void> recordedTask = wrap(task);
+    try
+    {
+      executor.execute(recordedTask);
+    }
+    catch (final RejectedExecutionException e)
+    {
+      recordedTask.rejected();
+      throw e;
+    }
+  }
+
+  /*
+   * Records that the task was submitted; the RecordedTask records the rest when it is run.
+   */
+  RecordedTask<Void> wrap(final Runnable task)
+  {
+    return new RecordedTask<>(this, task, null);
+  }
+
+  <V> RecordedTask<V> wrap(final Callable<V> task)
+  {
+    return new RecordedTask<>(this, null, task);
+  }
+
+  /*
+   * The correlation ID of the recorded task running on this thread, or NO_CORRELATION_ID.
+   */
+  static long getRunningCorrelationID()
+  {
+    return RUNNING_CORRELATION_ID.get()[0];
+  }
+
+  static final class RecordedTask<V> implements Runnable, Callable<V>
+  {
+    private final RecordingExecutor owner;
+    private final Runnable runnable;
+    private final Callable<V> callable;
+    private final long taskID;
+    private final long correlationID;
+    private final long submittedNanos;
+
+    @SuppressWarnings("unchecked")
+    private RecordedTask(final RecordingExecutor owner, final Runnable runnable, final Callable<V> callable)
+    {
+      final long runningCorrelationID = getRunningCorrelationID();
+      this.owner     = owner;
+      this.runnable  = (runnable != null) ? runnable : NO_RUNNABLE;
+      this.callable  = (callable != null) ? callable : (Callable<V>)NO_CALLABLE;
+      taskID         = LAST_TASK_ID.incrementAndGet();
+      correlationID  = (runningCorrelationID != NO_CORRELATION_ID) ? runningCorrelationID : taskID;
+      owner.recorder.recordEvent(owner.submittedEventID, correlationID, taskID);
+      submittedNanos = System.nanoTime();
+    }
+
+    @Override
+    public void run()
+    {
+      final long[] runningCorrelationID = RUNNING_CORRELATION_ID.get();
+      final long previousCorrelationID  = runningCorrelationID[0];
+      final long startedNanos           = started(runningCorrelationID);
+      try
+      {
+        runnable.run();
+      }
+      finally
+      {
+        completed(runningCorrelationID, previousCorrelationID, startedNanos);
+      }
+    }
+
+    @Override
+    public V call() throws Exception
+    {
+      final long[] runningCorrelationID = RUNNING_CORRELATION_ID.get();
+      final long previousCorrelationID  = runningCorrelationID[0];
+      final long startedNanos           = started(runningCorrelationID);
+      try
+      {
+        if (callable != NO_CALLABLE)  return callable.call();
+        runnable.run();
+        return null;
+      }
+      finally
+      {
+        completed(runningCorrelationID, previousCorrelationID, startedNanos);
+      }
+    }
+
+    private long started(final long[] runningCorrelationID)
+    {
+      final long startedNanos = System.nanoTime();
+      runningCorrelationID[0] = correlationID;
+      owner.recorder.recordEvent(owner.startedEventID, taskID, startedNanos - submittedNanos);
+      return System.nanoTime();
+    }
+
+    private void completed(final long[] runningCorrelationID, final long previousCorrelationID, final long startedNanos)
+    {
+      final long ranNanos = System.nanoTime() - startedNanos;
+      owner.recorder.recordEvent(owner.completedEventID, taskID, ranNanos);
+      runningCorrelationID[0] = previousCorrelationID;
+    }
+
+    /*
+     * Ends the task's events when the executor wouldn't take it.
+     */
+    void rejected()
+    {
+      owner.recorder.recordEvent(owner.completedEventID, taskID, NEVER_RAN);
+    }
+
+    /*
+     * The task that was wrapped, if it was a Runnable (for shutdownNow()).
+     */
+    Runnable getRunnable()
+    {
+      return (runnable != NO_RUNNABLE) ? runnable : this;
+    }
+  }
+}
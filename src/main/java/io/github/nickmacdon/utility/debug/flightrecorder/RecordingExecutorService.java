@@ -0,0 +1,162 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * The ExecutorService version of RecordingExecutor: every task given to it, however it is
+ * given, is wrapped by a RecordingExecutor and handed to the ExecutorService it wraps, and
+ * everything else is left to that service.  The futures are that service's own, so cancelling
+ * them and waiting on them work just as they would without the wrapper.
+ *
+ * Any ExecutorService can be wrapped, including the one from
+ * Executors.newVirtualThreadPerTaskExecutor() on Java 21 and later, as the wrapper only needs
+ * the interface.  (Virtual threads are unnamed unless given a name, and ThreadTable gives all
+ * of the unnamed threads one shared index, so a thread per task doesn't use up the indexes,
+ * though named ones still do; see ThreadTable.)
+ *
+ * A task that the service rejects is recorded as in RecordingExecutor.  The tasks of
+ * invokeAll() and invokeAny() are handed over by the service itself, so if it rejects one of
+ * them, or cancels the ones that didn't get to run, those only have their submitted events.
+ */
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+final class RecordingExecutorService implements ExecutorService
+{
+  private final ExecutorService executorService;
+  private final RecordingExecutor recordingExecutor;
+
+  RecordingExecutorService(
+    final ExecutorService executorService,
+    final FlightRecorder recorder,
+    final FlightRecorderEventID submittedEventID,
+    final FlightRecorderEventID startedEventID,
+    final FlightRecorderEventID completedEventID
+  )
+  {
+    this.executorService = executorService;
+    recordingExecutor    = new RecordingExecutor(executorService, recorder, submittedEventID, startedEventID, completedEventID);
+  }
+
+  @Override
+  public void execute(final Runnable task)
+  {
+    recordingExecutor.execute(task);
+  }
+
+  @Override
+  public <T> Future<T> submit(final Callable<T> task)
+  {
+    final RecordingExecutor.RecordedTask<T> recordedTask = recordingExecutor.wrap(task);
+    try
+    {
+      return executorService.submit((Callable<T>)recordedTask);
+    }
+    catch (final RejectedExecutionException e)
+    {
+      recordedTask.rejected();
+      throw e;
+    }
+  }
+
+  @Override
+  public <T> Future<T> submit(final Runnable task, final T result)
+  {
+    final RecordingExecutor.RecordedTask<Void> recordedTask = recordingExecutor.wrap(task);
+    try
+    {
+      return executorService.submit((Runnable)recordedTask, result);
+    }
+    catch (final RejectedExecutionException e)
+    {
+      recordedTask.rejected();
+      throw e;
+    }
+  }
+
+  @Override
+  public Future<?> submit(final Runnable task)
+  {
+    return submit(task, null);
+  }
+
+  @Override
+  public <T> List<Future<T>> invokeAll(final Collection<? extends Callable<T>> tasks) throws InterruptedException
+  {
+    return executorService.invokeAll(wrapAll(tasks));
+  }
+
+  @Override
+  public <T> List<Future<T>> invokeAll(final Collection<? extends Callable<T>> tasks, final long timeout, final TimeUnit unit) throws InterruptedException
+  {
+    return executorService.invokeAll(wrapAll(tasks), timeout, unit);
+  }
+
+  @Override
+  public <T> T invokeAny(final Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException
+  {
+    return executorService.invokeAny(wrapAll(tasks));
+  }
+
+  @Override
+  public <T> T invokeAny(final Collection<? extends Callable<T>> tasks, final long timeout, final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+  {
+    return executorService.invokeAny(wrapAll(tasks), timeout, unit);
+  }
+
+  private <T> List<Callable<T>> wrapAll(final Collection<? extends Callable<T>> tasks)
+  {
+    final List<Callable<T>> wrappedTasks = new ArrayList<>(tasks.size());
+    for (final Callable<T> task : tasks)  wrappedTasks.add(recordingExecutor.wrap(task));
+    return wrappedTasks;
+  }
+
+  @Override
+  public void shutdown()
+  {
+    executorService.shutdown();
+  }
+
+  /*
+   * Gives back the tasks that were never run as they were given, rather than wrapped.
+   */
+  @Override
+  public List<Runnable> shutdownNow()
+  {
+    final List<Runnable> wrappedTasksNeverRun = executorService.shutdownNow();
+    final List<Runnable> tasksNeverRun = new ArrayList<>(wrappedTasksNeverRun.size());
+    for (final Runnable task : wrappedTasksNeverRun)
+    {
+      tasksNeverRun.add((task instanceof RecordingExecutor.RecordedTask) ? ((RecordingExecutor.RecordedTask<?>)task).getRunnable() : task);
+    }
+    return tasksNeverRun;
+  }
+
+  @Override
+  public boolean isShutdown()
+  {
+    return executorService.isShutdown();
+  }
+
+  @Override
+  public boolean isTerminated()
+  {
+    return executorService.isTerminated();
+  }
+
+  @Override
+  public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException
+  {
+    return executorService.awaitTermination(timeout, unit);
+  }
+}
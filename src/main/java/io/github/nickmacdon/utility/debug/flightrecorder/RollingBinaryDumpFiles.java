@@ -0,0 +1,144 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * Where StreamingFlightRecorder writes its batches of events.  Each batch is written as one
+ * complete binary dump (see BinaryDumpFormat) appended to the current file, and a new file is
+ * started once the current one has reached the maximum size or age.  Only the newest files are
+ * kept: starting a new one deletes the oldest once there are more than the maximum, so the
+ * disk used is bounded by about maximumBytesPerFile * maximumNumberOfFiles.  (A file can go
+ * over the maximum size by one batch, since it is only checked between batches.)
+ *
+ * The files are named prefix-<time started in millis>-<number>.bjfd so they sort in order.
+ */
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+
+final class RollingBinaryDumpFiles
+{
+  static final String FILE_NAME_SUFFIX = ".bjfd";
+
+  private final Path directory;
+  private final String fileNamePrefix;
+  private final long maximumBytesPerFile;
+  private final long maximumNanosPerFile;
+  private final int maximumNumberOfFiles;
+  private final Deque<Path> filesKept = new ArrayDeque<>();
+  private Optional<OpenDumpFile> currentFile = Optional.empty();
+  private int numberOfFilesStarted = 0;
+
+  RollingBinaryDumpFiles(final Path directory, final String fileNamePrefix, final long maximumBytesPerFile, final long maximumNanosPerFile, final int maximumNumberOfFiles)
+  {
+    if ((maximumBytesPerFile <= 0) || (maximumNanosPerFile <= 0) || (maximumNumberOfFiles <= 0))
+    {
+      throw new IllegalArgumentException(String.format("File limits must be positive, not %d bytes, %d nanoseconds, %d files", maximumBytesPerFile, maximumNanosPerFile, maximumNumberOfFiles));
+    }
+    this.directory            = directory;
+    this.fileNamePrefix       = fileNamePrefix;
+    this.maximumBytesPerFile  = maximumBytesPerFile;
+    this.maximumNanosPerFile  = maximumNanosPerFile;
+    this.maximumNumberOfFiles = maximumNumberOfFiles;
+  }
+
+  /*
+   * Writes the batch as one dump, and starts a new file afterwards if this one is now full.
+   */
+  void writeBatch(final EventRingBuffer batch, final long startTimeStamp, final int numberOfEventsLost)
+  {
+    final OpenDumpFile file = currentFile.orElseGet(this::startNewFile);
+    currentFile = Optional.of(file);
+    final int numberOfEntries = batch.getNumberOfEntries();
+    final long endTimeStamp = (numberOfEntries > 0) ? batch.getTimeStampAt(numberOfEntries-1) : startTimeStamp;
+    file.dumper.setDumpTimestampsNanos(startTimeStamp, endTimeStamp);
+    file.dumper.dumpBegins();
+    file.dumper.setNumberOfEventsToBeDumped(numberOfEntries);
+    file.dumper.setNumberOfEventsLostDuringSnapshot(numberOfEventsLost);
+    ThreadTable.reportThreadNames(batch, 0, numberOfEntries, file.dumper);
+    EventIDTable.reportEventNames(batch, 0, numberOfEntries, file.dumper);
+    StackTable.reportStacks(batch, 0, numberOfEntries, file.dumper);
+    for (int i=0; i<numberOfEntries; i++)
+      file.dumper.dumpEvent(batch.getEventAt(i));
+    file.dumper.dumpComplete();
+
+    try
+    {
+      if (file.channel.size() >= maximumBytesPerFile)  closeCurrentFile();
+    }
+    catch (final IOException e)
+    {
+      throw new UncheckedIOException("Unable to check the size of the flight recorder stream file", e);
+    }
+  }
+
+  void closeCurrentFileIfTooOld()
+  {
+    if (currentFile.isPresent() && (System.nanoTime() - currentFile.get().startedAtNanos >= maximumNanosPerFile))
+      closeCurrentFile();
+  }
+
+  void closeCurrentFile()
+  {
+    if (!currentFile.isPresent())  return;
+    final OpenDumpFile file = currentFile.get();
+    currentFile = Optional.empty();
+    try
+    {
+      file.channel.close();
+    }
+    catch (final IOException e)
+    {
+      throw new UncheckedIOException("Unable to close the flight recorder stream file", e);
+    }
+  }
+
+  /*
+   * The files written so far that haven't been deleted again, oldest first.
+   */
+  List<Path> getFiles()
+  {
+    return new ArrayList<>(filesKept);
+  }
+
+  private OpenDumpFile startNewFile()
+  {
+    numberOfFilesStarted++;
+    final Path file = directory.resolve(String.format("%s-%d-%06d%s", fileNamePrefix, System.currentTimeMillis(), numberOfFilesStarted, FILE_NAME_SUFFIX));
+    try
+    {
+      while (filesKept.size() >= maximumNumberOfFiles)  Files.deleteIfExists(filesKept.removeFirst());
+      final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+      filesKept.addLast(file);
+      final String dumpTitle = String.format("%s (streamed, file %d)", fileNamePrefix, numberOfFilesStarted);
+      return new OpenDumpFile(channel, new FlightRecorderEventDumperToChannel(dumpTitle, channel));
+    }
+    catch (final IOException e)
+    {
+      throw new UncheckedIOException(String.format("Unable to start flight recorder stream file %s", file), e);
+    }
+  }
+
+  private static final class OpenDumpFile
+  {
+    final FileChannel channel;
+    final FlightRecorderEventDumperToChannel dumper;
+    final long startedAtNanos = System.nanoTime();
+
+    OpenDumpFile(final FileChannel channel, final FlightRecorderEventDumperToChannel dumper)
+    {
+      this.channel = channel;
+      this.dumper  = dumper;
+    }
+  }
+}
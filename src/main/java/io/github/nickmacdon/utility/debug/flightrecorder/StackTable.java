@@ -0,0 +1,127 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * Gives each different stack that an event was recorded from a small ID, so the recorders keep
+ * one int for the stack of each event instead of its frames.  The same code path recorded over
+ * and over is the same stack each time, so a handful of stacks are normally shared by all of
+ * the events; they are looked up by the hash of their frames, and each is only kept (and only
+ * dumped) once.  Only the dumps need the frames, once per stack per dump.
+ *
+ * There is one table for the whole JVM, like ThreadTable, so a stack has the same ID in every
+ * recorder.  Stacks are never forgotten, so the table is bounded: once MAXIMUM_NUMBER_OF_STACKS
+ * have been kept, events from stacks it hasn't seen before get NO_STACK, and are counted.
+ * ID 0 (NO_STACK) is never given out.
+ */
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+final class StackTable
+{
+  private StackTable( ) {}  // No instantiation
+
+  static final int MAXIMUM_NUMBER_OF_STACKS = 4096;
+
+  private static final StackTraceElement[] NO_FRAMES = new StackTraceElement[0];
+  private static final Map<Stack, Integer> STACK_IDS = new ConcurrentHashMap<>();
+  private static final AtomicLong NUMBER_OF_STACKS_NOT_KEPT = new AtomicLong();
+
+  private static volatile StackTraceElement[][] stacks = { NO_FRAMES };
+
+  static int idOf(final StackTraceElement[] frames)
+  {
+    final Stack stack = new Stack(frames);
+    final Integer stackID = STACK_IDS.get(stack);
+    return (stackID != null) ? stackID : register(stack);
+  }
+
+  private static synchronized int register(final Stack stack)
+  {
+    final Integer alreadyRegistered = STACK_IDS.get(stack);
+    if (alreadyRegistered != null)  return alreadyRegistered;
+    final StackTraceElement[][] oldStacks = stacks;
+    if (oldStacks.length > MAXIMUM_NUMBER_OF_STACKS)
+    {
+      NUMBER_OF_STACKS_NOT_KEPT.incrementAndGet();
+      return FlightRecorderEvent.NO_STACK;
+    }
+    final StackTraceElement[][] newStacks = Arrays.copyOf(oldStacks, oldStacks.length + 1);
+    newStacks[oldStacks.length] = stack.frames;
+    stacks = newStacks;
+    STACK_IDS.put(stack, oldStacks.length);
+    return oldStacks.length;
+  }
+
+  static StackTraceElement[] getStack(final int stackID)
+  {
+    final StackTraceElement[][] currentStacks = stacks;
+    return ((stackID >= 0) && (stackID < currentStacks.length)) ? currentStacks[stackID] : NO_FRAMES;
+  }
+
+  static int getNumberOfStacks()
+  {
+    return stacks.length - 1;
+  }
+
+  /*
+   * How many times an event's stack was left out because the table was already full.
+   */
+  static long getNumberOfStacksNotKept()
+  {
+    return NUMBER_OF_STACKS_NOT_KEPT.get();
+  }
+
+  /*
+   * Notes the stacks of the given entries, for reportStacks().
+   */
+  static void addStacksOf(final RecordedEvents events, final int firstEntry, final int endEntry, final BitSet stackIDs)
+  {
+    for (int i=firstEntry; i<endEntry; i++)  stackIDs.set(events.getStackIDAt(i));
+  }
+
+  static void reportStacks(final BitSet stackIDs, final FlightRecorderEventDumper eventDumper)
+  {
+    for (int i=stackIDs.nextSetBit(0); i>=0; i=stackIDs.nextSetBit(i+1))
+      if (i != FlightRecorderEvent.NO_STACK)  eventDumper.setStack(i, getStack(i).clone());
+  }
+
+  static void reportStacks(final RecordedEvents events, final int firstEntry, final int endEntry, final FlightRecorderEventDumper eventDumper)
+  {
+    final BitSet stackIDs = new BitSet();
+    addStacksOf(events, firstEntry, endEntry, stackIDs);
+    reportStacks(stackIDs, eventDumper);
+  }
+
+  /*
+   * The frames of a stack, with the hash of all of them worked out once.
+   */
+  private static final class Stack
+  {
+    final StackTraceElement[] frames;
+    private final int hash;
+
+    Stack(final StackTraceElement[] frames)
+    {
+      this.frames = frames;
+      hash        = Arrays.hashCode(frames);
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(final Object other)
+    {
+      return (other instanceof Stack) && (((Stack)other).hash == hash) && Arrays.equals(((Stack)other).frames, frames);
+    }
+  }
+}
@@ -0,0 +1,30 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * Captures the stack of the thread that is recording an event, for EventStackCapture.  The jar
+ * is a multi-release jar: on Java 9 and later the version of this class in META-INF/versions/9
+ * (from src/main/java9) is used instead, which uses a StackWalker to look at only the frames it
+ * keeps, without filling in the whole stack first.  Java 8 has no StackWalker, so this version
+ * has to take the whole stack from a Throwable and then cut it down.
+ *
+ * Either way the frames of the recorder itself are left off the top, so the first frame is the
+ * code that recorded the event.
+ */
+import java.util.Arrays;
+
+final class StackWalking
+{
+  private StackWalking() {}  // No instantiation
+
+  static StackTraceElement[] currentStack(final int maximumNumberOfFrames)
+  {
+    final StackTraceElement[] wholeStack = new Throwable().getStackTrace();
+    int firstFrame = 0;
+    while ((firstFrame < wholeStack.length) && EventStackCapture.isRecorderFrame(wholeStack[firstFrame].getClassName()))  firstFrame++;
+    return Arrays.copyOfRange(wholeStack, firstFrame, Math.min(wholeStack.length, firstFrame + maximumNumberOfFrames));
+  }
+}
@@ -0,0 +1,275 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * A FlightRecorder for when the last N events aren't enough and you need everything, for
+ * hours.  Recording is done exactly as by ConcurrentRingBufferFlightRecorder (so it is thread
+ * safe and lock free), and a background (daemon) thread drains the ring every so often, in
+ * batches, into rolling binary dump files (see RollingBinaryDumpFiles).  The producers never
+ * wait for the disk: if the drainer falls behind, the ring just wraps around as usual and the
+ * events that were overwritten before being drained are counted as dropped, both here and in
+ * the batch that follows them in the files.  Make the ring big enough to hold a few drain
+ * intervals' worth of events to avoid that.
+ *
+ * stopRecording() drains whatever is left and closes the current file, so everything that was
+ * recorded is on disk when it returns; a later startRecording() carries on in a new file.
+ * dumpEntriesTo() and takeSnapshot() still give the last N events from the ring as usual.
+ *
+ * The drainer only holds a weak reference to the recorder, so it goes away once the recorder
+ * does.  Within a batch the events are in sequence number order; across batches they can very
+ * rarely be slightly out of order, just as they are recorded by the concurrent ring.
+ */
+import java.io.UncheckedIOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+final class StreamingFlightRecorder implements FlightRecorder
+{
+  static final long DRAIN_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+  static final int MAXIMUM_BATCH_SIZE = 8192;
+
+  private final ConcurrentRingBufferFlightRecorder recorder;
+  private final RollingBinaryDumpFiles files;
+  private final EventRingBuffer batch;
+  private final Object drainLock = new Object();
+  private long drainedUpToPosition = 0;
+  private volatile long numberOfEventsDropped = 0;
+
+  StreamingFlightRecorder(final int numberOfEventsInRingBuffer, final RollingBinaryDumpFiles files)
+  {
+    recorder   = new ConcurrentRingBufferFlightRecorder(numberOfEventsInRingBuffer);
+    this.files = files;
+    batch      = new EventRingBuffer(Math.min(numberOfEventsInRingBuffer, MAXIMUM_BATCH_SIZE));
+
+    final WeakReference<StreamingFlightRecorder> recorderToDrain = new WeakReference<>(this);
+    final Thread drainer = new Thread(() -> drainEveryInterval(recorderToDrain), "FlightRecorder streaming drainer");
+    drainer.setDaemon(true);
+    drainer.start();
+  }
+
+  @Override
+  public FlightRecorder recordEvent(final FlightRecorderEventID eventToRecord)
+  {
+    recorder.recordEvent(eventToRecord);
+    return this;
+  }
+
+  @Override
+  public FlightRecorder recordEvent(final FlightRecorderEventID eventToRecord, final long payload0)
+  {
+    recorder.recordEvent(eventToRecord, payload0);
+    return this;
+  }
+
+  @Override
+  public FlightRecorder recordEvent(final FlightRecorderEventID eventToRecord, final long payload0, final long payload1)
+  {
+    recorder.recordEvent(eventToRecord, payload0, payload1);
+    return this;
+  }
+
+  @Override
+  public long beginSpan(final FlightRecorderEventID spanToBegin)
+  {
+    return recorder.beginSpan(spanToBegin);
+  }
+
+  @Override
+  public FlightRecorder endSpan(final FlightRecorderEventID spanToEnd, final long spanToken)
+  {
+    recorder.endSpan(spanToEnd, spanToken);
+    return this;
+  }
+
+  @Override
+  public FlightRecorder enableEvent(final FlightRecorderEventID eventToEnable)
+  {
+    recorder.enableEvent(eventToEnable);
+    return this;
+  }
+
+  @Override
+  public FlightRecorder disableEvent(final FlightRecorderEventID eventToDisable)
+  {
+    recorder.disableEvent(eventToDisable);
+    return this;
+  }
+
+  @Override
+  public FlightRecorder enableAllEvents()
+  {
+    recorder.enableAllEvents();
+    return this;
+  }
+
+  @Override
+  public FlightRecorder disableAllEvents()
+  {
+    recorder.disableAllEvents();
+    return this;
+  }
+
+  @Override
+  public boolean isEventEnabled(final FlightRecorderEventID eventToCheck)
+  {
+    return recorder.isEventEnabled(eventToCheck);
+  }
+
+  @Override
+  public FlightRecorder setSamplingPolicy(final FlightRecorderEventID eventToSample, final FlightRecorderSamplingPolicy samplingPolicy)
+  {
+    recorder.setSamplingPolicy(eventToSample, samplingPolicy);
+    return this;
+  }
+
+  @Override
+  public FlightRecorder setStackDepth(final FlightRecorderEventID eventToCapture, final int maximumNumberOfFrames)
+  {
+    recorder.setStackDepth(eventToCapture, maximumNumberOfFrames);
+    return this;
+  }
+
+  @Override
+  public FlightRecorder startRecording()
+  {
+    recorder.startRecording();
+    return this;
+  }
+
+  @Override
+  public FlightRecorder stopRecording()
+  {
+    recorder.stopRecording();
+    synchronized (drainLock)
+    {
+      drain();
+      files.closeCurrentFile();
+    }
+    return this;
+  }
+
+  @Override
+  public FlightRecorder clearAllRecordedEvents()
+  {
+    recorder.clearAllRecordedEvents();
+    return this;
+  }
+
+  @Override
+  public int getNumberOfEntriesRecorded()
+  {
+    return recorder.getNumberOfEntriesRecorded();
+  }
+
+  /*
+   * The events overwritten in the ring aren't lost, if they were drained first, so the ones
+   * dropped before they could be drained are given as lost instead.
+   */
+  @Override
+  public FlightRecorderStatistics getStatistics()
+  {
+    return recorder.getStatistics().withNumberOfEventsLost(numberOfEventsDropped);
+  }
+
+  @Override
+  public FlightRecorderSnapshot takeSnapshot()
+  {
+    return recorder.takeSnapshot();
+  }
+
+  @Override
+  public FlightRecorder dumpMatchingEntriesTo(final FlightRecorderQuery query, final FlightRecorderEventDumper eventDumper)
+  {
+    recorder.dumpMatchingEntriesTo(query, eventDumper);
+    return this;
+  }
+
+  @Override
+  public FlightRecorder dumpEntriesTo(final FlightRecorderEventDumper eventDumper)
+  {
+    recorder.dumpEntriesTo(eventDumper);
+    return this;
+  }
+
+  long getNumberOfEventsDropped()
+  {
+    return numberOfEventsDropped;
+  }
+
+  List<Path> getFiles()
+  {
+    synchronized (drainLock)
+    {
+      return files.getFiles();
+    }
+  }
+
+  /*
+   * Writes out everything that has been recorded since the last time, one batch at a time.
+   * Only ever called with the drainLock held.
+   */
+  private void drain()
+  {
+    final ConcurrentEventRingBuffer ringBuffer = recorder.getRingBuffer();
+    while (true)
+    {
+      // Whatever was cleared before it could be drained isn't counted as dropped
+      final long fromPosition = Math.max(drainedUpToPosition, ringBuffer.getFirstPositionSinceClear());
+      batch.clearAllEntries();
+      drainedUpToPosition = ringBuffer.drainTo(fromPosition, batch);
+      final int numberOfEntriesDrained = batch.getNumberOfEntries();
+      final long numberOfEntriesDropped = drainedUpToPosition - fromPosition - numberOfEntriesDrained;
+      if ((numberOfEntriesDrained == 0) && (numberOfEntriesDropped == 0))  return;
+
+      numberOfEventsDropped += numberOfEntriesDropped;
+      batch.sortBySequenceNumber();
+      try
+      {
+        files.writeBatch(batch, recorder.getStartTimeStamp(), (int)Math.min(numberOfEntriesDropped, Integer.MAX_VALUE));
+      }
+      catch (final UncheckedIOException e)
+      {
+        numberOfEventsDropped += numberOfEntriesDrained;
+        throw e;
+      }
+      if (numberOfEntriesDrained < batch.getMaxNumberOfEntries())  return;  // Caught up
+    }
+  }
+
+  private static void drainEveryInterval(final WeakReference<StreamingFlightRecorder> recorderToDrain)
+  {
+    while (true)
+    {
+      LockSupport.parkNanos(DRAIN_INTERVAL_NANOS);
+      final StreamingFlightRecorder recorder = recorderToDrain.get();
+      if (recorder == null)  return;
+      synchronized (recorder.drainLock)
+      {
+        try
+        {
+          recorder.drain();
+          recorder.files.closeCurrentFileIfTooOld();
+        }
+        catch (final UncheckedIOException e)
+        {
+          // Nobody to tell from here; the lost batch is counted as dropped and the next one
+          // tries again in a new file.
+          try
+          {
+            recorder.files.closeCurrentFile();
+          }
+          catch (final UncheckedIOException ignored)
+          {
+            // Already as closed as it is going to get
+          }
+        }
+      }
+    }
+  }
+}
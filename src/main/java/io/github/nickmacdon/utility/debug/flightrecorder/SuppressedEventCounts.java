@@ -0,0 +1,75 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * How many events of each sampled event ID were suppressed by its sampling policy, as of one
+ * moment, ready to be given to a dumper.  Event IDs that haven't suppressed anything are left
+ * out of the dump.
+ */
+import java.util.Arrays;
+
+final class SuppressedEventCounts
+{
+  static final SuppressedEventCounts NONE = new SuppressedEventCounts(new FlightRecorderEventID[0], new long[0]);
+
+  private final FlightRecorderEventID[] eventIDs;
+  private final long[] numbersSuppressed;
+
+  SuppressedEventCounts(final FlightRecorderEventID[] eventIDs, final long[] numbersSuppressed)
+  {
+    this.eventIDs          = eventIDs;
+    this.numbersSuppressed = numbersSuppressed;
+  }
+
+  /*
+   * Adds another suppressed count, for when the counts are being collected from a dump.
+   */
+  SuppressedEventCounts with(final FlightRecorderEventID eventID, final long numberSuppressed)
+  {
+    final FlightRecorderEventID[] moreEventIDs = Arrays.copyOf(eventIDs, eventIDs.length + 1);
+    final long[] moreNumbersSuppressed = Arrays.copyOf(numbersSuppressed, numbersSuppressed.length + 1);
+    moreEventIDs[eventIDs.length] = eventID;
+    moreNumbersSuppressed[numbersSuppressed.length] = numberSuppressed;
+    return new SuppressedEventCounts(moreEventIDs, moreNumbersSuppressed);
+  }
+
+  /*
+   * The counts of both, with the counts of an event ID that is in both added together, so a
+   * merged dump of several recorders only reports each event ID once.
+   */
+  SuppressedEventCounts plus(final SuppressedEventCounts other)
+  {
+    SuppressedEventCounts counts = this;
+    for (int i=0; i<other.eventIDs.length; i++)
+    {
+      final int index = counts.indexOf(other.eventIDs[i]);
+      if (index < 0)
+      {
+        counts = counts.with(other.eventIDs[i], other.numbersSuppressed[i]);
+      }
+      else
+      {
+        final long[] addedNumbersSuppressed = counts.numbersSuppressed.clone();
+        addedNumbersSuppressed[index] += other.numbersSuppressed[i];
+        counts = new SuppressedEventCounts(counts.eventIDs, addedNumbersSuppressed);
+      }
+    }
+    return counts;
+  }
+
+  private int indexOf(final FlightRecorderEventID eventID)
+  {
+    for (int i=0; i<eventIDs.length; i++)
+      if (eventIDs[i].getEventID() == eventID.getEventID())  return i;
+    return -1;
+  }
+
+  void reportTo(final FlightRecorderEventDumper eventDumper)
+  {
+    for (int i=0; i<eventIDs.length; i++)
+      if (numbersSuppressed[i] > 0)  eventDumper.setNumberOfEventsSuppressed(eventIDs[i], numbersSuppressed[i]);
+  }
+}
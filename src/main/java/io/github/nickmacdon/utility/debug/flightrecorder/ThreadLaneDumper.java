@@ -0,0 +1,139 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * Passes a dump on to another dumper with the events sorted into lanes, one per thread: all
+ * of the events recorded by one thread (in the order they were recorded), then all of the
+ * next thread's, and so on, each lane starting with a call to dumpLaneBegins().  Everything
+ * else is passed straight on.  Seeing what each thread did, one at a time, is much easier
+ * than picking one thread's events out from between everybody else's; the sequence numbers
+ * still tell how the threads' events were interleaved.
+ *
+ * It has to hold on to the events of the dump until the last of them has gone by, so unlike
+ * the other dumpers the memory it uses grows with the size of the dump.
+ */
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+final class ThreadLaneDumper implements FlightRecorderEventDumper
+{
+  private final FlightRecorderEventDumper eventDumper;
+  private final Map<Integer, List<FlightRecorderEvent>> lanes = new TreeMap<>();
+
+  ThreadLaneDumper(final FlightRecorderEventDumper eventDumper)
+  {
+    this.eventDumper = eventDumper;
+  }
+
+  @Override
+  public void setDumpTimestamps(final long startTimeStamp, final long endTimeStamp)
+  {
+    eventDumper.setDumpTimestamps(startTimeStamp, endTimeStamp);
+  }
+
+  @Override
+  public void setDumpTimestampsNanos(final long startTimeStampNanos, final long endTimeStampNanos)
+  {
+    eventDumper.setDumpTimestampsNanos(startTimeStampNanos, endTimeStampNanos);
+  }
+
+  @Override
+  public void setNumberOfEventsToBeDumped(final int numberOfEvents)
+  {
+    eventDumper.setNumberOfEventsToBeDumped(numberOfEvents);
+  }
+
+  @Override
+  public void setNumberOfEventsLostDuringSnapshot(final int numberOfEventsLost)
+  {
+    eventDumper.setNumberOfEventsLostDuringSnapshot(numberOfEventsLost);
+  }
+
+  @Override
+  public void setNumberOfEventsSuppressed(final FlightRecorderEventID suppressedEventID, final long numberOfEventsSuppressed)
+  {
+    eventDumper.setNumberOfEventsSuppressed(suppressedEventID, numberOfEventsSuppressed);
+  }
+
+  @Override
+  public void setRecorderName(final int recorderIndex, final String recorderName)
+  {
+    eventDumper.setRecorderName(recorderIndex, recorderName);
+  }
+
+  @Override
+  public void setThreadName(final int threadIndex, final String threadName)
+  {
+    eventDumper.setThreadName(threadIndex, threadName);
+  }
+
+  @Override
+  public void setEventName(final long eventID, final String eventName)
+  {
+    eventDumper.setEventName(eventID, eventName);
+  }
+
+  @Override
+  public void setStack(final int stackID, final StackTraceElement[] frames)
+  {
+    eventDumper.setStack(stackID, frames);
+  }
+
+  @Override
+  public void dumpBegins()
+  {
+    lanes.clear();
+    eventDumper.dumpBegins();
+  }
+
+  @Override
+  public void dumpEvent(final FlightRecorderEvent eventToDump)
+  {
+    lanes.computeIfAbsent(eventToDump.getThreadIndex(), threadIndex -> new ArrayList<>()).add(eventToDump);
+  }
+
+  @Override
+  public void dumpEventSummary(final FlightRecorderEventID summarizedEventID, final long numberOfEvents, final FlightRecorderHistogram nanosBetweenEvents)
+  {
+    dumpLanes();
+    eventDumper.dumpEventSummary(summarizedEventID, numberOfEvents, nanosBetweenEvents);
+  }
+
+  @Override
+  public void dumpSpanSummary(final FlightRecorderEventID summarizedSpanID, final FlightRecorderHistogram spanDurationNanos)
+  {
+    dumpLanes();
+    eventDumper.dumpSpanSummary(summarizedSpanID, spanDurationNanos);
+  }
+
+  @Override
+  public void dumpComplete()
+  {
+    dumpLanes();
+    eventDumper.dumpComplete();
+  }
+
+  @Override
+  public long getNumberOfBytesDumped()
+  {
+    return eventDumper.getNumberOfBytesDumped();
+  }
+
+  /*
+   * The events are all in by the time the summaries (or the end) come along.
+   */
+  private void dumpLanes()
+  {
+    for (final Map.Entry<Integer, List<FlightRecorderEvent>> lane : lanes.entrySet())
+    {
+      eventDumper.dumpLaneBegins(lane.getKey());
+      for (final FlightRecorderEvent event : lane.getValue())  eventDumper.dumpEvent(event);
+    }
+    lanes.clear();
+  }
+}
@@ -0,0 +1,109 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * Gives each thread that records an event a small index, so the recorders can keep which
+ * thread recorded each event in a few bits of its flags (see EventFlags) instead of keeping
+ * the thread or its name.  A thread gets its index the first time it records anything, and
+ * keeps it in a ThreadLocal, so after that finding it is just a ThreadLocal lookup.  The name
+ * is the thread's name at that moment; only the dumps need it, once per thread per dump.
+ *
+ * There is one table for the whole JVM, so a thread has the same index in every recorder.
+ * Indexes aren't reused when threads end, since events recorded by a thread that has ended
+ * can still be in a recorder, and giving its index to another thread would give them the
+ * wrong name.  So once EventFlags.MAXIMUM_THREAD_INDEX (about 16.7 million) have been given
+ * out, the threads after that get NO_THREAD and are all dumped as "unknown thread".  Thread
+ * pools, where the same threads record over and over, are nowhere near that; a service that
+ * starts a new named thread for every request gets there after that many requests.  The table
+ * of names doubles when it is full, so registering a thread is amortized O(1) rather than a
+ * copy of every name so far.  Threads without a name all share one index instead of each getting
+ * their own: virtual threads have no name unless they are given one, and an executor that
+ * starts a virtual thread per task would otherwise use up an index (and copy the table of
+ * names) for every task.  The price is that their events can't be told apart by thread; they
+ * are all shown as from "unnamed threads".  Virtual threads from a factory that names them,
+ * like Thread.ofVirtual().name("worker-", 0), aren't folded together, so each still takes an
+ * index of its own.
+ */
+import java.util.Arrays;
+import java.util.BitSet;
+
+final class ThreadTable
+{
+  private ThreadTable( ) {}  // No instantiation
+
+  private static final ThreadLocal<Integer> THREAD_INDEX = ThreadLocal.withInitial(ThreadTable::register);
+  private static volatile String[] threadNames = firstThreadNames();
+  private static volatile int numberOfThreadIndexes = 1;  // NO_THREAD is 0
+  private static volatile int unnamedThreadIndex = FlightRecorderEvent.NO_THREAD;
+
+  static int currentThreadIndex()
+  {
+    return THREAD_INDEX.get();
+  }
+
+  private static Integer register()
+  {
+    final String threadName = Thread.currentThread().getName();
+    if (!threadName.isEmpty())  return register(threadName);
+    final int alreadyRegistered = unnamedThreadIndex;
+    return (alreadyRegistered != FlightRecorderEvent.NO_THREAD) ? alreadyRegistered : registerUnnamedThreads();
+  }
+
+  private static synchronized int registerUnnamedThreads()
+  {
+    if (unnamedThreadIndex == FlightRecorderEvent.NO_THREAD)  unnamedThreadIndex = register("unnamed threads");
+    return unnamedThreadIndex;
+  }
+
+  private static String[] firstThreadNames()
+  {
+    final String[] names = new String[16];
+    names[FlightRecorderEvent.NO_THREAD] = "unknown thread";
+    return names;
+  }
+
+  private static synchronized int register(final String threadName)
+  {
+    final int threadIndex = numberOfThreadIndexes;
+    if (threadIndex > EventFlags.MAXIMUM_THREAD_INDEX)  return FlightRecorderEvent.NO_THREAD;
+    String[] names = threadNames;
+    if (threadIndex == names.length)
+    {
+      names = Arrays.copyOf(names, (int)Math.min(2L * names.length, EventFlags.MAXIMUM_THREAD_INDEX + 1L));
+      threadNames = names;
+    }
+    names[threadIndex] = threadName;
+    numberOfThreadIndexes = threadIndex + 1;  // Last, so a reader that sees the index sees its name
+    return threadIndex;
+  }
+
+  static String getThreadName(final int threadIndex)
+  {
+    final int numberOfIndexes = numberOfThreadIndexes;  // Before the names, see register()
+    return ((threadIndex >= 0) && (threadIndex < numberOfIndexes)) ? threadNames[threadIndex] : "thread " + threadIndex;
+  }
+
+  /*
+   * Notes the threads that recorded the given entries, for reportThreadNames().
+   */
+  static void addThreadsOf(final RecordedEvents events, final int firstEntry, final int endEntry, final BitSet threadIndexes)
+  {
+    for (int i=firstEntry; i<endEntry; i++)  threadIndexes.set(EventFlags.threadIndex(events.getFlagsAt(i)));
+  }
+
+  static void reportThreadNames(final BitSet threadIndexes, final FlightRecorderEventDumper eventDumper)
+  {
+    for (int i=threadIndexes.nextSetBit(0); i>=0; i=threadIndexes.nextSetBit(i+1))
+      if (i != FlightRecorderEvent.NO_THREAD)  eventDumper.setThreadName(i, getThreadName(i));
+  }
+
+  static void reportThreadNames(final RecordedEvents events, final int firstEntry, final int endEntry, final FlightRecorderEventDumper eventDumper)
+  {
+    final BitSet threadIndexes = new BitSet();
+    addThreadsOf(events, firstEntry, endEntry, threadIndexes);
+    reportThreadNames(threadIndexes, eventDumper);
+  }
+}
@@ -0,0 +1,45 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * Records at most a given number of events per second, allowing a burst of up to a second's
+ * worth at once.  It is a token bucket, but kept as the single time at which the bucket will
+ * next be full (the "generic cell rate algorithm") so that it is one AtomicLong updated with
+ * compareAndSet() instead of a count of tokens and a refill time that would need a lock.
+ * The bucket starts full, so the first time it is asked is as good as any to start from.
+ */
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+final class TokenBucketSamplingPolicy implements FlightRecorderSamplingPolicy
+{
+  private final long nanosPerEvent;
+  private final long burstNanos;
+  private final AtomicLong bucketFullAtNanos = new AtomicLong(Long.MIN_VALUE);  // Full already, whatever the clock says
+
+  TokenBucketSamplingPolicy(final long eventsPerSecond)
+  {
+    if (eventsPerSecond <= 0)
+    {
+      throw new IllegalArgumentException(String.format("Events per second must be positive, not %d", eventsPerSecond));
+    }
+    nanosPerEvent = Math.max(1, TimeUnit.SECONDS.toNanos(1) / eventsPerSecond);
+    burstNanos    = nanosPerEvent * eventsPerSecond;
+  }
+
+  @Override
+  public boolean shouldRecord(final FlightRecorderClock clock)
+  {
+    final long now = clock.currentTimeNanos();
+    while (true)
+    {
+      final long fullAt = bucketFullAtNanos.get();
+      final long newFullAt = Math.max(fullAt, now) + nanosPerEvent;
+      if (newFullAt - now > burstNanos)  return false;  // No token left
+      if (bucketFullAtNanos.compareAndSet(fullAt, newFullAt))  return true;
+    }
+  }
+}
@@ -0,0 +1,257 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * Wraps another FlightRecorder so that it dumps itself when something interesting happens,
+ * instead of waiting for somebody to notice and ask for a dump after the ring has wrapped past
+ * the interesting part.  Recording the trigger event (or calling trigger()) takes a snapshot
+ * straight away, which freezes the events leading up to the trigger.  Recording then carries
+ * on for the given number of events after the trigger, or until stopRecording(), and then a
+ * second snapshot is joined onto the first and dumped to the configured dumper on a thread of
+ * its own, so the recording thread only ever pays for the two quick copies.  Only the events
+ * the wrapped recorder actually kept count towards the number after the trigger (not ones it
+ * filtered out or sampled away), which it tells from the wrapped recorder's statistics; they
+ * are only looked at while a capture is in progress.
+ *
+ * triggerNow() doesn't wait for the events after the trigger: it finishes the capture (its own
+ * or one already in progress) at once.  That is what an uncaught exception does after
+ * FlightRecorderFactory.triggerOnUncaughtExceptions(), since the thread that is dying won't
+ * record any more events, and if the JVM is going down with it, nothing else will either.
+ *
+ * Only one triggered capture is in progress at a time; a trigger while one is already going is
+ * part of that capture.  Each capture is a separate dump to the same dumper, one after the
+ * other, so use a dumper that can take more than one (both of the factory's dumpers can).  The
+ * dumping thread isn't a daemon, so a dump in progress finishes even if the program is ending.
+ *
+ * Works with any recorder, but it is only thread safe if the recorder it wraps is.
+ */
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+final class TriggeredFlightRecorder implements FlightRecorder
+{
+  private final FlightRecorder recorder;
+  private final long triggerEventID;
+  private final int numberOfEventsAfterTrigger;
+  private final FlightRecorderEventDumper eventDumper;
+  private final AtomicBoolean capturing = new AtomicBoolean();
+  private static final long NOT_CAPTURING = -1;
+
+  // The wrapped recorder's number of events recorded at which the capture in progress ends
+  private final AtomicLong captureEndsAt = new AtomicLong(NOT_CAPTURING);
+  private volatile FlightRecorderSnapshot preTriggerSnapshot = FlightRecorderSnapshot.EMPTY;
+
+  TriggeredFlightRecorder(final FlightRecorder recorder, final FlightRecorderEventID triggerEventID, final int numberOfEventsAfterTrigger, final FlightRecorderEventDumper eventDumper)
+  {
+    if (numberOfEventsAfterTrigger < 0)
+    {
+      throw new IllegalArgumentException(String.format("Number of events after the trigger can't be negative, not %d", numberOfEventsAfterTrigger));
+    }
+    this.recorder                   = recorder;
+    this.triggerEventID             = triggerEventID.getEventID();
+    this.numberOfEventsAfterTrigger = numberOfEventsAfterTrigger;
+    this.eventDumper                = eventDumper;
+  }
+
+  @Override
+  public FlightRecorder recordEvent(final FlightRecorderEventID eventToRecord)
+  {
+    recorder.recordEvent(eventToRecord);
+    return afterRecording(eventToRecord);
+  }
+
+  @Override
+  public FlightRecorder recordEvent(final FlightRecorderEventID eventToRecord, final long payload0)
+  {
+    recorder.recordEvent(eventToRecord, payload0);
+    return afterRecording(eventToRecord);
+  }
+
+  @Override
+  public FlightRecorder recordEvent(final FlightRecorderEventID eventToRecord, final long payload0, final long payload1)
+  {
+    recorder.recordEvent(eventToRecord, payload0, payload1);
+    return afterRecording(eventToRecord);
+  }
+
+  private FlightRecorder afterRecording(final FlightRecorderEventID recordedEvent)
+  {
+    if (recordedEvent.getEventID() == triggerEventID)  return trigger();
+
+    final long endOfCapture = captureEndsAt.get();
+    if (endOfCapture == NOT_CAPTURING)  return this;  // The usual case
+    if ((numberOfEventsRecorded() >= endOfCapture) && captureEndsAt.compareAndSet(endOfCapture, NOT_CAPTURING))  finishCapture();
+    return this;
+  }
+
+  private long numberOfEventsRecorded()
+  {
+    return recorder.getStatistics().getNumberOfEventsRecorded();
+  }
+
+  @Override
+  public FlightRecorder trigger()
+  {
+    if (!capturing.compareAndSet(false, true))  return this;
+    final long numberRecordedAtTrigger = (numberOfEventsAfterTrigger == 0) ? 0 : numberOfEventsRecorded();
+    preTriggerSnapshot = recorder.takeSnapshot();
+    if (numberOfEventsAfterTrigger == 0)
+      finishCapture();
+    else
+      captureEndsAt.set(numberRecordedAtTrigger + numberOfEventsAfterTrigger);
+    return this;
+  }
+
+  @Override
+  public FlightRecorder triggerNow()
+  {
+    trigger();
+    finishCaptureInProgress();
+    return this;
+  }
+
+  private void finishCaptureInProgress()
+  {
+    if (capturing.get() && (captureEndsAt.getAndSet(NOT_CAPTURING) != NOT_CAPTURING))  finishCapture();
+  }
+
+  private void finishCapture()
+  {
+    captureEndsAt.set(NOT_CAPTURING);
+    final FlightRecorderSnapshot capturedSnapshot = preTriggerSnapshot.followedBy(recorder.takeSnapshot());
+    preTriggerSnapshot = FlightRecorderSnapshot.EMPTY;
+    capturing.set(false);
+
+    final Thread dumper = new Thread(() -> {
+      synchronized (eventDumper)
+      {
+        capturedSnapshot.dumpEntriesTo(eventDumper);
+      }
+    }, "FlightRecorder triggered dump");
+    dumper.start();
+  }
+
+  @Override
+  public long beginSpan(final FlightRecorderEventID spanToBegin)
+  {
+    final long spanToken = recorder.beginSpan(spanToBegin);
+    afterRecording(spanToBegin);
+    return spanToken;
+  }
+
+  @Override
+  public FlightRecorder endSpan(final FlightRecorderEventID spanToEnd, final long spanToken)
+  {
+    recorder.endSpan(spanToEnd, spanToken);
+    return afterRecording(spanToEnd);
+  }
+
+  @Override
+  public FlightRecorder enableEvent(final FlightRecorderEventID eventToEnable)
+  {
+    recorder.enableEvent(eventToEnable);
+    return this;
+  }
+
+  @Override
+  public FlightRecorder disableEvent(final FlightRecorderEventID eventToDisable)
+  {
+    recorder.disableEvent(eventToDisable);
+    return this;
+  }
+
+  @Override
+  public FlightRecorder enableAllEvents()
+  {
+    recorder.enableAllEvents();
+    return this;
+  }
+
+  @Override
+  public FlightRecorder disableAllEvents()
+  {
+    recorder.disableAllEvents();
+    return this;
+  }
+
+  @Override
+  public boolean isEventEnabled(final FlightRecorderEventID eventToCheck)
+  {
+    return recorder.isEventEnabled(eventToCheck);
+  }
+
+  @Override
+  public FlightRecorder setSamplingPolicy(final FlightRecorderEventID eventToSample, final FlightRecorderSamplingPolicy samplingPolicy)
+  {
+    recorder.setSamplingPolicy(eventToSample, samplingPolicy);
+    return this;
+  }
+
+  @Override
+  public FlightRecorder setStackDepth(final FlightRecorderEventID eventToCapture, final int maximumNumberOfFrames)
+  {
+    recorder.setStackDepth(eventToCapture, maximumNumberOfFrames);
+    return this;
+  }
+
+  @Override
+  public FlightRecorder startRecording()
+  {
+    recorder.startRecording();
+    return this;
+  }
+
+  @Override
+  public FlightRecorder stopRecording()
+  {
+    recorder.stopRecording();
+    finishCaptureInProgress();
+    return this;
+  }
+
+  @Override
+  public FlightRecorder clearAllRecordedEvents()
+  {
+    final long numberRecordedBeforeClearing = numberOfEventsRecorded();
+    recorder.clearAllRecordedEvents();
+    // A capture in progress still waits for the same number of events, however far the count went back
+    final long countWentBackBy = numberRecordedBeforeClearing - numberOfEventsRecorded();
+    captureEndsAt.getAndUpdate(endOfCapture -> (endOfCapture == NOT_CAPTURING) ? NOT_CAPTURING : endOfCapture - countWentBackBy);
+    return this;
+  }
+
+  @Override
+  public int getNumberOfEntriesRecorded()
+  {
+    return recorder.getNumberOfEntriesRecorded();
+  }
+
+  @Override
+  public FlightRecorderStatistics getStatistics()
+  {
+    return recorder.getStatistics();
+  }
+
+  @Override
+  public FlightRecorderSnapshot takeSnapshot()
+  {
+    return recorder.takeSnapshot();
+  }
+
+  @Override
+  public FlightRecorder dumpMatchingEntriesTo(final FlightRecorderQuery query, final FlightRecorderEventDumper eventDumper)
+  {
+    recorder.dumpMatchingEntriesTo(query, eventDumper);
+    return this;
+  }
+
+  @Override
+  public FlightRecorder dumpEntriesTo(final FlightRecorderEventDumper eventDumper)
+  {
+    recorder.dumpEntriesTo(eventDumper);
+    return this;
+  }
+}
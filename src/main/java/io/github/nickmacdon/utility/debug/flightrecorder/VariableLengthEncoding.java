@@ -0,0 +1,68 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * Little helpers for the usual "varint" encoding: seven bits per byte, least significant
+ * first, with the top bit set on every byte but the last.  Small numbers (like the gap from
+ * one sequence number to the next) then only take a byte or two instead of eight.  Numbers
+ * that might be negative, like the difference between two timestamps, should go through the
+ * zig zag versions so that small negative numbers are small too.  An int whose bits are used
+ * as bits (like EventFlags, where the thread index reaches the sign bit) goes through the int
+ * versions, which take it as unsigned, so it is never sign extended into ten bytes.
+ */
+import java.nio.ByteBuffer;
+
+final class VariableLengthEncoding
+{
+  private VariableLengthEncoding( ) {}  // No instantiation
+
+  static final int MAXIMUM_BYTES_FOR_A_LONG = 10;
+  static final int MAXIMUM_BYTES_FOR_AN_INT = 5;
+
+  static void putVarLong(final ByteBuffer buffer, final long value)
+  {
+    long remaining = value;
+    while ((remaining & ~0x7FL) != 0)
+    {
+      buffer.put((byte)((remaining & 0x7F) | 0x80));
+      remaining >>>= 7;
+    }
+    buffer.put((byte)remaining);
+  }
+
+  static long getVarLong(final ByteBuffer buffer)
+  {
+    long result = 0;
+    for (int shift=0; shift<64; shift+=7)
+    {
+      final byte b = buffer.get();
+      result |= (long)(b & 0x7F) << shift;
+      if ((b & 0x80) == 0)  return result;
+    }
+    throw new IllegalStateException("Malformed variable length number, it is longer than 10 bytes");
+  }
+
+  static void putVarInt(final ByteBuffer buffer, final int value)
+  {
+    putVarLong(buffer, value & 0xFFFF_FFFFL);
+  }
+
+  static int getVarInt(final ByteBuffer buffer)
+  {
+    return (int)getVarLong(buffer);  // Also reads an int that was sign extended
+  }
+
+  static void putZigZagVarLong(final ByteBuffer buffer, final long value)
+  {
+    putVarLong(buffer, (value << 1) ^ (value >> 63));
+  }
+
+  static long getZigZagVarLong(final ByteBuffer buffer)
+  {
+    final long zigZagged = getVarLong(buffer);
+    return (zigZagged >>> 1) ^ -(zigZagged & 1);
+  }
+}
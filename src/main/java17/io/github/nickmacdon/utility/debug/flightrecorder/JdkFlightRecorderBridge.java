@@ -0,0 +1,20 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * The Java 17 version of JdkFlightRecorderBridge, which the multi-release jar uses in place of
+ * the Java 8 one.  Here there is a JDK Flight Recorder to forward the events to, so that is
+ * what the recorder does; the number of events isn't needed since JFR keeps them itself.
+ */
+final class JdkFlightRecorderBridge
+{
+  private JdkFlightRecorderBridge() {}  // No instantiation
+
+  static FlightRecorder makeFlightRecorder(final int numberOfEvents, final FlightRecorderClock clock)
+  {
+    return new JfrForwardingFlightRecorder(clock);
+  }
+}
@@ -0,0 +1,89 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * The jdk.jfr event types that JfrForwardingFlightRecorder records into.  Rather than one JFR
+ * event type per FlightRecorderEventID (which would mean generating classes) there are just
+ * these few, each carrying the event ID, its name and its sequence number, so a JFR recording
+ * can be filtered on them in JDK Mission Control or with "jfr print --events".  They are
+ * registered when this class is loaded, so they show up in a recording's settings even before
+ * the first one is committed.
+ */
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+final class JfrEvents
+{
+  private JfrEvents() {}  // No instantiation
+
+  static final String CATEGORY = "Basic Java Flight Recorder";
+
+  static
+  {
+    jdk.jfr.FlightRecorder.register(PointEvent.class);
+    jdk.jfr.FlightRecorder.register(SpanEvent.class);
+  }
+
+  /*
+   * Makes sure the event types are registered.
+   */
+  static void register()
+  {
+    // The static initializer has done it by now
+  }
+
+  @Name("io.github.nickmacdon.flightrecorder.Event")
+  @Label("Flight Recorder Event")
+  @Description("An event recorded with FlightRecorder.recordEvent()")
+  @Category(CATEGORY)
+  @StackTrace(false)
+  static final class PointEvent extends Event
+  {
+    @Label("Event ID")
+    long eventID;
+
+    @Label("Event Name")
+    String eventName;
+
+    @Label("Sequence Number")
+    long sequenceNumber;
+
+    @Label("Number Of Payloads")
+    int numberOfPayloads;
+
+    @Label("Payload 0")
+    long payload0;
+
+    @Label("Payload 1")
+    long payload1;
+  }
+
+  @Name("io.github.nickmacdon.flightrecorder.Span")
+  @Label("Flight Recorder Span")
+  @Description("A span ended with FlightRecorder.endSpan()")
+  @Category(CATEGORY)
+  @StackTrace(false)
+  static final class SpanEvent extends Event
+  {
+    @Label("Event ID")
+    long eventID;
+
+    @Label("Event Name")
+    String eventName;
+
+    @Label("Sequence Number")
+    long sequenceNumber;
+
+    @Label("Span Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long durationNanos;
+  }
+}
@@ -0,0 +1,168 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * A FlightRecorder that doesn't keep the events itself but commits each one to the JDK's own
+ * Flight Recorder as a JfrEvents.PointEvent (or a JfrEvents.SpanEvent for the end of a span),
+ * so existing recordEvent() calls end up in JFR recordings at JFR's cost, next to the GC, lock
+ * and I/O events.  It only exists on Java 17 and later; see JdkFlightRecorderBridge.
+ *
+ * The events only go anywhere while a JFR recording is running as well as this recorder
+ * (start one with -XX:StartFlightRecording or jcmd JFR.start) and are read with JFR's tools.
+ * Disabling, sampling and sequence numbers work as they do for the other recorders.  The
+ * timestamps are JFR's; the clock is only used for the spans, whose token is the time they
+ * began.  Since nothing is kept here, getNumberOfEntriesRecorded() is always 0 and a dump
+ * has no events, only the suppressed counts; the statistics count the events committed.
+ *
+ * A span's JFR event is begun when the span begins, and kept with its token by the thread
+ * that began it, so JFR's own start time and duration are the span's.  A span that ends on a
+ * different thread (or that began before a JFR recording wanted it) is committed when it ends
+ * with only its Span Duration right, and the oldest of more than MAX_OPEN_SPANS spans open on
+ * a thread are forgotten, so spans that never end can't pile up.
+ *
+ * It is thread safe.
+ */
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+final class JfrForwardingFlightRecorder extends AbstractFlightRecorder
+{
+  static final int MAX_OPEN_SPANS = 64;
+
+  private final AtomicLong sequenceNumber  = new AtomicLong();
+  private final AtomicLong numberCommitted = new AtomicLong();
+  private final ThreadLocal<ArrayDeque<OpenSpan>> openSpans = ThreadLocal.withInitial(ArrayDeque::new);
+
+  /*
+   * A span's JFR event that has begun, and the token it was given.
+   */
+  private static final class OpenSpan
+  {
+    final long                token;
+    final JfrEvents.SpanEvent event;
+
+    OpenSpan(final long token, final JfrEvents.SpanEvent event)
+    {
+      this.token = token;
+      this.event = event;
+    }
+  }
+
+  JfrForwardingFlightRecorder(final FlightRecorderClock clock)
+  {
+    super(clock);
+    JfrEvents.register();
+  }
+
+  @Override
+  long nextSequenceNumber()
+  {
+    return sequenceNumber.incrementAndGet();
+  }
+
+  /*
+   * Commits the event to JFR instead of storing it; the timestamp is only kept for the token of
+   * a span that is beginning.
+   */
+  @Override
+  long record(final FlightRecorderEventID eventToRecord, final int flags, final long payload0, final long payload1)
+  {
+    final long eventSequenceNumber = claimSequenceNumber(eventToRecord.getEventID(), flags);
+    if (eventSequenceNumber == NOT_RECORDED)  return NO_SPAN;
+    if (flags == EventFlags.SPAN_BEGIN)  return beginSpan();
+
+    if (flags == EventFlags.SPAN_END)
+    {
+      final JfrEvents.SpanEvent event = endSpan(payload0);
+      if (!event.isEnabled())  return NO_SPAN;
+      event.eventID        = eventToRecord.getEventID();
+      event.eventName      = eventToRecord.getEventName();
+      event.sequenceNumber = eventSequenceNumber;
+      event.durationNanos  = Math.max(0, clock.currentTimeNanos() - payload0);
+      event.commit();
+      numberCommitted.incrementAndGet();
+      return NO_SPAN;
+    }
+
+    final JfrEvents.PointEvent event = new JfrEvents.PointEvent();
+    if (!event.isEnabled())  return NO_SPAN;  // No JFR recording wants it, so don't bother filling it in
+    event.eventID          = eventToRecord.getEventID();
+    event.eventName        = eventToRecord.getEventName();
+    event.sequenceNumber   = eventSequenceNumber;
+    event.numberOfPayloads = EventFlags.numberOfPayloads(flags);
+    event.payload0         = payload0;
+    event.payload1         = payload1;
+    event.commit();
+    numberCommitted.incrementAndGet();
+    return NO_SPAN;
+  }
+
+  /*
+   * Begins the JFR event of a span, if a JFR recording wants it, and returns the span's token.
+   */
+  private long beginSpan()
+  {
+    final JfrEvents.SpanEvent event = new JfrEvents.SpanEvent();
+    final long token = spanTokenFor(clock.currentTimeNanos());
+    if (!event.isEnabled())  return token;
+    final ArrayDeque<OpenSpan> spans = openSpans.get();
+    if (spans.size() >= MAX_OPEN_SPANS)  spans.removeFirst();
+    event.begin();
+    spans.addLast(new OpenSpan(token, event));
+    return token;
+  }
+
+  /*
+   * Finds the JFR event begun for the span with the given token on this thread, which is
+   * nearly always the last one, or makes a new one if there isn't one.
+   */
+  private JfrEvents.SpanEvent endSpan(final long token)
+  {
+    final Iterator<OpenSpan> spans = openSpans.get().descendingIterator();
+    while (spans.hasNext())
+    {
+      final OpenSpan span = spans.next();
+      if (span.token == token)
+      {
+        spans.remove();
+        return span.event;
+      }
+    }
+    return new JfrEvents.SpanEvent();
+  }
+
+  @Override
+  public FlightRecorder clearAllRecordedEvents()
+  {
+    clearCounts();  // The events themselves belong to the JFR recording
+    numberCommitted.set(0);
+    return this;
+  }
+
+  @Override
+  public int getNumberOfEntriesRecorded()
+  {
+    return 0;
+  }
+
+  @Override
+  public FlightRecorderStatistics getStatistics()
+  {
+    return statisticsOf(numberCommitted.get(), 0, 0, 0.0);
+  }
+
+  @Override
+  public FlightRecorder dumpEntriesTo(final FlightRecorderEventDumper eventDumper)
+  {
+    eventDumper.setDumpTimestampsNanos(getStartTimeStamp(), clock.currentTimeNanos());
+    eventDumper.dumpBegins();
+    eventDumper.setNumberOfEventsToBeDumped(0);
+    eventSampler.getSuppressedEventCounts().reportTo(eventDumper);
+    eventDumper.dumpComplete();
+    return this;
+  }
+}
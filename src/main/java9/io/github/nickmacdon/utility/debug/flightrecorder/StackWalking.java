@@ -0,0 +1,27 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * The Java 9 version of StackWalking, which the multi-release jar uses in place of the Java 8
+ * one.  A StackWalker only makes the frames it is asked for, so skipping the recorder's frames
+ * and stopping at the maximum is much cheaper than filling in a Throwable's whole stack.
+ */
+final class StackWalking
+{
+  private StackWalking() {}  // No instantiation
+
+  private static final StackWalker STACK_WALKER = StackWalker.getInstance();
+
+  static StackTraceElement[] currentStack(final int maximumNumberOfFrames)
+  {
+    return STACK_WALKER.walk(frames -> frames
+      .dropWhile(frame -> EventStackCapture.isRecorderFrame(frame.getClassName()))
+      .limit(maximumNumberOfFrames)
+      .map(StackWalker.StackFrame::toStackTraceElement)
+      .toArray(StackTraceElement[]::new)
+    );
+  }
+}
@@ -0,0 +1,137 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * A unit test of the CompressedEventRingBuffer that packs recorded events into blocks of bytes.
+ * The interesting cases are dropping the oldest block when it wraps around, and reading the
+ * events back out of order.
+ */
+import static io.github.nickmacdon.utility.debug.flightrecorder.FlightRecorderTestEvents.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class CompressedEventRingBufferTest
+{
+  private static final int BLOCK_SIZE = 256;
+
+  @Test
+  public void testCompressedEventRingBuffer()
+  {
+    final CompressedEventRingBuffer rb = new CompressedEventRingBuffer(4 * BLOCK_SIZE, BLOCK_SIZE);
+    assertEquals(0, rb.getNumberOfEntries());
+    rb.put(FLIGHT_RECORDER_TEST_EVENT1, 1, 1_000_000_100L, 0, 0, 0);
+    rb.put(FLIGHT_RECORDER_TEST_EVENT2, 2, 1_000_000_050L, 1, -42, 0);  // Timestamps can go backwards
+    rb.put(FLIGHT_RECORDER_TEST_EVENT3, 3, 1_000_000_300L, EventFlags.withThreadIndex(2, 5), Long.MIN_VALUE, Long.MAX_VALUE);
+    assertEquals(3, rb.getNumberOfEntries());
+    assertEquals(2, rb.getEventIDAt(1));
+    assertEquals(1_000_000_050L, rb.getTimeStampAt(1));
+    assertEquals(1, rb.getSequenceNumberAt(0));
+    assertEquals(5, EventFlags.threadIndex(rb.getFlagsAt(2)));
+
+    final FlightRecorderEvent event = rb.getEventAt(2);
+    assertEquals("FLIGHT_RECORDER_TEST_EVENT3", event.getEventName());
+    assertEquals(3, event.getSequenceNumber());
+    assertEquals(2, event.getNumberOfPayloads());
+    assertEquals(Long.MIN_VALUE, event.getPayload(0));
+    assertEquals(Long.MAX_VALUE, event.getPayload(1));
+    assertEquals(5, event.getThreadIndex());
+    assertEquals(-42, rb.getEventAt(1).getPayload(0));
+
+    rb.clearAllEntries();
+    assertEquals(0, rb.getNumberOfEntries());
+  }
+
+  @Test
+  public void testHighThreadIndex()
+  {
+    // The thread index reaches the sign bit of the flags, which mustn't make a record any bigger
+    // than was allowed for; so put the biggest record possible after every amount of filling
+    final int flags = EventFlags.withThreadIndex(2, EventFlags.MAXIMUM_THREAD_INDEX);
+    for (int numberOfFillers=0; numberOfFillers<BLOCK_SIZE/4; numberOfFillers++)
+    {
+      for (int numberWithAPayload=0; numberWithAPayload<4; numberWithAPayload++)
+      {
+        final CompressedEventRingBuffer rb = new CompressedEventRingBuffer(4 * BLOCK_SIZE, BLOCK_SIZE);
+        for (int i=0; i<numberOfFillers; i++)  rb.put(FLIGHT_RECORDER_TEST_EVENT1, i, i, (i < numberWithAPayload) ? 1 : 0, 0, 0);
+        rb.put(FLIGHT_RECORDER_TEST_EVENT2, Long.MIN_VALUE, Long.MAX_VALUE, flags, Long.MIN_VALUE, Long.MIN_VALUE, Integer.MAX_VALUE);
+        final int lastEntry = rb.getNumberOfEntries() - 1;
+        assertEquals(EventFlags.MAXIMUM_THREAD_INDEX, EventFlags.threadIndex(rb.getFlagsAt(lastEntry)));
+        assertEquals(Integer.MAX_VALUE, rb.getEventAt(lastEntry).getStackID());
+      }
+    }
+  }
+
+  @Test
+  public void testWrapAround()
+  {
+    final CompressedEventRingBuffer rb = new CompressedEventRingBuffer(4 * BLOCK_SIZE, BLOCK_SIZE);
+    for (int i=1; i<=1000; i++)
+      rb.put(FlightRecorderTestEvents.values()[i % 3], i, 1_000_000_000L + 1_000 * i, 0, 0, 0);
+
+    // Only whole blocks are dropped, so the newest events are all there, in order
+    final int numberOfEntries = rb.getNumberOfEntries();
+    assertTrue(numberOfEntries > 3 * (BLOCK_SIZE / 8));
+    assertTrue(numberOfEntries < 1000);
+    assertEquals(1000, rb.getSequenceNumberAt(numberOfEntries - 1));
+    for (int i=0; i<numberOfEntries; i++)
+    {
+      final long sequenceNumber = 1000 - numberOfEntries + 1 + i;
+      assertEquals(sequenceNumber, rb.getSequenceNumberAt(i));
+      assertEquals(1_000_000_000L + 1_000 * sequenceNumber, rb.getTimeStampAt(i));
+    }
+
+    // Out of order, jumping between blocks
+    for (int i=numberOfEntries-1; i>=0; i-=7)
+      assertEquals(FlightRecorderTestEvents.values()[(int)(rb.getSequenceNumberAt(i) % 3)].getEventID(), rb.getEventIDAt(i));
+
+    final EventRingBuffer decompressed = rb.decompress();
+    assertEquals(numberOfEntries, decompressed.getNumberOfEntries());
+    assertEquals(1000, decompressed.getSequenceNumberAt(numberOfEntries - 1));
+  }
+
+  @Test
+  public void testRetentionTime()
+  {
+    final CompressedEventRingBuffer rb = new CompressedEventRingBuffer(8 * BLOCK_SIZE, BLOCK_SIZE, 1_000_000);
+    assertEquals(0, rb.getNumberOfBytesAllocated());
+    for (int i=1; i<=100; i++)
+      rb.put(FLIGHT_RECORDER_TEST_EVENT1, i, 1_000 * i, 0, 0, 0);
+    assertEquals(100, rb.getNumberOfEntries());
+    final int bytesAllocated = rb.getNumberOfBytesAllocated();
+    assertTrue((bytesAllocated > 0) && (bytesAllocated < rb.getCapacityInBytes()));
+
+    // A millisecond later the older blocks have expired, but not the newest events
+    rb.expireEntries(100_000 + 1_000_000);
+    final int numberOfEntries = rb.getNumberOfEntries();
+    assertTrue((numberOfEntries > 0) && (numberOfEntries < 100));
+    assertEquals(100, rb.getSequenceNumberAt(numberOfEntries - 1));
+    assertTrue(rb.getNumberOfBytesAllocated() < bytesAllocated);
+
+    rb.expireEntries(200_000 + 1_000_000);
+    assertEquals(0, rb.getNumberOfEntries());
+    assertEquals(0, rb.getNumberOfBytesAllocated());
+
+    // Faster than the ring can hold, so the ceiling wins
+    for (int i=1; i<=10_000; i++)
+      rb.put(FLIGHT_RECORDER_TEST_EVENT2, i, 300_000 + i, 0, 0, 0);
+    assertTrue(rb.getNumberOfEntries() < 10_000);
+    assertEquals(rb.getCapacityInBytes(), rb.getNumberOfBytesAllocated());
+    assertEquals(10_000, rb.getSequenceNumberAt(rb.getNumberOfEntries() - 1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testGetEventAtWhenNone()
+  {
+    final CompressedEventRingBuffer rb = new CompressedEventRingBuffer(4 * BLOCK_SIZE, BLOCK_SIZE);
+    rb.getEventAt(0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testLessThanTwoBlocks()
+  {
+    new CompressedEventRingBuffer(CompressedEventRingBuffer.DEFAULT_BLOCK_SIZE);
+  }
+}
@@ -0,0 +1,112 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * A unit test of the FlightRecorder that packs its events into a compressed ring.  It should
+ * dump just what the ordinary in-memory one does, while holding many more events.
+ */
+import static io.github.nickmacdon.utility.debug.flightrecorder.FlightRecorderTestEvents.*;
+import static org.junit.Assert.*;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class CompressedRingBufferFlightRecorderTest
+{
+  @Test
+  public void testSameDumpAsInMemory()
+  {
+    final long[] now = { 0, 0 };
+    final FlightRecorder compressed = new CompressedRingBufferFlightRecorder(16 * 1024, () -> now[0] += 1_000).startRecording();
+    final FlightRecorder inMemory   = new InMemoryRingBufferFlightRecorder(100, () -> now[1] += 1_000).startRecording();
+    for (final FlightRecorder fr : new FlightRecorder[] { compressed, inMemory })
+    {
+      fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+      fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT2, 42);
+      fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT3, -7, Long.MAX_VALUE);
+      fr.endSpan(FLIGHT_RECORDER_TEST_EVENT1, fr.beginSpan(FLIGHT_RECORDER_TEST_EVENT1));
+      fr.stopRecording();
+    }
+    final FlightRecorderEventDumper compressedDump = FlightRecorderFactory.getStringDumper("Test Dump");
+    final FlightRecorderEventDumper inMemoryDump   = FlightRecorderFactory.getStringDumper("Test Dump");
+    compressed.dumpEntriesTo(compressedDump);
+    inMemory.dumpEntriesTo(inMemoryDump);
+    // Apart from when they were made
+    assertEquals(inMemoryDump.toString().replaceAll("Dump created: .*", ""), compressedDump.toString().replaceAll("Dump created: .*", ""));
+
+    final FlightRecorderTestDumper snapshot = new FlightRecorderTestDumper();
+    compressed.takeSnapshot().dumpEntriesTo(snapshot);
+    assertEquals(5, snapshot.events.size());
+    assertEquals(Long.MAX_VALUE, snapshot.events.get(2).getPayload(1));
+    assertEquals(FlightRecorderEventKind.SPAN_END, snapshot.events.get(4).getEventKind());
+    assertEquals(1_000, snapshot.events.get(4).getPayload(0));
+  }
+
+  @Test
+  public void testRetention()
+  {
+    // The same memory as the columns of an EventRingBuffer of 1,000 events
+    final int numberOfEventsInAnEventRingBuffer = 1_000;
+    final int numberOfBytes = numberOfEventsInAnEventRingBuffer * (6 * Long.BYTES + Integer.BYTES);
+    final long[] now = { 0 };
+    final FlightRecorder fr = FlightRecorderFactory.getCompressedFlightRecorder(numberOfBytes, () -> now[0] += 1_500).startRecording();
+    for (int i=0; i<100_000; i++)
+      fr.recordEvent(FlightRecorderTestEvents.values()[i % 3]);
+    // Each of these events packs into six or seven bytes instead of 52
+    final double ratio = (double)fr.getNumberOfEntriesRecorded() / numberOfEventsInAnEventRingBuffer;
+    assertTrue("Only " + ratio + " times as many events", (ratio >= 7) && (ratio <= 10));
+
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    fr.dumpEntriesTo(frd);
+    assertEquals(fr.getNumberOfEntriesRecorded(), frd.events.size());
+    assertEquals(100_000, frd.events.get(frd.events.size() - 1).getSequenceNumber());
+    assertEquals(100_000, frd.numbersOfEventsSummarized.values().stream().mapToLong(Long::longValue).sum());
+  }
+
+  @Test
+  public void testTimeWindow()
+  {
+    final long[] now = { 1_000_000_000L };
+    final FlightRecorder fr = FlightRecorderFactory.getTimeWindowedFlightRecorder(1, TimeUnit.SECONDS, 1024 * 1024, () -> now[0]).startRecording();
+    for (int i=0; i<10_000; i++)
+    {
+      now[0] += 1_000_000;  // A thousand events a second, for ten seconds
+      fr.recordEvent(FlightRecorderTestEvents.values()[i % 3], i);
+    }
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    fr.dumpEntriesTo(frd);
+    // All of the last second, and less than a block more
+    final FlightRecorderEvent oldest = frd.events.get(0);
+    assertTrue(oldest.getEventTimestampNanos() <= now[0] - 1_000_000_000L);
+    assertTrue(frd.events.size() < 1_000 + CompressedEventRingBuffer.DEFAULT_BLOCK_SIZE / 4);
+    assertEquals(10_000, frd.events.get(frd.events.size() - 1).getSequenceNumber());
+
+    // Nothing recorded for a while
+    now[0] += 5_000_000_000L;
+    assertEquals(0, fr.takeSnapshot().getNumberOfEntries());
+  }
+
+  @Test
+  public void testQuery()
+  {
+    final long[] now = { 0 };
+    final FlightRecorder fr = new CompressedRingBufferFlightRecorder(new CompressedEventRingBuffer(1024, 256), () -> now[0] += 1_000).startRecording();
+    for (int i=0; i<100; i++)
+      fr.recordEvent(FlightRecorderTestEvents.values()[i % 3], i);
+    final FlightRecorderTestDumper all = new FlightRecorderTestDumper();
+    fr.dumpEntriesTo(all);
+
+    final long first = all.events.get(3).getSequenceNumber();
+    final FlightRecorderTestDumper bySequenceNumber = new FlightRecorderTestDumper();
+    fr.dumpMatchingEntriesTo(FlightRecorderQuery.ALL.withSequenceNumbers(first, first + 9).withEventIDs(FLIGHT_RECORDER_TEST_EVENT2), bySequenceNumber);
+    assertTrue(bySequenceNumber.dumpIsComplete);
+    assertTrue(bySequenceNumber.events.size() >= 3);
+    for (final FlightRecorderEvent event : bySequenceNumber.events)
+    {
+      assertEquals(FLIGHT_RECORDER_TEST_EVENT2.getEventID(), event.getEventID());
+      assertTrue((event.getSequenceNumber() >= first) && (event.getSequenceNumber() <= first + 9));
+    }
+  }
+}
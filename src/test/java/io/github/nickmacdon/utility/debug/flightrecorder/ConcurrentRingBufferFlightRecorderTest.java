@@ -0,0 +1,245 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * A unit test of the thread safe FlightRecorder.  Several threads hammer the same recorder
+ * and then the dump is checked to make sure no sequence numbers were lost or duplicated and
+ * that they come back out in order.
+ */
+import static io.github.nickmacdon.utility.debug.flightrecorder.FlightRecorderTestEvents.*;
+import static org.junit.Assert.*;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+
+public class ConcurrentRingBufferFlightRecorderTest
+{
+  private static final int NUMBER_OF_THREADS = 4;
+  private static final int EVENTS_PER_THREAD = 10_000;
+
+  @Test
+  public void testConcurrentRingBufferFlightRecorder()
+  {
+    final FlightRecorder fr = new ConcurrentRingBufferFlightRecorder(3);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1); // Not recording yet
+    assertEquals(0, fr.getNumberOfEntriesRecorded());
+    fr.startRecording();
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT2);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT3);
+    assertEquals(2, fr.getNumberOfEntriesRecorded());
+    fr.clearAllRecordedEvents();
+    assertEquals(0, fr.getNumberOfEntriesRecorded());
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT2);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT3);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+    assertEquals(3, fr.getNumberOfEntriesRecorded());
+
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    fr.dumpEntriesTo(frd);
+    assertEquals(3, frd.numberOfEventsToBeDumped);
+    assertEquals(5, frd.events.get(0).getSequenceNumber());
+    assertEquals(7, frd.events.get(2).getSequenceNumber());
+    assertEquals(FLIGHT_RECORDER_TEST_EVENT1.getEventID(), frd.events.get(2).getEventID());
+  }
+
+  @Test
+  public void testManyProducers() throws InterruptedException
+  {
+    final FlightRecorder fr = FlightRecorderFactory.getConcurrentFlightRecorder(NUMBER_OF_THREADS * EVENTS_PER_THREAD).startRecording();
+    final Thread[] producers = new Thread[NUMBER_OF_THREADS];
+    for (int t=0; t<NUMBER_OF_THREADS; t++)
+    {
+      producers[t] = new Thread(() -> {
+        for (int i=0; i<EVENTS_PER_THREAD; i++)  fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1, i);
+      });
+      producers[t].start();
+    }
+    for (final Thread producer : producers)  producer.join();
+
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    fr.stopRecording().dumpEntriesTo(frd);
+    assertEquals(NUMBER_OF_THREADS * EVENTS_PER_THREAD, frd.numberOfEventsToBeDumped);
+    for (int i=0; i<frd.events.size(); i++)
+    {
+      assertEquals(i+1, frd.events.get(i).getSequenceNumber());
+      assertEquals(1, frd.events.get(i).getNumberOfPayloads());
+    }
+    assertEquals(Long.valueOf(NUMBER_OF_THREADS * EVENTS_PER_THREAD), frd.numbersOfEventsSummarized.get("FLIGHT_RECORDER_TEST_EVENT1"));
+  }
+
+  @Test
+  public void testManyThreadsKeepTheirNames() throws InterruptedException
+  {
+    // Enough threads to grow the table of thread names more than once
+    final int numberOfThreads = 100;
+    final FlightRecorder fr = FlightRecorderFactory.getConcurrentFlightRecorder(numberOfThreads).startRecording();
+    for (int t=0; t<numberOfThreads; t++)
+    {
+      final int threadNumber = t;
+      final Thread thread = new Thread(() -> fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1, threadNumber), "short lived " + t);
+      thread.start();
+      thread.join();
+    }
+
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    fr.stopRecording().dumpEntriesTo(frd);
+    assertEquals(numberOfThreads, frd.threadNames.size());
+    for (final FlightRecorderEvent event : frd.events)
+      assertEquals("short lived " + event.getPayload(0), frd.threadNames.get(event.getThreadIndex()));
+  }
+
+  @Test
+  public void testThreadLanes() throws InterruptedException
+  {
+    final FlightRecorder fr = FlightRecorderFactory.getConcurrentFlightRecorder(1000).startRecording();
+    final Thread[] producers = new Thread[NUMBER_OF_THREADS];
+    for (int t=0; t<NUMBER_OF_THREADS; t++)
+    {
+      final int producerNumber = t;
+      producers[t] = new Thread(() -> {
+        for (int i=0; i<100; i++)  fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT2, producerNumber);
+      }, "producer " + t);
+      producers[t].start();
+    }
+    for (final Thread producer : producers)  producer.join();
+
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    fr.stopRecording().dumpEntriesTo(FlightRecorderFactory.getThreadLaneDumper(frd));
+    assertEquals(NUMBER_OF_THREADS, frd.threadNames.size());
+    assertEquals(NUMBER_OF_THREADS, frd.lanesBegun.size());
+    for (int lane=0; lane<NUMBER_OF_THREADS; lane++)
+    {
+      final int threadIndex = frd.lanesBegun.get(lane);
+      for (int i=lane*100; i<(lane+1)*100; i++)
+      {
+        final FlightRecorderEvent event = frd.events.get(i);
+        assertEquals(threadIndex, event.getThreadIndex());
+        assertEquals("producer " + event.getPayload(0), frd.threadNames.get(threadIndex));
+        if (i > lane*100)  assertTrue(event.getSequenceNumber() > frd.events.get(i-1).getSequenceNumber());
+      }
+    }
+  }
+
+  @Test
+  public void testSnapshotWhileRecording() throws InterruptedException
+  {
+    final FlightRecorder fr = FlightRecorderFactory.getConcurrentFlightRecorder(100).startRecording();
+    final Thread producer = new Thread(() -> {
+      for (int i=0; i<EVENTS_PER_THREAD * 10; i++)  fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1, i);
+    });
+    producer.start();
+    while (producer.isAlive())
+    {
+      final FlightRecorderSnapshot snapshot = fr.takeSnapshot();
+      final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+      snapshot.dumpEntriesTo(frd);
+      assertEquals(snapshot.getNumberOfEventsLost(), frd.numberOfEventsLostDuringSnapshot);
+      assertTrue(frd.events.size() + frd.numberOfEventsLostDuringSnapshot <= 100);
+      for (int i=1; i<frd.events.size(); i++)
+      {
+        // Whatever made it into the snapshot is whole and in order
+        assertTrue(frd.events.get(i-1).getSequenceNumber() < frd.events.get(i).getSequenceNumber());
+        assertEquals(frd.events.get(i).getSequenceNumber() - 1, frd.events.get(i).getPayload(0));
+      }
+    }
+    producer.join();
+  }
+
+  @Test
+  public void testSnapshotWhileClearing() throws InterruptedException
+  {
+    final FlightRecorder fr = FlightRecorderFactory.getConcurrentFlightRecorder(100).startRecording();
+    final Thread producer = new Thread(() -> {
+      for (int i=0; i<EVENTS_PER_THREAD * 10; i++)
+      {
+        fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1, i);
+        if (i % 10 == 0)  fr.clearAllRecordedEvents();
+      }
+    });
+    producer.start();
+    while (producer.isAlive())
+    {
+      final FlightRecorderSnapshot snapshot = fr.takeSnapshot();
+      assertTrue(snapshot.getNumberOfEventsLost() >= 0);
+      assertTrue(fr.getNumberOfEntriesRecorded() >= 0);
+    }
+    producer.join();
+  }
+
+  @Test
+  public void testTimeRangeQueryWithSkewedTimestamps() throws InterruptedException
+  {
+    // The late thread takes its sequence number and is then held up in the clock until after
+    // another thread has recorded, so the event with the lower sequence number is stamped later
+    final CountDownLatch lateThreadIsReadingTheClock = new CountDownLatch(1);
+    final CountDownLatch otherThreadHasRecorded      = new CountDownLatch(1);
+    final Thread[] lateThread = new Thread[1];
+    final FlightRecorderClock skewingClock = () -> {
+      if (Thread.currentThread() != lateThread[0])  return 5_000;
+      lateThreadIsReadingTheClock.countDown();
+      try
+      {
+        otherThreadHasRecorded.await();
+      }
+      catch (final InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+      }
+      return 9_000;
+    };
+    final FlightRecorder fr = FlightRecorderFactory.getConcurrentFlightRecorder(10, skewingClock).startRecording();
+    lateThread[0] = new Thread(() -> fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1));
+    lateThread[0].start();
+    lateThreadIsReadingTheClock.await();
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT2);
+    otherThreadHasRecorded.countDown();
+    lateThread[0].join();
+
+    final FlightRecorderTestDumper all = new FlightRecorderTestDumper();
+    fr.dumpEntriesTo(all);
+    assertEquals(2, all.events.size());
+    assertEquals(9_000, all.events.get(0).getEventTimestampNanos());  // Sequence number 1, stamped last
+    assertEquals(5_000, all.events.get(1).getEventTimestampNanos());
+
+    final FlightRecorderTestDumper late = new FlightRecorderTestDumper();
+    fr.dumpMatchingEntriesTo(FlightRecorderQuery.ALL.withTimestampsNanos(9_000, 9_000), late);
+    assertEquals(1, late.events.size());
+    assertEquals(FLIGHT_RECORDER_TEST_EVENT1.getEventID(), late.events.get(0).getEventID());
+
+    final FlightRecorderTestDumper early = new FlightRecorderTestDumper();
+    fr.dumpMatchingEntriesTo(FlightRecorderQuery.ALL.withTimestampsNanos(0, 6_000), early);
+    assertEquals(1, early.events.size());
+    assertEquals(FLIGHT_RECORDER_TEST_EVENT2.getEventID(), early.events.get(0).getEventID());
+  }
+
+  @Test
+  public void testDisablingWhileRecording() throws InterruptedException
+  {
+    final FlightRecorder fr = FlightRecorderFactory.getConcurrentFlightRecorder(NUMBER_OF_THREADS * EVENTS_PER_THREAD).startRecording();
+    fr.disableEvent(FLIGHT_RECORDER_TEST_EVENT3);
+    final Thread producer = new Thread(() -> {
+      for (int i=0; i<EVENTS_PER_THREAD; i++)
+      {
+        fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT2);
+        fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT3);
+      }
+    });
+    producer.start();
+    for (int i=0; i<1000; i++)
+    {
+      if ((i % 2) == 0)
+        fr.disableEvent(FLIGHT_RECORDER_TEST_EVENT2);
+      else
+        fr.enableEvent(FLIGHT_RECORDER_TEST_EVENT2);
+    }
+    producer.join();
+
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    fr.stopRecording().dumpEntriesTo(frd);
+    for (final FlightRecorderEvent event : frd.events)
+      assertEquals(FLIGHT_RECORDER_TEST_EVENT2.getEventID(), event.getEventID());
+  }
+}
@@ -0,0 +1,58 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * A unit test of the EventIDFilter, for event IDs both inside and outside of its bitset.
+ */
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class EventIDFilterTest
+{
+  @Test
+  public void testDenseEventIDs()
+  {
+    final EventIDFilter filter = new EventIDFilter();
+    assertTrue(filter.isEnabled(0));
+    assertTrue(filter.isEnabled(EventIDFilter.NUMBER_OF_DENSE_EVENT_IDS - 1));
+    filter.setEnabled(63, false);
+    assertFalse(filter.isEnabled(63));
+    assertTrue(filter.isEnabled(62));
+    assertTrue(filter.isEnabled(64));
+    filter.setEnabled(63, true);
+    assertTrue(filter.isEnabled(63));
+
+    filter.disableAll();
+    assertFalse(filter.isEnabled(1));
+    filter.setEnabled(1, true);
+    assertTrue(filter.isEnabled(1));
+    assertFalse(filter.isEnabled(2));
+  }
+
+  @Test
+  public void testOtherEventIDs()
+  {
+    final EventIDFilter filter = new EventIDFilter();
+    assertTrue(filter.isEnabled(-1));
+    assertTrue(filter.isEnabled(Long.MAX_VALUE));
+    filter.setEnabled(-1, false);
+    filter.setEnabled(1_000_000, false);
+    filter.setEnabled(1_000_000, false);
+    assertFalse(filter.isEnabled(-1));
+    assertFalse(filter.isEnabled(1_000_000));
+    assertTrue(filter.isEnabled(1_000_001));
+    filter.setEnabled(-1, true);
+    assertTrue(filter.isEnabled(-1));
+    assertFalse(filter.isEnabled(1_000_000));
+
+    filter.disableAll();
+    assertFalse(filter.isEnabled(Long.MIN_VALUE));
+    filter.setEnabled(Long.MIN_VALUE, true);
+    assertTrue(filter.isEnabled(Long.MIN_VALUE));
+    filter.enableAll();
+    assertTrue(filter.isEnabled(1_000_000));
+  }
+}
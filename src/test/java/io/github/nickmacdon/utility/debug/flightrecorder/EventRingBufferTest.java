@@ -0,0 +1,69 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * A unit test of the EventRingBuffer that keeps recorded events in primitive columns.
+ * Like RingBufferTest the empty and the wrapped around cases are the interesting ones.
+ */
+import static io.github.nickmacdon.utility.debug.flightrecorder.FlightRecorderTestEvents.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class EventRingBufferTest
+{
+  @Test
+  public void testEventRingBuffer()
+  {
+    final EventRingBuffer rb = new EventRingBuffer(3);
+    assertEquals(0, rb.getNumberOfEntries());
+    assertEquals(0, rb.getNumberOfLostEntries());
+    rb.put(FLIGHT_RECORDER_TEST_EVENT1, 1, 100);
+    rb.put(FLIGHT_RECORDER_TEST_EVENT2, 2, 200);
+    assertEquals(2, rb.getNumberOfEntries());
+    assertEquals(1, rb.getEventIDAt(0));
+    assertEquals(2, rb.getEventIDAt(1));
+    assertEquals(200, rb.getTimeStampAt(1));
+    rb.put(FLIGHT_RECORDER_TEST_EVENT3, 3, 300);
+    rb.put(FLIGHT_RECORDER_TEST_EVENT1, 4, 400);
+    assertEquals(3, rb.getNumberOfEntries());
+    assertEquals(1, rb.getNumberOfLostEntries());
+    assertEquals(2, rb.getSequenceNumberAt(0));
+    assertEquals(3, rb.getSequenceNumberAt(1));
+    assertEquals(4, rb.getSequenceNumberAt(2));
+
+    final FlightRecorderEvent event = rb.getEventAt(2);
+    assertEquals(1, event.getEventID());
+    assertEquals("FLIGHT_RECORDER_TEST_EVENT1", event.getEventName());
+    assertEquals(4, event.getSequenceNumber());
+    assertEquals(400, event.getEventTimestampNanos());
+
+    rb.clearNumberOfLostEntries();
+    assertEquals(0, rb.getNumberOfLostEntries());
+    rb.clearAllEntries();
+    assertEquals(0, rb.getNumberOfEntries());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testGetEventAtWhenNone()
+  {
+    final EventRingBuffer rb = new EventRingBuffer(3);
+    rb.getEventAt(0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testGetEventAtNegative()
+  {
+    final EventRingBuffer rb = new EventRingBuffer(3);
+    rb.put(FLIGHT_RECORDER_TEST_EVENT1, 1, 100);
+    rb.getEventAt(-1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testZeroSize()
+  {
+    new EventRingBuffer(0);
+  }
+}
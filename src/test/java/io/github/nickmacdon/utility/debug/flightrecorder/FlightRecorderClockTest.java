@@ -0,0 +1,86 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * A unit test of the FlightRecorderClocks, and of a recorder only reading its clock once
+ * per recorded event (using a clock that counts how often it was asked).  A clock that reads
+ * 0 must not give a span the token that means it wasn't recorded.
+ */
+import static io.github.nickmacdon.utility.debug.flightrecorder.FlightRecorderTestEvents.*;
+import static org.junit.Assert.*;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class FlightRecorderClockTest
+{
+  private static final class CountingClock implements FlightRecorderClock
+  {
+    int numberOfReads = 0;
+
+    @Override
+    public long currentTimeNanos()
+    {
+      numberOfReads++;
+      return numberOfReads * 1_000L;
+    }
+  }
+
+  @Test
+  public void testMonotonicClock()
+  {
+    final FlightRecorderClock clock = FlightRecorderFactory.getMonotonicClock();
+    final long first  = clock.currentTimeNanos();
+    final long second = clock.currentTimeNanos();
+    assertTrue(second >= first);
+    // Anchored to the wall clock, so it should be close to it (allowing for a slow test machine)
+    assertTrue(Math.abs((first / 1_000_000L) - System.currentTimeMillis()) < 10_000);
+  }
+
+  @Test
+  public void testCoarseClock() throws InterruptedException
+  {
+    final FlightRecorderClock clock = FlightRecorderFactory.getCoarseClock(1, TimeUnit.MILLISECONDS);
+    final long first = clock.currentTimeNanos();
+    assertEquals(first, clock.currentTimeNanos(), 2_000_000);
+    Thread.sleep(50);
+    assertTrue(clock.currentTimeNanos() > first);
+  }
+
+  @Test
+  public void testOneClockReadPerEvent()
+  {
+    final CountingClock clock = new CountingClock();
+    final FlightRecorder fr = FlightRecorderFactory.getFlightRecorder(10, clock).startRecording();
+    assertEquals(1, clock.numberOfReads);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT2);
+    assertEquals(3, clock.numberOfReads);
+    fr.stopRecording().recordEvent(FLIGHT_RECORDER_TEST_EVENT3);
+    assertEquals(3, clock.numberOfReads);
+
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    fr.dumpEntriesTo(frd);
+    assertEquals(2_000L, frd.events.get(0).getEventTimestampNanos());
+    assertEquals(3_000L, frd.events.get(1).getEventTimestampNanos());
+  }
+
+  @Test
+  public void testSpanBegunAtZero()
+  {
+    final long[] now = { 0 };
+    final FlightRecorder fr = FlightRecorderFactory.getFlightRecorder(10, () -> now[0]).startRecording();
+    final long spanToken = fr.beginSpan(FLIGHT_RECORDER_TEST_EVENT1);
+    assertNotEquals(FlightRecorder.NO_SPAN, spanToken);
+    now[0] = 1_000;
+    fr.endSpan(FLIGHT_RECORDER_TEST_EVENT1, spanToken);
+
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    fr.dumpEntriesTo(frd);
+    assertEquals(2, frd.events.size());
+    assertEquals(FlightRecorderEventKind.SPAN_END, frd.events.get(1).getEventKind());
+    assertEquals(999, frd.events.get(1).getPayload(0));  // A nanosecond short, since the token is 1
+  }
+}
@@ -0,0 +1,188 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * A unit test of the binary dumper and its reader.  The round trip through the reader is the
+ * real test; a tiny buffer is used in one test so the dumper has to flush part way through.
+ */
+import static io.github.nickmacdon.utility.debug.flightrecorder.FlightRecorderTestEvents.*;
+import static org.junit.Assert.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class FlightRecorderEventDumperToChannelTest
+{
+  @Test
+  public void testRoundTrip()
+  {
+    final FlightRecorder fr = FlightRecorderFactory.getFlightRecorder(10).startRecording();
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT2, 1234567);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1, -1, 2);
+    fr.endSpan(FLIGHT_RECORDER_TEST_EVENT3, fr.beginSpan(FLIGHT_RECORDER_TEST_EVENT3));
+    final FlightRecorderTestDumper original = new FlightRecorderTestDumper();
+    fr.stopRecording().dumpEntriesTo(original);
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    fr.dumpEntriesTo(FlightRecorderFactory.getBinaryDumper("Binary Dump", Channels.newChannel(bytes)));
+
+    final FlightRecorderBinaryDumpReader reader = new FlightRecorderBinaryDumpReader(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())));
+    assertEquals("Binary Dump", reader.getDumpTitle());
+    final FlightRecorderTestDumper readBack = new FlightRecorderTestDumper();
+    reader.dumpEntriesTo(readBack);
+    assertTrue(readBack.dumpHasBegun);
+    assertTrue(readBack.dumpIsComplete);
+    assertEquals(5, readBack.numberOfEventsToBeDumped);
+    assertEquals(original.startTimeStamp, readBack.startTimeStamp);
+    assertEquals(original.endTimeStamp, readBack.endTimeStamp);
+    assertEquals(5, readBack.events.size());
+    for (int i=0; i<5; i++)
+    {
+      assertEquals(original.events.get(i).getEventKind(), readBack.events.get(i).getEventKind());
+      assertEquals(original.events.get(i).getThreadIndex(), readBack.events.get(i).getThreadIndex());
+      assertEquals(original.events.get(i).getEventID(), readBack.events.get(i).getEventID());
+      assertEquals(original.events.get(i).getEventName(), readBack.events.get(i).getEventName());
+      assertEquals(original.events.get(i).getSequenceNumber(), readBack.events.get(i).getSequenceNumber());
+      assertEquals(original.events.get(i).getEventTimestampNanos(), readBack.events.get(i).getEventTimestampNanos());
+      assertEquals(original.events.get(i).getNumberOfPayloads(), readBack.events.get(i).getNumberOfPayloads());
+      for (int p=0; p<original.events.get(i).getNumberOfPayloads(); p++)
+        assertEquals(original.events.get(i).getPayload(p), readBack.events.get(i).getPayload(p));
+    }
+    assertEquals(original.numbersOfEventsSummarized, readBack.numbersOfEventsSummarized);
+    assertEquals(Thread.currentThread().getName(), readBack.threadNames.get(readBack.events.get(0).getThreadIndex()));
+    assertEquals(original.eventNames, readBack.eventNames);
+    for (final String eventName : original.nanosBetweenEvents.keySet())
+    {
+      for (int bucket=0; bucket<FlightRecorderHistogram.NUMBER_OF_BUCKETS; bucket++)
+        assertEquals(original.nanosBetweenEvents.get(eventName).getBucketCount(bucket), readBack.nanosBetweenEvents.get(eventName).getBucketCount(bucket));
+    }
+    assertEquals(1, readBack.spanDurationNanos.get("FLIGHT_RECORDER_TEST_EVENT3").getNumberOfValues());
+  }
+
+  @Test
+  public void testStacks()
+  {
+    final FlightRecorder fr = FlightRecorderFactory.getCompressedFlightRecorder().setStackDepth(FLIGHT_RECORDER_TEST_EVENT2, 20).startRecording();
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT2, 42);
+    final FlightRecorderTestDumper original = new FlightRecorderTestDumper();
+    fr.stopRecording().dumpEntriesTo(original);
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    fr.dumpEntriesTo(new FlightRecorderEventDumperToChannel("Stacks", Channels.newChannel(bytes), 64));
+
+    final FlightRecorderTestDumper readBack = new FlightRecorderTestDumper();
+    new FlightRecorderBinaryDumpReader(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray()))).dumpEntriesTo(readBack);
+    assertEquals(FlightRecorderEvent.NO_STACK, readBack.events.get(0).getStackID());
+    final int stackID = readBack.events.get(1).getStackID();
+    assertEquals(original.events.get(1).getStackID(), stackID);
+    assertEquals(42, readBack.events.get(1).getPayload(0));
+    assertEquals(1, readBack.stacks.size());
+    final StackTraceElement[] originalFrames = original.stacks.get(stackID);
+    final StackTraceElement[] readBackFrames = readBack.stacks.get(stackID);
+    assertEquals(originalFrames.length, readBackFrames.length);
+    for (int i=0; i<originalFrames.length; i++)
+    {
+      assertEquals(originalFrames[i].getClassName(), readBackFrames[i].getClassName());
+      assertEquals(originalFrames[i].getMethodName(), readBackFrames[i].getMethodName());
+      assertEquals(originalFrames[i].getFileName(), readBackFrames[i].getFileName());
+      assertEquals(originalFrames[i].getLineNumber(), readBackFrames[i].getLineNumber());
+    }
+    assertEquals("testStacks", readBackFrames[0].getMethodName());
+  }
+
+  @Test
+  public void testSmallBufferAndConversionToText()
+  {
+    final FlightRecorder fr = FlightRecorderFactory.getFlightRecorder(1000).startRecording();
+    for (int i=0; i<500; i++)  fr.recordEvent((i % 2 == 0) ? FLIGHT_RECORDER_TEST_EVENT2 : FLIGHT_RECORDER_TEST_EVENT3);
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    fr.stopRecording().dumpEntriesTo(new FlightRecorderEventDumperToChannel("Small Buffer", Channels.newChannel(bytes), 64));
+    assertTrue(bytes.size() < 500 * 8);
+
+    final FlightRecorderBinaryDumpReader reader = new FlightRecorderBinaryDumpReader(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())));
+    final FlightRecorderEventDumper frd = FlightRecorderFactory.getStringDumper(reader.getDumpTitle());
+    reader.dumpEntriesTo(frd);
+    final String dumpReport = frd.toString();
+    assertTrue(dumpReport.contains("Small Buffer"));
+    assertTrue(dumpReport.contains("number of events: 500"));
+    assertTrue(dumpReport.contains("EVENT2"));
+    assertTrue(dumpReport.contains("EVENT3"));
+  }
+
+  @Test
+  public void testEventsLostDuringSnapshot()
+  {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final FlightRecorderEventDumper binaryDumper = FlightRecorderFactory.getBinaryDumper("Lost Events", Channels.newChannel(bytes));
+    binaryDumper.dumpBegins();
+    binaryDumper.setNumberOfEventsToBeDumped(0);
+    binaryDumper.setNumberOfEventsLostDuringSnapshot(7);
+    binaryDumper.dumpComplete();
+
+    final FlightRecorderTestDumper readBack = new FlightRecorderTestDumper();
+    new FlightRecorderBinaryDumpReader(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray()))).dumpEntriesTo(readBack);
+    assertEquals(7, readBack.numberOfEventsLostDuringSnapshot);
+  }
+
+  @Test
+  public void testMergedDumpKeepsTheRecorders()
+  {
+    final FlightRecorder fr1 = FlightRecorderFactory.getFlightRecorder(10).startRecording();
+    final FlightRecorder fr2 = FlightRecorderFactory.getFlightRecorder(10).startRecording();
+    fr1.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+    fr2.recordEvent(FLIGHT_RECORDER_TEST_EVENT2);
+    fr2.recordEvent(FLIGHT_RECORDER_TEST_EVENT2);
+    fr1.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    FlightRecorderFactory.dumpMergedEntriesTo(FlightRecorderFactory.getBinaryDumper("Merged", Channels.newChannel(bytes)), fr1, fr2);
+
+    final FlightRecorderTestDumper readBack = new FlightRecorderTestDumper();
+    new FlightRecorderBinaryDumpReader(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray()))).dumpEntriesTo(readBack);
+    assertEquals(4, readBack.events.size());
+    assertEquals("recorder 2", readBack.recorderNames.get(2));
+    final int[] recorderIndexes = new int[4];
+    for (int i=0; i<4; i++)  recorderIndexes[i] = readBack.events.get(i).getRecorderIndex();
+    assertArrayEquals(new int[] { 1, 2, 2, 1 }, recorderIndexes);
+    assertEquals(2, readBack.events.get(3).getSequenceNumber());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testTruncatedDump()
+  {
+    final FlightRecorder fr = FlightRecorderFactory.getFlightRecorder(10).startRecording();
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    fr.stopRecording().dumpEntriesTo(FlightRecorderFactory.getBinaryDumper("Truncated", Channels.newChannel(bytes)));
+    final byte[] truncated = Arrays.copyOf(bytes.toByteArray(), bytes.size() - 3);
+    new FlightRecorderBinaryDumpReader(Channels.newChannel(new ByteArrayInputStream(truncated))).dumpEntriesTo(new FlightRecorderTestDumper());
+  }
+
+  @Test
+  public void testCorruptStringLength()
+  {
+    for (final long length : new long[] { -1, 0xFFFF_FFFFL, Integer.MAX_VALUE, 100 })
+    {
+      final ByteBuffer header = ByteBuffer.allocate(64).order(BinaryDumpFormat.BYTE_ORDER);
+      header.putInt(BinaryDumpFormat.MAGIC).putInt(BinaryDumpFormat.VERSION);
+      VariableLengthEncoding.putVarLong(header, 0);  // The creation time
+      VariableLengthEncoding.putVarLong(header, length);  // The title's length, with only 3 bytes of it there
+      header.put(new byte[] { 'a', 'b', 'c' }).flip();
+      try
+      {
+        new FlightRecorderBinaryDumpReader(Channels.newChannel(new ByteArrayInputStream(header.array(), 0, header.limit())));
+        fail("A string of " + length + " bytes was read");
+      }
+      catch (final IllegalStateException e)
+      {
+        assertTrue(e.getMessage().contains("truncated or corrupt"));
+      }
+    }
+  }
+}
@@ -0,0 +1,136 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * A unit test of the streaming text dumper.  Its hand formatting is checked against what
+ * String.format() makes of the same lines in Locale.ROOT, since that is what the layout was
+ * defined with, and it has to come out the same whatever the default locale is.
+ */
+import static io.github.nickmacdon.utility.debug.flightrecorder.FlightRecorderTestEvents.*;
+import static org.junit.Assert.*;
+import java.io.StringWriter;
+import java.util.Locale;
+import org.junit.Test;
+
+public class FlightRecorderEventDumperToWriterTest
+{
+  private static final long[] VALUES = { 0, 1, 9, 10, 499, 500, 999_499, 999_500, 1_000_000, 1_234_567_890, 59_999_999_999L, 123_456_789_012_345L, -1, -500, -1_234_567_890, Long.MAX_VALUE, Long.MIN_VALUE };
+
+  @Test
+  public void testMatchesStringFormat()
+  {
+    final StringBuilder sb = new StringBuilder();
+    final FlightRecorderEventDumperToWriter eventDumper = new FlightRecorderEventDumperToWriter("Writer Dump", sb);
+    eventDumper.setDumpTimestampsNanos(0, 0);
+    eventDumper.dumpBegins();
+    for (final long value : VALUES)
+      eventDumper.dumpEvent(DefaultFlightRecorderEvent.withNanosecondTimestamp(value, value, FLIGHT_RECORDER_TEST_EVENT2, FlightRecorderEventKind.POINT, 2, value, -value));
+    eventDumper.dumpComplete();
+
+    final String[] lines = sb.toString().split("\r?\n");
+    assertEquals("Flight Recorder Dump: Writer Dump", lines[0]);
+    assertEquals(String.format(Locale.ROOT, "Initial dump timestamp=%d, final dump timestamp=%d", 0, 0), lines[2]);
+    for (int i=0; i<VALUES.length; i++)
+    {
+      final long value = VALUES[i];
+      final String expected = String.format(Locale.ROOT, "%4d: %4d%-40s %4d +%.3f [%d, %d]", i+1, 2, "(" + FLIGHT_RECORDER_TEST_EVENT2.getEventName() + ")", value, value/1e9, value, -value);
+      assertEquals(expected, lines[i+3]);
+    }
+  }
+
+  @Test
+  public void testSpansOfInterleavedThreads()
+  {
+    final StringBuilder sb = new StringBuilder();
+    final FlightRecorderEventDumperToWriter eventDumper = new FlightRecorderEventDumperToWriter("Writer Dump", sb);
+    eventDumper.setDumpTimestampsNanos(0, 0);
+    eventDumper.dumpBegins();
+    eventDumper.dumpEvent(DefaultFlightRecorderEvent.withFlags(1, 1, FLIGHT_RECORDER_TEST_EVENT1, EventFlags.withThreadIndex(EventFlags.SPAN_BEGIN, 1), 0, 0, FlightRecorderEvent.NO_STACK, FlightRecorderEvent.NO_RECORDER));
+    eventDumper.dumpEvent(DefaultFlightRecorderEvent.withFlags(2, 2, FLIGHT_RECORDER_TEST_EVENT2, EventFlags.withThreadIndex(EventFlags.SPAN_BEGIN, 2), 0, 0, FlightRecorderEvent.NO_STACK, FlightRecorderEvent.NO_RECORDER));
+    eventDumper.dumpEvent(DefaultFlightRecorderEvent.withFlags(3, 3, FLIGHT_RECORDER_TEST_EVENT3, EventFlags.withThreadIndex(0, 1), 0, 0, FlightRecorderEvent.NO_STACK, FlightRecorderEvent.NO_RECORDER));
+    eventDumper.dumpEvent(DefaultFlightRecorderEvent.withFlags(4, 4, FLIGHT_RECORDER_TEST_EVENT1, EventFlags.withThreadIndex(EventFlags.SPAN_END, 1), 2, 0, FlightRecorderEvent.NO_STACK, FlightRecorderEvent.NO_RECORDER));
+    eventDumper.dumpEvent(DefaultFlightRecorderEvent.withFlags(5, 5, FLIGHT_RECORDER_TEST_EVENT2, EventFlags.withThreadIndex(EventFlags.SPAN_END, 2), 3, 0, FlightRecorderEvent.NO_STACK, FlightRecorderEvent.NO_RECORDER));
+    eventDumper.dumpComplete();
+
+    final String[] lines = sb.toString().split("\r?\n");
+    assertTrue(lines[3].contains("   1(FLIGHT_RECORDER_TEST_EVENT1)"));
+    assertTrue(lines[4].contains("   2(FLIGHT_RECORDER_TEST_EVENT2)"));  // Another thread's span, so not nested
+    assertTrue(lines[5].contains("   3  (FLIGHT_RECORDER_TEST_EVENT3)"));  // Inside thread 1's span
+    assertTrue(lines[6].contains("   1(FLIGHT_RECORDER_TEST_EVENT1)"));
+    assertTrue(lines[7].contains("   2(FLIGHT_RECORDER_TEST_EVENT2)"));
+  }
+
+  @Test
+  public void testDecimalCommaLocale()
+  {
+    final Locale defaultLocale = Locale.getDefault();
+    try
+    {
+      Locale.setDefault(Locale.GERMANY);
+      final StringBuilder sb = new StringBuilder();
+      final FlightRecorderEventDumperToWriter eventDumper = new FlightRecorderEventDumperToWriter("Writer Dump", sb);
+      eventDumper.setDumpTimestampsNanos(0, 0);
+      eventDumper.dumpBegins();
+      eventDumper.dumpEvent(DefaultFlightRecorderEvent.withNanosecondTimestamp(1_234_567_890, 1, FLIGHT_RECORDER_TEST_EVENT2, FlightRecorderEventKind.POINT, 0, 0, 0));
+      eventDumper.dumpComplete();
+      assertTrue(sb.toString().contains(" +1.235"));
+    }
+    finally
+    {
+      Locale.setDefault(defaultLocale);
+    }
+  }
+
+  @Test
+  public void testSmallBuffer()
+  {
+    final FlightRecorder fr = FlightRecorderFactory.getFlightRecorder(100).startRecording();
+    for (int i=0; i<50; i++)
+      fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1, i, -i);
+    fr.endSpan(FLIGHT_RECORDER_TEST_EVENT3, fr.beginSpan(FLIGHT_RECORDER_TEST_EVENT3));
+    fr.stopRecording();
+
+    final StringWriter withDefaultBuffer = new StringWriter();
+    fr.dumpEntriesTo(FlightRecorderFactory.getWriterDumper("Writer Dump", withDefaultBuffer));
+    final StringWriter withSmallBuffer = new StringWriter();
+    fr.dumpEntriesTo(new FlightRecorderEventDumperToWriter("Writer Dump", withSmallBuffer, 32));
+
+    // Skip the line with the creation date, the dumps may have been a second apart
+    final String[] expected = withDefaultBuffer.toString().split("\n", 3);
+    final String[] actual   = withSmallBuffer.toString().split("\n", 3);
+    assertEquals(expected[0], actual[0]);
+    assertEquals(expected[2], actual[2]);
+    assertTrue(actual[2].contains("summary of all events recorded:"));
+  }
+
+  @Test
+  public void testThreadLanes() throws InterruptedException
+  {
+    final FlightRecorder fr = FlightRecorderFactory.getConcurrentFlightRecorder(10).startRecording();
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+    final Thread other = new Thread(() -> fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT2), "other thread");
+    other.start();
+    other.join();
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT3);
+
+    final StringBuilder sb = new StringBuilder();
+    fr.stopRecording().dumpEntriesTo(FlightRecorderFactory.getThreadLaneDumper(new FlightRecorderEventDumperToWriter("Lanes", sb)));
+    final String dumpReport = sb.toString();
+    assertTrue(dumpReport.contains(": other thread" + System.lineSeparator()));
+    final int mainLane  = dumpReport.indexOf(" (" + Thread.currentThread().getName() + "):");
+    final int otherLane = dumpReport.indexOf(" (other thread):");
+    assertTrue((mainLane > 0) && (otherLane > mainLane));
+    // Both of this thread's events are in its lane, before the other thread's
+    assertTrue(dumpReport.indexOf("(FLIGHT_RECORDER_TEST_EVENT3)") < otherLane);
+    assertTrue(dumpReport.indexOf("(FLIGHT_RECORDER_TEST_EVENT2)") > otherLane);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBufferTooSmall()
+  {
+    new FlightRecorderEventDumperToWriter("Writer Dump", new StringBuilder(), 8);
+  }
+}
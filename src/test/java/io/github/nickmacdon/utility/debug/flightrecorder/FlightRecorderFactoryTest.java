@@ -12,13 +12,25 @@ package io.github.nickmacdon.utility.debug.flightrecorder;
  */
 import static io.github.nickmacdon.utility.debug.flightrecorder.FlightRecorderTestEvents.*;
 import static org.junit.Assert.*;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import io.github.nickmacdon.utility.debug.flightrecorder.FlightRecorder;
 import io.github.nickmacdon.utility.debug.flightrecorder.FlightRecorderEventDumper;
 import io.github.nickmacdon.utility.debug.flightrecorder.FlightRecorderFactory;
 
 public class FlightRecorderFactoryTest
 {
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
   @Test
   public void test()
   {
@@ -34,4 +46,264 @@ public class FlightRecorderFactoryTest
     assertTrue(dumpReport.contains("EVENT1"));
     assertTrue(dumpReport.contains("EVENT2"));
   }
+
+  @Test
+  public void testRegisterEventIDs()
+  {
+    FlightRecorderFactory.registerEventIDs(FlightRecorderTestEvents.class);
+    FlightRecorderFactory.registerEventIDs(FlightRecorderTestEvents.class);  // Again is fine
+    try
+    {
+      FlightRecorderFactory.registerEventIDs(ClashingTestEvents.class);
+      fail("Event ID 2 is used twice");
+    }
+    catch (final IllegalStateException e)
+    {
+      assertTrue(e.getMessage().contains("FLIGHT_RECORDER_TEST_EVENT2"));
+      assertTrue(e.getMessage().contains("CLASHING_TEST_EVENT"));
+    }
+
+    // The dump gets the names of the events in it up front
+    final FlightRecorder fr = FlightRecorderFactory.getFlightRecorder(10).startRecording();
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT3);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    fr.dumpEntriesTo(frd);
+    assertEquals(2, frd.eventNames.size());
+    assertEquals("FLIGHT_RECORDER_TEST_EVENT3", frd.eventNames.get(3L));
+  }
+
+  private enum ClashingTestEvents implements FlightRecorderEventID
+  {
+    UNCLASHING_TEST_EVENT,
+    CLASHING_TEST_EVENT;
+
+    @Override
+    public String getEventName()
+    {
+      return toString();
+    }
+
+    @Override
+    public long getEventID()
+    {
+      return (this == CLASHING_TEST_EVENT) ? FLIGHT_RECORDER_TEST_EVENT2.getEventID() : 1000;
+    }
+
+    @Override
+    public FlightRecorderEvent getEvent(final long sequenceNumber)
+    {
+      return new DefaultFlightRecorderEvent(System.currentTimeMillis(), sequenceNumber, this);
+    }
+  }
+
+  @Test
+  public void testRecordingAClashingEnum()
+  {
+    final FlightRecorder fr = FlightRecorderFactory.getFlightRecorder(10).startRecording();
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT3);
+    fr.recordEvent(RecordedClashingTestEvents.RECORDED_CLASHING_TEST_EVENT);  // Mustn't throw, the first time or after
+    fr.recordEvent(RecordedClashingTestEvents.RECORDED_CLASHING_TEST_EVENT);
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    fr.dumpEntriesTo(frd);
+    assertEquals(3, frd.events.size());
+    assertEquals("RECORDED_CLASHING_TEST_EVENT", frd.events.get(2).getEventName());
+    for (int i=0; i<2; i++)
+    {
+      try
+      {
+        FlightRecorderFactory.registerEventIDs(RecordedClashingTestEvents.class);
+        fail("Event ID 3 is used twice");
+      }
+      catch (final IllegalStateException e)
+      {
+        assertTrue(e.getMessage().contains("RECORDED_CLASHING_TEST_EVENT"));
+      }
+    }
+  }
+
+  private enum RecordedClashingTestEvents implements FlightRecorderEventID
+  {
+    RECORDED_CLASHING_TEST_EVENT;
+
+    @Override
+    public String getEventName()
+    {
+      return toString();
+    }
+
+    @Override
+    public long getEventID()
+    {
+      return FLIGHT_RECORDER_TEST_EVENT3.getEventID();
+    }
+
+    @Override
+    public FlightRecorderEvent getEvent(final long sequenceNumber)
+    {
+      return new DefaultFlightRecorderEvent(System.currentTimeMillis(), sequenceNumber, this);
+    }
+  }
+
+  @Test
+  public void testJdkFlightRecorderBridge()
+  {
+    // The tests run from the classes rather than the multi-release jar, so this is the Java 8
+    // version; JfrForwardingFlightRecorderTest in src/test/java17 runs the Java 17 one
+    final FlightRecorder fr = FlightRecorderFactory.getJdkFlightRecorderBridge(10).startRecording();
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1, 1);
+    fr.endSpan(FLIGHT_RECORDER_TEST_EVENT2, fr.beginSpan(FLIGHT_RECORDER_TEST_EVENT2));
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    fr.stopRecording().dumpEntriesTo(frd);
+    assertTrue(frd.dumpIsComplete);
+    assertEquals(3, frd.events.size());
+  }
+
+  @Test
+  public void testNamedFlightRecorders()
+  {
+    final FlightRecorder network = FlightRecorderFactory.getNamedFlightRecorder("test network", 10);
+    assertSame(network, FlightRecorderFactory.getNamedFlightRecorder("test network", 20));
+    assertSame(network, FlightRecorderFactory.getNamedFlightRecorder("test network"));
+    final FlightRecorder disk = FlightRecorderFactory.registerNamedFlightRecorder("test disk", FlightRecorderFactory.getFlightRecorder(10));
+    assertSame(disk, FlightRecorderFactory.getNamedFlightRecorders().get("test disk"));
+    try
+    {
+      FlightRecorderFactory.registerNamedFlightRecorder("test disk", network);
+      fail("Registered two recorders with the same name");
+    }
+    catch (final IllegalStateException expected)
+    {
+      // Expected
+    }
+    assertSame(network, FlightRecorderFactory.removeNamedFlightRecorder("test network"));
+    assertSame(disk, FlightRecorderFactory.removeNamedFlightRecorder("test disk"));
+    assertSame(FlightRecorder.INVALID, FlightRecorderFactory.removeNamedFlightRecorder("test disk"));
+  }
+
+  @Test
+  public void testMXBean() throws Exception
+  {
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    final FlightRecorder fr = FlightRecorderFactory.getNamedFlightRecorder("test jmx", 10);
+    final ObjectName objectName = new ObjectName("io.github.nickmacdon.utility.debug.flightrecorder:type=FlightRecorder,name=\"test jmx\"");
+    final FlightRecorderMXBean mxBean = JMX.newMXBeanProxy(server, objectName, FlightRecorderMXBean.class);
+    assertEquals("test jmx", mxBean.getName());
+    assertFalse(mxBean.isRecording());
+
+    server.invoke(objectName, "startRecording", new Object[0], new String[0]);
+    assertTrue(fr.getStatistics().isRecording());
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT2);
+    assertEquals(2L, server.getAttribute(objectName, "NumberOfEventsRecorded"));
+    assertEquals(0.2, mxBean.getOccupancy(), 0.0001);
+    mxBean.stopRecording();
+    assertFalse(fr.getStatistics().isRecording());
+
+    final String dump = mxBean.dump();
+    assertTrue(dump.contains("FLIGHT_RECORDER_TEST_EVENT2"));
+    assertEquals(dump.length(), mxBean.getLastDumpBytes());
+
+    final Path dumpDirectory = temporaryFolder.newFolder("dumps").toPath();
+    FlightRecorderFactory.setMXBeanDumpDirectory(dumpDirectory);
+    final long numberOfBytesDumped = mxBean.dumpToFile("jmx.bjfr");
+    assertEquals(Files.size(dumpDirectory.resolve("jmx.bjfr")), numberOfBytesDumped);
+    try
+    {
+      mxBean.dumpToFile("jmx.bjfr");
+      fail("An existing dump shouldn't be overwritten");
+    }
+    catch (final UncheckedIOException expected)
+    {
+      assertEquals(numberOfBytesDumped, Files.size(dumpDirectory.resolve("jmx.bjfr")));
+    }
+    for (final String path : new String[] { "../jmx.bjfr", "sub/jmx.bjfr", "..", dumpDirectory.resolve("other.bjfr").toString() })
+    {
+      try
+      {
+        mxBean.dumpToFile(path);
+        fail("A dump shouldn't be written to " + path);
+      }
+      catch (final IllegalArgumentException expected)
+      {
+        // Expected
+      }
+    }
+    assertFalse(Files.exists(dumpDirectory.resolve("other.bjfr")));
+
+    assertSame(fr, FlightRecorderFactory.removeNamedFlightRecorder("test jmx"));
+    assertFalse(server.isRegistered(objectName));
+    assertFalse(FlightRecorderFactory.unregisterMXBean("test jmx"));
+  }
+
+  @Test
+  public void testMergedDump()
+  {
+    final long[] now = { 0 };
+    final FlightRecorderClock sharedClock = () -> now[0] += 1_000;
+    final FlightRecorder fr1 = FlightRecorderFactory.getFlightRecorder(10, sharedClock).startRecording();
+    final FlightRecorder fr2 = FlightRecorderFactory.getConcurrentFlightRecorder(10, sharedClock).startRecording();
+    fr1.recordEvent(FLIGHT_RECORDER_TEST_EVENT1, 1);
+    fr2.recordEvent(FLIGHT_RECORDER_TEST_EVENT2, 2);
+    fr2.recordEvent(FLIGHT_RECORDER_TEST_EVENT2, 3);
+    fr1.recordEvent(FLIGHT_RECORDER_TEST_EVENT1, 4);
+    fr2.recordEvent(FLIGHT_RECORDER_TEST_EVENT3, 5);
+    fr2.recordEvent(FLIGHT_RECORDER_TEST_EVENT1, 6);
+
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    FlightRecorderFactory.dumpMergedEntriesTo(frd, fr1, fr2);
+    assertTrue(frd.dumpIsComplete);
+    assertEquals(6, frd.numberOfEventsToBeDumped);
+    assertEquals(6, frd.events.size());
+    for (int i=0; i<6; i++)
+      assertEquals(i+1, frd.events.get(i).getPayload(0));
+    assertEquals(2, frd.events.get(3).getSequenceNumber());  // Each recorder keeps its own sequence numbers
+    assertEquals(1, frd.events.get(3).getRecorderIndex());   // so the recorder tells them apart
+    assertEquals(2, frd.events.get(4).getRecorderIndex());
+    assertEquals("recorder 1", frd.recorderNames.get(1));
+    assertEquals("recorder 2", frd.recorderNames.get(2));
+    assertEquals(3, frd.numberOfEventSummaries);  // One for each event ID, not for each recorder
+    assertEquals(3L, (long)frd.numbersOfEventsSummarized.get("FLIGHT_RECORDER_TEST_EVENT1"));
+    assertEquals(1L, frd.nanosBetweenEvents.get("FLIGHT_RECORDER_TEST_EVENT1").getNumberOfValues());  // Only within recorder 1
+    assertEquals(1L, (long)frd.numbersOfEventsSummarized.get("FLIGHT_RECORDER_TEST_EVENT3"));
+
+    final FlightRecorder named = FlightRecorderFactory.getNamedFlightRecorder("test merged", 10).startRecording();
+    named.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+    final FlightRecorderEventDumper stringDumper = FlightRecorderFactory.getStringDumper("Merged");
+    FlightRecorderFactory.dumpMergedEntriesTo(stringDumper, fr1, named);
+    assertTrue(stringDumper.toString().contains("merged from recorder    2: test merged"));
+    assertTrue(stringDumper.toString().contains(" recorder 2"));
+    assertSame(named, FlightRecorderFactory.removeNamedFlightRecorder("test merged"));
+  }
+
+  @Test
+  public void testMergingASnapshotWhoseTimeStampsAreOutOfOrder()
+  {
+    final EventRingBuffer inOrder = new EventRingBuffer(10);
+    inOrder.put(FLIGHT_RECORDER_TEST_EVENT1, 1, 15);
+    inOrder.put(FLIGHT_RECORDER_TEST_EVENT1, 2, 25);
+    final EventRingBuffer outOfOrder = new EventRingBuffer(10);  // As the concurrent recorder may leave it
+    outOfOrder.put(FLIGHT_RECORDER_TEST_EVENT2, 1, 10);
+    outOfOrder.put(FLIGHT_RECORDER_TEST_EVENT2, 2, 30);
+    outOfOrder.put(FLIGHT_RECORDER_TEST_EVENT2, 3, 20);
+    outOfOrder.put(FLIGHT_RECORDER_TEST_EVENT2, 4, 20);
+    assertEquals(10, outOfOrder.getTimeStampDisorder());
+
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    FlightRecorderSnapshot.dumpMergedEntriesTo(frd, new String[] { "in order", "out of order" },
+      new FlightRecorderSnapshot(inOrder, 0, 40, 0, SuppressedEventCounts.NONE, EventSummaries.NONE),
+      new FlightRecorderSnapshot(outOfOrder, 0, 40, 0, SuppressedEventCounts.NONE, EventSummaries.NONE)
+    );
+    assertEquals(6, frd.events.size());
+    final long[] timeStamps = new long[6];
+    final long[] sequenceNumbers = new long[6];
+    for (int i=0; i<6; i++)
+    {
+      timeStamps[i]      = frd.events.get(i).getEventTimestampNanos();
+      sequenceNumbers[i] = frd.events.get(i).getSequenceNumber();
+    }
+    assertArrayEquals(new long[] { 10, 15, 20, 20, 25, 30 }, timeStamps);
+    assertArrayEquals(new long[] { 1, 1, 3, 4, 2, 2 }, sequenceNumbers);
+  }
 }
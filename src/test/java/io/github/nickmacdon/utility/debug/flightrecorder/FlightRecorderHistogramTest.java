@@ -0,0 +1,53 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * A unit test of the power of two histograms, both the one recorded into and the one dumped.
+ */
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class FlightRecorderHistogramTest
+{
+  @Test
+  public void testBuckets()
+  {
+    assertEquals(0, FlightRecorderHistogram.bucketFor(0));
+    assertEquals(1, FlightRecorderHistogram.bucketFor(1));
+    assertEquals(2, FlightRecorderHistogram.bucketFor(2));
+    assertEquals(2, FlightRecorderHistogram.bucketFor(3));
+    assertEquals(11, FlightRecorderHistogram.bucketFor(1024));
+    assertEquals(63, FlightRecorderHistogram.bucketFor(Long.MAX_VALUE));
+    for (int bucket=0; bucket<FlightRecorderHistogram.NUMBER_OF_BUCKETS; bucket++)
+    {
+      assertEquals(bucket, FlightRecorderHistogram.bucketFor(FlightRecorderHistogram.getBucketLowerBound(bucket)));
+      assertEquals(bucket, FlightRecorderHistogram.bucketFor(FlightRecorderHistogram.getBucketUpperBound(bucket)));
+    }
+  }
+
+  @Test
+  public void testPercentiles()
+  {
+    final ConcurrentLogHistogram histogram = new ConcurrentLogHistogram();
+    assertEquals(0, histogram.toHistogram().getMaximum());
+    for (int i=0; i<98; i++)  histogram.record(100);
+    histogram.record(5_000);
+    histogram.record(1_000_000);
+    final FlightRecorderHistogram nanosBetweenEvents = histogram.toHistogram();
+    assertEquals(100, nanosBetweenEvents.getNumberOfValues());
+    assertEquals(127, nanosBetweenEvents.getPercentile(50));
+    assertEquals(127, nanosBetweenEvents.getPercentile(98));
+    assertEquals(8191, nanosBetweenEvents.getPercentile(99));
+    assertEquals(1_048_575, nanosBetweenEvents.getMaximum());
+    assertEquals(98, nanosBetweenEvents.getBucketCount(7));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadPercentile()
+  {
+    FlightRecorderHistogram.EMPTY.getPercentile(101);
+  }
+}
@@ -0,0 +1,165 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * A unit test of the sampling policies, and of a recorder counting what they suppress.  The
+ * time based policies are stepped through their windows and refills by a clock of the test's
+ * own, which is also what the recorder gives them.
+ */
+import static io.github.nickmacdon.utility.debug.flightrecorder.FlightRecorderTestEvents.*;
+import static org.junit.Assert.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class FlightRecorderSamplingPolicyTest
+{
+  private static final class SteppedClock implements FlightRecorderClock
+  {
+    long nowNanos = 0;
+
+    @Override
+    public long currentTimeNanos()
+    {
+      return nowNanos;
+    }
+  }
+
+  @Test
+  public void testOneInN()
+  {
+    final FlightRecorderSamplingPolicy policy = FlightRecorderFactory.getOneInNSampling(3);
+    final FlightRecorderClock clock = FlightRecorderFactory.getMonotonicClock();
+    assertTrue(policy.shouldRecord(clock));
+    assertFalse(policy.shouldRecord(clock));
+    assertFalse(policy.shouldRecord(clock));
+    assertTrue(policy.shouldRecord(clock));
+  }
+
+  @Test
+  public void testEventsPerSecond()
+  {
+    final FlightRecorderSamplingPolicy policy = FlightRecorderFactory.getEventsPerSecondSampling(2);
+    final SteppedClock clock = new SteppedClock();
+    assertTrue(policy.shouldRecord(clock));  // A full bucket allows a second's worth at once
+    assertTrue(policy.shouldRecord(clock));
+    assertFalse(policy.shouldRecord(clock));
+    clock.nowNanos = 499_999_999;
+    assertFalse(policy.shouldRecord(clock));  // Just short of the next token
+    clock.nowNanos = 500_000_000;
+    assertTrue(policy.shouldRecord(clock));
+    assertFalse(policy.shouldRecord(clock));
+    clock.nowNanos = 10_000_000_000L;
+    assertTrue(policy.shouldRecord(clock));  // Refilled, but only to a second's worth
+    assertTrue(policy.shouldRecord(clock));
+    assertFalse(policy.shouldRecord(clock));
+  }
+
+  @Test
+  public void testFirstNPerWindow()
+  {
+    final FlightRecorderSamplingPolicy policy = FlightRecorderFactory.getFirstNPerWindowSampling(2, 1, TimeUnit.SECONDS);
+    final SteppedClock clock = new SteppedClock();
+    clock.nowNanos = 7_000_000_000L;  // The first window starts when it is first asked
+    assertTrue(policy.shouldRecord(clock));
+    assertTrue(policy.shouldRecord(clock));
+    assertFalse(policy.shouldRecord(clock));
+    clock.nowNanos = 7_999_999_999L;
+    assertFalse(policy.shouldRecord(clock));
+    clock.nowNanos = 8_000_000_000L;
+    assertTrue(policy.shouldRecord(clock));
+    assertTrue(policy.shouldRecord(clock));
+    assertFalse(policy.shouldRecord(clock));
+    clock.nowNanos = 10_500_000_000L;  // Skipping windows
+    assertTrue(policy.shouldRecord(clock));
+  }
+
+  @Test
+  public void testRecorderGivesItsClock()
+  {
+    final SteppedClock clock = new SteppedClock();
+    final FlightRecorder fr = FlightRecorderFactory.getFlightRecorder(100, clock).startRecording();
+    fr.setSamplingPolicy(FLIGHT_RECORDER_TEST_EVENT1, FlightRecorderFactory.getFirstNPerWindowSampling(3, 1, TimeUnit.MILLISECONDS));
+    for (int i=0; i<10; i++)  fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+    clock.nowNanos = 1_000_000;
+    for (int i=0; i<10; i++)  fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    fr.stopRecording().dumpEntriesTo(frd);
+    assertEquals(6, frd.events.size());
+    assertEquals(Long.valueOf(14), frd.numbersOfEventsSuppressed.get("FLIGHT_RECORDER_TEST_EVENT1"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testOneInZero()
+  {
+    FlightRecorderFactory.getOneInNSampling(0);
+  }
+
+  @Test
+  public void testSuppressedEventsAreCounted()
+  {
+    final FlightRecorder fr = FlightRecorderFactory.getFlightRecorder(100);
+    fr.setSamplingPolicy(FLIGHT_RECORDER_TEST_EVENT1, FlightRecorderFactory.getOneInNSampling(10));
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);  // Not recording, so not sampled or counted
+    fr.startRecording();
+    for (int i=0; i<50; i++)
+    {
+      fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1, i);
+      fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT2);
+    }
+    fr.stopRecording();
+
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    fr.dumpEntriesTo(frd);
+    assertEquals(55, frd.events.size());
+    assertEquals(Long.valueOf(45), frd.numbersOfEventsSuppressed.get("FLIGHT_RECORDER_TEST_EVENT1"));
+    assertFalse(frd.numbersOfEventsSuppressed.containsKey("FLIGHT_RECORDER_TEST_EVENT2"));
+
+    final FlightRecorderTestDumper snapshotDumper = new FlightRecorderTestDumper();
+    fr.takeSnapshot().dumpEntriesTo(snapshotDumper);
+    assertEquals(frd.numbersOfEventsSuppressed, snapshotDumper.numbersOfEventsSuppressed);
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    fr.dumpEntriesTo(FlightRecorderFactory.getBinaryDumper("Sampled", Channels.newChannel(bytes)));
+    final FlightRecorderTestDumper readBack = new FlightRecorderTestDumper();
+    new FlightRecorderBinaryDumpReader(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray()))).dumpEntriesTo(readBack);
+    assertEquals(frd.numbersOfEventsSuppressed, readBack.numbersOfEventsSuppressed);
+
+    final FlightRecorderEventDumper stringDumper = FlightRecorderFactory.getStringDumper("Sampled");
+    fr.dumpEntriesTo(stringDumper);
+    assertTrue(stringDumper.toString().contains("(FLIGHT_RECORDER_TEST_EVENT1)"));
+    assertTrue(stringDumper.toString().contains("events suppressed by sampling:"));
+
+    fr.clearAllRecordedEvents();
+    final FlightRecorderTestDumper afterClear = new FlightRecorderTestDumper();
+    fr.dumpEntriesTo(afterClear);
+    assertTrue(afterClear.numbersOfEventsSuppressed.isEmpty());
+  }
+
+  @Test
+  public void testConcurrentRecorder() throws InterruptedException
+  {
+    final FlightRecorder fr = FlightRecorderFactory.getConcurrentFlightRecorder(10_000).startRecording();
+    fr.setSamplingPolicy(FLIGHT_RECORDER_TEST_EVENT3, FlightRecorderFactory.getFirstNPerWindowSampling(100, 1, TimeUnit.HOURS));
+    final Thread[] producers = new Thread[4];
+    for (int t=0; t<producers.length; t++)
+    {
+      producers[t] = new Thread(() -> {
+        for (int i=0; i<1000; i++)  fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT3);
+      });
+      producers[t].start();
+    }
+    for (final Thread producer : producers)  producer.join();
+
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    fr.stopRecording().dumpEntriesTo(frd);
+    assertEquals(100, frd.events.size());
+    assertEquals(Long.valueOf(3900), frd.numbersOfEventsSuppressed.get("FLIGHT_RECORDER_TEST_EVENT3"));
+  }
+}
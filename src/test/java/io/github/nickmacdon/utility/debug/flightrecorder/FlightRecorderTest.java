@@ -0,0 +1,101 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * A unit test of the defaults of the FlightRecorder interface, with a recorder that only does
+ * what it has to (as one written before the newer methods were added would).  Code that calls
+ * the newer methods mustn't fail on it; they just do less.
+ */
+import static io.github.nickmacdon.utility.debug.flightrecorder.FlightRecorderTestEvents.*;
+import static org.junit.Assert.*;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class FlightRecorderTest
+{
+  private static final class MinimalFlightRecorder implements FlightRecorder
+  {
+    final List<FlightRecorderEventID> eventsRecorded = new ArrayList<>();
+
+    @Override
+    public FlightRecorder recordEvent(final FlightRecorderEventID eventToRecord)
+    {
+      eventsRecorded.add(eventToRecord);
+      return this;
+    }
+
+    @Override
+    public FlightRecorder startRecording()
+    {
+      return this;
+    }
+
+    @Override
+    public FlightRecorder stopRecording()
+    {
+      return this;
+    }
+
+    @Override
+    public FlightRecorder clearAllRecordedEvents()
+    {
+      eventsRecorded.clear();
+      return this;
+    }
+
+    @Override
+    public int getNumberOfEntriesRecorded()
+    {
+      return eventsRecorded.size();
+    }
+
+    @Override
+    public FlightRecorder dumpEntriesTo(final FlightRecorderEventDumper eventDumper)
+    {
+      return this;
+    }
+  }
+
+  @Test
+  public void testSamplingPolicyIsIgnored()
+  {
+    final MinimalFlightRecorder fr = new MinimalFlightRecorder();
+    fr.setSamplingPolicy(FLIGHT_RECORDER_TEST_EVENT1, FlightRecorderFactory.getOneInNSampling(10));
+    for (int i=0; i<3; i++)  fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+    assertEquals(3, fr.getNumberOfEntriesRecorded());
+  }
+
+  @Test
+  public void testSpanIsAPlainEvent()
+  {
+    final MinimalFlightRecorder fr = new MinimalFlightRecorder();
+    final long spanToken = fr.beginSpan(FLIGHT_RECORDER_TEST_EVENT2);
+    assertEquals(FlightRecorder.NO_SPAN, spanToken);
+    fr.endSpan(FLIGHT_RECORDER_TEST_EVENT2, spanToken);
+    assertEquals(1, fr.getNumberOfEntriesRecorded());
+    assertSame(FLIGHT_RECORDER_TEST_EVENT2, fr.eventsRecorded.get(0));
+  }
+
+  @Test
+  public void testDisablingIsIgnored()
+  {
+    final MinimalFlightRecorder fr = new MinimalFlightRecorder();
+    fr.disableEvent(FLIGHT_RECORDER_TEST_EVENT1).recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+    assertTrue(fr.isEventEnabled(FLIGHT_RECORDER_TEST_EVENT1));
+    fr.disableAllEvents().recordEvent(FLIGHT_RECORDER_TEST_EVENT2);
+    assertTrue(fr.isEventEnabled(FLIGHT_RECORDER_TEST_EVENT2));
+    assertEquals(2, fr.getNumberOfEntriesRecorded());
+  }
+
+  @Test
+  public void testStackDepthIsIgnored()
+  {
+    final MinimalFlightRecorder fr = new MinimalFlightRecorder();
+    fr.setStackDepth(FLIGHT_RECORDER_TEST_EVENT3, 5).recordEvent(FLIGHT_RECORDER_TEST_EVENT3);
+    assertEquals(1, fr.getNumberOfEntriesRecorded());
+  }
+}
@@ -0,0 +1,122 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * A FlightRecorderEventDumper for the unit tests that just keeps everything it is given
+ * so the tests can check the events themselves instead of searching through dump text.
+ */
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+final class FlightRecorderTestDumper implements FlightRecorderEventDumper
+{
+  final List<FlightRecorderEvent> events = new ArrayList<>();
+  long startTimeStamp = 0;
+  long endTimeStamp   = 0;
+  int numberOfEventsToBeDumped = -1;
+  int numberOfEventsLostDuringSnapshot = 0;
+  final Map<String, Long> numbersOfEventsSuppressed = new HashMap<>();
+  final Map<String, Long> numbersOfEventsSummarized = new HashMap<>();
+  final Map<String, FlightRecorderHistogram> nanosBetweenEvents = new HashMap<>();
+  final Map<String, FlightRecorderHistogram> spanDurationNanos = new HashMap<>();
+  final Map<Integer, String> recorderNames = new HashMap<>();
+  final Map<Integer, String> threadNames = new HashMap<>();
+  final Map<Long, String> eventNames = new HashMap<>();
+  final Map<Integer, StackTraceElement[]> stacks = new HashMap<>();
+  final List<Integer> lanesBegun = new ArrayList<>();
+  int numberOfEventSummaries = 0;
+  boolean dumpHasBegun = false;
+  boolean dumpIsComplete = false;
+
+  @Override
+  public void setDumpTimestamps(final long startTimeStamp, final long endTimeStamp)
+  {
+    this.startTimeStamp = startTimeStamp;
+    this.endTimeStamp   = endTimeStamp;
+  }
+
+  @Override
+  public void setNumberOfEventsToBeDumped(final int numberOfEvents)
+  {
+    numberOfEventsToBeDumped = numberOfEvents;
+  }
+
+  @Override
+  public void setNumberOfEventsLostDuringSnapshot(final int numberOfEventsLost)
+  {
+    numberOfEventsLostDuringSnapshot += numberOfEventsLost;
+  }
+
+  @Override
+  public void setNumberOfEventsSuppressed(final FlightRecorderEventID suppressedEventID, final long numberOfEventsSuppressed)
+  {
+    numbersOfEventsSuppressed.put(suppressedEventID.getEventName(), numberOfEventsSuppressed);
+  }
+
+  @Override
+  public void setRecorderName(final int recorderIndex, final String recorderName)
+  {
+    recorderNames.put(recorderIndex, recorderName);
+  }
+
+  @Override
+  public void setThreadName(final int threadIndex, final String threadName)
+  {
+    threadNames.put(threadIndex, threadName);
+  }
+
+  @Override
+  public void setEventName(final long eventID, final String eventName)
+  {
+    eventNames.put(eventID, eventName);
+  }
+
+  @Override
+  public void setStack(final int stackID, final StackTraceElement[] frames)
+  {
+    stacks.put(stackID, frames);
+  }
+
+  @Override
+  public void dumpBegins()
+  {
+    dumpHasBegun = true;
+  }
+
+  @Override
+  public void dumpLaneBegins(final int threadIndex)
+  {
+    lanesBegun.add(threadIndex);
+  }
+
+  @Override
+  public void dumpEvent(final FlightRecorderEvent eventToDump)
+  {
+    events.add(eventToDump);
+  }
+
+  @Override
+  public void dumpEventSummary(final FlightRecorderEventID summarizedEventID, final long numberOfEvents, final FlightRecorderHistogram nanosBetweenEvents)
+  {
+    numberOfEventSummaries++;
+    numbersOfEventsSummarized.put(summarizedEventID.getEventName(), numberOfEvents);
+    this.nanosBetweenEvents.put(summarizedEventID.getEventName(), nanosBetweenEvents);
+  }
+
+  @Override
+  public void dumpSpanSummary(final FlightRecorderEventID summarizedSpanID, final FlightRecorderHistogram spanDurationNanos)
+  {
+    this.spanDurationNanos.put(summarizedSpanID.getEventName(), spanDurationNanos);
+  }
+
+  @Override
+  public void dumpComplete()
+  {
+    dumpIsComplete = true;
+  }
+}
@@ -9,6 +9,8 @@ package io.github.nickmacdon.utility.debug.flightrecorder;
  */
 import static io.github.nickmacdon.utility.debug.flightrecorder.FlightRecorderTestEvents.*;
 import static org.junit.Assert.*;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
 import org.junit.Test;
 import io.github.nickmacdon.utility.debug.flightrecorder.FlightRecorder;
 import io.github.nickmacdon.utility.debug.flightrecorder.InMemoryRingBufferFlightRecorder;
@@ -59,4 +61,306 @@ public class InMemoryRingBufferFlightRecorderTest
     assertTrue(dumpReport.contains("EVENT2"));
     assertTrue(dumpReport.contains("EVENT3"));
   }
+
+  @Test
+  public void testPayloads()
+  {
+    final FlightRecorder fr = FlightRecorderFactory.getFlightRecorder(10).startRecording();
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT2, 42);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT3, -7, Long.MAX_VALUE);
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    fr.stopRecording().dumpEntriesTo(frd);
+    assertEquals(0, frd.events.get(0).getNumberOfPayloads());
+    assertEquals(1, frd.events.get(1).getNumberOfPayloads());
+    assertEquals(42, frd.events.get(1).getPayload(0));
+    assertEquals(2, frd.events.get(2).getNumberOfPayloads());
+    assertEquals(-7, frd.events.get(2).getPayload(0));
+    assertEquals(Long.MAX_VALUE, frd.events.get(2).getPayload(1));
+
+    final FlightRecorderEventDumper stringDumper = FlightRecorderFactory.getStringDumper("Payloads");
+    fr.dumpEntriesTo(stringDumper);
+    assertTrue(stringDumper.toString().contains(" [42]"));
+    assertTrue(stringDumper.toString().contains(" [-7, " + Long.MAX_VALUE + "]"));
+  }
+
+  @Test
+  public void testDisabledEvents()
+  {
+    final FlightRecorder fr = FlightRecorderFactory.getFlightRecorder(10).startRecording();
+    fr.disableEvent(FLIGHT_RECORDER_TEST_EVENT2);
+    assertFalse(fr.isEventEnabled(FLIGHT_RECORDER_TEST_EVENT2));
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT2);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT3);
+    fr.disableAllEvents().enableEvent(FLIGHT_RECORDER_TEST_EVENT2);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT2);
+
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    fr.stopRecording().dumpEntriesTo(frd);
+    assertEquals(3, frd.events.size());
+    assertEquals(FLIGHT_RECORDER_TEST_EVENT3.getEventID(), frd.events.get(1).getEventID());
+    assertEquals(FLIGHT_RECORDER_TEST_EVENT2.getEventID(), frd.events.get(2).getEventID());
+    assertEquals(3, frd.events.get(2).getSequenceNumber());  // Disabled events don't use sequence numbers
+  }
+
+  @Test
+  public void testSnapshot()
+  {
+    final FlightRecorder fr = FlightRecorderFactory.getFlightRecorder(3).startRecording();
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT2, 42);
+    final FlightRecorderSnapshot snapshot = fr.takeSnapshot();
+
+    // Recording carries on without changing what is in the snapshot
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT3);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT3);
+    fr.clearAllRecordedEvents();
+    assertEquals(2, snapshot.getNumberOfEntries());
+    assertEquals(0, snapshot.getNumberOfEventsLost());
+
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    snapshot.dumpEntriesTo(frd);
+    assertTrue(frd.dumpIsComplete);
+    assertEquals(2, frd.events.size());
+    assertEquals(FLIGHT_RECORDER_TEST_EVENT1.getEventID(), frd.events.get(0).getEventID());
+    assertEquals(42, frd.events.get(1).getPayload(0));
+    assertTrue(frd.startTimeStamp > 0);
+  }
+
+  @Test
+  public void testQuery()
+  {
+    final long[] now = { 0 };
+    final FlightRecorder fr = new InMemoryRingBufferFlightRecorder(10, () -> now[0] += 1_000).startRecording();
+    for (int i=0; i<15; i++)
+      fr.recordEvent(FlightRecorderTestEvents.values()[i % 3], i);
+    final FlightRecorderTestDumper all = new FlightRecorderTestDumper();
+    fr.dumpEntriesTo(all);
+    assertEquals(6, all.events.get(0).getSequenceNumber());  // The first five were overwritten
+
+    final FlightRecorderTestDumper bySequenceNumber = new FlightRecorderTestDumper();
+    fr.dumpMatchingEntriesTo(FlightRecorderQuery.ALL.withSequenceNumbers(1, 8), bySequenceNumber);
+    assertTrue(bySequenceNumber.dumpIsComplete);
+    assertEquals(3, bySequenceNumber.numberOfEventsToBeDumped);
+    assertEquals(3, bySequenceNumber.events.size());
+    assertEquals(6, bySequenceNumber.events.get(0).getSequenceNumber());
+    assertEquals(8, bySequenceNumber.events.get(2).getSequenceNumber());
+    assertTrue(bySequenceNumber.numbersOfEventsSummarized.isEmpty());
+
+    final FlightRecorderTestDumper byTime = new FlightRecorderTestDumper();
+    final long from = all.events.get(4).getEventTimestampNanos();
+    final long to   = all.events.get(8).getEventTimestampNanos();
+    fr.dumpMatchingEntriesTo(FlightRecorderQuery.ALL.withTimestampsNanos(from, to).withEventIDs(FLIGHT_RECORDER_TEST_EVENT2, FLIGHT_RECORDER_TEST_EVENT3), byTime);
+    assertEquals(3, byTime.events.size());
+    assertEquals(3, byTime.numberOfEventsToBeDumped);
+    for (final FlightRecorderEvent event : byTime.events)
+    {
+      assertNotEquals(FLIGHT_RECORDER_TEST_EVENT1.getEventID(), event.getEventID());
+      assertTrue((event.getEventTimestampNanos() >= from) && (event.getEventTimestampNanos() <= to));
+    }
+
+    final FlightRecorderTestDumper nothing = new FlightRecorderTestDumper();
+    fr.dumpMatchingEntriesTo(FlightRecorderQuery.ALL.withSequenceNumbers(100, 200), nothing);
+    assertTrue(nothing.dumpIsComplete);
+    assertEquals(0, nothing.events.size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBackwardsQuery()
+  {
+    FlightRecorderQuery.ALL.withSequenceNumbers(10, 9);
+  }
+
+  @Test
+  public void testEventSummaries()
+  {
+    final long[] now = { 0 };
+    final FlightRecorder fr = new InMemoryRingBufferFlightRecorder(2, () -> now[0] += 1_000).startRecording();
+    for (int i=0; i<4; i++)  fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT2);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+
+    // The summaries cover everything recorded, not just what is still in the ring
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    fr.stopRecording().dumpEntriesTo(frd);
+    assertEquals(2, frd.events.size());
+    assertEquals(Long.valueOf(5), frd.numbersOfEventsSummarized.get("FLIGHT_RECORDER_TEST_EVENT1"));
+    assertEquals(Long.valueOf(1), frd.numbersOfEventsSummarized.get("FLIGHT_RECORDER_TEST_EVENT2"));
+    assertFalse(frd.numbersOfEventsSummarized.containsKey("FLIGHT_RECORDER_TEST_EVENT3"));
+    final FlightRecorderHistogram nanosBetweenEvents = frd.nanosBetweenEvents.get("FLIGHT_RECORDER_TEST_EVENT1");
+    assertEquals(4, nanosBetweenEvents.getNumberOfValues());
+    assertEquals(1023, nanosBetweenEvents.getPercentile(50));
+    assertEquals(2047, nanosBetweenEvents.getMaximum());
+    assertEquals(0, frd.nanosBetweenEvents.get("FLIGHT_RECORDER_TEST_EVENT2").getNumberOfValues());
+
+    final FlightRecorderEventDumper stringDumper = FlightRecorderFactory.getStringDumper("Summaries");
+    fr.dumpEntriesTo(stringDumper);
+    assertTrue(stringDumper.toString().contains("summary of all events recorded:"));
+    assertTrue(stringDumper.toString().contains("       5 events, apart p50 0.000001 p99 0.000002 max 0.000002"));
+
+    final FlightRecorderTestDumper afterClearing = new FlightRecorderTestDumper();
+    fr.clearAllRecordedEvents().dumpEntriesTo(afterClearing);
+    assertTrue(afterClearing.numbersOfEventsSummarized.isEmpty());
+  }
+
+  @Test
+  public void testSpans()
+  {
+    final long[] now = { 0 };
+    final FlightRecorder fr = new InMemoryRingBufferFlightRecorder(10, () -> now[0] += 1_000).startRecording();
+    final long outerSpan = fr.beginSpan(FLIGHT_RECORDER_TEST_EVENT1);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT3);
+    final long innerSpan = fr.beginSpan(FLIGHT_RECORDER_TEST_EVENT2);
+    fr.endSpan(FLIGHT_RECORDER_TEST_EVENT2, innerSpan);
+    fr.endSpan(FLIGHT_RECORDER_TEST_EVENT1, outerSpan);
+    fr.stopRecording();
+    assertEquals(FlightRecorder.NO_SPAN, fr.beginSpan(FLIGHT_RECORDER_TEST_EVENT1));
+    fr.endSpan(FLIGHT_RECORDER_TEST_EVENT1, FlightRecorder.NO_SPAN);
+
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    fr.dumpEntriesTo(frd);
+    assertEquals(5, frd.events.size());
+    assertEquals(FlightRecorderEventKind.SPAN_BEGIN, frd.events.get(0).getEventKind());
+    assertEquals(FlightRecorderEventKind.POINT, frd.events.get(1).getEventKind());
+    assertEquals(FlightRecorderEventKind.SPAN_END, frd.events.get(3).getEventKind());
+    assertEquals(1_000, frd.events.get(3).getPayload(0));
+    assertEquals(4_000, frd.events.get(4).getPayload(0));
+    assertEquals(Long.valueOf(1), frd.numbersOfEventsSummarized.get("FLIGHT_RECORDER_TEST_EVENT1"));
+    assertEquals(1, frd.spanDurationNanos.get("FLIGHT_RECORDER_TEST_EVENT1").getNumberOfValues());
+    assertEquals(4095, frd.spanDurationNanos.get("FLIGHT_RECORDER_TEST_EVENT1").getMaximum());
+    assertEquals(1023, frd.spanDurationNanos.get("FLIGHT_RECORDER_TEST_EVENT2").getMaximum());
+    assertFalse(frd.spanDurationNanos.containsKey("FLIGHT_RECORDER_TEST_EVENT3"));
+
+    final FlightRecorderEventDumper stringDumper = FlightRecorderFactory.getStringDumper("Spans");
+    fr.dumpEntriesTo(stringDumper);
+    final String dumpReport = stringDumper.toString();
+    assertTrue(dumpReport.contains("(FLIGHT_RECORDER_TEST_EVENT1)               1 +0.000 begins"));
+    assertTrue(dumpReport.contains("  (FLIGHT_RECORDER_TEST_EVENT3)             2 +0.000"));
+    assertTrue(dumpReport.contains("  (FLIGHT_RECORDER_TEST_EVENT2)             4 +0.000 ends, took 0.000001"));
+    assertTrue(dumpReport.contains("(FLIGHT_RECORDER_TEST_EVENT1)               5 +0.000 ends, took 0.000004"));
+    assertTrue(dumpReport.contains("       1 spans, took p50 0.000004 p99 0.000004 max 0.000004"));
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testMissingPayload()
+  {
+    final FlightRecorder fr = FlightRecorderFactory.getFlightRecorder(10).startRecording();
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT2, 42);
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    fr.stopRecording().dumpEntriesTo(frd);
+    frd.events.get(0).getPayload(1);
+  }
+
+  @Test
+  public void testStatistics()
+  {
+    final FlightRecorder fr = new InMemoryRingBufferFlightRecorder(10);
+    fr.setSamplingPolicy(FLIGHT_RECORDER_TEST_EVENT3, FlightRecorderFactory.getOneInNSampling(2));
+    assertFalse(fr.getStatistics().isRecording());
+    assertEquals(FlightRecorderStatistics.NO_DUMP_YET, fr.getStatistics().getLastDumpTimeMillis());
+    fr.startRecording();
+    for (int i=0; i<12; i++)  fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+    for (int i=0; i<4; i++)  fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT3);
+    final FlightRecorderStatistics statistics = fr.getStatistics();
+    assertTrue(statistics.isRecording());
+    assertEquals(14, statistics.getNumberOfEventsRecorded());
+    assertEquals(4, statistics.getNumberOfEventsLost());
+    assertEquals(2, statistics.getNumberOfEventsSuppressed());
+    assertEquals(10, statistics.getNumberOfEntries());
+    assertEquals(1.0, statistics.getOccupancy(), 0);
+    assertTrue(statistics.getEventsPerSecond() > 0);
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    fr.stopRecording().dumpEntriesTo(FlightRecorderFactory.getBinaryDumper("Test Dump", Channels.newChannel(bytes)));
+    final FlightRecorderStatistics afterDump = fr.getStatistics();
+    assertFalse(afterDump.isRecording());
+    assertEquals(bytes.size(), afterDump.getLastDumpBytes());
+    assertTrue(afterDump.getLastDumpTimeMillis() != FlightRecorderStatistics.NO_DUMP_YET);
+    assertTrue(afterDump.getLastDumpDurationNanos() > 0);
+
+    fr.clearAllRecordedEvents();
+    assertEquals(0, fr.getStatistics().getNumberOfEventsRecorded());
+    assertEquals(0, fr.getStatistics().getOccupancy(), 0);
+  }
+
+  @Test
+  public void testStackCapture()
+  {
+    final FlightRecorder fr = new InMemoryRingBufferFlightRecorder(10).setStackDepth(FLIGHT_RECORDER_TEST_EVENT1, 3).startRecording();
+    for (int i=0; i<2; i++)  recordFromHere(fr);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT2);
+    fr.setStackDepth(FLIGHT_RECORDER_TEST_EVENT1, 0);
+    recordFromHere(fr);
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    fr.stopRecording().dumpEntriesTo(frd);
+
+    final int stackID = frd.events.get(0).getStackID();
+    assertTrue(stackID != FlightRecorderEvent.NO_STACK);
+    assertEquals(stackID, frd.events.get(1).getStackID());  // The same stack is only kept once
+    assertEquals(FlightRecorderEvent.NO_STACK, frd.events.get(2).getStackID());
+    assertEquals(FlightRecorderEvent.NO_STACK, frd.events.get(3).getStackID());
+    assertEquals(1, frd.stacks.size());
+    final StackTraceElement[] frames = frd.stacks.get(stackID);
+    assertEquals(3, frames.length);
+    assertEquals("recordFromHere", frames[0].getMethodName());  // The recorder's own frames are left off
+    assertEquals("testStackCapture", frames[1].getMethodName());
+
+    final FlightRecorderEventDumper stringDumper = FlightRecorderFactory.getStringDumper("Test Dump");
+    fr.takeSnapshot().dumpEntriesTo(stringDumper);
+    final String dumpReport = stringDumper.toString();
+    assertTrue(dumpReport.contains("stack " + stackID + ":"));
+    assertTrue(dumpReport.contains("    at " + frames[0]));
+    assertTrue(dumpReport.contains(" stack " + stackID + System.lineSeparator()));
+  }
+
+  private static void recordFromHere(final FlightRecorder fr)
+  {
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testStackDepthTooBig()
+  {
+    new InMemoryRingBufferFlightRecorder(10).setStackDepth(FLIGHT_RECORDER_TEST_EVENT1, EventStackCapture.MAXIMUM_STACK_DEPTH + 1);
+  }
+
+  @Test
+  public void testEventIDThatIsntAnEnum()
+  {
+    final int[] numberOfNameCalls = { 0 };
+    final FlightRecorderEventID eventID = new FlightRecorderEventID()
+    {
+      @Override
+      public long getEventID()
+      {
+        return 1_000_001;
+      }
+
+      @Override
+      public String getEventName()
+      {
+        numberOfNameCalls[0]++;
+        return "NOT_AN_ENUM";
+      }
+
+      @Override
+      public FlightRecorderEvent getEvent(final long sequenceNumber)
+      {
+        return new DefaultFlightRecorderEvent(System.currentTimeMillis(), sequenceNumber, this);
+      }
+    };
+    final FlightRecorder fr = new InMemoryRingBufferFlightRecorder(10).startRecording();
+    for (int i=0; i<100; i++)  fr.recordEvent(eventID);
+    assertEquals(1, numberOfNameCalls[0]);  // Only when it was first seen
+
+    final int numberOfEventIDs = EventIDTable.getNumberOfEventIDs();
+    final FlightRecorderSnapshot snapshot = FlightRecorderSnapshot.byDumping(fr).followedBy(FlightRecorderSnapshot.byDumping(fr));
+    assertEquals(numberOfEventIDs, EventIDTable.getNumberOfEventIDs());
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    snapshot.dumpEntriesTo(frd);
+    assertEquals(10, frd.events.size());
+    assertEquals("NOT_AN_ENUM", frd.events.get(0).getEventName());
+  }
 }
@@ -0,0 +1,152 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * A unit test of the memory mapped FlightRecorder and of reading its file back.  The file is
+ * read while the recorder still has it mapped and is never stopped, which is as close to the
+ * process having died as a unit test can reasonably get.
+ */
+import static io.github.nickmacdon.utility.debug.flightrecorder.FlightRecorderTestEvents.*;
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MemoryMappedRingBufferFlightRecorderTest
+{
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testMemoryMappedRingBufferFlightRecorder() throws IOException
+  {
+    final Path file = temporaryFolder.newFile("recording.bjfr").toPath();
+    final FlightRecorder fr = FlightRecorderFactory.getMemoryMappedFlightRecorder(file, 3);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1); // Not recording yet
+    assertEquals(0, fr.getNumberOfEntriesRecorded());
+    fr.startRecording();
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT2);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT3);
+    assertEquals(2, fr.getNumberOfEntriesRecorded());
+    fr.clearAllRecordedEvents();
+    assertEquals(0, fr.getNumberOfEntriesRecorded());
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT2);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT3);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+    assertEquals(3, fr.getNumberOfEntriesRecorded());
+
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    fr.dumpEntriesTo(frd);
+    assertEquals(3, frd.events.size());
+    assertEquals(5, frd.events.get(0).getSequenceNumber());
+    assertEquals("FLIGHT_RECORDER_TEST_EVENT1", frd.events.get(2).getEventName());
+
+    // This recorder gets the snapshot made by dumping into it
+    final FlightRecorderSnapshot snapshot = fr.takeSnapshot();
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT2);
+    final FlightRecorderTestDumper snapshotDumper = new FlightRecorderTestDumper();
+    snapshot.dumpEntriesTo(snapshotDumper);
+    assertEquals(3, snapshotDumper.events.size());
+    assertEquals(5, snapshotDumper.events.get(0).getSequenceNumber());
+    assertEquals("FLIGHT_RECORDER_TEST_EVENT1", snapshotDumper.events.get(2).getEventName());
+    assertEquals(frd.endTimeStamp, snapshotDumper.endTimeStamp);
+  }
+
+  @Test
+  public void testRepeatedSnapshotsDontGrowTheEventIDTable() throws IOException
+  {
+    final Path file = temporaryFolder.newFile("recording.bjfr").toPath();
+    final FlightRecorder fr = FlightRecorderFactory.getMemoryMappedFlightRecorder(file, 100).startRecording();
+    for (int i=0; i<100; i++)  fr.recordEvent((i % 2 == 0) ? FLIGHT_RECORDER_TEST_EVENT1 : FLIGHT_RECORDER_TEST_EVENT2);
+    fr.takeSnapshot();
+    final int numberOfEventIDs = EventIDTable.getNumberOfEventIDs();
+    for (int i=0; i<20; i++)  fr.takeSnapshot();
+    assertEquals(numberOfEventIDs, EventIDTable.getNumberOfEventIDs());
+  }
+
+  @Test
+  public void testReadingTheFileBack() throws IOException
+  {
+    final Path file = temporaryFolder.newFile("recording.bjfr").toPath();
+    final FlightRecorder fr = FlightRecorderFactory.getMemoryMappedFlightRecorder(file, 4).startRecording();
+    for (int i=0; i<5; i++)  fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+    fr.endSpan(FLIGHT_RECORDER_TEST_EVENT3, fr.beginSpan(FLIGHT_RECORDER_TEST_EVENT3));
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT2, 11, 22);
+
+    final FlightRecorderTestDumper queried = new FlightRecorderTestDumper();
+    fr.dumpMatchingEntriesTo(FlightRecorderQuery.ALL.withSequenceNumbers(6, 100).withEventIDs(FLIGHT_RECORDER_TEST_EVENT3), queried);
+    assertEquals(2, queried.events.size());
+    assertEquals(FlightRecorderEventKind.SPAN_BEGIN, queried.events.get(0).getEventKind());
+    assertEquals(7, queried.events.get(1).getSequenceNumber());
+
+    final MemoryMappedFlightRecorderReader reader = new MemoryMappedFlightRecorderReader(file, FlightRecorderTestEvents.values());
+    assertEquals(4, reader.getNumberOfEntriesRecorded());
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    reader.dumpEntriesTo(frd);
+    assertEquals(4, frd.numberOfEventsToBeDumped);
+    assertEquals(5, frd.events.get(0).getSequenceNumber());
+    assertEquals(8, frd.events.get(3).getSequenceNumber());
+    assertEquals(FlightRecorderEventKind.SPAN_BEGIN, frd.events.get(1).getEventKind());
+    assertEquals(FlightRecorderEventKind.SPAN_END, frd.events.get(2).getEventKind());
+    assertEquals(1, frd.events.get(2).getNumberOfPayloads());
+    assertEquals("FLIGHT_RECORDER_TEST_EVENT2", frd.events.get(3).getEventName());
+    assertEquals(2, frd.events.get(3).getNumberOfPayloads());
+    assertEquals(22, frd.events.get(3).getPayload(1));
+    assertEquals(frd.events.get(3).getEventTimestamp(), frd.endTimeStamp);
+    assertEquals(1, frd.threadNames.size());
+    assertEquals(Thread.currentThread().getName(), frd.threadNames.get(frd.events.get(0).getThreadIndex()));
+
+    final FlightRecorderEventDumper stringDumper = FlightRecorderFactory.getStringDumper("Read Back");
+    new MemoryMappedFlightRecorderReader(file).dumpEntriesTo(stringDumper);
+    assertTrue(stringDumper.toString().contains("number of events: 4"));
+    assertTrue(stringDumper.toString().contains("(EVENT_2)"));
+  }
+
+  @Test
+  public void testRestartKeepsThePreviousRecording() throws IOException
+  {
+    final Path file = temporaryFolder.getRoot().toPath().resolve("restarted.bjfr");
+    final FlightRecorder crashed = FlightRecorderFactory.getMemoryMappedFlightRecorder(file, 10).startRecording();
+    crashed.recordEvent(FLIGHT_RECORDER_TEST_EVENT1, 1);
+    crashed.recordEvent(FLIGHT_RECORDER_TEST_EVENT2, 2);
+
+    // Started again the same way, as after a crash
+    final FlightRecorder restarted = FlightRecorderFactory.getMemoryMappedFlightRecorder(file, 10).startRecording();
+    restarted.recordEvent(FLIGHT_RECORDER_TEST_EVENT3, 3);
+    final Path previousFile = MemoryMappedRingBufferFlightRecorder.previousRecordingFileFor(file);
+    assertEquals("restarted.bjfr.previous", previousFile.getFileName().toString());
+
+    final FlightRecorderTestDumper previous = new FlightRecorderTestDumper();
+    new MemoryMappedFlightRecorderReader(previousFile, FlightRecorderTestEvents.values()).dumpEntriesTo(previous);
+    assertEquals(2, previous.events.size());
+    assertEquals(2, previous.events.get(1).getPayload(0));
+    final FlightRecorderTestDumper current = new FlightRecorderTestDumper();
+    new MemoryMappedFlightRecorderReader(file, FlightRecorderTestEvents.values()).dumpEntriesTo(current);
+    assertEquals(1, current.events.size());
+    assertEquals(3, current.events.get(0).getPayload(0));
+  }
+
+  @Test
+  public void testSomethingElseIsOverwritten() throws IOException
+  {
+    final Path file = temporaryFolder.newFile("notARecording.bjfr").toPath();
+    Files.write(file, new byte[100]);
+    FlightRecorderFactory.getMemoryMappedFlightRecorder(file, 10);
+    assertFalse(Files.exists(MemoryMappedRingBufferFlightRecorder.previousRecordingFileFor(file)));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testReadingSomethingElse() throws IOException
+  {
+    final Path file = temporaryFolder.newFile("notARecording.bjfr").toPath();
+    Files.write(file, new byte[100]);
+    new MemoryMappedFlightRecorderReader(file);
+  }
+}
@@ -0,0 +1,212 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * A unit test of the Executor and ExecutorService wrappers that record when each task was
+ * submitted, started and completed.  A direct executor (that runs each task on the thread that
+ * submitted it) keeps the order of the events fixed, so the correlation IDs can be checked.
+ * The task IDs are shared by all of the executors, so they are checked from the first one.
+ */
+import static io.github.nickmacdon.utility.debug.flightrecorder.FlightRecorderTestEvents.*;
+import static org.junit.Assert.*;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class RecordingExecutorTest
+{
+  @Test
+  public void testCorrelationIDIsCarriedToNestedTasks()
+  {
+    final FlightRecorder fr = FlightRecorderFactory.getFlightRecorder().startRecording();
+    final Executor executor = FlightRecorderFactory.getRecordingExecutor(Runnable::run, fr, FLIGHT_RECORDER_TEST_EVENT1, FLIGHT_RECORDER_TEST_EVENT2, FLIGHT_RECORDER_TEST_EVENT3);
+    executor.execute(() -> executor.execute(() -> {}));
+    executor.execute(() -> {});
+
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    fr.dumpEntriesTo(frd);
+    assertEquals(9, frd.events.size());
+    final long first = frd.events.get(0).getPayload(1);
+    assertEvent(frd.events.get(0), FLIGHT_RECORDER_TEST_EVENT1, first, first);  // Outer task submitted, its own correlation ID
+    assertEvent(frd.events.get(1), FLIGHT_RECORDER_TEST_EVENT2, first);
+    assertEvent(frd.events.get(2), FLIGHT_RECORDER_TEST_EVENT1, first, first+1);  // Nested task carries it
+    assertEvent(frd.events.get(3), FLIGHT_RECORDER_TEST_EVENT2, first+1);
+    assertEvent(frd.events.get(4), FLIGHT_RECORDER_TEST_EVENT3, first+1);
+    assertEvent(frd.events.get(5), FLIGHT_RECORDER_TEST_EVENT3, first);
+    assertEvent(frd.events.get(6), FLIGHT_RECORDER_TEST_EVENT1, first+2, first+2);  // A new one from outside
+    assertEvent(frd.events.get(7), FLIGHT_RECORDER_TEST_EVENT2, first+2);
+    assertEvent(frd.events.get(8), FLIGHT_RECORDER_TEST_EVENT3, first+2);
+    assertTrue(frd.events.get(5).getPayload(1) >= frd.events.get(4).getPayload(1));  // The outer task ran for longer
+    assertEquals(RecordingExecutor.NO_CORRELATION_ID, RecordingExecutor.getRunningCorrelationID());
+  }
+
+  @Test
+  public void testTwoExecutorsGiveDifferentIDs()
+  {
+    final FlightRecorder fr = FlightRecorderFactory.getFlightRecorder().startRecording();
+    final Executor executor1 = FlightRecorderFactory.getRecordingExecutor(Runnable::run, fr, FLIGHT_RECORDER_TEST_EVENT1, FLIGHT_RECORDER_TEST_EVENT2, FLIGHT_RECORDER_TEST_EVENT3);
+    final Executor executor2 = FlightRecorderFactory.getRecordingExecutor(Runnable::run, fr, FLIGHT_RECORDER_TEST_EVENT1, FLIGHT_RECORDER_TEST_EVENT2, FLIGHT_RECORDER_TEST_EVENT3);
+    executor1.execute(() -> {});
+    executor2.execute(() -> {});
+    executor1.execute(() -> {});
+    executor2.execute(() -> {});
+
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    fr.dumpEntriesTo(frd);
+    final Set<Long> correlationIDs = new HashSet<>();
+    final Set<Long> taskIDs = new HashSet<>();
+    for (final FlightRecorderEvent event : frd.events)
+    {
+      if (event.getEventID() != FLIGHT_RECORDER_TEST_EVENT1.getEventID())  continue;
+      correlationIDs.add(event.getPayload(0));
+      taskIDs.add(event.getPayload(1));
+    }
+    assertEquals(4, correlationIDs.size());  // Four unrelated tasks, none of them merged
+    assertEquals(4, taskIDs.size());
+  }
+
+  @Test
+  public void testCompletedEvenIfTheTaskThrows()
+  {
+    final FlightRecorder fr = FlightRecorderFactory.getFlightRecorder().startRecording();
+    final Executor executor = FlightRecorderFactory.getRecordingExecutor(Runnable::run, fr, FLIGHT_RECORDER_TEST_EVENT1, FLIGHT_RECORDER_TEST_EVENT2, FLIGHT_RECORDER_TEST_EVENT3);
+    try
+    {
+      executor.execute(() -> { throw new IllegalStateException("Task failed"); });
+      fail("The task's exception should have been thrown");
+    }
+    catch (final IllegalStateException expected)
+    {
+      assertEquals("Task failed", expected.getMessage());
+    }
+
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    fr.dumpEntriesTo(frd);
+    assertEquals(3, frd.events.size());
+    assertEvent(frd.events.get(2), FLIGHT_RECORDER_TEST_EVENT3, frd.events.get(0).getPayload(1));
+    assertEquals(RecordingExecutor.NO_CORRELATION_ID, RecordingExecutor.getRunningCorrelationID());
+  }
+
+  @Test
+  public void testRejectedTaskIsCompletedAsNeverRan() throws InterruptedException
+  {
+    final FlightRecorder fr = FlightRecorderFactory.getFlightRecorder().startRecording();
+    final Executor executor = FlightRecorderFactory.getRecordingExecutor(task -> { throw new RejectedExecutionException("Full"); }, fr, FLIGHT_RECORDER_TEST_EVENT1, FLIGHT_RECORDER_TEST_EVENT2, FLIGHT_RECORDER_TEST_EVENT3);
+    try
+    {
+      executor.execute(() -> {});
+      fail("The executor's rejection should have been thrown");
+    }
+    catch (final RejectedExecutionException expected)
+    {
+      assertEquals("Full", expected.getMessage());
+    }
+
+    final ExecutorService executorService = FlightRecorderFactory.getRecordingExecutorService(Executors.newSingleThreadExecutor(), fr, FLIGHT_RECORDER_TEST_EVENT1, FLIGHT_RECORDER_TEST_EVENT2, FLIGHT_RECORDER_TEST_EVENT3);
+    executorService.shutdown();
+    assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+    try
+    {
+      executorService.submit(() -> 1);
+      fail("A shut down service should reject the task");
+    }
+    catch (final RejectedExecutionException expected)
+    {
+      // Recorded as never ran
+    }
+
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    fr.dumpEntriesTo(frd);
+    assertEquals(4, frd.events.size());
+    final long first = frd.events.get(0).getPayload(1);
+    assertEvent(frd.events.get(0), FLIGHT_RECORDER_TEST_EVENT1, first, first);
+    assertEvent(frd.events.get(1), FLIGHT_RECORDER_TEST_EVENT3, first, RecordingExecutor.NEVER_RAN);
+    assertEvent(frd.events.get(2), FLIGHT_RECORDER_TEST_EVENT1, first+1, first+1);
+    assertEvent(frd.events.get(3), FLIGHT_RECORDER_TEST_EVENT3, first+1, RecordingExecutor.NEVER_RAN);
+  }
+
+  @Test
+  public void testRecordingExecutorService() throws Exception
+  {
+    final FlightRecorder fr = FlightRecorderFactory.getConcurrentFlightRecorder().startRecording();
+    final ExecutorService executorService = FlightRecorderFactory.getRecordingExecutorService(Executors.newSingleThreadExecutor(), fr, FLIGHT_RECORDER_TEST_EVENT1, FLIGHT_RECORDER_TEST_EVENT2, FLIGHT_RECORDER_TEST_EVENT3);
+    final Callable<Long> correlationID = RecordingExecutor::getRunningCorrelationID;
+    final long first = executorService.submit(correlationID).get();
+    assertNotEquals(RecordingExecutor.NO_CORRELATION_ID, first);
+    assertEquals("done", executorService.submit(() -> {}, "done").get());
+    final List<Future<Long>> futures = executorService.invokeAll(Arrays.asList(correlationID, correlationID));
+    assertEquals(Long.valueOf(first+2), futures.get(0).get());
+    assertEquals(Long.valueOf(first+3), futures.get(1).get());
+    executorService.shutdown();
+    assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    fr.dumpEntriesTo(frd);
+    assertEquals(12, frd.events.size());
+    int numberOfSubmittedEvents = 0;
+    for (final FlightRecorderEvent event : frd.events)
+    {
+      if (event.getEventID() == FLIGHT_RECORDER_TEST_EVENT1.getEventID())
+      {
+        numberOfSubmittedEvents++;
+        assertEquals(ThreadTable.currentThreadIndex(), event.getThreadIndex());
+      }
+      else
+      {
+        assertNotEquals(ThreadTable.currentThreadIndex(), event.getThreadIndex());  // Started and completed on the executor's thread
+        assertTrue(event.getPayload(1) >= 0);
+      }
+    }
+    assertEquals(4, numberOfSubmittedEvents);
+  }
+
+  @Test
+  public void testShutdownNowGivesBackTheTasksAsGiven() throws InterruptedException
+  {
+    final ExecutorService executorService = FlightRecorderFactory.getRecordingExecutorService(Executors.newSingleThreadExecutor(), FlightRecorderFactory.getConcurrentFlightRecorder(), FLIGHT_RECORDER_TEST_EVENT1, FLIGHT_RECORDER_TEST_EVENT2, FLIGHT_RECORDER_TEST_EVENT3);
+    final Object lock = new Object();
+    final Runnable neverRun = () -> {};
+    synchronized (lock)
+    {
+      executorService.execute(() -> { synchronized (lock) {} });
+      executorService.execute(neverRun);
+      final List<Runnable> tasksNeverRun = executorService.shutdownNow();
+      assertTrue(tasksNeverRun.contains(neverRun));
+    }
+    assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testUnnamedThreadsShareAnIndex() throws InterruptedException
+  {
+    final int[] threadIndexes = new int[2];
+    for (int t=0; t<threadIndexes.length; t++)
+    {
+      final int threadNumber = t;
+      final Thread unnamedThread = new Thread(() -> threadIndexes[threadNumber] = ThreadTable.currentThreadIndex(), "");
+      unnamedThread.start();
+      unnamedThread.join();
+    }
+    assertNotEquals(FlightRecorderEvent.NO_THREAD, threadIndexes[0]);
+    assertEquals(threadIndexes[0], threadIndexes[1]);
+    assertEquals("unnamed threads", ThreadTable.getThreadName(threadIndexes[0]));
+  }
+
+  private static void assertEvent(final FlightRecorderEvent event, final FlightRecorderEventID eventID, final long... payloads)
+  {
+    assertEquals(eventID.getEventID(), event.getEventID());
+    for (int i=0; i<payloads.length; i++)  assertEquals(payloads[i], event.getPayload(i));
+  }
+}
@@ -0,0 +1,118 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * A unit test of the streaming FlightRecorder.  Everything recorded has to end up either in
+ * the files or counted as dropped, and only the newest files may be kept.
+ */
+import static io.github.nickmacdon.utility.debug.flightrecorder.FlightRecorderTestEvents.*;
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StreamingFlightRecorderTest
+{
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testEverythingIsStreamed() throws IOException, InterruptedException
+  {
+    final Path directory = temporaryFolder.newFolder().toPath();
+    final FlightRecorder fr = FlightRecorderFactory.getStreamingFlightRecorder(directory, 100_000, 1024 * 1024, 1, TimeUnit.MINUTES, 10).startRecording();
+    final Thread[] producers = new Thread[2];
+    for (int t=0; t<producers.length; t++)
+    {
+      producers[t] = new Thread(() -> {
+        for (int i=0; i<10_000; i++)  fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1, i);
+      });
+      producers[t].start();
+    }
+    for (final Thread producer : producers)  producer.join();
+    fr.stopRecording();
+
+    final FlightRecorderTestDumper frd = readAllFiles(directory);
+    assertEquals(0, frd.numberOfEventsLostDuringSnapshot);
+    assertEquals(20_000, frd.events.size());
+    final boolean[] seen = new boolean[20_001];
+    for (final FlightRecorderEvent event : frd.events)
+    {
+      assertFalse(seen[(int)event.getSequenceNumber()]);
+      seen[(int)event.getSequenceNumber()] = true;
+      assertEquals("FLIGHT_RECORDER_TEST_EVENT1", event.getEventName());
+    }
+
+    // The ring still dumps the last N as usual
+    assertEquals(20_000, fr.getNumberOfEntriesRecorded());
+  }
+
+  @Test
+  public void testDroppedEventsAreCounted() throws IOException
+  {
+    final Path directory = temporaryFolder.newFolder().toPath();
+    final FlightRecorder fr = FlightRecorderFactory.getStreamingFlightRecorder(directory, 16, 1024 * 1024, 1, TimeUnit.MINUTES, 10).startRecording();
+    for (int i=0; i<100_000; i++)  fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT2);
+    fr.stopRecording();
+
+    final FlightRecorderTestDumper frd = readAllFiles(directory);
+    assertTrue(frd.numberOfEventsLostDuringSnapshot > 0);
+    assertEquals(100_000, frd.events.size() + frd.numberOfEventsLostDuringSnapshot);
+    assertEquals(frd.numberOfEventsLostDuringSnapshot, ((StreamingFlightRecorder)fr).getNumberOfEventsDropped());
+    assertEquals(100_000, frd.events.get(frd.events.size()-1).getSequenceNumber());
+  }
+
+  @Test
+  public void testOnlyTheNewestFilesAreKept() throws IOException
+  {
+    final Path directory = temporaryFolder.newFolder().toPath();
+    final FlightRecorder fr = FlightRecorderFactory.getStreamingFlightRecorder(directory, 100, 256, 1, TimeUnit.MINUTES, 3);
+    for (int round=0; round<10; round++)
+    {
+      fr.startRecording();
+      for (int i=0; i<100; i++)  fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT3, round);
+      fr.stopRecording();
+    }
+
+    final List<Path> files = listFiles(directory);
+    assertEquals(3, files.size());
+    assertEquals(files, ((StreamingFlightRecorder)fr).getFiles());
+    final FlightRecorderTestDumper frd = readAllFiles(directory);
+    assertEquals(9, frd.events.get(frd.events.size()-1).getPayload(0));
+    assertTrue(frd.events.get(0).getPayload(0) > 0);
+  }
+
+  private static List<Path> listFiles(final Path directory) throws IOException
+  {
+    try (final Stream<Path> files = Files.list(directory))
+    {
+      return files.sorted().collect(Collectors.toList());
+    }
+  }
+
+  private static FlightRecorderTestDumper readAllFiles(final Path directory) throws IOException
+  {
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    for (final Path file : listFiles(directory))
+    {
+      try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+      {
+        final FlightRecorderBinaryDumpReader reader = new FlightRecorderBinaryDumpReader(channel);
+        while (reader.hasMoreDumps())  reader.dumpEntriesTo(frd);
+      }
+    }
+    return frd;
+  }
+}
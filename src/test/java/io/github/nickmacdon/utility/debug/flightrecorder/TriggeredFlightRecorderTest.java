@@ -0,0 +1,139 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * A unit test of the triggered FlightRecorder.  The dumps happen on another thread, so the
+ * tests wait (not for long) for them to complete.
+ */
+import static io.github.nickmacdon.utility.debug.flightrecorder.FlightRecorderTestEvents.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class TriggeredFlightRecorderTest
+{
+  @Test
+  public void testTriggerEvent() throws InterruptedException
+  {
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    final FlightRecorder fr = FlightRecorderFactory.getTriggeredFlightRecorder(FlightRecorderFactory.getFlightRecorder(4), FLIGHT_RECORDER_TEST_EVENT2, 2, frd).startRecording();
+    for (int i=0; i<5; i++)  fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT2);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT3);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT3, 42);
+    for (int i=0; i<5; i++)  fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+    waitForDump(frd);
+
+    synchronized (frd)
+    {
+      // The four events before the trigger are kept even though the ring only holds four
+      assertEquals(6, frd.events.size());
+      assertEquals(3, frd.events.get(0).getSequenceNumber());
+      assertEquals("FLIGHT_RECORDER_TEST_EVENT2", frd.events.get(3).getEventName());
+      assertEquals("FLIGHT_RECORDER_TEST_EVENT3", frd.events.get(4).getEventName());
+      assertEquals(42, frd.events.get(5).getPayload(0));
+    }
+  }
+
+  @Test
+  public void testOnlyEventsKeptAfterTheTriggerCount() throws InterruptedException
+  {
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    final FlightRecorder fr = FlightRecorderFactory.getTriggeredFlightRecorder(FlightRecorderFactory.getFlightRecorder(10), FLIGHT_RECORDER_TEST_EVENT2, 2, frd).startRecording();
+    fr.disableEvent(FLIGHT_RECORDER_TEST_EVENT3).setSamplingPolicy(FLIGHT_RECORDER_TEST_EVENT1, clock -> false);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT2);
+    for (int i=0; i<5; i++)
+    {
+      fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT3);
+      fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+    }
+    synchronized (frd)
+    {
+      assertFalse(frd.dumpHasBegun);  // None of them were kept
+    }
+    fr.enableEvent(FLIGHT_RECORDER_TEST_EVENT3);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT3, 1);
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT3, 2);
+    waitForDump(frd);
+
+    synchronized (frd)
+    {
+      assertEquals(3, frd.events.size());
+      assertEquals(2, frd.events.get(2).getPayload(0));
+    }
+  }
+
+  @Test
+  public void testStopFinishesTheCapture() throws InterruptedException
+  {
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    final FlightRecorder fr = FlightRecorderFactory.getTriggeredFlightRecorder(FlightRecorderFactory.getConcurrentFlightRecorder(10), FLIGHT_RECORDER_TEST_EVENT2, 1000, frd).startRecording();
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+    fr.trigger();
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT3);
+    fr.stopRecording();
+    waitForDump(frd);
+
+    synchronized (frd)
+    {
+      assertEquals(2, frd.events.size());
+      assertEquals("FLIGHT_RECORDER_TEST_EVENT3", frd.events.get(1).getEventName());
+    }
+  }
+
+  @Test
+  public void testUncaughtException() throws InterruptedException
+  {
+    testUncaughtException(0);
+  }
+
+  @Test
+  public void testUncaughtExceptionDoesntWaitForMoreEvents() throws InterruptedException
+  {
+    testUncaughtException(1000);
+  }
+
+  private static void testUncaughtException(final int numberOfEventsAfterTrigger) throws InterruptedException
+  {
+    final Thread.UncaughtExceptionHandler originalHandler = Thread.getDefaultUncaughtExceptionHandler();
+    try
+    {
+      final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+      final FlightRecorder fr = FlightRecorderFactory.getTriggeredFlightRecorder(FlightRecorderFactory.getConcurrentFlightRecorder(10), FLIGHT_RECORDER_TEST_EVENT2, numberOfEventsAfterTrigger, frd).startRecording();
+      Thread.setDefaultUncaughtExceptionHandler((thread, exception) -> { /* Keep the test output quiet */ });
+      FlightRecorderFactory.triggerOnUncaughtExceptions(fr);
+      final Thread failingThread = new Thread(() -> {
+        fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT3);
+        throw new IllegalStateException("Test failure");
+      });
+      failingThread.start();
+      failingThread.join();
+      waitForDump(frd);
+
+      synchronized (frd)
+      {
+        assertEquals(1, frd.events.size());
+        assertEquals("FLIGHT_RECORDER_TEST_EVENT3", frd.events.get(0).getEventName());
+      }
+    }
+    finally
+    {
+      Thread.setDefaultUncaughtExceptionHandler(originalHandler);
+    }
+  }
+
+  private static void waitForDump(final FlightRecorderTestDumper frd) throws InterruptedException
+  {
+    for (int i=0; i<500; i++)
+    {
+      synchronized (frd)
+      {
+        if (frd.dumpIsComplete)  return;
+      }
+      Thread.sleep(10);
+    }
+    fail("The triggered dump never completed");
+  }
+}
@@ -0,0 +1,164 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * A unit test of the Java 17 bridge to the JDK's own Flight Recorder.  The events are recorded
+ * while a JFR recording is running, and then read back out of the file it dumps, the way JDK
+ * Mission Control or "jfr print" would see them.
+ */
+import static io.github.nickmacdon.utility.debug.flightrecorder.FlightRecorderTestEvents.*;
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JfrForwardingFlightRecorderTest
+{
+  private static final String POINT_EVENT_NAME = "io.github.nickmacdon.flightrecorder.Event";
+  private static final String SPAN_EVENT_NAME  = "io.github.nickmacdon.flightrecorder.Span";
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testEventsEndUpInTheJfrRecording() throws IOException
+  {
+    final FlightRecorder fr = FlightRecorderFactory.getJdkFlightRecorderBridge();
+    assertTrue(fr instanceof JfrForwardingFlightRecorder);
+    final List<RecordedEvent> events = recordInJfr(() -> {
+      fr.startRecording();
+      fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1, 11, 22);
+      fr.endSpan(FLIGHT_RECORDER_TEST_EVENT2, fr.beginSpan(FLIGHT_RECORDER_TEST_EVENT2));
+      fr.disableEvent(FLIGHT_RECORDER_TEST_EVENT3).recordEvent(FLIGHT_RECORDER_TEST_EVENT3);
+      fr.stopRecording();
+    });
+
+    assertEquals(2, events.size());
+    final RecordedEvent point = events.get(0);
+    assertEquals(POINT_EVENT_NAME, point.getEventType().getName());
+    assertEquals(FLIGHT_RECORDER_TEST_EVENT1.getEventID(), point.getLong("eventID"));
+    assertEquals("FLIGHT_RECORDER_TEST_EVENT1", point.getString("eventName"));
+    assertEquals(1, point.getLong("sequenceNumber"));
+    assertEquals(2, point.getInt("numberOfPayloads"));
+    assertEquals(11, point.getLong("payload0"));
+    assertEquals(22, point.getLong("payload1"));
+
+    final RecordedEvent span = events.get(1);
+    assertEquals(SPAN_EVENT_NAME, span.getEventType().getName());
+    assertEquals(FLIGHT_RECORDER_TEST_EVENT2.getEventID(), span.getLong("eventID"));
+    assertEquals(3, span.getLong("sequenceNumber"));  // The beginning of the span took 2
+    assertTrue(span.getLong("durationNanos") >= 0);
+
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    fr.dumpEntriesTo(frd);
+    assertTrue(frd.dumpIsComplete);
+    assertEquals(0, frd.events.size());  // They belong to the JFR recording
+  }
+
+  @Test
+  public void testNothingIsCommittedUntilRecording() throws IOException
+  {
+    final FlightRecorder fr = FlightRecorderFactory.getJdkFlightRecorderBridge();
+    final List<RecordedEvent> events = recordInJfr(() -> {
+      fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+      assertEquals(FlightRecorder.NO_SPAN, fr.beginSpan(FLIGHT_RECORDER_TEST_EVENT2));
+    });
+    assertEquals(0, events.size());
+  }
+
+  @Test
+  public void testSpanHasJfrsDuration() throws IOException
+  {
+    final FlightRecorder fr = FlightRecorderFactory.getJdkFlightRecorderBridge();
+    final List<RecordedEvent> events = recordInJfr(() -> {
+      fr.startRecording();
+      final long outerToken = fr.beginSpan(FLIGHT_RECORDER_TEST_EVENT1);
+      final long innerToken = fr.beginSpan(FLIGHT_RECORDER_TEST_EVENT2);
+      sleepFor(Duration.ofMillis(20));
+      fr.endSpan(FLIGHT_RECORDER_TEST_EVENT2, innerToken);
+      fr.endSpan(FLIGHT_RECORDER_TEST_EVENT1, outerToken);
+      fr.stopRecording();
+    });
+
+    assertEquals(2, events.size());
+    final RecordedEvent inner = events.get(0);
+    final RecordedEvent outer = events.get(1);
+    assertEquals(FLIGHT_RECORDER_TEST_EVENT2.getEventID(), inner.getLong("eventID"));
+    assertTrue(inner.getDuration().compareTo(Duration.ofMillis(20)) >= 0);
+    assertTrue(inner.getLong("durationNanos") >= Duration.ofMillis(20).toNanos());
+    assertFalse(outer.getStartTime().isAfter(inner.getStartTime()));
+    assertFalse(outer.getEndTime().isBefore(inner.getEndTime()));
+  }
+
+  @Test
+  public void testStatisticsCountTheCommittedEvents() throws IOException
+  {
+    final FlightRecorder fr = FlightRecorderFactory.getJdkFlightRecorderBridge();
+    fr.setSamplingPolicy(FLIGHT_RECORDER_TEST_EVENT3, clock -> false);
+    final List<RecordedEvent> events = recordInJfr(() -> {
+      fr.startRecording();
+      fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+      fr.endSpan(FLIGHT_RECORDER_TEST_EVENT2, fr.beginSpan(FLIGHT_RECORDER_TEST_EVENT2));
+      fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT3);
+      fr.stopRecording();
+    });
+    assertEquals(2, events.size());
+
+    final FlightRecorderStatistics statistics = fr.getStatistics();
+    assertEquals(2, statistics.getNumberOfEventsRecorded());
+    assertEquals(1, statistics.getNumberOfEventsSuppressed());
+    assertEquals(0, statistics.getNumberOfEntries());
+
+    fr.clearAllRecordedEvents();
+    assertEquals(0, fr.getStatistics().getNumberOfEventsRecorded());
+  }
+
+  private static void sleepFor(final Duration duration)
+  {
+    try
+    {
+      Thread.sleep(duration.toMillis());
+    }
+    catch (final InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /*
+   * Runs the given code while a JFR recording of just this library's events is running, and
+   * returns the events that were in it, in the order they were committed.
+   */
+  private List<RecordedEvent> recordInJfr(final Runnable codeToRecord) throws IOException
+  {
+    final Path file = temporaryFolder.newFile("recording.jfr").toPath();
+    try (final Recording recording = new Recording())
+    {
+      recording.enable(POINT_EVENT_NAME);
+      recording.enable(SPAN_EVENT_NAME);
+      recording.start();
+      codeToRecord.run();
+      recording.stop();
+      recording.dump(file);
+    }
+    final List<RecordedEvent> events = new ArrayList<>();
+    for (final RecordedEvent event : RecordingFile.readAllEvents(file))
+    {
+      final String name = event.getEventType().getName();
+      if (name.equals(POINT_EVENT_NAME) || name.equals(SPAN_EVENT_NAME))  events.add(event);
+    }
+    events.sort((a, b) -> Long.compare(a.getLong("sequenceNumber"), b.getLong("sequenceNumber")));
+    return events;
+  }
+}
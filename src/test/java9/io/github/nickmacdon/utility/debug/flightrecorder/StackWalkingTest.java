@@ -0,0 +1,52 @@
+package io.github.nickmacdon.utility.debug.flightrecorder;
+
+/*
+ * This code is part of https://github.com/NickMacDon/BasicJavaFlightRecorder
+ * This code is licensed with the Apache License 2.0  https://www.apache.org/licenses/LICENSE-2.0
+ * Written by Nick MacDonald (C) 2019
+ *
+ * A unit test of the Java 9 StackWalking, the one that actually runs on Java 9 and later.  The
+ * stacks it captures have to start at the code that recorded the event and stop at the depth
+ * asked for, just like the Java 8 one's.
+ */
+import static io.github.nickmacdon.utility.debug.flightrecorder.FlightRecorderTestEvents.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class StackWalkingTest
+{
+  @Test
+  public void testItIsTheStackWalkerVersion() throws NoSuchFieldException
+  {
+    assertEquals(StackWalker.class, StackWalking.class.getDeclaredField("STACK_WALKER").getType());
+  }
+
+  @Test
+  public void testCurrentStack()
+  {
+    final StackTraceElement[] frames = StackWalking.currentStack(2);
+    assertEquals(2, frames.length);
+    assertEquals("testCurrentStack", frames[0].getMethodName());  // Its own frame is left off
+    assertEquals(StackWalkingTest.class.getName(), frames[0].getClassName());
+    assertEquals(0, StackWalking.currentStack(0).length);
+  }
+
+  @Test
+  public void testRecordedStack()
+  {
+    final FlightRecorder fr = FlightRecorderFactory.getConcurrentFlightRecorder(10).setStackDepth(FLIGHT_RECORDER_TEST_EVENT1, 3).startRecording();
+    recordFromHere(fr);
+    final FlightRecorderTestDumper frd = new FlightRecorderTestDumper();
+    fr.stopRecording().dumpEntriesTo(frd);
+
+    final StackTraceElement[] frames = frd.stacks.get(frd.events.get(0).getStackID());
+    assertEquals(3, frames.length);
+    assertEquals("recordFromHere", frames[0].getMethodName());  // The recorder's own frames are left off
+    assertEquals("testRecordedStack", frames[1].getMethodName());
+  }
+
+  private static void recordFromHere(final FlightRecorder fr)
+  {
+    fr.recordEvent(FLIGHT_RECORDER_TEST_EVENT1);
+  }
+}